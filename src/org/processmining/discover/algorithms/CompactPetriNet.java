@@ -0,0 +1,330 @@
+package org.processmining.discover.algorithms;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.processmining.acceptingpetrinet.models.AcceptingPetriNet;
+import org.processmining.acceptingpetrinet.models.impl.AcceptingPetriNetFactory;
+import org.processmining.discover.models.ActivityAlphabet;
+import org.processmining.models.graphbased.directed.petrinet.Petrinet;
+import org.processmining.models.graphbased.directed.petrinet.PetrinetNode;
+import org.processmining.models.graphbased.directed.petrinet.elements.Place;
+import org.processmining.models.graphbased.directed.petrinet.elements.Transition;
+import org.processmining.models.graphbased.directed.petrinet.impl.PetrinetFactory;
+import org.processmining.models.semantics.petrinet.Marking;
+
+/*
+ * Accepting Petri net used while discovering, before it is converted into an
+ * accepting Petri net of ProM. The nodes (transitions and places) are
+ * numbered in the order they are added, and the arcs are kept in the order
+ * they are added.
+ *
+ * The presets and postsets are kept in compressed rows: the preset of node n
+ * is pre[preStart[n]] up to pre[preStart[n + 1]], sorted on node. These rows
+ * are only valid after compile, and are not updated by changes made after
+ * that, until compile is called again. A removed node is only marked as
+ * removed. Its arcs are dropped by the next compile, and by the conversion.
+ */
+class CompactPetriNet {
+
+	private List<String> labels;
+	private BitSet isPlace;
+	private BitSet isInvisible;
+	private BitSet isRemoved;
+
+	private int[] arcSources;
+	private int[] arcTargets;
+	private int nofArcs;
+
+	/*
+	 * Tokens in the initial and in the final marking, for every node.
+	 */
+	private int[] initialTokens;
+	private int[] finalTokens;
+
+	/*
+	 * Presets and postsets, as of the last compile.
+	 */
+	private int[] preStart;
+	private int[] pre;
+	private int[] postStart;
+	private int[] post;
+
+	CompactPetriNet() {
+		labels = new ArrayList<String>();
+		isPlace = new BitSet();
+		isInvisible = new BitSet();
+		isRemoved = new BitSet();
+		arcSources = new int[16];
+		arcTargets = new int[16];
+		nofArcs = 0;
+		initialTokens = new int[16];
+		finalTokens = new int[16];
+	}
+
+	/*
+	 * Returns the number of nodes, including the removed nodes.
+	 */
+	int size() {
+		return labels.size();
+	}
+
+	int addTransition(String label, boolean isInvisible) {
+		int node = addNode(label);
+		this.isInvisible.set(node, isInvisible);
+		return node;
+	}
+
+	int addPlace(String label) {
+		int node = addNode(label);
+		isPlace.set(node);
+		return node;
+	}
+
+	private int addNode(String label) {
+		int node = labels.size();
+		labels.add(label);
+		if (node == initialTokens.length) {
+			initialTokens = Arrays.copyOf(initialTokens, 2 * node);
+			finalTokens = Arrays.copyOf(finalTokens, 2 * node);
+		}
+		return node;
+	}
+
+	/*
+	 * Adds an arc from the source node to the target node. An arc that already
+	 * exists is added again. The compiled presets and postsets contain it only
+	 * once, but the conversion adds it as often as it was added here. As adding
+	 * an existing arc in ProM increases its weight, the weight then is as if the
+	 * arcs had been added to the ProM net directly.
+	 */
+	void addArc(int source, int target) {
+		if (nofArcs == arcSources.length) {
+			arcSources = Arrays.copyOf(arcSources, 2 * nofArcs);
+			arcTargets = Arrays.copyOf(arcTargets, 2 * nofArcs);
+		}
+		arcSources[nofArcs] = source;
+		arcTargets[nofArcs] = target;
+		nofArcs++;
+	}
+
+	void remove(int node) {
+		isRemoved.set(node);
+	}
+
+	void addInitialTokens(int place, int tokens) {
+		initialTokens[place] += tokens;
+	}
+
+	void addFinalTokens(int place, int tokens) {
+		finalTokens[place] += tokens;
+	}
+
+	String getLabel(int node) {
+		return labels.get(node);
+	}
+
+	boolean isPlace(int node) {
+		return isPlace.get(node);
+	}
+
+	boolean isTransition(int node) {
+		return !isPlace.get(node);
+	}
+
+	boolean isInvisible(int node) {
+		return isInvisible.get(node);
+	}
+
+	boolean isRemoved(int node) {
+		return isRemoved.get(node);
+	}
+
+	/*
+	 * Returns whether the node is a routing transition, that is, a silent
+	 * transition other than the start and end transitions.
+	 */
+	boolean isRouting(int node) {
+		return isInvisible.get(node) && !labels.get(node).equals(ActivityAlphabet.START)
+				&& !labels.get(node).equals(ActivityAlphabet.END);
+	}
+
+	/*
+	 * Returns a copy of the initial marking, which has an entry for every node.
+	 */
+	int[] getInitialMarking() {
+		return Arrays.copyOf(initialTokens, labels.size());
+	}
+
+	int getFinalTokens(int place) {
+		return finalTokens[place];
+	}
+
+	/*
+	 * (Re)builds the presets and postsets from the arcs, leaving out the arcs of
+	 * removed nodes and duplicate arcs.
+	 */
+	void compile() {
+		int size = labels.size();
+		preStart = new int[size + 1];
+		postStart = new int[size + 1];
+		for (int arc = 0; arc < nofArcs; arc++) {
+			if (isRemoved.get(arcSources[arc]) || isRemoved.get(arcTargets[arc])) {
+				continue;
+			}
+			postStart[arcSources[arc] + 1]++;
+			preStart[arcTargets[arc] + 1]++;
+		}
+		for (int node = 0; node < size; node++) {
+			postStart[node + 1] += postStart[node];
+			preStart[node + 1] += preStart[node];
+		}
+		pre = new int[preStart[size]];
+		post = new int[postStart[size]];
+		int[] preFill = Arrays.copyOf(preStart, size);
+		int[] postFill = Arrays.copyOf(postStart, size);
+		for (int arc = 0; arc < nofArcs; arc++) {
+			if (isRemoved.get(arcSources[arc]) || isRemoved.get(arcTargets[arc])) {
+				continue;
+			}
+			post[postFill[arcSources[arc]]++] = arcTargets[arc];
+			pre[preFill[arcTargets[arc]]++] = arcSources[arc];
+		}
+		pre = sortRows(preStart, pre);
+		post = sortRows(postStart, post);
+	}
+
+	/*
+	 * Sorts every row and drops duplicates from it, updating the row starts.
+	 */
+	private static int[] sortRows(int[] start, int[] nodes) {
+		int to = 0;
+		int from = 0;
+		for (int row = 0; row + 1 < start.length; row++) {
+			int end = start[row + 1];
+			Arrays.sort(nodes, from, end);
+			start[row] = to;
+			for (int i = from; i < end; i++) {
+				if (i == from || nodes[i] != nodes[i - 1]) {
+					nodes[to++] = nodes[i];
+				}
+			}
+			from = end;
+		}
+		start[start.length - 1] = to;
+		return to == nodes.length ? nodes : Arrays.copyOf(nodes, to);
+	}
+
+	int getPresetSize(int node) {
+		return preStart[node + 1] - preStart[node];
+	}
+
+	/*
+	 * Returns the node at the given position in the preset of the given node.
+	 */
+	int getPreset(int node, int i) {
+		return pre[preStart[node] + i];
+	}
+
+	/*
+	 * Returns a copy of the preset of the given node.
+	 */
+	int[] getPreset(int node) {
+		return Arrays.copyOfRange(pre, preStart[node], preStart[node + 1]);
+	}
+
+	int getPostsetSize(int node) {
+		return postStart[node + 1] - postStart[node];
+	}
+
+	/*
+	 * Returns the node at the given position in the postset of the given node.
+	 */
+	int getPostset(int node, int i) {
+		return post[postStart[node] + i];
+	}
+
+	/*
+	 * Returns a copy of the postset of the given node.
+	 */
+	int[] getPostset(int node) {
+		return Arrays.copyOfRange(post, postStart[node], postStart[node + 1]);
+	}
+
+	boolean haveSamePreset(int node1, int node2) {
+		return isEqual(pre, preStart[node1], preStart[node1 + 1], pre, preStart[node2], preStart[node2 + 1]);
+	}
+
+	boolean haveSamePostset(int node1, int node2) {
+		return isEqual(post, postStart[node1], postStart[node1 + 1], post, postStart[node2], postStart[node2 + 1]);
+	}
+
+	/*
+	 * Returns whether the postset of the first node equals the preset of the
+	 * second node.
+	 */
+	boolean isPostsetPreset(int node1, int node2) {
+		return isEqual(post, postStart[node1], postStart[node1 + 1], pre, preStart[node2], preStart[node2 + 1]);
+	}
+
+	private static boolean isEqual(int[] nodes1, int from1, int to1, int[] nodes2, int from2, int to2) {
+		if (to1 - from1 != to2 - from2) {
+			return false;
+		}
+		for (int i = 0; i < to1 - from1; i++) {
+			if (nodes1[from1 + i] != nodes2[from2 + i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/*
+	 * Converts the net into an accepting Petri net of ProM with the given label.
+	 * The removed nodes and their arcs are left out.
+	 */
+	AcceptingPetriNet toAcceptingPetriNet(String label) {
+		Petrinet net = PetrinetFactory.newPetrinet(label);
+		PetrinetNode[] nodes = new PetrinetNode[labels.size()];
+		Marking initialMarking = new Marking();
+		Marking finalMarking = new Marking();
+		for (int node = 0; node < labels.size(); node++) {
+			if (isRemoved.get(node)) {
+				continue;
+			}
+			if (isPlace.get(node)) {
+				Place place = net.addPlace(labels.get(node));
+				if (initialTokens[node] > 0) {
+					initialMarking.add(place, initialTokens[node]);
+				}
+				if (finalTokens[node] > 0) {
+					finalMarking.add(place, finalTokens[node]);
+				}
+				nodes[node] = place;
+			} else {
+				Transition transition = net.addTransition(labels.get(node));
+				transition.setInvisible(isInvisible.get(node));
+				nodes[node] = transition;
+			}
+		}
+		for (int arc = 0; arc < nofArcs; arc++) {
+			PetrinetNode source = nodes[arcSources[arc]];
+			PetrinetNode target = nodes[arcTargets[arc]];
+			if (source == null || target == null) {
+				continue;
+			}
+			if (source instanceof Place) {
+				net.addArc((Place) source, (Transition) target);
+			} else {
+				net.addArc((Transition) source, (Place) target);
+			}
+		}
+		Set<Marking> finalMarkings = new HashSet<Marking>();
+		finalMarkings.add(finalMarking);
+		return AcceptingPetriNetFactory.createAcceptingPetriNet(net, initialMarking, finalMarkings);
+	}
+}
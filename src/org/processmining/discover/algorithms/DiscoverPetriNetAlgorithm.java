@@ -2,6 +2,8 @@ package org.processmining.discover.algorithms;
 
 import static org.junit.Assume.assumeNoException;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -9,6 +11,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import org.deckfour.xes.classification.XEventNameClassifier;
 import org.deckfour.xes.extension.std.XConceptExtension;
@@ -17,36 +21,93 @@ import org.deckfour.xes.model.XEvent;
 import org.deckfour.xes.model.XLog;
 import org.deckfour.xes.model.XTrace;
 import org.processmining.acceptingpetrinet.models.AcceptingPetriNet;
-import org.processmining.acceptingpetrinet.models.impl.AcceptingPetriNetFactory;
 import org.processmining.acceptingpetrinetclassicalreductor.algorithms.ReduceUsingMurataRulesAlgorithm;
 import org.processmining.acceptingpetrinetclassicalreductor.parameters.ReduceUsingMurataRulesParameters;
 import org.processmining.discover.models.ActivityAlphabet;
 import org.processmining.discover.models.ActivityLog;
+import org.processmining.discover.models.ActivityLogBuilder;
+import org.processmining.discover.models.ActivityLogReader;
 import org.processmining.discover.models.ActivityMatrix;
 import org.processmining.discover.models.ActivityMatrixCollection;
 import org.processmining.discover.models.ActivitySet;
 import org.processmining.discover.models.ActivitySets;
 import org.processmining.discover.models.ConcurrentActivityPairs;
+import org.processmining.discover.models.MappedActivityLog;
+import org.processmining.discover.models.VariantActivityLog;
 import org.processmining.discover.parameters.DiscoverPetriNetParameters;
 import org.processmining.framework.connections.ConnectionCannotBeObtained;
 import org.processmining.framework.plugin.PluginContext;
 import org.processmining.framework.util.Pair;
 import org.processmining.logskeleton.models.LogSkeleton;
-import org.processmining.models.graphbased.directed.petrinet.Petrinet;
 import org.processmining.models.graphbased.directed.petrinet.PetrinetEdge;
 import org.processmining.models.graphbased.directed.petrinet.PetrinetNode;
 import org.processmining.models.graphbased.directed.petrinet.elements.Place;
 import org.processmining.models.graphbased.directed.petrinet.elements.Transition;
-import org.processmining.models.graphbased.directed.petrinet.impl.PetrinetFactory;
 import org.processmining.models.semantics.petrinet.Marking;
 import org.processmining.processtree.ProcessTree;
 
 public class DiscoverPetriNetAlgorithm {
 
+	/*
+	 * Number of matrices from which the fragments of the net are created in
+	 * parallel.
+	 */
+	static final int PARALLELTHRESHOLD = 16;
+
 	public AcceptingPetriNet apply(PluginContext context, XLog eventLog, DiscoverPetriNetParameters parameters) {
 		return apply(context, eventLog, null, parameters);
 	}
 
+	/**
+	 * Discovers an accepting Petri net from the given XES file without creating an
+	 * event log in memory. The file is streamed into an activity log.
+	 * 
+	 * @param context    The plugin context
+	 * @param file       The given XES file, which may be gzipped
+	 * @param parameters The parameters to use
+	 * @return The discovered accepting Petri net
+	 * @throws IOException If the file could not be read
+	 */
+	public AcceptingPetriNet apply(PluginContext context, File file, DiscoverPetriNetParameters parameters)
+			throws IOException {
+		long time = System.currentTimeMillis();
+		ActivityLogReader reader = new ActivityLogReader(parameters.getClassifier());
+		reader.read(file);
+		parameters.setClassifier(reader.getClassifier());
+		System.out.println("[DiscoverPetriNetAlgorithm] Reading alphabet and activity log took "
+				+ (System.currentTimeMillis() - time) + " milliseconds.");
+		return apply(context, reader.getLog(), parameters);
+	}
+
+	/**
+	 * Discovers an accepting Petri net from the given activity log.
+	 * 
+	 * @param context    The plugin context
+	 * @param log        The given activity log
+	 * @param parameters The parameters to use
+	 * @return The discovered accepting Petri net
+	 */
+	public AcceptingPetriNet apply(PluginContext context, ActivityLog log, DiscoverPetriNetParameters parameters) {
+		if (parameters.getClassifier() == null) {
+			/*
+			 * Not used, but setting the classifier later on would reset the log.
+			 */
+			parameters.setClassifier(new XEventNameClassifier());
+		}
+		parameters.setAlphabet(log.getAlphabet());
+		if (log instanceof VariantActivityLog || log instanceof MappedActivityLog) {
+			/*
+			 * Keep a mapped activity log mapped: compressing it would copy all of it onto
+			 * the heap. An activity log file written from a variant activity log has
+			 * every variant only once already.
+			 */
+			parameters.setLog(log);
+		} else {
+			parameters.setLog(new VariantActivityLog(log));
+		}
+		return apply(context, null, null, parameters);
+	}
+
 	public AcceptingPetriNet apply(PluginContext context, XLog eventLog, ProcessTree tree,
 			DiscoverPetriNetParameters parameters) {
 		/*
@@ -54,7 +115,7 @@ public class DiscoverPetriNetAlgorithm {
 		 * classifier.
 		 */
 		if (parameters.getClassifier() == null) {
-			if (eventLog.getClassifiers().isEmpty()) {
+			if (eventLog == null || eventLog.getClassifiers().isEmpty()) {
 				parameters.setClassifier(new XEventNameClassifier());
 			} else {
 				parameters.setClassifier(eventLog.getClassifiers().get(0));
@@ -63,6 +124,20 @@ public class DiscoverPetriNetAlgorithm {
 
 		long time = System.currentTimeMillis();
 		long time2 = time;
+		if (parameters.getAlphabet() == null && parameters.getLog() == null) {
+			/*
+			 * Create both the alphabet and the activity log in a single pass over the
+			 * event log. Every variant is kept only once.
+			 */
+			ActivityLogBuilder builder = new ActivityLogBuilder();
+			builder.addLog(eventLog, parameters.getClassifier());
+			parameters.setAlphabet(builder.getAlphabet());
+			parameters.setLog(new VariantActivityLog(builder.getLog()));
+			System.out.println("[DiscoverPetriNetAlgorithm] Creating alphabet and activity log took "
+					+ (System.currentTimeMillis() - time) + " milliseconds.");
+			time = System.currentTimeMillis();
+		}
+
 		/*
 		 * Create the alphabet (set of activities) for the event log.
 		 */
@@ -75,9 +150,11 @@ public class DiscoverPetriNetAlgorithm {
 
 		if (parameters.getLog() == null) {
 			/*
-			 * Convert the event log to an activity log using the alphabet.
+			 * Convert the event log to an activity log using the alphabet. Every variant is
+			 * kept only once.
 			 */
-			parameters.setLog(new ActivityLog(eventLog, parameters.getClassifier(), parameters.getAlphabet()));
+			parameters.setLog(new VariantActivityLog(
+					new ActivityLog(eventLog, parameters.getClassifier(), parameters.getAlphabet())));
 			System.out.println("[DiscoverPetriNetAlgorithm] Creating activity log took "
 					+ (System.currentTimeMillis() - time) + " milliseconds.");
 			time = System.currentTimeMillis();
@@ -126,7 +203,9 @@ public class DiscoverPetriNetAlgorithm {
 				 * 
 				 * This may take some time.
 				 */
-				parameters.setActivitySets(new ActivitySets(pairs, parameters.getAlphabet(), parameters.getMode()));
+				parameters.setActivitySets(new ActivitySets(pairs, parameters.getAlphabet(), parameters.getMode(),
+						1000L * parameters.getMaxSearchTime(), parameters.getMaxSearchNodes(),
+						context == null ? null : context.getProgress()));
 				System.out.println("[DiscoverPetriNetAlgorithm] Creating non-concurrent sets took "
 						+ (System.currentTimeMillis() - time) + " milliseconds.");
 				System.out.println(
@@ -151,7 +230,8 @@ public class DiscoverPetriNetAlgorithm {
 		 */
 		if (parameters.getMatrixCollection() == null) {
 			parameters.setMatrixCollection(new ActivityMatrixCollection(parameters.getLog(), parameters.getAlphabet(),
-					parameters.getActivitySets(), parameters.getMatrix(), parameters));
+					parameters.getActivitySets(), parameters.getMatrix(), parameters,
+					context == null ? null : context.getProgress()));
 			System.out.println("[DiscoverPetriNetAlgorithm] Creating secondary matrices took "
 					+ (System.currentTimeMillis() - time) + " milliseconds.");
 			time = System.currentTimeMillis();
@@ -193,9 +273,10 @@ public class DiscoverPetriNetAlgorithm {
 		/*
 		 * Discover an accepting Petri net from the matrices. Every matrix corresponds
 		 * to a state machine WF-net. These WF-nets are merged on the visible
-		 * transitions, that is, on the transitions that represent activities.
+		 * transitions, that is, on the transitions that represent activities. Until
+		 * the net is reduced by ProM, it is kept as a compact net.
 		 */
-		AcceptingPetriNet apn = createNet(parameters);
+		CompactPetriNet net = createNet(parameters);
 		System.out.println("[DiscoverPetriNetAlgorithm] Creating accepting Petri net took "
 				+ (System.currentTimeMillis() - time) + " milliseconds.");
 		time = System.currentTimeMillis();
@@ -208,7 +289,7 @@ public class DiscoverPetriNetAlgorithm {
 		/*
 		 * Enhance the net with additional places, where possible.
 		 */
-		enhanceNet(context, apn, eventLog, parameters);
+		enhanceNet(context, net, eventLog, parameters);
 
 		/*
 		 * If selected by the user, reduce the accepting Petri net as much as possible.
@@ -216,14 +297,22 @@ public class DiscoverPetriNetAlgorithm {
 		 */
 		if (parameters.isReduce()) {
 			System.out.println("[DiscoverPetriNetAlgorithm] Reducing the net, please be patient...");
+			System.out.println("[DiscoverPetriNetAlgorithm] Reducing duplicates");
+			reduceDuplicates(net);
+		}
+
+		/*
+		 * Convert the compact net into an accepting Petri net.
+		 */
+		AcceptingPetriNet apn = net.toAcceptingPetriNet("Petri net DiSCovered");
+
+		if (parameters.isReduce()) {
 			ReduceUsingMurataRulesAlgorithm redAlgorithm = new ReduceUsingMurataRulesAlgorithm();
 			ReduceUsingMurataRulesParameters redParameters = new ReduceUsingMurataRulesParameters();
-			System.out.println("[DiscoverPetriNetAlgorithm] Reducing duplicates");
-			reduceDuplicates(apn);
 			System.out.println("[DiscoverPetriNetAlgorithm] Reducing using rules...");
 			apn = redAlgorithm.apply(context, apn, redParameters);
 			System.out.println("[DiscoverPetriNetAlgorithm] Reducing invisibles");
-			reduceNet(apn);
+			reduceNet(new PetriNetIndex(apn));
 			System.out.println("[DiscoverPetriNetAlgorithm] Reducing using rules...");
 			apn = redAlgorithm.apply(context, apn, redParameters);
 			// System.out.println("[DiscoverPetriNetAlgorithm] Reducing same contexts...");
@@ -237,16 +326,23 @@ public class DiscoverPetriNetAlgorithm {
 		}
 		time = System.currentTimeMillis();
 
+		/*
+		 * Index the presets and postsets of the net once. The reductions below keep
+		 * this index up to date, except for the reductions using rules, as these
+		 * return a new net.
+		 */
+		PetriNetIndex index = new PetriNetIndex(apn);
+
 		if (parameters.isReduceAll()) {
 			ReduceAbstractSimpleSilentTransitionsAlgorithm redAlgorithm = new ReduceAllSimpleSilentTransitionsAlgorithm();
 			System.out.println("[DiscoverPetriNetAlgorithm] Reducing all simple silent transitions");
-			apn = redAlgorithm.apply(context, apn);
+			redAlgorithm.applyInPlace(context, index);
 			System.out.println("[DiscoverPetriNetAlgorithm] Reducing all simple silent transitions took "
 					+ (System.currentTimeMillis() - time) + " milliseconds.");
 		} else if (parameters.isReduceRestricted()) {
 			ReduceClusteredSimpleSilentTransitionsAlgorithm redAlgorithm = new ReduceClusteredSimpleSilentTransitionsAlgorithm();
 			System.out.println("[DiscoverPetriNetAlgorithm] Reducing clustered simple silent transitions");
-			apn = redAlgorithm.apply(context, apn);
+			redAlgorithm.applyInPlace(context, index);
 			System.out.println("[DiscoverPetriNetAlgorithm] Reducing clustered simple silent transitions took "
 					+ (System.currentTimeMillis() - time) + " milliseconds.");
 		}
@@ -267,10 +363,11 @@ public class DiscoverPetriNetAlgorithm {
 				ReduceUsingMurataRulesAlgorithm redAlgorithm = new ReduceUsingMurataRulesAlgorithm();
 				ReduceUsingMurataRulesParameters redParameters = new ReduceUsingMurataRulesParameters();
 				System.out.println("[DiscoverPetriNetAlgorithm] Reducing clusters");
-				reduceSilentClusters(apn, parameters);
+				reduceSilentClusters(index, parameters);
 				System.out.println("[DiscoverPetriNetAlgorithm] Reducing using rules...");
 				try {
 					apn = redAlgorithm.apply(context, apn, redParameters);
+					index = new PetriNetIndex(apn);
 				} catch (Exception e) {
 					// Stop reductions.
 					nofRoutingTransitions = -1;
@@ -310,124 +407,75 @@ public class DiscoverPetriNetAlgorithm {
 		return apn;
 	}
 
-	private AcceptingPetriNet createNet(DiscoverPetriNetParameters parameters) {
-		Petrinet net = PetrinetFactory.newPetrinet("Petri net DiSCovered");
+	CompactPetriNet createNet(DiscoverPetriNetParameters parameters) {
+		CompactPetriNet net = new CompactPetriNet();
 
 		// Add shared start and end
-		Transition startTransition = net.addTransition(ActivityAlphabet.START);
-		startTransition.setInvisible(true);
-		Transition endTransition = net.addTransition(ActivityAlphabet.END);
-		endTransition.setInvisible(true);
+		int startTransition = net.addTransition(ActivityAlphabet.START, true);
+		int endTransition = net.addTransition(ActivityAlphabet.END, true);
 
-		Place startPlace = net.addPlace("i");
+		int startPlace = net.addPlace("i");
 		net.addArc(startPlace, startTransition);
-		Place endPlace = net.addPlace("o");
+		int endPlace = net.addPlace("o");
 		net.addArc(endTransition, endPlace);
 
-		Marking initialMarking = new Marking();
-		initialMarking.add(startPlace);
-		Set<Marking> finalMarkings = new HashSet<Marking>();
-		Marking finalMarking = new Marking();
-		finalMarking.add(endPlace);
-		finalMarkings.add(finalMarking);
+		net.addInitialTokens(startPlace, 1);
+		net.addFinalTokens(endPlace, 1);
 
-		Map<Integer, Transition> transitions = new HashMap<Integer, Transition>();
-		// Map<Pair<ActivitySet, ActivitySet>, Transition> silentTransitions = new
-		// HashMap<Pair<ActivitySet, ActivitySet>, Transition>();
+		int[] transitions = new int[parameters.getAlphabet().size()];
 		// Add visible shared transitions.
 		if (parameters.isMerge()) {
 			for (int nodeIdx = 1; nodeIdx < parameters.getAlphabet().size(); nodeIdx++) {
-				transitions.put(nodeIdx, net.addTransition(parameters.getAlphabet().get(nodeIdx)));
+				transitions[nodeIdx] = net.addTransition(parameters.getAlphabet().get(nodeIdx), false);
 			}
 		}
 
 		/*
-		 * Set of tau-clusters that have already been produced.
+		 * Set of tau-clusters that have already been produced. A tau-cluster is
+		 * identified by its edges, as these determine its places.
 		 */
-		Set<Set<String>> clustersProduced = new HashSet<Set<String>>();
-
-		for (int idx = 0; idx < parameters.getMatrixCollection().size(); idx++) {
-			ActivityMatrix subMatrix = parameters.getMatrixCollection().get(idx);
-			Map<Integer, ActivitySet> nextActivities = subMatrix.getNextActivities();
-			Map<Integer, ActivitySet> previousActivities = subMatrix.getPreviousActivities();
+		Set<List<Long>> clustersProduced = new HashSet<List<Long>>();
 
-			/*
-			 * Find the tau-clusters for this matrix. First, initialize the tau-clusters.
-			 */
-			Map<String, Set<String>> clusters = new HashMap<String, Set<String>>();
-			for (int nodeIdx = 0; nodeIdx < parameters.getAlphabet().size(); nodeIdx++) {
-				if (subMatrix.get(nodeIdx) == 0) {
-					continue;
-				}
-				for (int nextIdx = 0; nextIdx < nextActivities.get(nodeIdx).length(); nextIdx++) {
-					if (!nextActivities.get(nodeIdx).get(nextIdx)) {
-						continue;
-					}
-					if (subMatrix.get(nextIdx) == 0) {
-						continue;
-					}
-					Set<String> cluster = new HashSet<String>();
-					cluster.add("(" + parameters.getAlphabet().get(nodeIdx) + ","
-							+ parameters.getAlphabet().get(nextIdx) + ")");
-					cluster.add("n" + nextActivities.get(nodeIdx).toString());
-					cluster.add("p" + previousActivities.get(nextIdx).toString());
-					clusters.put("(" + parameters.getAlphabet().get(nodeIdx) + ","
-							+ parameters.getAlphabet().get(nextIdx) + ")", cluster);
-					clusters.put("n" + nextActivities.get(nodeIdx).toString(), cluster);
-					clusters.put("p" + previousActivities.get(nextIdx).toString(), cluster);
-				}
-			}
-			/*
-			 * Second, merge tau-clusters if they have an object (must be place) in common.
-			 */
-			boolean change = true;
-			while (change) {
-				change = false;
-				for (String clusterKey : clusters.keySet()) {
-					for (String otherClusterKey : clusters.keySet()) {
-						if (clusterKey.equals(otherClusterKey)) {
-							continue;
-						}
-						if (clusters.get(clusterKey).equals(clusters.get(otherClusterKey))) {
-							continue;
-						}
-						Set<String> otherCluster = new HashSet<String>(clusters.get(otherClusterKey));
-						otherCluster.retainAll(clusters.get(clusterKey));
-						if (!otherCluster.isEmpty()) {
-							change = true;
-							clusters.get(clusterKey).addAll(clusters.get(otherClusterKey));
-							clusters.get(otherClusterKey).addAll(clusters.get(clusterKey));
-						}
-					}
-				}
+		/*
+		 * Merge the fragments into the net, in the order of the matrices.
+		 */
+		for (Fragment fragment : createFragments(parameters)) {
+			ActivityMatrix subMatrix = fragment.matrix;
+			boolean[] isProduced = new boolean[fragment.nofElements];
+			for (int root : fragment.clusters.keySet()) {
+				isProduced[root] = clustersProduced.contains(fragment.clusters.get(root));
 			}
 
 			if (!parameters.isMerge()) {
 				// Add visible non-shared transitions.
 				for (int nodeIdx = 1; nodeIdx < parameters.getAlphabet().size(); nodeIdx++) {
 					if (subMatrix.get(nodeIdx) > 0) {
-						transitions.put(nodeIdx, net.addTransition(parameters.getAlphabet().get(nodeIdx)));
+						transitions[nodeIdx] = net.addTransition(parameters.getAlphabet().get(nodeIdx), false);
 					}
 				}
-				// silentTransitions.clear();
 			}
-			// Add places
-			Map<ActivitySet, Place> nextPlaces = new HashMap<ActivitySet, Place>();
-			Map<ActivitySet, Place> previousPlaces = new HashMap<ActivitySet, Place>();
-			for (ActivitySet next : new HashSet<ActivitySet>(nextActivities.values())) {
-				if (!clustersProduced.contains(clusters.get("n" + next.toString()))) {
+			// Add places, -1 if already produced.
+			int[] nextPlaces = new int[fragment.nextLabels.length];
+			int[] previousPlaces = new int[fragment.previousLabels.length];
+			for (int place = 0; place < nextPlaces.length; place++) {
+				// A place without edges has no tau-cluster.
+				if (fragment.nextRoots[place] < 0 || !isProduced[fragment.nextRoots[place]]) {
 					/*
 					 * Not produced yet: add place.
 					 */
-					nextPlaces.put(next, net.addPlace(next.toString()));
+					nextPlaces[place] = net.addPlace(fragment.nextLabels[place]);
+				} else {
+					nextPlaces[place] = -1;
 				}
 			}
-			for (ActivitySet previous : new HashSet<ActivitySet>(previousActivities.values())) {
-				if (!clustersProduced.contains(clusters.get("p" + previous.toString()))) {
+			for (int place = 0; place < previousPlaces.length; place++) {
+				if (fragment.previousRoots[place] < 0 || !isProduced[fragment.previousRoots[place]]) {
 					/*
 					 * Not produced yet: add place.
 					 */
-					previousPlaces.put(previous, net.addPlace(previous.toString()));
+					previousPlaces[place] = net.addPlace(fragment.previousLabels[place]);
+				} else {
+					previousPlaces[place] = -1;
 				}
 			}
 			// Connect visible transitions to places
@@ -435,141 +483,322 @@ public class DiscoverPetriNetAlgorithm {
 				if (subMatrix.get(nodeIdx) == 0) {
 					continue;
 				}
-				if (nextPlaces.containsKey(nextActivities.get(nodeIdx))) {
-					net.addArc(nodeIdx == 0 ? startTransition : transitions.get(nodeIdx),
-							nextPlaces.get(nextActivities.get(nodeIdx)));
+				if (nextPlaces[fragment.nextPlaces[nodeIdx]] >= 0) {
+					net.addArc(nodeIdx == 0 ? startTransition : transitions[nodeIdx],
+							nextPlaces[fragment.nextPlaces[nodeIdx]]);
 				}
-				if (previousPlaces.containsKey(previousActivities.get(nodeIdx))) {
-					net.addArc(previousPlaces.get(previousActivities.get(nodeIdx)),
-							nodeIdx == 0 ? endTransition : transitions.get(nodeIdx));
+				if (previousPlaces[fragment.previousPlaces[nodeIdx]] >= 0) {
+					net.addArc(previousPlaces[fragment.previousPlaces[nodeIdx]],
+							nodeIdx == 0 ? endTransition : transitions[nodeIdx]);
 				}
 			}
 			// Add invisible transitions and connect them.
-			for (int nodeIdx = 0; nodeIdx < parameters.getAlphabet().size(); nodeIdx++) {
+			for (int edge = 0; edge < fragment.edgeLabels.length; edge++) {
+				if (isProduced[fragment.edgeRoots[edge]]) {
+					/*
+					 * Already produced. Skip here..
+					 */
+					continue;
+				}
+				int transition = net.addTransition(fragment.edgeLabels[edge], true);
+				net.addArc(nextPlaces[fragment.edgeNextPlaces[edge]], transition);
+				net.addArc(transition, previousPlaces[fragment.edgePreviousPlaces[edge]]);
+			}
+			if (parameters.isMerge()) {
+				/*
+				 * Register all clusters that have been produced by now.
+				 */
+				clustersProduced.addAll(fragment.clusters.values());
+			}
+		}
+
+		return net;
+	}
+
+	/*
+	 * The state machine for a single matrix: its places, its silent transitions
+	 * (one for every edge), and its tau-clusters. A fragment only reads the
+	 * matrix, so the fragments for all matrices can be created in parallel, and
+	 * then be merged into the net in order.
+	 */
+	private static class Fragment {
+
+		ActivityMatrix matrix;
+
+		/*
+		 * The next places and the previous places, in the order in which they are
+		 * added to the net, with their labels and the element of their
+		 * tau-cluster (-1 if the place has no edges).
+		 */
+		String[] nextLabels;
+		int[] nextRoots;
+		String[] previousLabels;
+		int[] previousRoots;
+
+		/*
+		 * For every activity in the matrix, its next place and its previous place.
+		 */
+		int[] nextPlaces;
+		int[] previousPlaces;
+
+		/*
+		 * For every edge, the label of its silent transition, the next place of its
+		 * source, the previous place of its target, and the element of its
+		 * tau-cluster.
+		 */
+		String[] edgeLabels;
+		int[] edgeNextPlaces;
+		int[] edgePreviousPlaces;
+		int[] edgeRoots;
+
+		/*
+		 * The edges of every tau-cluster, by the element of the tau-cluster.
+		 */
+		Map<Integer, List<Long>> clusters;
+		int nofElements;
+
+		Fragment(ActivityMatrix subMatrix, ActivityAlphabet alphabet) {
+			matrix = subMatrix;
+			int size = alphabet.size();
+			Map<Integer, ActivitySet> nextActivities = subMatrix.getNextActivities();
+			Map<Integer, ActivitySet> previousActivities = subMatrix.getPreviousActivities();
+
+			/*
+			 * Find the tau-clusters for this matrix. A tau-cluster contains an edge
+			 * together with the place for the next activities of its source and the
+			 * place for the previous activities of its target, and tau-clusters that
+			 * have a place in common are merged. First, number the places and the
+			 * edges.
+			 */
+			Map<ActivitySet, Integer> nextIds = new HashMap<ActivitySet, Integer>();
+			Map<ActivitySet, Integer> previousIds = new HashMap<ActivitySet, Integer>();
+			List<Long> edges = new ArrayList<Long>();
+			for (int nodeIdx = 0; nodeIdx < size; nodeIdx++) {
 				if (subMatrix.get(nodeIdx) == 0) {
 					continue;
 				}
-				for (int nextIdx = 0; nextIdx < nextActivities.get(nodeIdx).length(); nextIdx++) {
-					if (!nextActivities.get(nodeIdx).get(nextIdx)) {
-						continue;
-					}
+				ActivitySet next = nextActivities.get(nodeIdx);
+				for (int nextIdx = next.nextSetBit(0); nextIdx >= 0; nextIdx = next.nextSetBit(nextIdx + 1)) {
 					if (subMatrix.get(nextIdx) == 0) {
 						continue;
 					}
-					if (clustersProduced.contains(clusters.get("(" + parameters.getAlphabet().get(nodeIdx) + ","
-							+ parameters.getAlphabet().get(nextIdx) + ")"))) {
-						/*
-						 * Already produced. Skip here..
-						 */
-						continue;
-					}
-					// Pair<ActivitySet, ActivitySet> pair = new Pair<ActivitySet,
-					// ActivitySet>(nextActivities.get(nodeIdx), previousActivities.get(nextIdx));
-					// Transition transition = silentTransitions.get(pair);
-					// if (transition == null) {
-					Transition transition = net.addTransition("(" + parameters.getAlphabet().get(nodeIdx) + ","
-							+ parameters.getAlphabet().get(nextIdx) + ")");
-					transition.setInvisible(true);
-					// silentTransitions.put(pair, transition);
-					// }
-					net.addArc(nextPlaces.get(nextActivities.get(nodeIdx)), transition);
-					net.addArc(transition, previousPlaces.get(previousActivities.get(nextIdx)));
+					getId(next, nextIds);
+					getId(previousActivities.get(nextIdx), previousIds);
+					edges.add((long) nodeIdx * size + nextIdx);
 				}
 			}
-			if (parameters.isMerge()) {
-				/*
-				 * Register all clusters that have been produced by now.
-				 */
-				clustersProduced.addAll(clusters.values());
+			/*
+			 * Second, merge the tau-clusters of every edge and its places. Edges come
+			 * first, then the next places, then the previous places.
+			 */
+			int nofEdges = edges.size();
+			nofElements = nofEdges + nextIds.size() + previousIds.size();
+			int[] parent = new int[nofElements];
+			for (int i = 0; i < parent.length; i++) {
+				parent[i] = i;
+			}
+			for (int edge = 0; edge < nofEdges; edge++) {
+				int nodeIdx = (int) (edges.get(edge) / size);
+				int nextIdx = (int) (edges.get(edge) % size);
+				union(parent, edge, nofEdges + nextIds.get(nextActivities.get(nodeIdx)));
+				union(parent, edge, nofEdges + nextIds.size() + previousIds.get(previousActivities.get(nextIdx)));
+			}
+			/*
+			 * Third, collect the edges of every tau-cluster, in order.
+			 */
+			clusters = new HashMap<Integer, List<Long>>();
+			edgeRoots = new int[nofEdges];
+			for (int edge = 0; edge < nofEdges; edge++) {
+				int root = find(parent, edge);
+				if (!clusters.containsKey(root)) {
+					clusters.put(root, new ArrayList<Long>());
+				}
+				clusters.get(root).add(edges.get(edge));
+				edgeRoots[edge] = root;
+			}
+
+			/*
+			 * The places, in the order of the distinct sets in a hash set.
+			 */
+			ActivitySet[] nextSets = new HashSet<ActivitySet>(nextActivities.values()).toArray(new ActivitySet[0]);
+			nextLabels = new String[nextSets.length];
+			nextRoots = new int[nextSets.length];
+			Map<ActivitySet, Integer> nextPlaceIdx = new HashMap<ActivitySet, Integer>();
+			for (int place = 0; place < nextSets.length; place++) {
+				nextLabels[place] = nextSets[place].toString();
+				Integer id = nextIds.get(nextSets[place]);
+				nextRoots[place] = id == null ? -1 : find(parent, nofEdges + id);
+				nextPlaceIdx.put(nextSets[place], place);
+			}
+			ActivitySet[] previousSets = new HashSet<ActivitySet>(previousActivities.values()).toArray(new ActivitySet[0]);
+			previousLabels = new String[previousSets.length];
+			previousRoots = new int[previousSets.length];
+			Map<ActivitySet, Integer> previousPlaceIdx = new HashMap<ActivitySet, Integer>();
+			for (int place = 0; place < previousSets.length; place++) {
+				previousLabels[place] = previousSets[place].toString();
+				Integer id = previousIds.get(previousSets[place]);
+				previousRoots[place] = id == null ? -1 : find(parent, nofEdges + nextIds.size() + id);
+				previousPlaceIdx.put(previousSets[place], place);
+			}
+			nextPlaces = new int[size];
+			previousPlaces = new int[size];
+			for (int nodeIdx = 0; nodeIdx < size; nodeIdx++) {
+				if (subMatrix.get(nodeIdx) == 0) {
+					continue;
+				}
+				nextPlaces[nodeIdx] = nextPlaceIdx.get(nextActivities.get(nodeIdx));
+				previousPlaces[nodeIdx] = previousPlaceIdx.get(previousActivities.get(nodeIdx));
+			}
+
+			/*
+			 * The silent transitions.
+			 */
+			edgeLabels = new String[nofEdges];
+			edgeNextPlaces = new int[nofEdges];
+			edgePreviousPlaces = new int[nofEdges];
+			for (int edge = 0; edge < nofEdges; edge++) {
+				int nodeIdx = (int) (edges.get(edge) / size);
+				int nextIdx = (int) (edges.get(edge) % size);
+				edgeLabels[edge] = "(" + alphabet.get(nodeIdx) + "," + alphabet.get(nextIdx) + ")";
+				edgeNextPlaces[edge] = nextPlaces[nodeIdx];
+				edgePreviousPlaces[edge] = previousPlaces[nextIdx];
 			}
 		}
+	}
+
+	/*
+	 * Creates the fragments for all matrices, in parallel for large collections.
+	 */
+	private static Fragment[] createFragments(final DiscoverPetriNetParameters parameters) {
+		final ActivityMatrixCollection matrices = parameters.getMatrixCollection();
+		final Fragment[] fragments = new Fragment[matrices.size()];
+		if (matrices.size() < PARALLELTHRESHOLD || ForkJoinPool.getCommonPoolParallelism() <= 1) {
+			for (int idx = 0; idx < matrices.size(); idx++) {
+				fragments[idx] = new Fragment(matrices.get(idx), parameters.getAlphabet());
+			}
+			return fragments;
+		}
+		final RecursiveAction[] tasks = new RecursiveAction[matrices.size()];
+		for (int idx = 0; idx < matrices.size(); idx++) {
+			final int j = idx;
+			tasks[idx] = new RecursiveAction() {
+
+				private static final long serialVersionUID = 2519785106273341093L;
 
-		return AcceptingPetriNetFactory.createAcceptingPetriNet(net, initialMarking, finalMarkings);
+				protected void compute() {
+					fragments[j] = new Fragment(matrices.get(j), parameters.getAlphabet());
+				}
+			};
+		}
+		ForkJoinPool.commonPool().invoke(new RecursiveAction() {
+
+			private static final long serialVersionUID = -5083217642906338532L;
+
+			protected void compute() {
+				invokeAll(tasks);
+			}
+		});
+		return fragments;
 	}
 
-	private void reduceDuplicates(AcceptingPetriNet apn) {
-		Map<PetrinetNode, Set<PetrinetNode>> preset = new HashMap<PetrinetNode, Set<PetrinetNode>>();
-		Map<PetrinetNode, Set<PetrinetNode>> postset = new HashMap<PetrinetNode, Set<PetrinetNode>>();
-		for (PetrinetNode node : apn.getNet().getNodes()) {
-			preset.put(node, new HashSet<PetrinetNode>());
-			postset.put(node, new HashSet<PetrinetNode>());
+	/*
+	 * Returns the id of the given set, where every new set gets the next id.
+	 */
+	private static int getId(ActivitySet set, Map<ActivitySet, Integer> ids) {
+		Integer id = ids.get(set);
+		if (id == null) {
+			id = ids.size();
+			ids.put(set, id);
 		}
-		for (PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode> edge : apn.getNet().getEdges()) {
-			postset.get(edge.getSource()).add(edge.getTarget());
-			preset.get(edge.getTarget()).add(edge.getSource());
+		return id;
+	}
+
+	/*
+	 * Returns the representative of the given element in the given union-find
+	 * forest, halving the path on the way.
+	 */
+	private static int find(int[] parent, int i) {
+		while (parent[i] != i) {
+			parent[i] = parent[parent[i]];
+			i = parent[i];
 		}
-		Set<Transition> transitions = new HashSet<Transition>(apn.getNet().getTransitions());
-		Set<Transition> transitionsRemoved = new HashSet<Transition>();
-		for (Transition transition : transitions) {
-			if (!transition.isInvisible()) {
+		return i;
+	}
+
+	private static void union(int[] parent, int i, int j) {
+		parent[find(parent, i)] = find(parent, j);
+	}
+
+	/*
+	 * Removes silent transitions that have the same preset and postset as some
+	 * other silent transition, and places that have the same preset and postset
+	 * as some other place. The presets and postsets are those from before any
+	 * removal, which does not matter as a removed node has a twin that remains.
+	 */
+	void reduceDuplicates(CompactPetriNet net) {
+		net.compile();
+		for (int transition = 0; transition < net.size(); transition++) {
+			if (!net.isTransition(transition) || !net.isInvisible(transition)) {
 				continue;
 			}
-			if (transitionsRemoved.contains(transition)) {
+			if (net.isRemoved(transition)) {
 				continue;
 			}
-			Set<PetrinetNode> prePlaces = preset.get(transition);
-			if (prePlaces == null || prePlaces.isEmpty()) {
+			if (net.getPresetSize(transition) == 0) {
 				continue;
 			}
-			for (PetrinetNode node : postset.get(prePlaces.iterator().next())) {
-				Transition otherTransition = (Transition) node;
+			int prePlace = net.getPreset(transition, 0);
+			for (int i = 0; i < net.getPostsetSize(prePlace); i++) {
+				int otherTransition = net.getPostset(prePlace, i);
 				if (transition == otherTransition) {
 					continue;
 				}
-				if (!otherTransition.isInvisible()) {
+				if (!net.isInvisible(otherTransition)) {
 					continue;
 				}
-				if (!preset.get(transition).equals(preset.get(otherTransition))) {
+				if (!net.haveSamePreset(transition, otherTransition)) {
 					continue;
 				}
-				if (!postset.get(transition).equals(postset.get(otherTransition))) {
+				if (!net.haveSamePostset(transition, otherTransition)) {
 					continue;
 				}
-				apn.getNet().removeTransition(otherTransition);
-				transitionsRemoved.add(otherTransition);
+				net.remove(otherTransition);
 			}
 		}
-		Set<Place> places = new HashSet<Place>(apn.getNet().getPlaces());
-		Set<Place> placesRemoved = new HashSet<Place>();
-		for (Place place : places) {
-			if (placesRemoved.contains(place)) {
+		for (int place = 0; place < net.size(); place++) {
+			if (!net.isPlace(place) || net.isRemoved(place)) {
 				continue;
 			}
-			if (preset.get(place).isEmpty()) {
+			if (net.getPresetSize(place) == 0) {
 				continue;
 			}
-			Set<PetrinetNode> preTransitions = preset.get(place);
-			if (preTransitions == null || preTransitions.isEmpty()) {
-				continue;
-			}
-			for (PetrinetNode node : postset.get(preTransitions.iterator().next())) {
-				Place otherPlace = (Place) node;
+			int preTransition = net.getPreset(place, 0);
+			for (int i = 0; i < net.getPostsetSize(preTransition); i++) {
+				int otherPlace = net.getPostset(preTransition, i);
 				if (place == otherPlace) {
 					continue;
 				}
-				if (!preset.get(place).equals(preset.get(otherPlace))) {
+				if (!net.haveSamePreset(place, otherPlace)) {
 					continue;
 				}
-				if (!postset.get(place).equals(postset.get(otherPlace))) {
+				if (!net.haveSamePostset(place, otherPlace)) {
 					continue;
 				}
-				apn.getNet().removePlace(otherPlace);
-				placesRemoved.add(otherPlace);
+				net.remove(otherPlace);
 			}
 		}
 	}
 
-	private void reduceNet(AcceptingPetriNet apn) {
-		Map<PetrinetNode, Set<PetrinetNode>> preset = new HashMap<PetrinetNode, Set<PetrinetNode>>();
-		Map<PetrinetNode, Set<PetrinetNode>> postset = new HashMap<PetrinetNode, Set<PetrinetNode>>();
-		for (PetrinetNode node : apn.getNet().getNodes()) {
-			preset.put(node, new HashSet<PetrinetNode>());
-			postset.put(node, new HashSet<PetrinetNode>());
-		}
-		for (PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode> edge : apn.getNet().getEdges()) {
-			postset.get(edge.getSource()).add(edge.getTarget());
-			preset.get(edge.getTarget()).add(edge.getSource());
-		}
+	/*
+	 * Removes silent transitions with a single input place and a single output
+	 * place, if the output place can be merged into the input place. As the
+	 * index is kept up to date, a later transition sees the places as merged by
+	 * the earlier ones.
+	 */
+	void reduceNet(PetriNetIndex index) {
+		AcceptingPetriNet apn = index.getAcceptingPetriNet();
+		Map<PetrinetNode, Set<PetrinetNode>> preset = index.getPresets();
+		Map<PetrinetNode, Set<PetrinetNode>> postset = index.getPostsets();
 		Set<Transition> transitions = new HashSet<Transition>(apn.getNet().getTransitions());
 		for (Transition transition : transitions) {
 			if (!transition.isInvisible() || preset.get(transition) == null || preset.get(transition).size() != 1
@@ -592,11 +821,12 @@ public class DiscoverPetriNetAlgorithm {
 			if (isFinal) {
 				continue;
 			}
-			for (PetrinetNode node : postset.get(place)) {
-				apn.getNet().addArc((Place) preset.get(transition).iterator().next(), (Transition) node);
+			Place prePlace = (Place) preset.get(transition).iterator().next();
+			for (PetrinetNode node : new ArrayList<PetrinetNode>(postset.get(place))) {
+				index.addArc(prePlace, (Transition) node);
 			}
-			apn.getNet().removeTransition(transition);
-			apn.getNet().removePlace(place);
+			index.removeTransition(transition);
+			index.removePlace(place);
 		}
 
 	}
@@ -661,7 +891,7 @@ public class DiscoverPetriNetAlgorithm {
 		}
 	}
 
-	private void enhanceNet(PluginContext context, AcceptingPetriNet apn, XLog log,
+	void enhanceNet(PluginContext context, CompactPetriNet net, XLog log,
 			DiscoverPetriNetParameters parameters) {
 		if (!parameters.isAddOccurrencePlaces() && !parameters.isAddEquivalencePlaces()) {
 			// Nothing to add.
@@ -670,11 +900,10 @@ public class DiscoverPetriNetAlgorithm {
 		System.out.println("[DiscoverPetriNetAlgorithm] Enhancing net");
 		long time = System.currentTimeMillis();
 
-		Map<String, Transition> transitionMap = new HashMap<String, Transition>();
-		for (Transition transition : apn.getNet().getTransitions()) {
-			if (!transition.isInvisible() || transition.getLabel().equals(ActivityAlphabet.START)
-					|| transition.getLabel().equals(ActivityAlphabet.END)) {
-				transitionMap.put(transition.getLabel(), transition);
+		Map<String, Integer> transitionMap = new HashMap<String, Integer>();
+		for (int transition = 0; transition < net.size(); transition++) {
+			if (net.isTransition(transition) && !net.isRemoved(transition) && !net.isRouting(transition)) {
+				transitionMap.put(net.getLabel(transition), transition);
 			}
 		}
 		System.out.println("[DiscoverPetriNetAlgorithm] Getting activities took " + (System.currentTimeMillis() - time)
@@ -682,29 +911,28 @@ public class DiscoverPetriNetAlgorithm {
 		time = System.currentTimeMillis();
 		List<Pair<Pair<String, String>, Integer>> equivalencePlaces = new ArrayList<Pair<Pair<String, String>, Integer>>();
 		List<Pair<String, Integer>> occurrencePlaces = new ArrayList<Pair<String, Integer>>();
-		Map<PetrinetNode, Set<PetrinetNode>> preset = new HashMap<PetrinetNode, Set<PetrinetNode>>();
-		Map<PetrinetNode, Set<PetrinetNode>> postset = new HashMap<PetrinetNode, Set<PetrinetNode>>();
-		for (PetrinetNode node : apn.getNet().getNodes()) {
-			preset.put(node, new HashSet<PetrinetNode>());
-			postset.put(node, new HashSet<PetrinetNode>());
-		}
-		for (PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode> edge : apn.getNet().getEdges()) {
-			postset.get(edge.getSource()).add(edge.getTarget());
-			preset.get(edge.getTarget()).add(edge.getSource());
-		}
+		net.compile();
 
-		List<List<String>> playOutTemp = new ArrayList<List<String>>();
+		/*
+		 * Every thread plays out traces on its own copy of the token game. Only how
+		 * often every activity occurs in a trace matters, so only the distinct
+		 * activity counts of the traces are kept.
+		 */
+		TokenGame game = new TokenGame(net);
+		DistinctCounts playOut = new DistinctCounts();
 		List<Thread> threads = new ArrayList<Thread>();
 
 		for (int i = 0; i < parameters.getNofThreads(); i++) {
 			Thread myThread = new Thread() {
 				public void run() {
-					List<List<String>> playOutThread = playOut(apn, preset, postset, parameters);
+					DistinctCounts playOutThread = playOut(new TokenGame(game), parameters);
 					add(playOutThread);
 				}
 
-				private synchronized void add(List<List<String>> playOutThread) {
-					playOutTemp.addAll(playOutThread);
+				private void add(DistinctCounts playOutThread) {
+					synchronized (playOut) {
+						playOut.addAll(playOutThread);
+					}
 				}
 			};
 			threads.add(myThread);
@@ -718,25 +946,19 @@ public class DiscoverPetriNetAlgorithm {
 				e.printStackTrace();
 			}
 		}
-		/*
-		 * This creation of new list seems silly, but on some servers we got
-		 * ConcurrentModificationExceptions on the list as assembled by the threads.
-		 */
-		List<List<String>> playOut = new ArrayList<List<String>>(playOutTemp);
-
-//		List<List<String>> playOut = playOut(apn, preset, postset, parameters);
-//		System.out.println("[DiscoverPetriNetAlgorithm] traces " + playOut);
+		System.out.println("[DiscoverPetriNetAlgorithm] Playing out yielded " + playOut.size()
+				+ " distinct activity counts.");
 
 		for (String source : transitionMap.keySet()) {
-			if (!isFirst(transitionMap.get(source), preset, postset)) {
+			if (!isFirst(transitionMap.get(source), net)) {
 				continue;
 			}
 			for (String target : transitionMap.keySet()) {
-				if (!isFirst(transitionMap.get(target), preset, postset)) {
+				if (!isFirst(transitionMap.get(target), net)) {
 					continue;
 				}
 				if (source.compareTo(target) < 0) {
-					boolean sameMG = areEquivalent(playOut, source, target);
+					boolean sameMG = areEquivalent(playOut, game.getActivity(source), game.getActivity(target));
 					if (!sameMG) {
 						int stTokens = getEquivalenceTokens(source, target, log, parameters);
 						if (stTokens == -1 || stTokens > parameters.getMaxEquivalenceTokens()) {
@@ -781,21 +1003,19 @@ public class DiscoverPetriNetAlgorithm {
 		for (Pair<Pair<String, String>, Integer> place : equivalencePlaces) {
 			System.out.println("[DiscoverPetriNetAlgorithm] Enhancing net with equivalence place px_"
 					+ place.getFirst().getFirst() + "_" + place.getFirst().getSecond() + "_" + place.getSecond());
-			Place p = apn.getNet().addPlace(
+			int p = net.addPlace(
 					"px_" + place.getFirst().getFirst() + "_" + place.getFirst().getSecond() + "_" + place.getSecond());
-			apn.getNet().addArc(transitionMap.get(place.getFirst().getFirst()), p);
-			apn.getNet().addArc(p, transitionMap.get(place.getFirst().getSecond()));
-			apn.getInitialMarking().add(p, place.getSecond());
-			for (Marking finalMarking : apn.getFinalMarkings()) {
-				finalMarking.add(p, place.getSecond());
-			}
+			net.addArc(transitionMap.get(place.getFirst().getFirst()), p);
+			net.addArc(p, transitionMap.get(place.getFirst().getSecond()));
+			net.addInitialTokens(p, place.getSecond());
+			net.addFinalTokens(p, place.getSecond());
 		}
 		for (Pair<String, Integer> pair : occurrencePlaces) {
 			System.out.println("[DiscoverPetriNetAlgorithm] Enhancing net with occurrence place pi_" + pair.getFirst()
 					+ "_" + pair.getSecond());
-			Place p = apn.getNet().addPlace("pi_" + pair.getFirst() + "_" + pair.getSecond());
-			apn.getNet().addArc(p, transitionMap.get(pair.getFirst()));
-			apn.getInitialMarking().add(p, pair.getSecond());
+			int p = net.addPlace("pi_" + pair.getFirst() + "_" + pair.getSecond());
+			net.addArc(p, transitionMap.get(pair.getFirst()));
+			net.addInitialTokens(p, pair.getSecond());
 		}
 		System.out.println("[DiscoverPetriNetAlgorithm] Adding places took " + (System.currentTimeMillis() - time)
 				+ " milliseconds.");
@@ -805,20 +1025,20 @@ public class DiscoverPetriNetAlgorithm {
 	 * Returns whether the activity transition is not preceded by an activity
 	 * transition that occurs equally often.
 	 */
-	private boolean isFirst(Transition transition, Map<PetrinetNode, Set<PetrinetNode>> preset,
-			Map<PetrinetNode, Set<PetrinetNode>> postset) {
-		for (PetrinetNode input1 : preset.get(transition)) {
-			if (postset.get(input1).size() == 1) {
-				Set<PetrinetNode> inputs3 = new HashSet<PetrinetNode>();
-				for (PetrinetNode input2 : preset.get(input1)) {
-					inputs3.add(preset.get(input2).iterator().next());
+	private boolean isFirst(int transition, CompactPetriNet net) {
+		for (int i = 0; i < net.getPresetSize(transition); i++) {
+			int input1 = net.getPreset(transition, i);
+			if (net.getPostsetSize(input1) == 1) {
+				Set<Integer> inputs3 = new HashSet<Integer>();
+				for (int j = 0; j < net.getPresetSize(input1); j++) {
+					int input2 = net.getPreset(input1, j);
+					inputs3.add(net.getPreset(input2, 0));
 				}
 				if (inputs3.size() == 1) {
-					PetrinetNode input3 = inputs3.iterator().next();
-					if (preset.get(input3).size() == 1) {
-						Transition t4 = (Transition) preset.get(input3).iterator().next();
-						if (!t4.getLabel().equals(ActivityAlphabet.START)
-								&& postset.get(input3).equals(preset.get(input1))) {
+					int input3 = inputs3.iterator().next();
+					if (net.getPresetSize(input3) == 1) {
+						int t4 = net.getPreset(input3, 0);
+						if (!net.getLabel(t4).equals(ActivityAlphabet.START) && net.isPostsetPreset(input3, input1)) {
 							return false;
 						}
 					}
@@ -912,6 +1132,12 @@ public class DiscoverPetriNetAlgorithm {
 		if (target.equals(ActivityAlphabet.END) || target.equals(ActivityAlphabet.START)) {
 			return -1;
 		}
+		if (log == null) {
+			/*
+			 * No event log available, use the activity log instead.
+			 */
+			return getEquivalenceTokens(source, target, parameters.getLog(), parameters.getAlphabet());
+		}
 		int tokens = 0;
 		for (XTrace trace : log) {
 			int count = 0;
@@ -940,6 +1166,12 @@ public class DiscoverPetriNetAlgorithm {
 		if (target.equals(ActivityAlphabet.END) || target.equals(ActivityAlphabet.START)) {
 			return -1; // No place
 		}
+		if (log == null) {
+			/*
+			 * No event log available, use the activity log instead.
+			 */
+			return getOccurrenceTokens(target, parameters.getLog(), parameters.getAlphabet());
+		}
 		int tokens = -1; // Undecided
 		for (XTrace trace : log) {
 			int count = 0;
@@ -958,6 +1190,57 @@ public class DiscoverPetriNetAlgorithm {
 		return tokens;
 	}
 
+	/*
+	 * Activity log variant of getEquivalenceTokens. Filtered traces are included,
+	 * as they are part of the event log as well.
+	 */
+	private int getEquivalenceTokens(String source, String target, ActivityLog log, ActivityAlphabet alphabet) {
+		int sourceIdx = alphabet.contains(source) ? alphabet.get(source) : -1;
+		int targetIdx = alphabet.contains(target) ? alphabet.get(target) : -1;
+		int tokens = 0;
+		int count = 0;
+		for (int i = 1; i < log.size(); i++) {
+			int activity = Math.abs(log.get(i));
+			if (activity == 0) {
+				if (count != 0) {
+					return -1;
+				}
+			} else if (activity == sourceIdx) {
+				count++;
+			} else if (activity == targetIdx) {
+				count--;
+				if (count < (-tokens)) {
+					tokens = -count;
+				}
+			}
+		}
+		return tokens;
+	}
+
+	/*
+	 * Activity log variant of getOccurrenceTokens. Filtered traces are included,
+	 * as they are part of the event log as well.
+	 */
+	private int getOccurrenceTokens(String target, ActivityLog log, ActivityAlphabet alphabet) {
+		int targetIdx = alphabet.contains(target) ? alphabet.get(target) : -1;
+		int tokens = -1; // Undecided
+		int count = 0;
+		for (int i = 1; i < log.size(); i++) {
+			int activity = Math.abs(log.get(i));
+			if (activity == 0) {
+				if (tokens == -1) {
+					tokens = count;
+				} else if (tokens != count) {
+					return -1;
+				}
+				count = 0;
+			} else if (activity == targetIdx) {
+				count++;
+			}
+		}
+		return tokens;
+	}
+
 //	private void fixEnhancements(PluginContext context, AcceptingPetriNet apn, DiscoverPetriNetParameters parameters) {
 //		System.out.println("[DiscoverPetriNetAlgorithm] Fixing enhancements");
 //		boolean nextIteration = true;
@@ -994,131 +1277,36 @@ public class DiscoverPetriNetAlgorithm {
 //		}
 //	}
 
-	private List<List<String>> playOut(AcceptingPetriNet apn, Map<PetrinetNode, Set<PetrinetNode>> preset,
-			Map<PetrinetNode, Set<PetrinetNode>> postset, DiscoverPetriNetParameters parameters) {
-		List<List<String>> traces = new ArrayList<List<String>>();
-		List<String> trace = new ArrayList<String>();
-		Marking marking = new Marking(apn.getInitialMarking());
+	/*
+	 * Plays out the given number of accepting traces on the token game, and
+	 * returns the distinct activity counts of these traces.
+	 */
+	private DistinctCounts playOut(TokenGame game, DiscoverPetriNetParameters parameters) {
+		DistinctCounts playOut = new DistinctCounts();
+		int[] counts = new int[game.getNofActivities()];
 		Random rand = new Random();
-		while (traces.size() < parameters.getNofTraces()) {
-			if (apn.getFinalMarkings().contains(marking)) {
-				// Reached final marking, is accepting trace. Add and start a new trace (if
-				// needed).
-				traces.add(trace);
-				System.out.println("[DicoverPetriNetAlgorithm] Added trace " + traces.size() + ": " + trace);
-				marking = new Marking(apn.getInitialMarking());
-				trace = new ArrayList<String>();
+		int nofTraces = 0;
+		while (nofTraces < parameters.getNofTraces()) {
+			if (!game.play(rand, parameters.getMaxTraceLength(), counts)) {
+				// Deadlock or trace way too long. Start a new trace.
 				continue;
 			}
-			List<Transition> enabled = getEnabled(apn, marking, preset);
-			if (enabled.isEmpty()) {
-				// Reached a deadlock (?) Start a new trace.
-				marking = new Marking(apn.getInitialMarking());
-				trace = new ArrayList<String>();
-				continue;
-			}
-			if (trace.size() > parameters.getMaxTraceLength()) {
-				// Trace way too long, perhaps final marking became unreachable. Start a new
-				// trace.
-				marking = new Marking(apn.getInitialMarking());
-				trace = new ArrayList<String>();
-				continue;
-			}
-			Transition transition = enabled.get(rand.nextInt(enabled.size()));
-			for (PetrinetNode node : preset.get(transition)) {
-				Place place = (Place) node;
-				if (marking.occurrences(place) > 0) {
-					marking.remove(place);
-				} else {
-					for (PetrinetNode node2 : preset.get(place)) {
-						Transition transition2 = (Transition) node2;
-						if (transition2.isInvisible() && !transition2.getLabel().equals(ActivityAlphabet.START)
-								&& !transition2.getLabel().equals(ActivityAlphabet.END)) {
-							// Is routing transition. Has single input, check that place for tokens.
-							PetrinetNode node3 = preset.get(transition2).iterator().next();
-							Place place3 = (Place) node3;
-							if (marking.occurrences(place3) > 0) {
-								marking.remove(place3);
-							}
-						}
-					}
-				}
-			}
-			if (!transition.getLabel().equals(ActivityAlphabet.START)
-					&& !transition.getLabel().equals(ActivityAlphabet.END)) {
-				trace.add(transition.getLabel());
-			}
-			for (PetrinetNode node : postset.get(transition)) {
-				Place place = (Place) node;
-				marking.add(place);
-			}
+			nofTraces++;
+			// Copies the counts only if they are new.
+			playOut.add(counts);
 		}
-		return traces;
+		return playOut;
 	}
 
-	private List<Transition> getEnabled(AcceptingPetriNet apn, Marking marking,
-			Map<PetrinetNode, Set<PetrinetNode>> preset) {
-//		System.out.println("[DicoverPetriNetAlgorithm] Checking marking " + marking);		
-		List<Transition> enabled = new ArrayList<Transition>();
-		for (Transition transition : apn.getNet().getTransitions()) {
-			if (transition.isInvisible() && !transition.getLabel().equals(ActivityAlphabet.START)
-					&& !transition.getLabel().equals(ActivityAlphabet.END)) {
-				continue;
-			}
-//			System.out.println("[DicoverPetriNetAlgorithm] Checking transition " + transition.getLabel());		
-			boolean allMarked = true;
-			for (PetrinetNode node : preset.get(transition)) {
-				if (!allMarked) {
-					continue;
-				}
-				Place place = (Place) node;
-				if (marking.occurrences(place) > 0) {
-					// Place contains a token.
-				} else {
-					// Place does not contain a token. Check input places of input routing
-					// transitions
-					allMarked = false;
-					for (PetrinetNode node2 : preset.get(place)) {
-						Transition transition2 = (Transition) node2;
-//						System.out.println("[DicoverPetriNetAlgorithm] Checking input transition " + transition2.getLabel());		
-						if (transition2.isInvisible() && !transition2.getLabel().equals(ActivityAlphabet.START)
-								&& !transition2.getLabel().equals(ActivityAlphabet.END)) {
-							PetrinetNode node3 = preset.get(transition2).iterator().next();
-							Place place3 = (Place) node3;
-//							System.out.println("[DicoverPetriNetAlgorithm] Checking input place " + place3.getLabel());		
-							if (marking.occurrences(place3) > 0) {
-								// Found a marked input place of a routing transition.
-								allMarked = true;
-							}
-						}
-					}
-				}
-			}
-			if (allMarked) {
-				enabled.add(transition);
-			}
-		}
-//		System.out.println("[DicoverPetriNetAlgorithm] Enabled " + enabled);		
-		return enabled;
-	}
-
-	private boolean areEquivalent(List<List<String>> playOut, String source, String target) {
-//		System.out.println("[DiscoverPetriNetAlgorithm] Number of traces: " + playOut.size());
-		for (List<String> trace : playOut) {
-			if (trace == null) {
-				continue;
-			}
-			int countSource = 0;
-			int countTarget = 0;
-//			System.out.println("[DiscoverPetriNetAlgorithm] Trace: " + trace);
-			for (String activity : trace) {
-				if (activity.equals(source)) {
-					countSource++;
-				}
-				if (activity.equals(target)) {
-					countTarget++;
-				}
-			}
+	/*
+	 * Returns whether both activities occur equally often in every trace. An
+	 * activity without a number does not occur.
+	 */
+	private boolean areEquivalent(DistinctCounts playOut, int source, int target) {
+		for (int idx = 0; idx < playOut.size(); idx++) {
+			int[] trace = playOut.get(idx);
+			int countSource = source < 0 ? 0 : trace[source];
+			int countTarget = target < 0 ? 0 : trace[target];
 			if (countSource != countTarget) {
 				return false;
 			}
@@ -1126,7 +1314,8 @@ public class DiscoverPetriNetAlgorithm {
 		return true;
 	}
 
-	private void reduceSilentClusters(AcceptingPetriNet apn, DiscoverPetriNetParameters parameters) {
+	void reduceSilentClusters(PetriNetIndex index, DiscoverPetriNetParameters parameters) {
+		AcceptingPetriNet apn = index.getAcceptingPetriNet();
 		int nofRoutingTransitions = 0;
 		for (Transition t : apn.getNet().getTransitions()) {
 			if (!t.isInvisible() || t.getLabel().equals(ActivityAlphabet.START)
@@ -1135,16 +1324,8 @@ public class DiscoverPetriNetAlgorithm {
 				nofRoutingTransitions++;
 			}
 		}
-		Map<PetrinetNode, Set<PetrinetNode>> preset = new HashMap<PetrinetNode, Set<PetrinetNode>>();
-		Map<PetrinetNode, Set<PetrinetNode>> postset = new HashMap<PetrinetNode, Set<PetrinetNode>>();
-		for (PetrinetNode node : apn.getNet().getNodes()) {
-			preset.put(node, new HashSet<PetrinetNode>());
-			postset.put(node, new HashSet<PetrinetNode>());
-		}
-		for (PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode> edge : apn.getNet().getEdges()) {
-			postset.get(edge.getSource()).add(edge.getTarget());
-			preset.get(edge.getTarget()).add(edge.getSource());
-		}
+		Map<PetrinetNode, Set<PetrinetNode>> preset = index.getPresets();
+		Map<PetrinetNode, Set<PetrinetNode>> postset = index.getPostsets();
 		Set<Place> places = new HashSet<Place>();
 		Set<List<Transition>> clusters = new HashSet<List<Transition>>();
 		if (nofRoutingTransitions > parameters.getMaxNofRoutingTransitions()) {
@@ -1220,36 +1401,58 @@ public class DiscoverPetriNetAlgorithm {
 				}
 			}
 			for (List<Transition> cluster : clusters) {
-				System.out.println("[DiscoverPetriNetAlgorithm] Reducing " + cluster);
+				/*
+				 * Clusters found for the same first transition may share nodes. As the
+				 * index is kept up to date, skip a cluster if an earlier one has removed
+				 * some of its transitions or merged some of its places.
+				 */
+				boolean isIntact = true;
+				for (Transition t : cluster) {
+					if (preset.get(t) == null || preset.get(t).size() != 1 || postset.get(t).size() != 1) {
+						isIntact = false;
+					}
+				}
+				if (!isIntact) {
+					continue;
+				}
 				Transition t1 = cluster.get(0);
 				Place p1 = (Place) preset.get(t1).iterator().next();
 				Place p2 = (Place) postset.get(t1).iterator().next();
 				Transition t2 = cluster.get(3);
 				Place p3 = (Place) preset.get(t2).iterator().next();
 				Place p4 = (Place) postset.get(t2).iterator().next();
+				if (p1 == p2 || p1 == p3 || p1 == p4 || p2 == p3 || p2 == p4 || p3 == p4) {
+					continue;
+				}
+				System.out.println("[DiscoverPetriNetAlgorithm] Reducing " + cluster);
 				// Remove transitions (and edges connected to them)
-				apn.getNet().removeTransition(cluster.get(1));
-				apn.getNet().removeTransition(cluster.get(2));
-				apn.getNet().removeTransition(cluster.get(3));
-				// Reroute arcs from p3/p4 to p1/p2
-				for (PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode> edge : apn.getNet().getEdges()) {
-					if (edge.getSource() == t1 || edge.getTarget() == t1) {
-						continue;
+				index.removeTransition(cluster.get(1));
+				index.removeTransition(cluster.get(2));
+				index.removeTransition(cluster.get(3));
+				// Reroute arcs from p3/p4 to p1/p2. The places of a cluster differ.
+				for (PetrinetNode node : postset.get(p3)) {
+					if (node != t1) {
+						index.addArc(p1, (Transition) node);
 					}
-					if (edge.getSource() == p3) {
-						apn.getNet().addArc(p1, (Transition) edge.getTarget());
-					} else if (edge.getSource() == p4) {
-						apn.getNet().addArc(p2, (Transition) edge.getTarget());
+				}
+				for (PetrinetNode node : postset.get(p4)) {
+					if (node != t1) {
+						index.addArc(p2, (Transition) node);
+					}
+				}
+				for (PetrinetNode node : preset.get(p3)) {
+					if (node != t1) {
+						index.addArc((Transition) node, p1);
 					}
-					if (edge.getTarget() == p3) {
-						apn.getNet().addArc((Transition) edge.getSource(), p1);
-					} else if (edge.getTarget() == p4) {
-						apn.getNet().addArc((Transition) edge.getSource(), p2);
+				}
+				for (PetrinetNode node : preset.get(p4)) {
+					if (node != t1) {
+						index.addArc((Transition) node, p2);
 					}
 				}
 				// Remove places (and edges connected to them)
-				apn.getNet().removePlace(p3);
-				apn.getNet().removePlace(p4);
+				index.removePlace(p3);
+				index.removePlace(p4);
 				nofRoutingTransitions -= 3;
 				if (nofRoutingTransitions <= parameters.getMaxNofRoutingTransitions()) {
 					System.out.println(
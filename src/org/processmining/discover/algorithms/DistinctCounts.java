@@ -0,0 +1,123 @@
+package org.processmining.discover.algorithms;
+
+import java.util.Arrays;
+
+/*
+ * The distinct activity counts of played-out traces. A count vector is kept
+ * in an open-addressing hash table on its contents, so a vector that was
+ * already added is recognized without creating any object. Only a new vector
+ * is copied.
+ *
+ * The vectors are kept in the order they were first added. A set is not
+ * thread-safe.
+ */
+class DistinctCounts {
+
+	/*
+	 * The distinct vectors, and their hash codes.
+	 */
+	private int[][] vectors;
+	private int[] hashes;
+	private int size;
+
+	/*
+	 * The hash table. A slot holds the index of a vector plus 1, as 0 marks an
+	 * empty slot. At most half of the slots are used.
+	 */
+	private int[] slots;
+
+	DistinctCounts() {
+		vectors = new int[16][];
+		hashes = new int[16];
+		size = 0;
+		slots = new int[32];
+	}
+
+	/*
+	 * Returns the number of distinct vectors.
+	 */
+	int size() {
+		return size;
+	}
+
+	/*
+	 * Returns the vector with the given index. The returned vector should not be
+	 * changed.
+	 */
+	int[] get(int idx) {
+		return vectors[idx];
+	}
+
+	/*
+	 * Adds a copy of the given vector, unless an equal vector was already added.
+	 * Returns whether it was added.
+	 */
+	boolean add(int[] vector) {
+		return add(vector, Arrays.hashCode(vector), true);
+	}
+
+	/*
+	 * Adds all vectors of the given set. The vectors are shared, not copied.
+	 */
+	void addAll(DistinctCounts counts) {
+		for (int idx = 0; idx < counts.size; idx++) {
+			add(counts.vectors[idx], counts.hashes[idx], false);
+		}
+	}
+
+	private boolean add(int[] vector, int hash, boolean copy) {
+		int slot = find(vector, hash);
+		if (slots[slot] != 0) {
+			return false;
+		}
+		if (size == vectors.length) {
+			vectors = Arrays.copyOf(vectors, 2 * size);
+			hashes = Arrays.copyOf(hashes, 2 * size);
+		}
+		vectors[size] = copy ? vector.clone() : vector;
+		hashes[size] = hash;
+		size++;
+		slots[slot] = size;
+		if (2 * size > slots.length) {
+			grow();
+		}
+		return true;
+	}
+
+	/*
+	 * Returns the slot for the given vector: Either the slot containing an equal
+	 * vector, or the empty slot where it should go.
+	 */
+	private int find(int[] vector, int hash) {
+		int mask = slots.length - 1;
+		int slot = getHome(hash, mask);
+		while (slots[slot] != 0) {
+			int idx = slots[slot] - 1;
+			if (hashes[idx] == hash && Arrays.equals(vectors[idx], vector)) {
+				break;
+			}
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	/*
+	 * Returns the slot where a vector with the given hash code should go if no
+	 * other vector was there.
+	 */
+	private static int getHome(int hash, int mask) {
+		return (int) ((hash * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+	}
+
+	private void grow() {
+		slots = new int[2 * slots.length];
+		int mask = slots.length - 1;
+		for (int idx = 0; idx < size; idx++) {
+			int slot = getHome(hashes[idx], mask);
+			while (slots[slot] != 0) {
+				slot = (slot + 1) & mask;
+			}
+			slots[slot] = idx + 1;
+		}
+	}
+}
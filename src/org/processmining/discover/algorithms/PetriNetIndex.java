@@ -0,0 +1,118 @@
+package org.processmining.discover.algorithms;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.processmining.acceptingpetrinet.models.AcceptingPetriNet;
+import org.processmining.models.graphbased.directed.petrinet.PetrinetEdge;
+import org.processmining.models.graphbased.directed.petrinet.PetrinetNode;
+import org.processmining.models.graphbased.directed.petrinet.elements.Place;
+import org.processmining.models.graphbased.directed.petrinet.elements.Transition;
+
+/*
+ * Presets and postsets of the nodes of an accepting Petri net, built once.
+ * Every change made to the net through the index is made to the net and to
+ * the presets and postsets, at a cost linear in the number of arcs changed.
+ * Changes made to the net directly are not seen by the index.
+ */
+class PetriNetIndex {
+
+	private AcceptingPetriNet apn;
+	private Map<PetrinetNode, Set<PetrinetNode>> presets;
+	private Map<PetrinetNode, Set<PetrinetNode>> postsets;
+
+	PetriNetIndex(AcceptingPetriNet apn) {
+		this.apn = apn;
+		presets = new HashMap<PetrinetNode, Set<PetrinetNode>>();
+		postsets = new HashMap<PetrinetNode, Set<PetrinetNode>>();
+		for (PetrinetNode node : apn.getNet().getNodes()) {
+			presets.put(node, new HashSet<PetrinetNode>());
+			postsets.put(node, new HashSet<PetrinetNode>());
+		}
+		for (PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode> edge : apn.getNet().getEdges()) {
+			postsets.get(edge.getSource()).add(edge.getTarget());
+			presets.get(edge.getTarget()).add(edge.getSource());
+		}
+	}
+
+	AcceptingPetriNet getAcceptingPetriNet() {
+		return apn;
+	}
+
+	/*
+	 * Returns the presets of all nodes. These should not be changed.
+	 */
+	Map<PetrinetNode, Set<PetrinetNode>> getPresets() {
+		return presets;
+	}
+
+	/*
+	 * Returns the postsets of all nodes. These should not be changed.
+	 */
+	Map<PetrinetNode, Set<PetrinetNode>> getPostsets() {
+		return postsets;
+	}
+
+	Set<PetrinetNode> getPreset(PetrinetNode node) {
+		return presets.get(node);
+	}
+
+	Set<PetrinetNode> getPostset(PetrinetNode node) {
+		return postsets.get(node);
+	}
+
+	Place addPlace(String label) {
+		Place place = apn.getNet().addPlace(label);
+		presets.put(place, new HashSet<PetrinetNode>());
+		postsets.put(place, new HashSet<PetrinetNode>());
+		return place;
+	}
+
+	void addArc(Transition source, Place target) {
+		apn.getNet().addArc(source, target);
+		postsets.get(source).add(target);
+		presets.get(target).add(source);
+	}
+
+	void addArc(Place source, Transition target) {
+		apn.getNet().addArc(source, target);
+		postsets.get(source).add(target);
+		presets.get(target).add(source);
+	}
+
+	void removeArc(PetrinetNode source, PetrinetNode target) {
+		apn.getNet().removeArc(source, target);
+		postsets.get(source).remove(target);
+		presets.get(target).remove(source);
+	}
+
+	void removeTransition(Transition transition) {
+		apn.getNet().removeTransition(transition);
+		remove(transition);
+	}
+
+	void removePlace(Place place) {
+		apn.getNet().removePlace(place);
+		remove(place);
+	}
+
+	/*
+	 * Removes the node and its arcs from the presets and postsets.
+	 */
+	private void remove(PetrinetNode node) {
+		Set<PetrinetNode> preset = presets.remove(node);
+		Set<PetrinetNode> postset = postsets.remove(node);
+		if (preset == null) {
+			// Already removed.
+			return;
+		}
+		for (PetrinetNode source : preset) {
+			postsets.get(source).remove(node);
+		}
+		for (PetrinetNode target : postset) {
+			presets.get(target).remove(node);
+		}
+	}
+}
@@ -14,7 +14,6 @@ import org.processmining.acceptingpetrinet.models.impl.AcceptingPetriNetFactory;
 import org.processmining.framework.plugin.PluginContext;
 import org.processmining.models.graphbased.directed.DirectedGraphElement;
 import org.processmining.models.graphbased.directed.petrinet.Petrinet;
-import org.processmining.models.graphbased.directed.petrinet.PetrinetEdge;
 import org.processmining.models.graphbased.directed.petrinet.PetrinetNode;
 import org.processmining.models.graphbased.directed.petrinet.elements.Place;
 import org.processmining.models.graphbased.directed.petrinet.elements.Transition;
@@ -54,20 +53,22 @@ public abstract class ReduceAbstractSimpleSilentTransitionsAlgorithm {
 	}
 
 	public void applyInPlace(PluginContext context, AcceptingPetriNet apn) {
+		applyInPlace(context, new PetriNetIndex(apn));
+	}
+
+	/*
+	 * Reduces the net of the given index, keeping the index up to date. As the
+	 * presets and postsets are kept up to date, a place that is the result of
+	 * earlier reductions is simply found in these presets and postsets.
+	 */
+	void applyInPlace(PluginContext context, PetriNetIndex index) {
 //		int i = apn.getNet().getTransitions().size();
 //		if (i <= 100) {
 //			return;
 //		}
-		Map<PetrinetNode, Set<PetrinetNode>> preset = new HashMap<PetrinetNode, Set<PetrinetNode>>();
-		Map<PetrinetNode, Set<PetrinetNode>> postset = new HashMap<PetrinetNode, Set<PetrinetNode>>();
-		for (PetrinetNode node : apn.getNet().getNodes()) {
-			preset.put(node, new HashSet<PetrinetNode>());
-			postset.put(node, new HashSet<PetrinetNode>());
-		}
-		for (PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode> edge : apn.getNet().getEdges()) {
-			postset.get(edge.getSource()).add(edge.getTarget());
-			preset.get(edge.getTarget()).add(edge.getSource());
-		}
+		AcceptingPetriNet apn = index.getAcceptingPetriNet();
+		Map<PetrinetNode, Set<PetrinetNode>> preset = index.getPresets();
+		Map<PetrinetNode, Set<PetrinetNode>> postset = index.getPostsets();
 		List<Transition> simpleSilentTransitions = new ArrayList<Transition>();
 		for (Transition transition : apn.getNet().getTransitions()) {
 			if (transition.isInvisible() && preset.get(transition).size() == 1 && postset.get(transition).size() == 1) {
@@ -98,63 +99,36 @@ public abstract class ReduceAbstractSimpleSilentTransitionsAlgorithm {
 			}
 
 		});
-		Map<Place, Place> reduced = new HashMap<Place, Place>();
-		for (Place place : apn.getNet().getPlaces()) {
-			reduced.put(place, place);
-		}
 		for (Transition transition : simpleSilentTransitions) {
 			System.out.println("[ReduceSimpleSilentTransitionsAlgorithm Reducing " + transition);
-			Place prePlace = reduced.get(preset.get(transition).iterator().next());
-			Place postPlace = reduced.get(postset.get(transition).iterator().next());
+			Place prePlace = (Place) preset.get(transition).iterator().next();
+			Place postPlace = (Place) postset.get(transition).iterator().next();
 			if (prePlace.equals(postPlace)) {
-				for (Place p : reduced.keySet()) {
-					preset.get(p).remove(transition);
-					postset.get(p).remove(transition);
-				}
-				apn.getNet().removeTransition(transition);
+				index.removeTransition(transition);
 				continue;
 			}
-			Place place = apn.getNet().addPlace(prePlace.getLabel() + "+" + postPlace.getLabel());
+			Place place = index.addPlace(prePlace.getLabel() + "+" + postPlace.getLabel());
 			System.out.println("[ReduceSimpleSilentTransitionsAlgorithm Added " + place);
-			for (PetrinetNode node : preset.get(reduced.get(prePlace))) {
-				apn.getNet().addArc((Transition) node, place);
+			for (PetrinetNode node : preset.get(prePlace)) {
+				index.addArc((Transition) node, place);
 			}
-			for (PetrinetNode node : preset.get(reduced.get(postPlace))) {
+			for (PetrinetNode node : preset.get(postPlace)) {
 				if (!transition.equals(node)) {
-					apn.getNet().addArc((Transition) node, place);
+					index.addArc((Transition) node, place);
 				}
 			}
-			for (PetrinetNode node : postset.get(reduced.get(prePlace))) {
+			for (PetrinetNode node : postset.get(prePlace)) {
 				if (!transition.equals(node)) {
-					apn.getNet().addArc(place, (Transition) node);
+					index.addArc(place, (Transition) node);
 				}
 			}
-			for (PetrinetNode node : postset.get(reduced.get(postPlace))) {
-				apn.getNet().addArc(place, (Transition) node);
-			}
-			Set<PetrinetNode> nodes = new HashSet<PetrinetNode>(preset.get(reduced.get(prePlace)));
-			nodes.addAll(preset.get(reduced.get(postPlace)));
-			nodes.remove(transition);
-			preset.put(place, nodes);
-			System.out.println("[ReduceSimpleSilentTransitions] Preset of " + place + " set to " + nodes);
-			nodes = new HashSet<PetrinetNode>(postset.get(reduced.get(prePlace)));
-			nodes.addAll(postset.get(reduced.get(postPlace)));
-			nodes.remove(transition);
-			postset.put(place, nodes);
-			System.out.println("[ReduceSimpleSilentTransitions] Postset of " + place + " set to " + nodes);
-
-			for (Place p : reduced.keySet()) {
-				if (reduced.get(p).equals(prePlace) || reduced.get(p).equals(postPlace)) {
-					reduced.put(p, place);
-				}
+			for (PetrinetNode node : postset.get(postPlace)) {
+				index.addArc(place, (Transition) node);
 			}
-			reduced.put(prePlace, place);
-			reduced.put(postPlace, place);
-			reduced.put(place, place);
 
-			apn.getNet().removeTransition(transition);
-			apn.getNet().removePlace(prePlace);
-			apn.getNet().removePlace(postPlace);
+			index.removeTransition(transition);
+			index.removePlace(prePlace);
+			index.removePlace(postPlace);
 			
 			if (apn.getInitialMarking().remove(prePlace)) {
 				apn.getInitialMarking().add(place);
@@ -14,7 +14,6 @@ import org.processmining.acceptingpetrinet.models.impl.AcceptingPetriNetFactory;
 import org.processmining.framework.plugin.PluginContext;
 import org.processmining.models.graphbased.directed.DirectedGraphElement;
 import org.processmining.models.graphbased.directed.petrinet.Petrinet;
-import org.processmining.models.graphbased.directed.petrinet.PetrinetEdge;
 import org.processmining.models.graphbased.directed.petrinet.PetrinetNode;
 import org.processmining.models.graphbased.directed.petrinet.elements.Place;
 import org.processmining.models.graphbased.directed.petrinet.elements.Transition;
@@ -54,16 +53,16 @@ public class ReduceClusteredSimpleSilentTransitionsAlgorithm {
 	}
 	
 	public void applyInPlace(PluginContext context, AcceptingPetriNet apn) {
-		Map<PetrinetNode, Set<PetrinetNode>> preset = new HashMap<PetrinetNode, Set<PetrinetNode>>();
-		Map<PetrinetNode, Set<PetrinetNode>> postset = new HashMap<PetrinetNode, Set<PetrinetNode>>();
-		for (PetrinetNode node : apn.getNet().getNodes()) {
-			preset.put(node, new HashSet<PetrinetNode>());
-			postset.put(node, new HashSet<PetrinetNode>());
-		}
-		for (PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode> edge : apn.getNet().getEdges()) {
-			postset.get(edge.getSource()).add(edge.getTarget());
-			preset.get(edge.getTarget()).add(edge.getSource());
-		}
+		applyInPlace(context, new PetriNetIndex(apn));
+	}
+
+	/*
+	 * Reduces the net of the given index, keeping the index up to date.
+	 */
+	void applyInPlace(PluginContext context, PetriNetIndex index) {
+		AcceptingPetriNet apn = index.getAcceptingPetriNet();
+		Map<PetrinetNode, Set<PetrinetNode>> preset = index.getPresets();
+		Map<PetrinetNode, Set<PetrinetNode>> postset = index.getPostsets();
 		List<Transition> simpleSilentTransitions = new ArrayList<Transition>();
 		for (Transition transition : apn.getNet().getTransitions()) {
 			if (transition.isInvisible() && preset.get(transition).size() == 1 && postset.get(transition).size() == 1) {
@@ -138,27 +137,14 @@ public class ReduceClusteredSimpleSilentTransitionsAlgorithm {
 					}
 					// Copy all the inputs of the place to remove to the place to keep.
 					for (PetrinetNode node : preset.get(placeToRemove)) {
-						apn.getNet().addArc((Transition) node, placeToKeep);
-						// Adjust preset and postset accordingly.
-						preset.get(placeToKeep).add(node);
-						postset.get(node).add(placeToKeep);
-						// Anticipate the fact that the place to remove will be removed.
-						postset.get(node).remove(placeToRemove);
+						index.addArc((Transition) node, placeToKeep);
 					}
 					// Copy all the outputs of the place to remove to the place to keep.
 					for (PetrinetNode node : postset.get(placeToRemove)) {
-						apn.getNet().addArc(placeToKeep, (Transition) node);
-						// Adjust preset and postset accordingly.
-						postset.get(placeToKeep).add(node);
-						preset.get(node).add(placeToKeep);
-						// Anticipate the fact that the place to remove will be removed.
-						preset.get(node).remove(placeToRemove);
+						index.addArc(placeToKeep, (Transition) node);
 					}
 					// Now everything has been copied, remove the place to remove.
-					apn.getNet().removePlace(placeToRemove);
-					// Adjust preset and postset accordingly.
-					preset.remove(placeToRemove);
-					postset.remove(placeToRemove);
+					index.removePlace(placeToRemove);
 					// Schedule to remove the transition to remove.
 					transitionsToRemove.add(transitionToRemove);
 				}
@@ -166,7 +152,7 @@ public class ReduceClusteredSimpleSilentTransitionsAlgorithm {
 		}
 		// Now remove all transitions scheduled for removal.
 		for (Transition transition : transitionsToRemove) {
-			apn.getNet().removeTransition(transition);
+			index.removeTransition(transition);
 		}
 	}
 }
@@ -0,0 +1,391 @@
+package org.processmining.discover.algorithms;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.processmining.discover.models.ActivityAlphabet;
+
+/*
+ * Token game on a compiled compact net, for playing out traces. Only the
+ * transitions that are not routing transitions are fired. A place without
+ * tokens still counts as marked if some routing transition that outputs to it
+ * has a marked input place: firing then takes the token from that input place
+ * instead, as if the routing transition fired first.
+ *
+ * All arrays are created when the game is created, so playing out a trace
+ * does not create objects. The marking is a token count for every node. For
+ * every place, the game counts how many of its look-through places (the input
+ * places of the routing transitions that output to it) are marked, and for
+ * every transition how many of its input places are not marked, not even
+ * through a look-through place. These counts, and with them the enabled
+ * transitions, only change when some place becomes marked or unmarked, and
+ * then only for the places and transitions that depend on it.
+ *
+ * A game is not thread-safe, but copies of a game can be used by different
+ * threads.
+ */
+class TokenGame {
+
+	/*
+	 * Compiled net, shared by the copies of a game. The transitions to fire are
+	 * numbered 0 up to the number of transitions; the places keep their node
+	 * number.
+	 */
+	private int nofTransitions;
+	private int nofNodes;
+
+	/*
+	 * For every transition, its input places, its output places, and the
+	 * activity it counts for (-1 for the start and end transitions).
+	 */
+	private int[] inputStart;
+	private int[] inputs;
+	private int[] outputStart;
+	private int[] outputs;
+	private int[] activities;
+
+	/*
+	 * For every place, its look-through places, once for every routing
+	 * transition. Conversely, for every place, the places it is a look-through
+	 * place of, and the transitions it is an input place of.
+	 */
+	private int[] lookStart;
+	private int[] looks;
+	private int[] lookerStart;
+	private int[] lookers;
+	private int[] consumerStart;
+	private int[] consumers;
+
+	private int[] finalMarking;
+	private Map<String, Integer> activityIndices;
+
+	/*
+	 * State of the game in the initial marking.
+	 */
+	private int[] initialMarking;
+	private int[] initialNofMarkedLooks;
+	private int[] initialNofUnmarkedInputs;
+	private int[] initialEnabled;
+	private int[] initialEnabledPosition;
+	private int initialNofEnabled;
+	private int initialNofDifferences;
+
+	/*
+	 * State of the game.
+	 */
+	private int[] marking;
+	private int[] nofMarkedLooks;
+	private int[] nofUnmarkedInputs;
+	private int[] enabled;
+	private int[] enabledPosition;
+	private int nofEnabled;
+
+	/*
+	 * Number of places where the marking differs from the final marking.
+	 */
+	private int nofDifferences;
+
+	/*
+	 * Compiles a game for the given net, which should be compiled.
+	 */
+	TokenGame(CompactPetriNet net) {
+		nofNodes = net.size();
+		List<Integer> transitions = new ArrayList<Integer>();
+		for (int node = 0; node < nofNodes; node++) {
+			if (net.isTransition(node) && !net.isRemoved(node) && !net.isRouting(node)) {
+				transitions.add(node);
+			}
+		}
+		nofTransitions = transitions.size();
+
+		inputStart = new int[nofTransitions + 1];
+		outputStart = new int[nofTransitions + 1];
+		activities = new int[nofTransitions];
+		activityIndices = new HashMap<String, Integer>();
+		for (int t = 0; t < nofTransitions; t++) {
+			int node = transitions.get(t);
+			inputStart[t + 1] = inputStart[t] + net.getPresetSize(node);
+			outputStart[t + 1] = outputStart[t] + net.getPostsetSize(node);
+			String label = net.getLabel(node);
+			if (label.equals(ActivityAlphabet.START) || label.equals(ActivityAlphabet.END)) {
+				activities[t] = -1;
+			} else {
+				if (!activityIndices.containsKey(label)) {
+					activityIndices.put(label, activityIndices.size());
+				}
+				activities[t] = activityIndices.get(label);
+			}
+		}
+		inputs = new int[inputStart[nofTransitions]];
+		outputs = new int[outputStart[nofTransitions]];
+		for (int t = 0; t < nofTransitions; t++) {
+			int node = transitions.get(t);
+			for (int i = 0; i < net.getPresetSize(node); i++) {
+				inputs[inputStart[t] + i] = net.getPreset(node, i);
+			}
+			for (int i = 0; i < net.getPostsetSize(node); i++) {
+				outputs[outputStart[t] + i] = net.getPostset(node, i);
+			}
+		}
+
+		lookStart = new int[nofNodes + 1];
+		for (int place = 0; place < nofNodes; place++) {
+			lookStart[place + 1] = lookStart[place];
+			if (!net.isPlace(place)) {
+				continue;
+			}
+			for (int i = 0; i < net.getPresetSize(place); i++) {
+				if (net.isRouting(net.getPreset(place, i))) {
+					lookStart[place + 1]++;
+				}
+			}
+		}
+		looks = new int[lookStart[nofNodes]];
+		for (int place = 0; place < nofNodes; place++) {
+			int j = lookStart[place];
+			for (int i = 0; j < lookStart[place + 1]; i++) {
+				int transition = net.getPreset(place, i);
+				if (net.isRouting(transition)) {
+					// Is routing transition. Has single input.
+					looks[j++] = net.getPreset(transition, 0);
+				}
+			}
+		}
+		lookerStart = new int[nofNodes + 1];
+		lookers = invert(lookStart, looks, lookerStart);
+		consumerStart = new int[nofNodes + 1];
+		consumers = invert(inputStart, inputs, consumerStart);
+
+		finalMarking = new int[nofNodes];
+		for (int place = 0; place < nofNodes; place++) {
+			finalMarking[place] = net.getFinalTokens(place);
+		}
+
+		/*
+		 * Compute the state in the initial marking.
+		 */
+		initialMarking = net.getInitialMarking();
+		initialNofDifferences = 0;
+		initialNofMarkedLooks = new int[nofNodes];
+		for (int place = 0; place < nofNodes; place++) {
+			if (initialMarking[place] != finalMarking[place]) {
+				initialNofDifferences++;
+			}
+			for (int j = lookStart[place]; j < lookStart[place + 1]; j++) {
+				if (initialMarking[looks[j]] > 0) {
+					initialNofMarkedLooks[place]++;
+				}
+			}
+		}
+		initialNofUnmarkedInputs = new int[nofTransitions];
+		initialEnabled = new int[nofTransitions];
+		initialEnabledPosition = new int[nofTransitions];
+		initialNofEnabled = 0;
+		for (int t = 0; t < nofTransitions; t++) {
+			for (int i = inputStart[t]; i < inputStart[t + 1]; i++) {
+				if (initialMarking[inputs[i]] == 0 && initialNofMarkedLooks[inputs[i]] == 0) {
+					initialNofUnmarkedInputs[t]++;
+				}
+			}
+			if (initialNofUnmarkedInputs[t] == 0) {
+				initialEnabledPosition[t] = initialNofEnabled;
+				initialEnabled[initialNofEnabled++] = t;
+			} else {
+				initialEnabledPosition[t] = -1;
+			}
+		}
+		createState();
+	}
+
+	/*
+	 * Creates a copy of the given game, which shares the compiled net.
+	 */
+	TokenGame(TokenGame game) {
+		nofTransitions = game.nofTransitions;
+		nofNodes = game.nofNodes;
+		inputStart = game.inputStart;
+		inputs = game.inputs;
+		outputStart = game.outputStart;
+		outputs = game.outputs;
+		activities = game.activities;
+		lookStart = game.lookStart;
+		looks = game.looks;
+		lookerStart = game.lookerStart;
+		lookers = game.lookers;
+		consumerStart = game.consumerStart;
+		consumers = game.consumers;
+		finalMarking = game.finalMarking;
+		activityIndices = game.activityIndices;
+		initialMarking = game.initialMarking;
+		initialNofMarkedLooks = game.initialNofMarkedLooks;
+		initialNofUnmarkedInputs = game.initialNofUnmarkedInputs;
+		initialEnabled = game.initialEnabled;
+		initialEnabledPosition = game.initialEnabledPosition;
+		initialNofEnabled = game.initialNofEnabled;
+		initialNofDifferences = game.initialNofDifferences;
+		createState();
+	}
+
+	/*
+	 * Returns the inverse of the given rows: row e of the inverse holds the rows
+	 * that hold e, as often as they hold it. The row starts of the inverse are
+	 * put in the given array, which has an entry for every node plus one.
+	 */
+	private static int[] invert(int[] start, int[] entries, int[] inverseStart) {
+		for (int entry : entries) {
+			inverseStart[entry + 1]++;
+		}
+		for (int e = 0; e + 1 < inverseStart.length; e++) {
+			inverseStart[e + 1] += inverseStart[e];
+		}
+		int[] inverse = new int[entries.length];
+		int[] fill = Arrays.copyOf(inverseStart, inverseStart.length - 1);
+		for (int row = 0; row + 1 < start.length; row++) {
+			for (int i = start[row]; i < start[row + 1]; i++) {
+				inverse[fill[entries[i]]++] = row;
+			}
+		}
+		return inverse;
+	}
+
+	private void createState() {
+		marking = new int[nofNodes];
+		nofMarkedLooks = new int[nofNodes];
+		nofUnmarkedInputs = new int[nofTransitions];
+		enabled = new int[nofTransitions];
+		enabledPosition = new int[nofTransitions];
+	}
+
+	/*
+	 * Returns the number of activities, which are numbered from 0.
+	 */
+	int getNofActivities() {
+		return activityIndices.size();
+	}
+
+	/*
+	 * Returns the number of the activity with the given label, or -1 if no
+	 * transition counts for it.
+	 */
+	int getActivity(String label) {
+		Integer activity = activityIndices.get(label);
+		return activity == null ? -1 : activity;
+	}
+
+	/*
+	 * Plays out a single trace from the initial marking, by firing enabled
+	 * transitions at random until the final marking is reached, no transition is
+	 * enabled, or the trace becomes longer than the maximal length. Returns
+	 * whether the final marking was reached. If so, the counts (one for every
+	 * activity) hold how often every activity occurs in the trace.
+	 */
+	boolean play(Random random, int maxTraceLength, int[] counts) {
+		reset();
+		Arrays.fill(counts, 0);
+		int length = 0;
+		while (true) {
+			if (nofDifferences == 0) {
+				// Reached final marking, is accepting trace.
+				return true;
+			}
+			if (nofEnabled == 0) {
+				// Reached a deadlock (?)
+				return false;
+			}
+			if (length > maxTraceLength) {
+				// Trace way too long, perhaps final marking became unreachable.
+				return false;
+			}
+			int t = enabled[random.nextInt(nofEnabled)];
+			fire(t);
+			if (activities[t] >= 0) {
+				counts[activities[t]]++;
+				length++;
+			}
+		}
+	}
+
+	private void reset() {
+		System.arraycopy(initialMarking, 0, marking, 0, nofNodes);
+		System.arraycopy(initialNofMarkedLooks, 0, nofMarkedLooks, 0, nofNodes);
+		System.arraycopy(initialNofUnmarkedInputs, 0, nofUnmarkedInputs, 0, nofTransitions);
+		System.arraycopy(initialEnabled, 0, enabled, 0, nofTransitions);
+		System.arraycopy(initialEnabledPosition, 0, enabledPosition, 0, nofTransitions);
+		nofEnabled = initialNofEnabled;
+		nofDifferences = initialNofDifferences;
+	}
+
+	private void fire(int t) {
+		for (int i = inputStart[t]; i < inputStart[t + 1]; i++) {
+			int place = inputs[i];
+			if (marking[place] > 0) {
+				addTokens(place, -1);
+			} else {
+				for (int j = lookStart[place]; j < lookStart[place + 1]; j++) {
+					if (marking[looks[j]] > 0) {
+						addTokens(looks[j], -1);
+					}
+				}
+			}
+		}
+		for (int i = outputStart[t]; i < outputStart[t + 1]; i++) {
+			addTokens(outputs[i], 1);
+		}
+	}
+
+	private void addTokens(int place, int tokens) {
+		if (marking[place] != finalMarking[place]) {
+			nofDifferences--;
+		}
+		boolean wasMarked = marking[place] > 0;
+		boolean wasMarkedThrough = wasMarked || nofMarkedLooks[place] > 0;
+		marking[place] += tokens;
+		if (marking[place] != finalMarking[place]) {
+			nofDifferences++;
+		}
+		boolean isMarked = marking[place] > 0;
+		if (isMarked == wasMarked) {
+			return;
+		}
+		update(place, wasMarkedThrough);
+		for (int i = lookerStart[place]; i < lookerStart[place + 1]; i++) {
+			int looker = lookers[i];
+			wasMarkedThrough = marking[looker] > 0 || nofMarkedLooks[looker] > 0;
+			nofMarkedLooks[looker] += isMarked ? 1 : -1;
+			update(looker, wasMarkedThrough);
+		}
+	}
+
+	/*
+	 * Updates the transitions that have the given place as input place, if the
+	 * place became marked or unmarked (possibly through a look-through place).
+	 */
+	private void update(int place, boolean wasMarkedThrough) {
+		boolean isMarkedThrough = marking[place] > 0 || nofMarkedLooks[place] > 0;
+		if (isMarkedThrough == wasMarkedThrough) {
+			return;
+		}
+		for (int i = consumerStart[place]; i < consumerStart[place + 1]; i++) {
+			int t = consumers[i];
+			if (isMarkedThrough) {
+				if (--nofUnmarkedInputs[t] == 0) {
+					// Enable
+					enabledPosition[t] = nofEnabled;
+					enabled[nofEnabled++] = t;
+				}
+			} else {
+				if (nofUnmarkedInputs[t]++ == 0) {
+					// Disable
+					int last = enabled[--nofEnabled];
+					enabled[enabledPosition[t]] = last;
+					enabledPosition[last] = enabledPosition[t];
+					enabledPosition[t] = -1;
+				}
+			}
+		}
+	}
+}
@@ -1,18 +1,26 @@
 package org.processmining.discover.models;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
 
 import org.deckfour.xes.classification.XEventClassifier;
 import org.deckfour.xes.model.XEvent;
 import org.deckfour.xes.model.XLog;
 import org.deckfour.xes.model.XTrace;
 
+/**
+ * The activities of an activity log, each with its index. An alphabet is
+ * immutable, so activity logs, matrices, and activity sets share the same
+ * alphabet instead of copying it.
+ */
 public class ActivityAlphabet {
 
 	/*
@@ -32,16 +40,16 @@ public class ActivityAlphabet {
 	 * Maps every activity onto its index. The start and end activity are mapped
 	 * onto index 0.
 	 */
-	private Map<String, Integer> activity2Idx;
+	private final Map<String, Integer> activity2Idx;
 	/*
 	 * Maps every index onto its activity.
 	 */
-	private String[] idx2Activity;
+	private final String[] idx2Activity;
 	/*
 	 * The number of activities (where the artificial start and end activity
 	 * count as a single start-end activity).
 	 */
-	private int size;
+	private final int size;
 
 	/**
 	 * Creates the alphabet from an event log given the classifier to use.
@@ -61,23 +69,39 @@ public class ActivityAlphabet {
 		idx2Activity = new String[activities.size() + 1];
 		activity2Idx.put(STARTEND, 0);
 		idx2Activity[0] = STARTEND;
-		size = 1;
+		int idx = 1;
 		for (String activity : sortedActivities) {
-			activity2Idx.put(activity, size);
-			idx2Activity[size] = activity;
-			size++;
+			activity2Idx.put(activity, idx);
+			idx2Activity[idx] = activity;
+			idx++;
 		}
+		size = idx;
 	}
 	
-	public ActivityAlphabet(ActivityAlphabet alphabet) {
+	/*
+	 * Creates the alphabet with the given activities at the given indices. Index 0
+	 * should hold the start-end activity. Used to restore an alphabet that may
+	 * have been extended, and hence need not be sorted.
+	 */
+	ActivityAlphabet(String[] activities) {
 		activity2Idx = new HashMap<String, Integer>();
-		idx2Activity = new String[alphabet.size()];
-		size = 0;
-		for (int i = 0; i < alphabet.size(); i++) {
-			activity2Idx.put(alphabet.get(i), size);
-			idx2Activity[size] = alphabet.get(i);
-			size++;
+		idx2Activity = activities.clone();
+		for (int idx = 0; idx < idx2Activity.length; idx++) {
+			activity2Idx.put(idx2Activity[idx], idx);
 		}
+		size = idx2Activity.length;
+	}
+
+	/**
+	 * Creates a copy of the given alphabet. As alphabets are immutable, the
+	 * given alphabet can be shared instead.
+	 * 
+	 * @param alphabet The given alphabet
+	 */
+	public ActivityAlphabet(ActivityAlphabet alphabet) {
+		activity2Idx = new HashMap<String, Integer>(alphabet.activity2Idx);
+		idx2Activity = alphabet.idx2Activity.clone();
+		size = alphabet.size;
 	}
 	
 	public boolean equals(Object o) {
@@ -93,7 +117,7 @@ public class ActivityAlphabet {
 				return false;
 			}
 			for (int i = 0; i < size; i++) {
-				if (idx2Activity[i] != alphabet.idx2Activity[i]) {
+				if (!idx2Activity[i].equals(alphabet.idx2Activity[i])) {
 					return false;
 				}
 			}
@@ -101,6 +125,10 @@ public class ActivityAlphabet {
 		}
 		return false;
 	}
+
+	public int hashCode() {
+		return Arrays.hashCode(idx2Activity);
+	}
 	
 	private static List<String> getActivities(XLog log, XEventClassifier classifier) {
 		Set<String> activities = new HashSet<String>();
@@ -112,6 +140,34 @@ public class ActivityAlphabet {
 		return new ArrayList<String>(activities);
 	}
 	
+	/**
+	 * Returns an alphabet that extends this alphabet with the given activities.
+	 * The activities in this alphabet keep their indices, and the new activities
+	 * are added (sorted) to the end. As a result, activity logs and matrices that
+	 * use this alphabet remain valid for the extended alphabet. If there are no
+	 * new activities, this alphabet is returned.
+	 * 
+	 * @param activities The given activities
+	 * @return The extended alphabet
+	 */
+	public ActivityAlphabet extend(Collection<String> activities) {
+		Set<String> newActivities = new TreeSet<String>();
+		for (String activity : activities) {
+			if (!contains(activity)) {
+				newActivities.add(activity);
+			}
+		}
+		if (newActivities.isEmpty()) {
+			return this;
+		}
+		String[] extendedActivities = Arrays.copyOf(idx2Activity, size + newActivities.size());
+		int idx = size;
+		for (String activity : newActivities) {
+			extendedActivities[idx++] = activity;
+		}
+		return new ActivityAlphabet(extendedActivities);
+	}
+
 	/**
 	 * Returns the activity at the given index.
 	 * 
@@ -1,11 +1,11 @@
 package org.processmining.discover.models;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
 import org.deckfour.xes.classification.XEventClassifier;
-import org.deckfour.xes.model.XAttribute;
-import org.deckfour.xes.model.XAttributeBoolean;
-import org.deckfour.xes.model.XEvent;
 import org.deckfour.xes.model.XLog;
-import org.deckfour.xes.model.XTrace;
 
 public class ActivityLog {
 
@@ -31,7 +31,12 @@ public class ActivityLog {
 	 */
 	private int size;
 
-	private final String ISPOSKEY = "pdc:isPos";
+	/*
+	 * The number of changes made to this activity log, like filtering traces out
+	 * or appending traces. Used to notice that the activity log has changed in
+	 * place.
+	 */
+	private int nofChanges;
 
 	/**
 	 * Creates an activity log from the given event log using the given classifier
@@ -42,109 +47,117 @@ public class ActivityLog {
 	 * @param alphabet   The given alphabet
 	 */
 	public ActivityLog(XLog log, XEventClassifier classifier, ActivityAlphabet alphabet) {
+		/*
+		 * Single pass over the event log, resolving every class identity only once.
+		 */
+		ActivityLogBuilder builder = new ActivityLogBuilder(alphabet);
+		builder.addLog(log, classifier);
+		ActivityLog activityLog = builder.getLog();
+		this.alphabet = activityLog.alphabet;
+		activities = activityLog.activities;
+		positive = activityLog.positive;
+		size = activityLog.size;
+	}
+
+	/*
+	 * Creates an activity log from the given arrays, which are not copied.
+	 */
+	ActivityLog(ActivityAlphabet alphabet, int[] activities, boolean[] positive, int size) {
 		this.alphabet = alphabet;
-		// Allocate room for the artificial start-end activities.
-		size = 1 + log.size();
-		// Allocate room for the regular activities.
-		for (XTrace trace : log) {
-			boolean isPos = false;
-			boolean isNeg = false;
-			if (trace.getAttributes().containsKey(ISPOSKEY)) {
-				XAttribute isPosAttribute = trace.getAttributes().get(ISPOSKEY);
-				if (isPosAttribute instanceof XAttributeBoolean) {
-					isPos = ((XAttributeBoolean) isPosAttribute).getValue();
-					isNeg = !isPos;
-				}
-			}
-			if (!isNeg) {
-				for (XEvent event : trace) {
-					String activity = classifier.getClassIdentity(event);
-					if (alphabet.contains(activity)) {
-						size++;
-					}
-				}
-			} else {
-				/*
-				 * Trace is classified as negative. As a result, we will just skip this trace.
-				 */
-				size--;
-			}
-		}
-		activities = new int[size];
-		positive = new boolean[size];
-		size = 0;
-		// Copy all necessary indices into the activity log.
-		positive[size] = false;
-		activities[size++] = alphabet.get(ActivityAlphabet.STARTEND);
-		for (XTrace trace : log) {
-			boolean isPos = false;
-			boolean isNeg = false;
-			if (trace.getAttributes().containsKey(ISPOSKEY)) {
-				XAttribute isPosAttribute = trace.getAttributes().get(ISPOSKEY);
-				if (isPosAttribute instanceof XAttributeBoolean) {
-					isPos = ((XAttributeBoolean) isPosAttribute).getValue();
-					isNeg = !isPos;
-				}
-			}
-			if (!isNeg) {
-				for (XEvent event : trace) {
-					String activity = classifier.getClassIdentity(event);
-					if (alphabet.contains(activity)) {
-						positive[size] = isPos;
-						activities[size++] = alphabet.get(activity);
-					}
-				}
-				positive[size] = isPos;
-				activities[size++] = alphabet.get(ActivityAlphabet.STARTEND);
-			}
-		}
+		this.activities = activities;
+		this.positive = positive;
+		this.size = size;
 	}
 
 	public ActivityLog(ActivityLog log) {
-		alphabet = log.alphabet;
-		size = log.size;
+		alphabet = log.getAlphabet();
+		size = log.size();
 		activities = new int[size];
 		positive = new boolean[size];
 		for (int i = 0; i < size; i++) {
-			activities[i] = log.activities[i];
-			positive[i] = log.positive[i];
+			activities[i] = log.get(i);
+			positive[i] = log.isPos(i);
+		}
+	}
+
+	/**
+	 * Returns a copy of this activity log.
+	 * 
+	 * @return A copy of this activity log
+	 */
+	public ActivityLog copy() {
+		return new ActivityLog(this);
+	}
+
+	/**
+	 * Appends the traces of the given event log to this activity log using the
+	 * given classifier. Activities that are not in the alphabet yet are added to
+	 * the end of the alphabet (see ActivityAlphabet.extend), so the indices of
+	 * the existing activities do not change.
+	 * 
+	 * @param log        The given event log
+	 * @param classifier The given classifier
+	 * @return The index in this activity log where the first appended trace
+	 *         starts
+	 */
+	public int append(XLog log, XEventClassifier classifier) {
+		ActivityLogBuilder builder = new ActivityLogBuilder();
+		builder.addLog(log, classifier);
+		return append(builder.getLog());
+	}
+
+	/**
+	 * Appends the traces of the given activity log to this activity log.
+	 * Activities that are not in the alphabet yet are added to the end of the
+	 * alphabet (see ActivityAlphabet.extend), so the indices of the existing
+	 * activities do not change.
+	 * 
+	 * @param log The given activity log
+	 * @return The index in this activity log where the first appended trace
+	 *         starts
+	 */
+	public int append(ActivityLog log) {
+		List<String> logActivities = new ArrayList<String>();
+		for (int i = 1; i < log.getAlphabet().size(); i++) {
+			logActivities.add(log.getAlphabet().get(i));
+		}
+		ActivityAlphabet extendedAlphabet = alphabet.extend(logActivities);
+		int[] idxMap = new int[log.getAlphabet().size()];
+		for (int i = 1; i < idxMap.length; i++) {
+			idxMap[i] = extendedAlphabet.get(log.getAlphabet().get(i));
+		}
+		int startIdx = size;
+		if (size + log.size() - 1 > activities.length) {
+			int capacity = Math.max(size + log.size() - 1, activities.length + (activities.length >> 1));
+			activities = Arrays.copyOf(activities, capacity);
+			positive = Arrays.copyOf(positive, capacity);
+		}
+		// Skip the start-end activity that starts the first trace of the given log.
+		for (int i = 1; i < log.size(); i++) {
+			int activity = log.get(i);
+			activities[size] = activity < 0 ? -idxMap[-activity] : idxMap[activity];
+			positive[size] = log.isPos(i);
+			size++;
 		}
+		alphabet = extendedAlphabet;
+		nofChanges++;
+		return startIdx;
 	}
 
 	public boolean filter(ActivityMatrix matrix, ActivitySet ignoreSet) {
 		boolean didFilter = false;
 		int startIdx = 0; // First start/end of trace
 		int endIdx = startIdx + 1; // Next activity
-		while (endIdx < size) {
+		while (endIdx < size()) {
 			// Look for next start/end of trace.
-			while (activities[endIdx] != 0) {
+			while (get(endIdx) != 0) {
 				endIdx++;
 			}
 			// Do not touch positive traces.
-			if (!positive[endIdx]) {
+			if (!isPos(endIdx)) {
 				// Determine whether this trace may stay.
-				boolean mayStay = true;
-				int lastIdx = startIdx;
-				for (int idx = startIdx + 1; idx < endIdx; idx++) {
-					if (activities[idx] < 0) {
-						continue;
-					}
-					if (ignoreSet.contains(activities[idx])) {
-						continue;
-					}
-					if (matrix.get(activities[lastIdx], activities[idx]) <= 0) {
-//						System.out.println("[ActivityLog] Dropping edge " + alphabet.get(activities[lastIdx]) + "->" + alphabet.get(activities[idx]) + ": " + matrix.get(activities[lastIdx], activities[idx]));
-					}
-					mayStay = mayStay && (matrix.get(activities[lastIdx], activities[idx]) > 0);
-					lastIdx = idx;
-				}
-				if (!mayStay) {
-					for (int idx = startIdx; idx < endIdx; idx++) {
-						if (activities[idx] > 0) {
-							activities[idx] = -activities[idx];
-							didFilter = true;
-						}
-					}
+				if (!mayStay(startIdx, endIdx, matrix, ignoreSet)) {
+					didFilter = drop(startIdx, endIdx) || didFilter;
 				}
 			}
 			startIdx = endIdx;
@@ -153,23 +166,67 @@ public class ActivityLog {
 		return didFilter;
 	}
 
+	/*
+	 * Returns whether the trace between the given start-end activities may stay
+	 * given the given matrix and activities to ignore, that is, whether every
+	 * directly-follows pair in the trace has a positive count in the matrix.
+	 * Filtered activities are skipped.
+	 */
+	boolean mayStay(int startIdx, int endIdx, ActivityMatrix matrix, ActivitySet ignoreSet) {
+		int lastActivity = get(startIdx);
+		for (int idx = startIdx + 1; idx < endIdx; idx++) {
+			int activity = get(idx);
+			if (activity < 0) {
+				continue;
+			}
+			if (ignoreSet.contains(activity)) {
+				continue;
+			}
+			if (matrix.get(lastActivity, activity) <= 0) {
+//				System.out.println("[ActivityLog] Dropping edge " + alphabet.get(lastActivity) + "->" + alphabet.get(activity) + ": " + matrix.get(lastActivity, activity));
+				return false;
+			}
+			lastActivity = activity;
+		}
+		return true;
+	}
+
+	/*
+	 * Filters out the trace between the given start-end activities. Returns
+	 * whether some activity was filtered out.
+	 */
+	boolean drop(int startIdx, int endIdx) {
+		boolean didFilter = false;
+		for (int idx = startIdx; idx < endIdx; idx++) {
+			int activity = get(idx);
+			if (activity > 0) {
+				set(idx, -activity);
+				didFilter = true;
+			}
+		}
+		return didFilter;
+	}
+
 	public boolean equals(Object o) {
 		if (o == null) {
 			return false;
 		}
 		if (o instanceof ActivityLog) {
 			ActivityLog log = (ActivityLog) o;
-			if (size != log.size) {
+			if (size() != log.size()) {
 				return false;
 			}
-			if (!alphabet.equals(log.alphabet)) {
+			if (!getAlphabet().equals(log.getAlphabet())) {
 				return false;
 			}
-			for (int i = 0; i < size; i++) {
-				if (positive[i] != log.positive[i]) {
+			for (int i = 0; i < size(); i++) {
+				if (isPos(i) != log.isPos(i)) {
+					return false;
+				}
+				if (get(i) != log.get(i)) {
 					return false;
 				}
-				if (activities[i] != log.activities[i]) {
+				if (getMultiplicity(i) != log.getMultiplicity(i)) {
 					return false;
 				}
 			}
@@ -192,6 +249,42 @@ public class ActivityLog {
 		return positive[idx];
 	}
 
+	/**
+	 * Returns the number of traces represented by the trace containing the given
+	 * index of the activity log. For the artificial start-end activity that ends
+	 * a trace, this is the multiplicity of that trace.
+	 * 
+	 * @param idx The given index in the activity log
+	 * @return The multiplicity of the trace at the given index
+	 */
+	public int getMultiplicity(int idx) {
+		return 1;
+	}
+
+	/*
+	 * Sets the activity index at the given index of the activity log. Used to
+	 * negate the indices of filtered traces.
+	 */
+	void set(int idx, int activity) {
+		activities[idx] = activity;
+		nofChanges++;
+	}
+
+	/*
+	 * Returns the number of changes made to this activity log.
+	 */
+	int getNofChanges() {
+		return nofChanges;
+	}
+
+	/*
+	 * Registers a change made to this activity log by a subclass that does not
+	 * use the arrays of this class.
+	 */
+	void changed() {
+		nofChanges++;
+	}
+
 	/**
 	 * Returns the size (number of indices) of the activity log.
 	 * 
@@ -0,0 +1,262 @@
+package org.processmining.discover.models;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.deckfour.xes.classification.XEventClassifier;
+import org.deckfour.xes.model.XAttribute;
+import org.deckfour.xes.model.XAttributeBoolean;
+import org.deckfour.xes.model.XEvent;
+import org.deckfour.xes.model.XLog;
+import org.deckfour.xes.model.XTrace;
+
+public class ActivityLogBuilder {
+
+	/*
+	 * Initial capacity of the activity and positive buffers.
+	 */
+	private static final int INITIAL_CAPACITY = 1024;
+
+	/*
+	 * The key of the trace attribute that classifies a trace as positive (true)
+	 * or negative (false).
+	 */
+	static final String ISPOSKEY = "pdc:isPos";
+
+	/*
+	 * The alphabet to use, if provided. If null, the alphabet will be derived from
+	 * the activities added.
+	 */
+	private ActivityAlphabet alphabet;
+
+	/*
+	 * Maps every class identity seen so far onto its (provisional) index. If the
+	 * alphabet was provided, this is the index in that alphabet, or -1 if the
+	 * alphabet does not contain the class identity. Otherwise, this is the index
+	 * in the order of first appearance, starting from 1.
+	 */
+	private Map<String, Integer> identity2Idx;
+
+	/*
+	 * The class identities in order of first appearance. Only used if the alphabet
+	 * is derived.
+	 */
+	private List<String> identities;
+
+	/*
+	 * The growable buffers for the activity log under construction.
+	 */
+	private int[] activities;
+	private boolean[] positive;
+	private int size;
+
+	/*
+	 * Whether the current trace is classified positive.
+	 */
+	private boolean isPos;
+
+	/*
+	 * The activity log built, if already built.
+	 */
+	private ActivityLog log;
+
+	/**
+	 * Creates a builder that derives the alphabet from the activities added.
+	 */
+	public ActivityLogBuilder() {
+		this(null);
+	}
+
+	/**
+	 * Creates a builder that uses the given alphabet. Activities not contained in
+	 * this alphabet will be left out.
+	 *
+	 * @param alphabet The given alphabet
+	 */
+	public ActivityLogBuilder(ActivityAlphabet alphabet) {
+		this.alphabet = alphabet;
+		identity2Idx = new HashMap<String, Integer>();
+		identities = new ArrayList<String>();
+		activities = new int[INITIAL_CAPACITY];
+		positive = new boolean[INITIAL_CAPACITY];
+		size = 0;
+		isPos = false;
+		// The artificial start-end activity starting the first trace.
+		append(0);
+	}
+
+	/**
+	 * Adds all traces of the given event log using the given classifier.
+	 *
+	 * @param log        The event log
+	 * @param classifier The given classifier
+	 */
+	public void addLog(XLog log, XEventClassifier classifier) {
+		for (XTrace trace : log) {
+			addTrace(trace, classifier);
+		}
+	}
+
+	/**
+	 * Adds the given trace using the given classifier. Traces classified negative
+	 * are skipped.
+	 *
+	 * @param trace      The trace
+	 * @param classifier The given classifier
+	 */
+	public void addTrace(XTrace trace, XEventClassifier classifier) {
+		Boolean classification = getClassification(trace);
+		if (classification != null && !classification) {
+			/*
+			 * Trace is classified as negative. As a result, we will just skip this trace.
+			 * However, if the alphabet is derived, its activities are still part of it.
+			 */
+			if (alphabet == null) {
+				for (XEvent event : trace) {
+					resolve(classifier.getClassIdentity(event));
+				}
+			}
+			return;
+		}
+		startTrace(classification != null);
+		for (XEvent event : trace) {
+			addActivity(classifier.getClassIdentity(event));
+		}
+		endTrace();
+	}
+
+	/*
+	 * Returns whether the given trace is classified positive (true) or negative
+	 * (false), or null if it is not classified.
+	 */
+	static Boolean getClassification(XTrace trace) {
+		XAttribute isPosAttribute = trace.getAttributes().get(ISPOSKEY);
+		if (isPosAttribute instanceof XAttributeBoolean) {
+			return ((XAttributeBoolean) isPosAttribute).getValue();
+		}
+		return null;
+	}
+
+	/**
+	 * Skips a trace classified negative with the given activities (class
+	 * identities). The trace is not added to the activity log, but if the alphabet
+	 * is derived its activities are still part of it.
+	 *
+	 * @param activities The activities of the skipped trace
+	 */
+	public void skipTrace(List<String> activities) {
+		if (alphabet == null) {
+			for (String activity : activities) {
+				resolve(activity);
+			}
+		}
+	}
+
+	/**
+	 * Starts a new trace.
+	 *
+	 * @param isPos Whether the trace is classified positive
+	 */
+	public void startTrace(boolean isPos) {
+		this.isPos = isPos;
+	}
+
+	/**
+	 * Adds the given activity (class identity) to the current trace. If the
+	 * alphabet was provided, an activity not in it is left out, and the
+	 * start-end activity is added as is, which ends the current trace and starts
+	 * another.
+	 *
+	 * @param activity The given activity
+	 */
+	public void addActivity(String activity) {
+		int idx = resolve(activity);
+		if (idx >= 0) {
+			append(idx);
+		}
+	}
+
+	/*
+	 * Returns the (provisional) index of the given activity, resolving it if it has
+	 * not been seen before.
+	 */
+	private int resolve(String activity) {
+		Integer idx = identity2Idx.get(activity);
+		if (idx == null) {
+			// First time we see this class identity. Resolve it once.
+			if (alphabet != null) {
+				idx = alphabet.contains(activity) ? alphabet.get(activity) : -1;
+			} else {
+				identities.add(activity);
+				idx = identities.size();
+			}
+			identity2Idx.put(activity, idx);
+		}
+		return idx;
+	}
+
+	/**
+	 * Ends the current trace.
+	 */
+	public void endTrace() {
+		append(0);
+		isPos = false;
+	}
+
+	/**
+	 * Returns the alphabet. If the alphabet was derived, it contains exactly the
+	 * activities added so far.
+	 *
+	 * @return The alphabet
+	 */
+	public ActivityAlphabet getAlphabet() {
+		build();
+		return log.getAlphabet();
+	}
+
+	/**
+	 * Returns the activity log.
+	 *
+	 * @return The activity log
+	 */
+	public ActivityLog getLog() {
+		build();
+		return log;
+	}
+
+	private void build() {
+		if (log != null) {
+			return;
+		}
+		if (alphabet == null) {
+			/*
+			 * The alphabet sorts the activities, so we need to map the indices in order of
+			 * first appearance onto the sorted indices.
+			 */
+			alphabet = new ActivityAlphabet(identities);
+			int[] idxMap = new int[identities.size() + 1];
+			for (int i = 0; i < identities.size(); i++) {
+				idxMap[i + 1] = alphabet.get(identities.get(i));
+			}
+			for (int i = 0; i < size; i++) {
+				activities[i] = idxMap[activities[i]];
+			}
+		}
+		log = new ActivityLog(alphabet, Arrays.copyOf(activities, size), Arrays.copyOf(positive, size), size);
+		activities = null;
+		positive = null;
+	}
+
+	private void append(int idx) {
+		if (size == activities.length) {
+			int capacity = activities.length + (activities.length >> 1);
+			activities = Arrays.copyOf(activities, capacity);
+			positive = Arrays.copyOf(positive, capacity);
+		}
+		positive[size] = isPos;
+		activities[size++] = idx;
+	}
+}
@@ -0,0 +1,213 @@
+package org.processmining.discover.models;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+
+/**
+ * The binary file format for activity logs. All numbers are big-endian.
+ *
+ * <pre>
+ * int     MAGIC
+ * int     VERSION
+ * int     width of an activity index in bytes (1, 2, or 4)
+ * int     alphabet size (including the start-end activity)
+ * int     activity log size
+ * string* all activities except the start-end activity, in alphabet order, as
+ *         an int length followed by that many UTF-8 bytes
+ * index*  all (signed) activity indices of the activity log
+ * long*   the positive bitmap, bit i of long i/64 for index i of the activity log
+ * int*    (version 2 only) the multiplicities for all indices of the activity log
+ * </pre>
+ * 
+ * Version 1 is written if every multiplicity is 1, version 2 otherwise (like for
+ * a variant activity log).
+ */
+public class ActivityLogFile {
+
+	/*
+	 * "DSCL"
+	 */
+	public static final int MAGIC = 0x4453434C;
+	public static final int VERSION = 1;
+	public static final int VERSIONWITHMULTIPLICITIES = 2;
+
+	/*
+	 * Size of the fixed header in bytes.
+	 */
+	static final int HEADERSIZE = 20;
+
+	static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/**
+	 * Writes the given activity log to the given file.
+	 *
+	 * @param log  The given activity log
+	 * @param file The given file
+	 * @throws IOException If the file could not be written
+	 */
+	public static void write(ActivityLog log, File file) throws IOException {
+		OutputStream output = new FileOutputStream(file);
+		try {
+			write(log, output);
+		} finally {
+			output.close();
+		}
+	}
+
+	/**
+	 * Writes the given activity log to the given output stream. The output stream
+	 * is not closed.
+	 *
+	 * @param log    The given activity log
+	 * @param output The given output stream
+	 * @throws IOException If the output stream could not be written
+	 */
+	public static void write(ActivityLog log, OutputStream output) throws IOException {
+		DataOutputStream dataOutput = new DataOutputStream(new BufferedOutputStream(output));
+		ActivityAlphabet alphabet = log.getAlphabet();
+		int width = getWidth(alphabet);
+		boolean hasMultiplicities = false;
+		for (int i = 0; i < log.size() && !hasMultiplicities; i++) {
+			hasMultiplicities = log.getMultiplicity(i) != 1;
+		}
+		dataOutput.writeInt(MAGIC);
+		dataOutput.writeInt(hasMultiplicities ? VERSIONWITHMULTIPLICITIES : VERSION);
+		dataOutput.writeInt(width);
+		dataOutput.writeInt(alphabet.size());
+		dataOutput.writeInt(log.size());
+		for (int i = 1; i < alphabet.size(); i++) {
+			byte[] bytes = alphabet.get(i).getBytes(UTF8);
+			dataOutput.writeInt(bytes.length);
+			dataOutput.write(bytes);
+		}
+		for (int i = 0; i < log.size(); i++) {
+			switch (width) {
+				case 1 :
+					dataOutput.writeByte(log.get(i));
+					break;
+				case 2 :
+					dataOutput.writeShort(log.get(i));
+					break;
+				default :
+					dataOutput.writeInt(log.get(i));
+					break;
+			}
+		}
+		long word = 0;
+		for (int i = 0; i < log.size(); i++) {
+			if (log.isPos(i)) {
+				word |= 1L << (i & 63);
+			}
+			if ((i & 63) == 63) {
+				dataOutput.writeLong(word);
+				word = 0;
+			}
+		}
+		if ((log.size() & 63) != 0) {
+			dataOutput.writeLong(word);
+		}
+		if (hasMultiplicities) {
+			for (int i = 0; i < log.size(); i++) {
+				dataOutput.writeInt(log.getMultiplicity(i));
+			}
+		}
+		dataOutput.flush();
+	}
+
+	/**
+	 * Reads an activity log from the given input stream into memory. Use
+	 * MappedActivityLog to read an activity log from a file without doing so.
+	 *
+	 * @param input The given input stream
+	 * @return The activity log read
+	 * @throws IOException If the input stream could not be read or has the wrong
+	 *                     format
+	 */
+	public static ActivityLog read(InputStream input) throws IOException {
+		DataInputStream dataInput = new DataInputStream(new BufferedInputStream(input));
+		int magic = dataInput.readInt();
+		int version = dataInput.readInt();
+		int width = checkHeader(magic, version, dataInput.readInt());
+		int alphabetSize = dataInput.readInt();
+		int size = dataInput.readInt();
+		String[] activities = new String[alphabetSize];
+		activities[0] = ActivityAlphabet.STARTEND;
+		for (int i = 1; i < alphabetSize; i++) {
+			byte[] bytes = new byte[dataInput.readInt()];
+			dataInput.readFully(bytes);
+			activities[i] = new String(bytes, UTF8);
+		}
+		/*
+		 * Keep the activities in alphabet order, which need not be sorted if the
+		 * alphabet has been extended.
+		 */
+		ActivityAlphabet alphabet = new ActivityAlphabet(activities);
+		int[] indices = new int[size];
+		for (int i = 0; i < size; i++) {
+			switch (width) {
+				case 1 :
+					indices[i] = dataInput.readByte();
+					break;
+				case 2 :
+					indices[i] = dataInput.readShort();
+					break;
+				default :
+					indices[i] = dataInput.readInt();
+					break;
+			}
+		}
+		boolean[] positive = new boolean[size];
+		long word = 0;
+		for (int i = 0; i < size; i++) {
+			if ((i & 63) == 0) {
+				word = dataInput.readLong();
+			}
+			positive[i] = ((word >>> (i & 63)) & 1L) != 0;
+		}
+		if (version == VERSIONWITHMULTIPLICITIES) {
+			int[] multiplicities = new int[size];
+			for (int i = 0; i < size; i++) {
+				multiplicities[i] = dataInput.readInt();
+			}
+			return new VariantActivityLog(alphabet, indices, positive, multiplicities, size);
+		}
+		return new ActivityLog(alphabet, indices, positive, size);
+	}
+
+	/*
+	 * Returns the width (in bytes) needed to store any (possibly negated)
+	 * activity index of the given alphabet.
+	 */
+	static int getWidth(ActivityAlphabet alphabet) {
+		if (alphabet.size() <= Byte.MAX_VALUE) {
+			return 1;
+		} else if (alphabet.size() <= Short.MAX_VALUE) {
+			return 2;
+		}
+		return 4;
+	}
+
+	/*
+	 * Checks the header and returns the width.
+	 */
+	static int checkHeader(int magic, int version, int width) throws IOException {
+		if (magic != MAGIC) {
+			throw new IOException("Not an activity log file");
+		}
+		if (version != VERSION && version != VERSIONWITHMULTIPLICITIES) {
+			throw new IOException("Unsupported activity log file version: " + version);
+		}
+		if (width != 1 && width != 2 && width != 4) {
+			throw new IOException("Unsupported activity index width: " + width);
+		}
+		return width;
+	}
+}
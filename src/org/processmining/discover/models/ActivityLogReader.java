@@ -0,0 +1,302 @@
+package org.processmining.discover.models;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+
+import javax.xml.datatype.DatatypeConfigurationException;
+import javax.xml.datatype.DatatypeFactory;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.deckfour.xes.classification.XEventAttributeClassifier;
+import org.deckfour.xes.classification.XEventClassifier;
+import org.deckfour.xes.classification.XEventNameClassifier;
+import org.deckfour.xes.factory.XFactory;
+import org.deckfour.xes.factory.XFactoryRegistry;
+import org.deckfour.xes.id.XID;
+import org.deckfour.xes.model.XAttribute;
+import org.deckfour.xes.model.XEvent;
+
+/**
+ * Reads an activity log (and its alphabet) from a XES file (plain or gzipped)
+ * without creating an event log in memory. The file is parsed event by event,
+ * and every event is classified as soon as it has been parsed.
+ */
+public class ActivityLogReader {
+
+	/*
+	 * Matches the keys in the keys attribute of a classifier element. A key
+	 * containing white space is enclosed in single quotes.
+	 */
+	private static final Pattern CLASSIFIERKEY = Pattern.compile("'([^']*)'|(\\S+)");
+
+	/*
+	 * The classifier to use. If null, the first classifier declared by the XES
+	 * file will be used, or the default classifier if none is declared.
+	 */
+	private XEventClassifier classifier;
+
+	/*
+	 * The alphabet to use. If null, the alphabet is derived from the XES file.
+	 */
+	private ActivityAlphabet alphabet;
+
+	/*
+	 * The builder for the activity log.
+	 */
+	private ActivityLogBuilder builder;
+
+	/*
+	 * The attribute keys the classifier depends on. Only these event attributes
+	 * are kept.
+	 */
+	private Set<String> keys;
+
+	private XFactory factory;
+	private DatatypeFactory datatypeFactory;
+
+	/**
+	 * Creates a reader that uses the given classifier and derives the alphabet.
+	 *
+	 * @param classifier The given classifier, may be null
+	 */
+	public ActivityLogReader(XEventClassifier classifier) {
+		this(classifier, null);
+	}
+
+	/**
+	 * Creates a reader that uses the given classifier and the given alphabet.
+	 *
+	 * @param classifier The given classifier, may be null
+	 * @param alphabet   The given alphabet, may be null
+	 */
+	public ActivityLogReader(XEventClassifier classifier, ActivityAlphabet alphabet) {
+		this.classifier = classifier;
+		this.alphabet = alphabet;
+	}
+
+	/**
+	 * Reads the given XES file, which may be gzipped.
+	 *
+	 * @param file The given XES file
+	 * @throws IOException If the file could not be read or parsed
+	 */
+	public void read(File file) throws IOException {
+		InputStream input = new FileInputStream(file);
+		try {
+			read(input);
+		} finally {
+			input.close();
+		}
+	}
+
+	/**
+	 * Reads a XES log from the given input stream, which may be gzipped. The
+	 * input stream is not closed.
+	 *
+	 * @param input The given input stream
+	 * @throws IOException If the input stream could not be read or parsed
+	 */
+	public void read(InputStream input) throws IOException {
+		BufferedInputStream bufferedInput = new BufferedInputStream(input);
+		/*
+		 * Check for the GZIP magic number.
+		 */
+		bufferedInput.mark(2);
+		int byte1 = bufferedInput.read();
+		int byte2 = bufferedInput.read();
+		bufferedInput.reset();
+		InputStream xmlInput = bufferedInput;
+		if (byte1 == 0x1f && byte2 == 0x8b) {
+			xmlInput = new GZIPInputStream(bufferedInput);
+		}
+		builder = new ActivityLogBuilder(alphabet);
+		factory = XFactoryRegistry.instance().currentDefault();
+		try {
+			datatypeFactory = DatatypeFactory.newInstance();
+			XMLStreamReader reader = XMLInputFactory.newInstance().createXMLStreamReader(xmlInput);
+			try {
+				parse(reader);
+			} finally {
+				reader.close();
+			}
+		} catch (XMLStreamException e) {
+			throw new IOException(e);
+		} catch (DatatypeConfigurationException e) {
+			throw new IOException(e);
+		}
+	}
+
+	private void parse(XMLStreamReader reader) throws XMLStreamException {
+		boolean inTrace = false;
+		boolean inEvent = false;
+		/*
+		 * Depth of nested attributes. Only attributes at depth 1 belong to the
+		 * enclosing log, trace, or event.
+		 */
+		int attributeDepth = 0;
+		boolean isPos = false;
+		boolean isNeg = false;
+		List<String> activities = new ArrayList<String>();
+		XEvent event = null;
+		int nofTraces = 0;
+		while (reader.hasNext()) {
+			switch (reader.next()) {
+				case XMLStreamConstants.START_ELEMENT : {
+					String name = reader.getLocalName();
+					if (isAttribute(name)) {
+						attributeDepth++;
+						if (attributeDepth != 1) {
+							break;
+						}
+						String key = reader.getAttributeValue(null, "key");
+						if (inEvent) {
+							if (keys.contains(key)) {
+								XAttribute attribute = createAttribute(name, key, reader.getAttributeValue(null, "value"));
+								if (attribute != null) {
+									event.getAttributes().put(key, attribute);
+								}
+							}
+						} else if (inTrace) {
+							if (ActivityLogBuilder.ISPOSKEY.equals(key) && name.equals("boolean")) {
+								isPos = Boolean.parseBoolean(reader.getAttributeValue(null, "value"));
+								isNeg = !isPos;
+							}
+						}
+					} else if (name.equals("classifier") && !inTrace && classifier == null
+							&& reader.getAttributeValue(null, "keys") != null) {
+						/*
+						 * Use the first classifier declared by the log.
+						 */
+						List<String> classifierKeys = new ArrayList<String>();
+						Matcher matcher = CLASSIFIERKEY.matcher(reader.getAttributeValue(null, "keys"));
+						while (matcher.find()) {
+							classifierKeys.add(matcher.group(1) != null ? matcher.group(1) : matcher.group(2));
+						}
+						classifier = new XEventAttributeClassifier(reader.getAttributeValue(null, "name"),
+								classifierKeys.toArray(new String[0]));
+					} else if (name.equals("trace")) {
+						inTrace = true;
+						isPos = false;
+						isNeg = false;
+						activities.clear();
+					} else if (name.equals("event") && inTrace) {
+						if (event == null) {
+							/*
+							 * First event. From now on, the classifier is fixed.
+							 */
+							if (classifier == null) {
+								classifier = new XEventNameClassifier();
+							}
+							keys = new HashSet<String>();
+							for (String key : classifier.getDefiningAttributeKeys()) {
+								keys.add(key);
+							}
+							event = factory.createEvent();
+						}
+						inEvent = true;
+						event.getAttributes().clear();
+					}
+					break;
+				}
+				case XMLStreamConstants.END_ELEMENT : {
+					String name = reader.getLocalName();
+					if (isAttribute(name)) {
+						attributeDepth--;
+					} else if (name.equals("event") && inEvent) {
+						inEvent = false;
+						activities.add(classifier.getClassIdentity(event));
+					} else if (name.equals("trace")) {
+						inTrace = false;
+						if (isNeg) {
+							/*
+							 * Trace is classified as negative. As a result, we will just skip this trace.
+							 */
+							builder.skipTrace(activities);
+						} else {
+							builder.startTrace(isPos);
+							for (String activity : activities) {
+								builder.addActivity(activity);
+							}
+							builder.endTrace();
+						}
+						nofTraces++;
+					}
+					break;
+				}
+				default :
+					break;
+			}
+		}
+		if (classifier == null) {
+			classifier = new XEventNameClassifier();
+		}
+		System.out.println("[ActivityLogReader] Read " + nofTraces + " traces.");
+	}
+
+	private boolean isAttribute(String name) {
+		return name.equals("string") || name.equals("date") || name.equals("int") || name.equals("float")
+				|| name.equals("boolean") || name.equals("id") || name.equals("list") || name.equals("container");
+	}
+
+	/*
+	 * Creates the attribute of the given type. Returns null for lists and
+	 * containers, as these cannot be used by a classifier.
+	 */
+	private XAttribute createAttribute(String type, String key, String value) {
+		if (type.equals("string")) {
+			return factory.createAttributeLiteral(key, value, null);
+		} else if (type.equals("date")) {
+			return factory.createAttributeTimestamp(key,
+					datatypeFactory.newXMLGregorianCalendar(value).toGregorianCalendar().getTime(), null);
+		} else if (type.equals("int")) {
+			return factory.createAttributeDiscrete(key, Long.parseLong(value), null);
+		} else if (type.equals("float")) {
+			return factory.createAttributeContinuous(key, Double.parseDouble(value), null);
+		} else if (type.equals("boolean")) {
+			return factory.createAttributeBoolean(key, Boolean.parseBoolean(value), null);
+		} else if (type.equals("id")) {
+			return factory.createAttributeID(key, XID.parse(value), null);
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the classifier used.
+	 *
+	 * @return The classifier used
+	 */
+	public XEventClassifier getClassifier() {
+		return classifier;
+	}
+
+	/**
+	 * Returns the alphabet read.
+	 *
+	 * @return The alphabet read
+	 */
+	public ActivityAlphabet getAlphabet() {
+		return builder.getAlphabet();
+	}
+
+	/**
+	 * Returns the activity log read.
+	 *
+	 * @return The activity log read
+	 */
+	public ActivityLog getLog() {
+		return builder.getLog();
+	}
+}
@@ -1,8 +1,15 @@
 package org.processmining.discover.models;
 
 import java.awt.Component;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 import javax.swing.JLabel;
 import javax.swing.JPanel;
@@ -23,17 +30,93 @@ public class ActivityMatrix {
 	 */
 	private ActivityAlphabet alphabet;
 
+	/**
+	 * The size of an activity log from which on it is counted in parallel.
+	 */
+	public static final int PARALLELTHRESHOLD = 1 << 20;
+
+	/**
+	 * The fraction of the maximal heap size that the counts of the parallel
+	 * counting tasks may take together.
+	 */
+	public static final double PARALLELMEMORY = 0.25;
+
+	/**
+	 * The size of an alphabet from which on the edge counts are collected
+	 * sparsely.
+	 */
+	public static final int SPARSESIZE = 512;
+
+	/**
+	 * The density (fraction of non-zero edge counts) below which sparsely
+	 * collected edge counts are also stored sparsely.
+	 */
+	public static final double SPARSEDENSITY = 0.1;
+
+	/**
+	 * The size of the alphabet, that is, the number of rows and columns.
+	 */
+	private int size;
+
 	/**
 	 * The edge counts in the activity log: How often is one activity
-	 * directly-followed by another? If edgeCounts[a][b] = 10, then in the
-	 * activity log a is directly followed 10 times by b.
+	 * directly-followed by another? The counts are stored row by row: If
+	 * edgeCounts[a * size + b] = 10, then in the activity log a is directly
+	 * followed 10 times by b. Null if the matrix is stored sparsely.
+	 */
+	private int[] edgeCounts;
+
+	/**
+	 * Whether the DF relation occurs in a trace that is classified as a positive
+	 * trace, as a bitset with the same layout as the edge counts. Null if the
+	 * matrix is stored sparsely.
+	 */
+	private long[] positive;
+
+	/**
+	 * If the matrix is stored sparsely, for every activity the sorted activities
+	 * that can directly-follow it, with the corresponding edge counts and
+	 * positive flags. Null if the matrix is stored densely.
+	 */
+	private int[][] successors;
+	private int[][] successorCounts;
+	private boolean[][] successorPositive;
+
+	/**
+	 * All activity indices, in order. Used to iterate over a row of a densely
+	 * stored matrix. Volatile, as it is filled lazily while rows may be read
+	 * from several threads.
 	 */
-	private int[][] edgeCounts;
+	private volatile int[] allIndices;
 
 	/**
-	 * Whether the DF relation occurs in a trace that is classified as a positive trace.
+	 * The thresholds last used to filter this matrix, or -1 (absolute) and 0
+	 * (relative) if not filtered. Used to filter the matrix again after an
+	 * update.
 	 */
-	private boolean[][] positive;
+	private int absoluteThreshold = -1;
+	private int relativeThreshold = 0;
+	private int safetyThreshold = 0;
+
+	/**
+	 * The maximal (absolute) count for any row (from) and any column (to), as
+	 * used by the relative filter. Null if not known.
+	 */
+	private int[] fromMax;
+	private int[] toMax;
+
+	/**
+	 * The edges that were filtered out, but have been set back explicitly (like
+	 * by the veto or by hand), as fromIdx << 32 | toIdx. Filtering the matrix
+	 * again after an update keeps these edges. Null if none.
+	 */
+	private Set<Long> keptEdges;
+
+	/**
+	 * The number of changes made to this matrix. Used to notice that the matrix
+	 * has changed in place.
+	 */
+	private int nofChanges;
 
 	/**
 	 * The node counts in the activity log: How often does an activity occur?
@@ -55,7 +138,8 @@ public class ActivityMatrix {
 
 	/**
 	 * Discovers an activity matrix for the given event log using the given
-	 * alphabet and using a set of activities to ignore.
+	 * alphabet and using a set of activities to ignore. Large activity logs are
+	 * counted in parallel.
 	 * 
 	 * @param log
 	 *            The event log
@@ -68,103 +152,725 @@ public class ActivityMatrix {
 	 */
 	public ActivityMatrix(ActivityLog log, ActivityAlphabet alphabet, ActivitySet ignoreSet,
 			ActivityMatrix rootMatrix) {
+		this(log, alphabet, ignoreSet, rootMatrix, log.size() >= PARALLELTHRESHOLD);
+	}
+
+	/**
+	 * Discovers an activity matrix for the given event log using the given
+	 * alphabet and using a set of activities to ignore.
+	 * 
+	 * @param log
+	 *            The event log
+	 * @param alphabet
+	 *            The given alphabet
+	 * @param ignoreSet
+	 *            The activities to ignore
+	 * @param rootMatrix
+	 *            The matrix discovered earlier or the entire log
+	 * @param parallel
+	 *            Whether to count in parallel. The counts are the same either
+	 *            way.
+	 */
+	public ActivityMatrix(ActivityLog log, ActivityAlphabet alphabet, ActivitySet ignoreSet,
+			ActivityMatrix rootMatrix, boolean parallel) {
+		this(alphabet, count(log, 1, alphabet, new ActivitySet[] { ignoreSet }, getNoisyTraces(log, 1, rootMatrix),
+				parallel)[0]);
+	}
 
+	/*
+	 * Creates a matrix for the given alphabet from the given node counts and
+	 * edge counts (see Counts.create).
+	 */
+	ActivityMatrix(ActivityAlphabet alphabet, int[] nodeCounts, SparseEdgeCounts edgeCounts) {
+		this(alphabet, Counts.create(alphabet.size(), nodeCounts, edgeCounts));
+	}
+
+	/*
+	 * Creates an activity matrix from the given counts.
+	 */
+	private ActivityMatrix(ActivityAlphabet alphabet, Counts counts) {
 		// Register the alphabet.
 		this.alphabet = alphabet;
+		size = alphabet.size();
+		nodeCounts = counts.nodeCounts;
+		if (counts.sparseEdgeCounts == null) {
+			edgeCounts = counts.edgeCounts;
+			positive = counts.positive;
+		} else if (counts.sparseEdgeCounts.getNofEdges() >= SPARSEDENSITY * size * size) {
+			// Dense enough.
+			edgeCounts = new int[size * size];
+			positive = newBitSet(size * size);
+			counts.sparseEdgeCounts.toDense(edgeCounts, positive);
+		} else {
+			successors = new int[size][];
+			successorCounts = new int[size][];
+			successorPositive = new boolean[size][];
+			counts.sparseEdgeCounts.toRows(successors, successorCounts, successorPositive);
+		}
+	}
 
-		// Initialize the arrays.
-		edgeCounts = new int[alphabet.size()][alphabet.size()];
-		positive = new boolean[alphabet.size()][alphabet.size()];
-		nodeCounts = new int[alphabet.size()];
+	/**
+	 * Discovers an activity matrix for every given set of activities to ignore,
+	 * using the given alphabet. The activity log is walked only once for all
+	 * these matrices. Large activity logs are counted in parallel.
+	 * 
+	 * @param log
+	 *            The event log
+	 * @param alphabet
+	 *            The given alphabet
+	 * @param ignoreSets
+	 *            The sets of activities to ignore
+	 * @param rootMatrix
+	 *            The matrix discovered earlier or the entire log
+	 * @return The activity matrices, in the order of the sets of activities to
+	 *         ignore
+	 */
+	public static ActivityMatrix[] create(ActivityLog log, ActivityAlphabet alphabet, List<ActivitySet> ignoreSets,
+			ActivityMatrix rootMatrix) {
+		return create(log, alphabet, ignoreSets, getNoisyTraces(log, 1, rootMatrix));
+	}
 
-		for (int r = 0; r < alphabet.size(); r++) {
-			nodeCounts[r] = 0;
-			for (int c = 0; c < alphabet.size(); c++) {
-				positive[r][c] = false;
-				edgeCounts[r][c] = 0;
+	/*
+	 * Discovers an activity matrix for every given set of activities to ignore,
+	 * leaving out the given noisy traces (see getNoisyTraces).
+	 */
+	static ActivityMatrix[] create(ActivityLog log, ActivityAlphabet alphabet, List<ActivitySet> ignoreSets,
+			BitSet noisyTraces) {
+		Counts[] counts = count(log, 1, alphabet, ignoreSets.toArray(new ActivitySet[0]), noisyTraces,
+				log.size() >= PARALLELTHRESHOLD);
+		ActivityMatrix[] matrices = new ActivityMatrix[counts.length];
+		for (int m = 0; m < counts.length; m++) {
+			matrices[m] = new ActivityMatrix(alphabet, counts[m]);
+		}
+		return matrices;
+	}
+
+	/*
+	 * Counts the activity log from the given index (which should start a trace)
+	 * onwards for every given set of activities to ignore, leaving out the given
+	 * noisy traces.
+	 */
+	private static Counts[] count(ActivityLog log, int fromIdx, ActivityAlphabet alphabet, ActivitySet[] ignoreSets,
+			BitSet noisyTraces, boolean parallel) {
+		/*
+		 * For every activity, the (indices of the) sets that do not ignore it. This
+		 * replaces a membership test per set by a single lookup per activity.
+		 */
+		int[][] keptBy = new int[alphabet.size()][];
+		for (int a = 0; a < alphabet.size(); a++) {
+			int nofSets = 0;
+			int[] sets = new int[ignoreSets.length];
+			for (int m = 0; m < ignoreSets.length; m++) {
+				if (!ignoreSets[m].contains(a)) {
+					sets[nofSets++] = m;
+				}
 			}
+			keptBy[a] = Arrays.copyOf(sets, nofSets);
+		}
+		/*
+		 * Every chunk is counted into counts of its own, which take memory for every
+		 * set. Use at most one chunk per thread, and fewer if these counts would not
+		 * fit in memory.
+		 */
+		long nofChunks = Math.min(ForkJoinPool.getCommonPoolParallelism(),
+				(long) (PARALLELMEMORY * Runtime.getRuntime().maxMemory())
+						/ Math.max(1, ignoreSets.length * Counts.getMemory(alphabet.size())));
+		if (parallel && keptBy[0].length == ignoreSets.length && nofChunks > 1) {
+			/*
+			 * Every chunk starts with a new trace. As the start-end activity is not
+			 * ignored, the previous activity for such a trace is the start-end
+			 * activity, no matter what was counted before this trace.
+			 */
+			return ForkJoinPool.commonPool().invoke(new CountTask(log, fromIdx, log.size(), (int) nofChunks,
+					ignoreSets.length, alphabet.size(), keptBy, noisyTraces));
 		}
-		
-		// Get the index of the previous activity that was not ignored (and the one before that).
-		int lastIdx = 0;
-		// Do the counting.
+		Counts[] counts = Counts.create(ignoreSets.length, alphabet.size());
+		Counts.count(log, fromIdx, log.size(), keptBy, noisyTraces, counts);
+		return counts;
+	}
+
+	/*
+	 * Returns the traces from the given index (which should start a trace)
+	 * onwards that contain a DF pair that is filtered out in the given root
+	 * matrix, or that were filtered out. A trace is marked by the index of its
+	 * first activity. The log is walked once, and every matrix counted from it
+	 * can use the result.
+	 */
+	static BitSet getNoisyTraces(ActivityLog log, int fromIdx, ActivityMatrix rootMatrix) {
+		BitSet noisyTraces = new BitSet(log.size());
+		int startIdx = fromIdx;
 		boolean noise = false;
-		for (int idx = 1; idx < log.size(); idx++) {
-//			if (log.get(idx) < 0) {
-//				System.out.println("[ActivityMatrix] Foudn filtered-out trace at index " + idx);
-//			}
-			if (log.get(idx - 1) == 0) {
-				// Starts a new trace. 
-				noise = containsNoise(log, idx, rootMatrix);
-			}
-			if (noise) {
-				/*
-				 * Some DF pair was filtered out in the root matrix. As a
-				 * result, we assume that this trace contains some noise. Leave
-				 * it out completely.
-				 */
-				continue;
+		for (int idx = fromIdx; idx < log.size(); idx++) {
+			int activity = log.get(idx);
+			if (!noise) {
+				if (activity < 0) {
+					// Trace was filtered out, consider as noisy trace.
+					noise = true;
+				} else if (rootMatrix != null && rootMatrix.get(log.get(idx - 1), activity) < 0) {
+					// Found such a DF pair at the current index.
+					noise = true;
+				}
 			}
-			//			if (rootMatrix != null && rootMatrix.get(log.get(idx - 1), log.get(idx)) < 0) {
-			//				/*
-			//				 * This DF pair was filtered out of the root matrix. As a
-			//				 * result, we should not add a DF pair in this matrix.
-			//				 */
-			//				lastIdx = -1;
-			//			}
-			if (!ignoreSet.contains(log.get(idx))) {
-				// Not ignored. Count.
-				nodeCounts[log.get(idx)]++;
-				//				if (lastIdx >= 0) {
-
-				edgeCounts[log.get(lastIdx)][log.get(idx)]++;
-				if (log.isPos(idx)) {
-					// Trace classified positive. Mark this relation as such.
-					positive[log.get(lastIdx)][log.get(idx)] = true;
+			if (activity == 0) {
+				// End of trace.
+				if (noise) {
+					noisyTraces.set(startIdx);
 				}
-				//				}
-				lastIdx = idx;
+				startIdx = idx + 1;
+				noise = false;
 			}
 		}
+		return noisyTraces;
 	}
 
-	public ActivityMatrix(ActivityMatrix matrix) {
-		this.alphabet = matrix.alphabet;
-		edgeCounts = new int[alphabet.size()][alphabet.size()];
-		positive = new boolean[alphabet.size()][alphabet.size()];
-		nodeCounts = new int[alphabet.size()];
-		for (int i = 0; i < alphabet.size(); i++) {
-			nodeCounts[i] = matrix.nodeCounts[i];
-			for (int j = 0; j < alphabet.size(); j++) {
-				edgeCounts[i][j] = matrix.edgeCounts[i][j];
-				positive[i][j] = matrix.positive[i][j];
+	/**
+	 * Updates this matrix with the traces appended to the given activity log
+	 * (see ActivityLog.append), which start at the given index. If the alphabet
+	 * of the activity log has been extended, this matrix is extended as well.
+	 * If this matrix was filtered, the filters are applied again, but only to
+	 * the rows and columns that have changed.
+	 * 
+	 * @param log
+	 *            The activity log
+	 * @param fromIdx
+	 *            The index where the first appended trace starts
+	 * @param ignoreSet
+	 *            The activities to ignore
+	 * @param rootMatrix
+	 *            The matrix discovered earlier or the entire log (already
+	 *            updated)
+	 * @return Whether the filtering of an edge that was counted before has
+	 *         changed. If so, matrices that use this matrix as root matrix
+	 *         should be discovered anew, as traces counted before may have
+	 *         become noise (or vice versa)
+	 */
+	public boolean update(ActivityLog log, int fromIdx, ActivitySet ignoreSet, ActivityMatrix rootMatrix) {
+		grow(log.getAlphabet());
+		return add(count(log, fromIdx, alphabet, new ActivitySet[] { ignoreSet },
+				getNoisyTraces(log, fromIdx, rootMatrix), log.size() - fromIdx >= PARALLELTHRESHOLD)[0]);
+	}
+
+	/**
+	 * Updates the given matrices with the traces appended to the given activity
+	 * log (see ActivityLog.update), which start at the given index. The appended
+	 * traces are walked only once for all these matrices.
+	 * 
+	 * @param matrices
+	 *            The matrices, one for every set of activities to ignore
+	 * @param log
+	 *            The activity log
+	 * @param fromIdx
+	 *            The index where the first appended trace starts
+	 * @param ignoreSets
+	 *            The sets of activities to ignore
+	 * @param rootMatrix
+	 *            The matrix discovered earlier or the entire log (already
+	 *            updated)
+	 * @return Whether for any matrix the filtering of an edge that was counted
+	 *         before has changed
+	 */
+	public static boolean update(ActivityMatrix[] matrices, ActivityLog log, int fromIdx,
+			List<ActivitySet> ignoreSets, ActivityMatrix rootMatrix) {
+		return update(matrices, log, fromIdx, ignoreSets, getNoisyTraces(log, fromIdx, rootMatrix));
+	}
+
+	/*
+	 * Updates the given matrices with the traces appended to the given activity
+	 * log, leaving out the given noisy traces (see getNoisyTraces).
+	 */
+	static boolean update(ActivityMatrix[] matrices, ActivityLog log, int fromIdx, List<ActivitySet> ignoreSets,
+			BitSet noisyTraces) {
+		Counts[] counts = count(log, fromIdx, log.getAlphabet(), ignoreSets.toArray(new ActivitySet[0]),
+				noisyTraces, log.size() - fromIdx >= PARALLELTHRESHOLD);
+		boolean changed = false;
+		for (int m = 0; m < matrices.length; m++) {
+			matrices[m].grow(log.getAlphabet());
+			if (matrices[m].add(counts[m])) {
+				changed = true;
 			}
 		}
+		return changed;
 	}
 
 	/*
-	 * Return whether the current trace contains a DF pair that is filtered out
-	 * in the root matrix.
+	 * Extends this matrix to the given alphabet, which extends the alphabet of
+	 * this matrix.
 	 */
-	private boolean containsNoise(ActivityLog log, int idx, ActivityMatrix rootMatrix) {
-		if (log.get(idx) < 0) {
-			// Trace was filtered out, consider as noisy trace.
-			return true;
+	private void grow(ActivityAlphabet alphabet) {
+		int newSize = alphabet.size();
+		if (newSize > size) {
+			if (successors == null) {
+				int[] newEdgeCounts = new int[newSize * newSize];
+				long[] newPositive = newBitSet(newSize * newSize);
+				for (int fromIdx = 0; fromIdx < size; fromIdx++) {
+					System.arraycopy(edgeCounts, fromIdx * size, newEdgeCounts, fromIdx * newSize, size);
+					for (int toIdx = 0; toIdx < size; toIdx++) {
+						if (isPositive(fromIdx, toIdx)) {
+							int edge = fromIdx * newSize + toIdx;
+							newPositive[edge >>> 6] |= 1L << edge;
+						}
+					}
+				}
+				edgeCounts = newEdgeCounts;
+				positive = newPositive;
+			} else {
+				successors = Arrays.copyOf(successors, newSize);
+				successorCounts = Arrays.copyOf(successorCounts, newSize);
+				successorPositive = Arrays.copyOf(successorPositive, newSize);
+				for (int fromIdx = size; fromIdx < newSize; fromIdx++) {
+					successors[fromIdx] = new int[0];
+					successorCounts[fromIdx] = new int[0];
+					successorPositive[fromIdx] = new boolean[0];
+				}
+			}
+			nodeCounts = Arrays.copyOf(nodeCounts, newSize);
+			if (fromMax != null) {
+				fromMax = Arrays.copyOf(fromMax, newSize);
+				toMax = Arrays.copyOf(toMax, newSize);
+			}
+			allIndices = null;
+			size = newSize;
+			nofChanges++;
+		}
+		this.alphabet = alphabet;
+	}
+
+	/*
+	 * Adds the given counts to this matrix, and filters the rows and columns
+	 * that have changed again. Returns whether the filtering of an edge that was
+	 * counted before has changed.
+	 */
+	private boolean add(Counts counts) {
+		// Collect the edges that have changed.
+		int nofEdges = 0;
+		int[] edgeFrom = new int[16];
+		int[] edgeTo = new int[16];
+		int[] edgeCount = new int[16];
+		boolean[] edgePositive = new boolean[16];
+		if (counts.sparseEdgeCounts == null) {
+			for (int edge = 0; edge < counts.edgeCounts.length; edge++) {
+				if (counts.edgeCounts[edge] != 0) {
+					if (nofEdges == edgeFrom.length) {
+						edgeFrom = Arrays.copyOf(edgeFrom, 2 * nofEdges);
+						edgeTo = Arrays.copyOf(edgeTo, 2 * nofEdges);
+						edgeCount = Arrays.copyOf(edgeCount, 2 * nofEdges);
+						edgePositive = Arrays.copyOf(edgePositive, 2 * nofEdges);
+					}
+					edgeFrom[nofEdges] = edge / size;
+					edgeTo[nofEdges] = edge % size;
+					edgeCount[nofEdges] = counts.edgeCounts[edge];
+					edgePositive[nofEdges] = (counts.positive[edge >>> 6] & (1L << edge)) != 0;
+					nofEdges++;
+				}
+			}
+		} else {
+			int[][] rows = new int[size][];
+			int[][] rowCounts = new int[size][];
+			boolean[][] rowPositive = new boolean[size][];
+			counts.sparseEdgeCounts.toRows(rows, rowCounts, rowPositive);
+			nofEdges = counts.sparseEdgeCounts.getNofEdges();
+			edgeFrom = new int[nofEdges];
+			edgeTo = new int[nofEdges];
+			edgeCount = new int[nofEdges];
+			edgePositive = new boolean[nofEdges];
+			int e = 0;
+			for (int fromIdx = 0; fromIdx < size; fromIdx++) {
+				for (int i = 0; i < rows[fromIdx].length; i++) {
+					edgeFrom[e] = fromIdx;
+					edgeTo[e] = rows[fromIdx][i];
+					edgeCount[e] = rowCounts[fromIdx][i];
+					edgePositive[e] = rowPositive[fromIdx][i];
+					e++;
+				}
+			}
+		}
+		BitSet changedRows = new BitSet(size);
+		BitSet changedColumns = new BitSet(size);
+		for (int e = 0; e < nofEdges; e++) {
+			changedRows.set(edgeFrom[e]);
+			changedColumns.set(edgeTo[e]);
+		}
+		boolean isFiltered = absoluteThreshold >= 0 || relativeThreshold > 0;
+
+		/*
+		 * Remember which edges in the changed rows and columns were filtered out
+		 * before.
+		 */
+		Map<Long, Boolean> wasNoise = new HashMap<Long, Boolean>();
+		if (isFiltered) {
+			for (int fromIdx = changedRows.nextSetBit(0); fromIdx >= 0; fromIdx = changedRows
+					.nextSetBit(fromIdx + 1)) {
+				for (int toIdx : getColumns(fromIdx)) {
+					if (get(fromIdx, toIdx) != 0) {
+						wasNoise.put((long) fromIdx * size + toIdx, get(fromIdx, toIdx) < 0);
+					}
+				}
+			}
+			for (int toIdx = changedColumns.nextSetBit(0); toIdx >= 0; toIdx = changedColumns.nextSetBit(toIdx + 1)) {
+				for (int fromIdx = 0; fromIdx < size; fromIdx++) {
+					if (get(fromIdx, toIdx) != 0) {
+						wasNoise.put((long) fromIdx * size + toIdx, get(fromIdx, toIdx) < 0);
+					}
+				}
+			}
+		}
+
+		// Add the counts. An edge that was filtered out stays filtered out for now.
+		for (int idx = 0; idx < size; idx++) {
+			nodeCounts[idx] += counts.nodeCounts[idx];
+		}
+		for (int e = 0; e < nofEdges; e++) {
+			int count = get(edgeFrom[e], edgeTo[e]);
+			int newCount = Math.abs(count) + edgeCount[e];
+			set(edgeFrom[e], edgeTo[e], count < 0 ? -newCount : newCount, false);
+			if (edgePositive[e]) {
+				setPositive(edgeFrom[e], edgeTo[e]);
+			}
+			if (fromMax != null) {
+				// Counts only increase, so the maximal counts only increase.
+				fromMax[edgeFrom[e]] = Math.max(fromMax[edgeFrom[e]], newCount);
+				toMax[edgeTo[e]] = Math.max(toMax[edgeTo[e]], newCount);
+			}
 		}
-		if (rootMatrix == null) {
-			// No root matrix. Hence no such DF pair.
+		if (!isFiltered) {
 			return false;
 		}
-		if (rootMatrix.get(log.get(idx - 1), log.get(idx)) < 0) {
-			// Found such a DF pair at the current index.
-			return true;
+
+		/*
+		 * Filter the changed rows and columns again. Any other edge keeps its
+		 * count, its positive flag, and its maximal row and column counts, hence
+		 * its filtering.
+		 */
+		if (relativeThreshold > 0 && fromMax == null) {
+			computeMax();
 		}
-		if (log.get(idx) == 0) {
-			// End of trace. No such DF pair found for this trace.
+		boolean changed = false;
+		for (int fromIdx = changedRows.nextSetBit(0); fromIdx >= 0; fromIdx = changedRows.nextSetBit(fromIdx + 1)) {
+			for (int toIdx : getColumns(fromIdx)) {
+				changed = filter(fromIdx, toIdx, wasNoise) || changed;
+			}
+		}
+		for (int toIdx = changedColumns.nextSetBit(0); toIdx >= 0; toIdx = changedColumns.nextSetBit(toIdx + 1)) {
+			for (int fromIdx = 0; fromIdx < size; fromIdx++) {
+				changed = filter(fromIdx, toIdx, wasNoise) || changed;
+			}
+		}
+		return changed;
+	}
+
+	/*
+	 * Filters the given edge using the thresholds last used. Returns whether the
+	 * edge was counted before and its filtering has changed.
+	 */
+	private boolean filter(int fromIdx, int toIdx, Map<Long, Boolean> wasNoise) {
+		int count = Math.abs(get(fromIdx, toIdx));
+		if (count == 0) {
 			return false;
 		}
-		// Try next index.
-		return containsNoise(log, idx + 1, rootMatrix);
+		boolean isNoise = false;
+		if (!isPositive(fromIdx, toIdx) && !isKept(fromIdx, toIdx)) {
+			if (absoluteThreshold >= 0 && count <= absoluteThreshold) {
+				isNoise = true;
+			} else if (relativeThreshold > 0 && nodeCounts[fromIdx] != 0 && nodeCounts[toIdx] != 0
+					&& 100 * count < safetyThreshold * Math.min(fromMax[fromIdx], toMax[toIdx])
+					&& count * 100 <= Math.max(fromMax[fromIdx], toMax[toIdx]) * relativeThreshold) {
+				isNoise = true;
+			}
+		}
+		set(fromIdx, toIdx, isNoise ? -count : count, false);
+		Boolean noise = wasNoise.get((long) fromIdx * size + toIdx);
+		return noise != null && noise != isNoise;
+	}
+
+	/*
+	 * Computes the maximal (absolute) count for any row and any column.
+	 */
+	private void computeMax() {
+		fromMax = new int[size];
+		toMax = new int[size];
+		for (int fromIdx = 0; fromIdx < size; fromIdx++) {
+			for (int toIdx : getColumns(fromIdx)) {
+				fromMax[fromIdx] = Math.max(fromMax[fromIdx], Math.abs(get(fromIdx, toIdx)));
+				toMax[toIdx] = Math.max(toMax[toIdx], Math.abs(get(fromIdx, toIdx)));
+			}
+		}
+	}
+
+	/*
+	 * The (partial) counts for a range of the activity log.
+	 */
+	private static class Counts {
+
+		private int size;
+		private int[] edgeCounts;
+		private long[] positive;
+		private int[] nodeCounts;
+		/*
+		 * The edge counts and positive flags for a large alphabet. Null if the edge
+		 * counts and the positive flags are collected densely.
+		 */
+		private SparseEdgeCounts sparseEdgeCounts;
+
+		Counts(int size) {
+			this.size = size;
+			if (size < SPARSESIZE) {
+				edgeCounts = new int[size * size];
+				positive = newBitSet(size * size);
+			} else {
+				sparseEdgeCounts = new SparseEdgeCounts(size);
+			}
+			nodeCounts = new int[size];
+		}
+
+		/*
+		 * Returns an estimate of the memory (in bytes) taken by the counts for the
+		 * given size of the alphabet.
+		 */
+		static long getMemory(int size) {
+			if (size < SPARSESIZE) {
+				return 4L * size * size + size * size / 8 + 4L * size;
+			}
+			return 4L * size + 13 * 1024;
+		}
+
+		static Counts[] create(int nofSets, int size) {
+			Counts[] counts = new Counts[nofSets];
+			for (int m = 0; m < nofSets; m++) {
+				counts[m] = new Counts(size);
+			}
+			return counts;
+		}
+
+		/*
+		 * Creates the counts from the given node counts and edge counts, which
+		 * are not copied.
+		 */
+		static Counts create(int size, int[] nodeCounts, SparseEdgeCounts edgeCounts) {
+			Counts counts = new Counts(size);
+			counts.nodeCounts = nodeCounts;
+			if (counts.sparseEdgeCounts != null) {
+				counts.sparseEdgeCounts = edgeCounts;
+			} else {
+				edgeCounts.toDense(counts.edgeCounts, counts.positive);
+			}
+			return counts;
+		}
+
+		/*
+		 * Counts the indices from the given index (which should start a trace) up
+		 * to the given index (which should start a trace or be the size of the
+		 * log), for all sets at once, leaving out the given noisy traces.
+		 */
+		static void count(ActivityLog log, int fromIdx, int toIdx, int[][] keptBy, BitSet noisyTraces,
+				Counts[] counts) {
+			// For every set, the previous activity that was not ignored.
+			int[] lastActivity = new int[counts.length];
+			Arrays.fill(lastActivity, log.get(fromIdx - 1));
+			// Do the counting.
+			boolean noise = false;
+			// The number of traces the current trace represents.
+			int multiplicity = 1;
+			for (int idx = fromIdx; idx < toIdx; idx++) {
+				if (log.get(idx - 1) == 0) {
+					// Starts a new trace. 
+					noise = noisyTraces.get(idx);
+					multiplicity = log.getMultiplicity(idx);
+				}
+				if (noise) {
+					/*
+					 * Some DF pair was filtered out in the root matrix. As a
+					 * result, we assume that this trace contains some noise. Leave
+					 * it out completely.
+					 */
+					continue;
+				}
+				int activity = log.get(idx);
+				boolean isPos = log.isPos(idx);
+				for (int m : keptBy[activity]) {
+					// Not ignored. Count.
+					Counts setCounts = counts[m];
+					setCounts.nodeCounts[activity] += multiplicity;
+					if (setCounts.sparseEdgeCounts != null) {
+						setCounts.sparseEdgeCounts.add(lastActivity[m], activity, multiplicity, isPos);
+					} else {
+						int edge = lastActivity[m] * setCounts.size + activity;
+						setCounts.edgeCounts[edge] += multiplicity;
+						if (isPos) {
+							// Trace classified positive. Mark this relation as such.
+							setCounts.positive[edge >>> 6] |= 1L << edge;
+						}
+					}
+					lastActivity[m] = activity;
+				}
+			}
+		}
+
+		/*
+		 * Adds the given counts to these counts.
+		 */
+		void add(Counts counts) {
+			for (int i = 0; i < nodeCounts.length; i++) {
+				nodeCounts[i] += counts.nodeCounts[i];
+			}
+			if (sparseEdgeCounts != null) {
+				sparseEdgeCounts.add(counts.sparseEdgeCounts);
+				return;
+			}
+			for (int i = 0; i < edgeCounts.length; i++) {
+				edgeCounts[i] += counts.edgeCounts[i];
+			}
+			for (int i = 0; i < positive.length; i++) {
+				positive[i] |= counts.positive[i];
+			}
+		}
+	}
+
+	/*
+	 * Counts a range of the activity log for all sets, splitting it on trace
+	 * boundaries into the given number of chunks. Every chunk is counted into
+	 * counts of its own, so the number of chunks bounds the memory taken.
+	 */
+	private static class CountTask extends RecursiveTask<Counts[]> {
+
+		private static final long serialVersionUID = 2384935183052796473L;
+
+		private ActivityLog log;
+		private int fromIdx;
+		private int toIdx;
+		private int nofChunks;
+		private int nofSets;
+		private int alphabetSize;
+		private int[][] keptBy;
+		private BitSet noisyTraces;
+
+		CountTask(ActivityLog log, int fromIdx, int toIdx, int nofChunks, int nofSets, int alphabetSize,
+				int[][] keptBy, BitSet noisyTraces) {
+			this.log = log;
+			this.fromIdx = fromIdx;
+			this.toIdx = toIdx;
+			this.nofChunks = nofChunks;
+			this.nofSets = nofSets;
+			this.alphabetSize = alphabetSize;
+			this.keptBy = keptBy;
+			this.noisyTraces = noisyTraces;
+		}
+
+		protected Counts[] compute() {
+			if (nofChunks > 1) {
+				/*
+				 * Split at the first trace that starts at or after the point that divides
+				 * the chunks over both halves.
+				 */
+				int nofLeftChunks = nofChunks / 2;
+				int midIdx = Math.max(fromIdx + 1,
+						fromIdx + (int) ((long) (toIdx - fromIdx) * nofLeftChunks / nofChunks));
+				while (midIdx < toIdx && log.get(midIdx - 1) != 0) {
+					midIdx++;
+				}
+				if (midIdx < toIdx) {
+					CountTask right = new CountTask(log, midIdx, toIdx, nofChunks - nofLeftChunks, nofSets,
+							alphabetSize, keptBy, noisyTraces);
+					right.fork();
+					Counts[] counts = new CountTask(log, fromIdx, midIdx, nofLeftChunks, nofSets, alphabetSize,
+							keptBy, noisyTraces).compute();
+					Counts[] rightCounts = right.join();
+					for (int m = 0; m < counts.length; m++) {
+						counts[m].add(rightCounts[m]);
+					}
+					return counts;
+				}
+			}
+			Counts[] counts = Counts.create(nofSets, alphabetSize);
+			Counts.count(log, fromIdx, toIdx, keptBy, noisyTraces, counts);
+			return counts;
+		}
+	}
+
+	public ActivityMatrix(ActivityMatrix matrix) {
+		this.alphabet = matrix.alphabet;
+		size = matrix.size;
+		absoluteThreshold = matrix.absoluteThreshold;
+		relativeThreshold = matrix.relativeThreshold;
+		safetyThreshold = matrix.safetyThreshold;
+		if (matrix.fromMax != null) {
+			fromMax = matrix.fromMax.clone();
+			toMax = matrix.toMax.clone();
+		}
+		if (matrix.keptEdges != null) {
+			keptEdges = new HashSet<Long>(matrix.keptEdges);
+		}
+		nodeCounts = matrix.nodeCounts.clone();
+		if (matrix.successors == null) {
+			edgeCounts = matrix.edgeCounts.clone();
+			positive = matrix.positive.clone();
+		} else {
+			successors = new int[size][];
+			successorCounts = new int[size][];
+			successorPositive = new boolean[size][];
+			for (int fromIdx = 0; fromIdx < size; fromIdx++) {
+				successors[fromIdx] = matrix.successors[fromIdx].clone();
+				successorCounts[fromIdx] = matrix.successorCounts[fromIdx].clone();
+				successorPositive[fromIdx] = matrix.successorPositive[fromIdx].clone();
+			}
+		}
+	}
+
+	/**
+	 * Returns whether this matrix is stored sparsely, that is, whether only the
+	 * edges with a non-zero count are stored.
+	 * 
+	 * @return Whether this matrix is stored sparsely
+	 */
+	public boolean isSparse() {
+		return successors != null;
+	}
+
+	/*
+	 * Returns the number of changes made to this matrix.
+	 */
+	int getNofChanges() {
+		return nofChanges;
+	}
+
+	/*
+	 * Returns the indices to check in the given row: All indices if stored
+	 * densely, only the indices of the stored edges if stored sparsely. The
+	 * returned array should not be changed.
+	 */
+	int[] getColumns(int fromIdx) {
+		if (successors != null) {
+			return successors[fromIdx];
+		}
+		int[] indices = allIndices;
+		if (indices == null) {
+			// Fill before publishing, as rows may be read from several threads.
+			indices = new int[size];
+			for (int idx = 0; idx < size; idx++) {
+				indices[idx] = idx;
+			}
+			allIndices = indices;
+		}
+		return indices;
+	}
+
+	/*
+	 * Returns a bitset for the given number of bits.
+	 */
+	private static long[] newBitSet(int nofBits) {
+		return new long[(nofBits + 63) >>> 6];
+	}
+
+	/*
+	 * Returns whether the DF relation from the first index to the second index
+	 * occurs in a trace that is classified as a positive trace.
+	 */
+	private boolean isPositive(int fromIdx, int toIdx) {
+		if (successors != null) {
+			int i = Arrays.binarySearch(successors[fromIdx], toIdx);
+			return i >= 0 && successorPositive[fromIdx][i];
+		}
+		int edge = fromIdx * size + toIdx;
+		return (positive[edge >>> 6] & (1L << edge)) != 0;
 	}
 
 	public boolean equals(Object o) {
@@ -176,12 +882,21 @@ public class ActivityMatrix {
 			if (!alphabet.equals(matrix.alphabet)) {
 				return false;
 			}
-			for (int i = 0; i < alphabet.size(); i++) {
-				if (nodeCounts[i] != matrix.nodeCounts[i]) {
-					return false;
+			if (!Arrays.equals(nodeCounts, matrix.nodeCounts)) {
+				return false;
+			}
+			if (successors == null && matrix.successors == null) {
+				return Arrays.equals(edgeCounts, matrix.edgeCounts);
+			}
+			// At least one is stored sparsely. Compare the edges stored by either.
+			for (int fromIdx = 0; fromIdx < size; fromIdx++) {
+				for (int toIdx : getColumns(fromIdx)) {
+					if (get(fromIdx, toIdx) != matrix.get(fromIdx, toIdx)) {
+						return false;
+					}
 				}
-				for (int j = 0; j < alphabet.size(); j++) {
-					if (edgeCounts[i][j] != matrix.edgeCounts[i][j]) {
+				for (int toIdx : matrix.getColumns(fromIdx)) {
+					if (get(fromIdx, toIdx) != matrix.get(fromIdx, toIdx)) {
 						return false;
 					}
 				}
@@ -191,6 +906,24 @@ public class ActivityMatrix {
 		return false;
 	}
 
+	public int hashCode() {
+		/*
+		 * Consistent with equals: only the positive and negative edges count, in
+		 * any order, so that a sparse and a dense matrix with the same counts have
+		 * the same hash code.
+		 */
+		int hashCode = Arrays.hashCode(nodeCounts);
+		for (int fromIdx = 0; fromIdx < size; fromIdx++) {
+			for (int toIdx : getColumns(fromIdx)) {
+				int count = get(fromIdx, toIdx);
+				if (count != 0) {
+					hashCode += (31 * (fromIdx * size + toIdx)) ^ count;
+				}
+			}
+		}
+		return hashCode;
+	}
+
 	/**
 	 * Returns how often the first index was directly followed by the second
 	 * index in the activity log.
@@ -203,20 +936,102 @@ public class ActivityMatrix {
 	 *         index in the activity log
 	 */
 	public int get(int fromIdx, int toIdx) {
-		return edgeCounts[fromIdx][toIdx];
+		if (successors != null) {
+			int i = Arrays.binarySearch(successors[fromIdx], toIdx);
+			return i < 0 ? 0 : successorCounts[fromIdx][i];
+		}
+		return edgeCounts[fromIdx * size + toIdx];
 	}
 
 	public void set(int fromIdx, int toIdx) {
-		edgeCounts[fromIdx][toIdx] = Math.abs(edgeCounts[fromIdx][toIdx]);
+		set(fromIdx, toIdx, Math.abs(get(fromIdx, toIdx)));
 	}
 
 	public void set(int fromIdx, int toIdx, int value) {
-		if (value != edgeCounts[fromIdx][toIdx]) {
+		if (value > 0 && get(fromIdx, toIdx) < 0) {
+			// Filtered out, but set back. Keep it that way.
+			if (keptEdges == null) {
+				keptEdges = new HashSet<Long>();
+			}
+			keptEdges.add(getKey(fromIdx, toIdx));
+		} else if (value < 0 && keptEdges != null) {
+			keptEdges.remove(getKey(fromIdx, toIdx));
+		}
+		set(fromIdx, toIdx, value, true);
+	}
+
+	/*
+	 * Returns whether the given edge was set back explicitly after it was
+	 * filtered out.
+	 */
+	private boolean isKept(int fromIdx, int toIdx) {
+		return keptEdges != null && keptEdges.contains(getKey(fromIdx, toIdx));
+	}
+
+	/*
+	 * Returns the key for the given edge in the kept edges. Unlike the index in
+	 * the edge counts, this key does not change if the matrix grows.
+	 */
+	private static long getKey(int fromIdx, int toIdx) {
+		return (long) fromIdx << 32 | toIdx;
+	}
+
+	/*
+	 * Sets the count of the given edge. If the maximal counts may be affected,
+	 * they are discarded, unless told otherwise.
+	 */
+	private void set(int fromIdx, int toIdx, int value, boolean discardMax) {
+		if (value != get(fromIdx, toIdx)) {
+			nofChanges++;
+			if (discardMax && Math.abs(value) != Math.abs(get(fromIdx, toIdx))) {
+				fromMax = null;
+				toMax = null;
+			}
 			//			nodeCounts[fromIdx] += (value - edgeCounts[fromIdx][toIdx]);
-			edgeCounts[fromIdx][toIdx] = value;
+			if (successors == null) {
+				edgeCounts[fromIdx * size + toIdx] = value;
+				return;
+			}
+			int i = Arrays.binarySearch(successors[fromIdx], toIdx);
+			if (i < 0) {
+				// New edge. Insert it into the row.
+				i = -i - 1;
+				successors[fromIdx] = insert(successors[fromIdx], i, toIdx);
+				successorCounts[fromIdx] = insert(successorCounts[fromIdx], i, 0);
+				boolean[] rowPositive = new boolean[successorPositive[fromIdx].length + 1];
+				System.arraycopy(successorPositive[fromIdx], 0, rowPositive, 0, i);
+				System.arraycopy(successorPositive[fromIdx], i, rowPositive, i + 1, rowPositive.length - i - 1);
+				successorPositive[fromIdx] = rowPositive;
+			}
+			successorCounts[fromIdx][i] = value;
+		}
+	}
+
+	/*
+	 * Marks the given edge as part of a trace classified positive.
+	 */
+	private void setPositive(int fromIdx, int toIdx) {
+		if (successors == null) {
+			int edge = fromIdx * size + toIdx;
+			positive[edge >>> 6] |= 1L << edge;
+		} else {
+			// The edge has been set before, so it is stored.
+			successorPositive[fromIdx][Arrays.binarySearch(successors[fromIdx], toIdx)] = true;
 		}
 	}
 
+	/*
+	 * Returns a copy of the given row with the given value inserted at the given
+	 * position.
+	 */
+	private static int[] insert(int[] row, int i, int value) {
+		int[] newRow = new int[row.length + 1];
+		System.arraycopy(row, 0, newRow, 0, i);
+		newRow[i] = value;
+		System.arraycopy(row, i, newRow, i + 1, row.length - i);
+		return newRow;
+	}
+
 	/**
 	 * Returns how often the index occurred in the activity log.
 	 * 
@@ -277,12 +1092,12 @@ public class ActivityMatrix {
 		}
 		// Add all edges
 		for (int fromIdx = 0; fromIdx < alphabet.size(); fromIdx++) {
-			for (int toIdx = 0; toIdx < alphabet.size(); toIdx++) {
-				if (nodeCounts[fromIdx] > 0 && nodeCounts[toIdx] > 0 && edgeCounts[fromIdx][toIdx] > 0) {
+			for (int toIdx : getColumns(fromIdx)) {
+				if (nodeCounts[fromIdx] > 0 && nodeCounts[toIdx] > 0 && get(fromIdx, toIdx) > 0) {
 					DotEdge dotEdge = dotGraph.addEdge(fromIdx == 0 ? startNode : map.get(fromIdx),
 							toIdx == 0 ? endNode : map.get(toIdx));
-					dotEdge.setLabel("" + edgeCounts[fromIdx][toIdx]);
-					if (fromIdx != 0 && toIdx != 0 && edgeCounts[toIdx][fromIdx] > 0) {
+					dotEdge.setLabel("" + get(fromIdx, toIdx));
+					if (fromIdx != 0 && toIdx != 0 && get(toIdx, fromIdx) > 0) {
 						dotEdge.setOption("color", "red");
 						map.get(fromIdx).setOption("color", "red");
 					} else {
@@ -325,7 +1140,8 @@ public class ActivityMatrix {
 
 	/**
 	 * Returns a mapping that maps every activity onto the set of activities
-	 * that can directly-follow that activity.
+	 * that can directly-follow that activity. Equal sets are the same set, which
+	 * should not be changed.
 	 * 
 	 * @return A mapping that maps every activity onto the set of activities
 	 *         that can directly-follow that activity
@@ -337,22 +1153,24 @@ public class ActivityMatrix {
 				continue;
 			}
 			ActivitySet activities = new ActivitySet("To", alphabet);
-			for (int toIdx = 0; toIdx < alphabet.size(); toIdx++) {
+			for (int toIdx : getColumns(fromIdx)) {
 				if (nodeCounts[toIdx] == 0) {
 					continue;
 				}
-				if (edgeCounts[fromIdx][toIdx] > 0) {
+				if (get(fromIdx, toIdx) > 0) {
 					activities.add(toIdx);
 				}
 			}
 			nextActivities.put(fromIdx, activities);
 		}
+		intern(nextActivities);
 		return nextActivities;
 	}
 
 	/**
 	 * Returns a mapping that maps every activity onto the set of activities
-	 * that can directly-precede that activity.
+	 * that can directly-precede that activity. Equal sets are the same set, which
+	 * should not be changed.
 	 * 
 	 * @return A mapping that maps every activity onto the set of activities
 	 *         that can directly-precede that activity
@@ -363,31 +1181,93 @@ public class ActivityMatrix {
 			if (nodeCounts[toIdx] == 0) {
 				continue;
 			}
-			ActivitySet activities = new ActivitySet("From", alphabet);
-			for (int fromIdx = 0; fromIdx < alphabet.size(); fromIdx++) {
-				if (nodeCounts[fromIdx] == 0) {
+			previousActivities.put(toIdx, new ActivitySet("From", alphabet));
+		}
+		// Walk the rows, as only these can be stored sparsely.
+		for (int fromIdx = 0; fromIdx < alphabet.size(); fromIdx++) {
+			if (nodeCounts[fromIdx] == 0) {
+				continue;
+			}
+			for (int toIdx : getColumns(fromIdx)) {
+				if (nodeCounts[toIdx] == 0) {
 					continue;
 				}
-				if (edgeCounts[fromIdx][toIdx] > 0) {
-					activities.add(fromIdx);
+				if (get(fromIdx, toIdx) > 0) {
+					previousActivities.get(toIdx).add(fromIdx);
 				}
 			}
-			previousActivities.put(toIdx, activities);
 		}
+		intern(previousActivities);
 		return previousActivities;
 	}
 
+	/*
+	 * Replaces equal sets in the given mapping by the same set, so that every
+	 * distinct set (that is, every place) exists only once.
+	 */
+	private static void intern(Map<Integer, ActivitySet> sets) {
+		Map<ActivitySet, ActivitySet> pool = new HashMap<ActivitySet, ActivitySet>();
+		for (Map.Entry<Integer, ActivitySet> entry : sets.entrySet()) {
+			entry.setValue(entry.getValue().intern(pool));
+		}
+	}
+
+	/*
+	 * Removes the counts of the trace between the given start-end activities,
+	 * as counted for the given activities to ignore. The trace may have been
+	 * filtered out already. Returns whether some edge count has dropped to 0.
+	 */
+	boolean uncount(ActivityLog log, int startIdx, int endIdx, ActivitySet ignoreSet) {
+		boolean zeroed = false;
+		int multiplicity = log.getMultiplicity(startIdx + 1);
+		int lastActivity = 0;
+		for (int idx = startIdx + 1; idx <= endIdx; idx++) {
+			int activity = Math.abs(log.get(idx));
+			if (ignoreSet.contains(activity)) {
+				continue;
+			}
+			nodeCounts[activity] -= multiplicity;
+			int count = get(lastActivity, activity);
+			int newCount = Math.abs(count) - multiplicity;
+			set(lastActivity, activity, count < 0 ? -newCount : newCount);
+			zeroed = zeroed || newCount == 0;
+			lastActivity = activity;
+		}
+		return zeroed;
+	}
+
 	/**
 	 * Restores the matrix from any filtering.
 	 */
 	public void restore() {
-		for (int fromIdx = 0; fromIdx < alphabet.size(); fromIdx++) {
-			for (int toIdx = 0; toIdx < alphabet.size(); toIdx++) {
-				if (edgeCounts[fromIdx][toIdx] < 0) {
-					set(fromIdx, toIdx, -edgeCounts[fromIdx][toIdx]);
+		absoluteThreshold = -1;
+		relativeThreshold = 0;
+		/*
+		 * Only the signs change, so the maximal counts remain valid, and no edge
+		 * needs to be kept.
+		 */
+		boolean changed = false;
+		if (successors == null) {
+			for (int edge = 0; edge < edgeCounts.length; edge++) {
+				if (edgeCounts[edge] < 0) {
+					edgeCounts[edge] = -edgeCounts[edge];
+					changed = true;
 				}
 			}
+		} else {
+			for (int[] rowCounts : successorCounts) {
+				for (int i = 0; i < rowCounts.length; i++) {
+					if (rowCounts[i] < 0) {
+						rowCounts[i] = -rowCounts[i];
+						changed = true;
+					}
+				}
+			}
+		}
+		if (changed) {
+			nofChanges++;
 		}
+		keptEdges = null;
 	}
 
 	/**
@@ -398,15 +1278,16 @@ public class ActivityMatrix {
 	 *            The given absolute threshold
 	 */
 	public void filterAbsolute(int threshold) {
+		absoluteThreshold = threshold;
 		for (int fromIdx = 0; fromIdx < alphabet.size(); fromIdx++) {
-			for (int toIdx = 0; toIdx < alphabet.size(); toIdx++) {
-				if (edgeCounts[fromIdx][toIdx] <= 0 || positive[fromIdx][toIdx]) {
+			for (int toIdx : getColumns(fromIdx)) {
+				if (get(fromIdx, toIdx) <= 0 || isPositive(fromIdx, toIdx)) {
 					// Either already classified as noise, or part of a trace classified positive. 
 					continue;
 				}
-				if (edgeCounts[fromIdx][toIdx] <= threshold) {
+				if (get(fromIdx, toIdx) <= threshold) {
 					// Classify as noise.
-					set(fromIdx, toIdx, -edgeCounts[fromIdx][toIdx]);
+					set(fromIdx, toIdx, -get(fromIdx, toIdx));
 				}
 			}
 		}
@@ -425,41 +1306,34 @@ public class ActivityMatrix {
 		if (relativeThreshold == 0) {
 			return;
 		}
+		this.relativeThreshold = relativeThreshold;
+		this.safetyThreshold = safetyThreshold;
 
 		// Arrays to hold the maximal values for any row (from) and any column (to).
-		int fromMax[] = new int[alphabet.size()];
-		int toMax[] = new int[alphabet.size()];
-
-		// Initialize these arrays.
-		for (int fromIdx = 0; fromIdx < alphabet.size(); fromIdx++) {
-			for (int toIdx = 0; toIdx < alphabet.size(); toIdx++) {
-				fromMax[fromIdx] = Math.max(fromMax[fromIdx], Math.abs(edgeCounts[fromIdx][toIdx]));
-				toMax[toIdx] = Math.max(toMax[toIdx], Math.abs(edgeCounts[fromIdx][toIdx]));
-			}
-		}
+		computeMax();
 
 		// Any count that does not exceed at least threshold percent of the lowest maximal value (row or column) is filtered out.
 		for (int fromIdx = 0; fromIdx < alphabet.size(); fromIdx++) {
 			if (nodeCounts[fromIdx] == 0) {
 				continue;
 			}
-			for (int toIdx = 0; toIdx < alphabet.size(); toIdx++) {
+			for (int toIdx : getColumns(fromIdx)) {
 				if (nodeCounts[toIdx] == 0) {
 					continue;
 				}
-				if (edgeCounts[fromIdx][toIdx] <= 0 || positive[fromIdx][toIdx]) {
+				if (get(fromIdx, toIdx) <= 0 || isPositive(fromIdx, toIdx)) {
 					// Either already classified as noise, or part of a trace classified positive. 
 					continue;
 				}
-				if (100 * edgeCounts[fromIdx][toIdx] >= safetyThreshold * Math.min(fromMax[fromIdx], toMax[toIdx])) {
+				if (100 * get(fromIdx, toIdx) >= safetyThreshold * Math.min(fromMax[fromIdx], toMax[toIdx])) {
 					continue;
 				}
 				//				if (((edgeCounts[fromIdx][toIdx] < fromMax[fromIdx] && 1000 * fromMax[fromIdx]
 				//								* edgeCounts[fromIdx][toIdx] < threshold * (fromMax[fromIdx] + edgeCounts[fromIdx][toIdx]) * (fromMax[fromIdx] + edgeCounts[fromIdx][toIdx]))
 				//						|| (edgeCounts[fromIdx][toIdx] < toMax[toIdx] && 1000 * toMax[toIdx]
 				//								* edgeCounts[fromIdx][toIdx] < threshold * (toMax[toIdx] + edgeCounts[fromIdx][toIdx]) * (toMax[toIdx] + edgeCounts[fromIdx][toIdx])))) {
-				if (edgeCounts[fromIdx][toIdx] * 100 <= Math.max(fromMax[fromIdx], toMax[toIdx]) * relativeThreshold) {
-					set(fromIdx, toIdx, -edgeCounts[fromIdx][toIdx]);
+				if (get(fromIdx, toIdx) * 100 <= Math.max(fromMax[fromIdx], toMax[toIdx]) * relativeThreshold) {
+					set(fromIdx, toIdx, -get(fromIdx, toIdx));
 				}
 			}
 		}
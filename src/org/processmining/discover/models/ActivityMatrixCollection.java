@@ -2,6 +2,7 @@ package org.processmining.discover.models;
 
 import java.awt.Component;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -13,11 +14,7 @@ import javax.swing.JPanel;
 import javax.swing.SwingConstants;
 
 import org.processmining.discover.parameters.DiscoverPetriNetParameters;
-import org.processmining.lpengines.factories.LPEngineFactory;
-import org.processmining.lpengines.interfaces.LPEngine;
-import org.processmining.lpengines.interfaces.LPEngine.EngineType;
-import org.processmining.lpengines.interfaces.LPEngine.ObjectiveTargetType;
-import org.processmining.lpengines.interfaces.LPEngine.Operator;
+import org.processmining.framework.plugin.Progress;
 import org.processmining.plugins.graphviz.dot.Dot;
 import org.processmining.plugins.graphviz.dot.DotNode;
 import org.processmining.plugins.graphviz.visualisation.DotPanel;
@@ -39,6 +36,19 @@ public class ActivityMatrixCollection {
 	 */
 	private int size;
 
+	/*
+	 * The traces (see ActivityMatrix.getNoisyTraces) that are not counted by the
+	 * matrices, for the given activity log and root matrix, as they were after
+	 * the given numbers of changes. Kept up to date while filtering and
+	 * updating, so that the log is checked for noise only once. If the log or
+	 * the root matrix has been changed otherwise, they are computed anew.
+	 */
+	private BitSet noisyTraces;
+	private ActivityLog noisyLog;
+	private int noisyLogChanges;
+	private ActivityMatrix noisyRootMatrix;
+	private int noisyRootMatrixChanges;
+
 	/**
 	 * Discovers the matrices for the given activity log using the given alphabet
 	 * and the given sets of activities to ignore. For every set of activities to
@@ -56,24 +66,116 @@ public class ActivityMatrixCollection {
 
 	public ActivityMatrixCollection(ActivityLog log, ActivityAlphabet alphabet, ActivitySets ignoreSets,
 			ActivityMatrix rootMatrix, DiscoverPetriNetParameters parameters) {
+		this(log, alphabet, ignoreSets, rootMatrix, parameters, null);
+	}
+
+	/**
+	 * Discovers the matrices like the other constructors, where selecting the
+	 * matrices to keep can be cancelled through the given progress.
+	 * 
+	 * @param log        The activity log
+	 * @param alphabet   The given alphabet
+	 * @param ignoreSets THe given activity sets to ignore
+	 * @param rootMatrix The matrix discovered earlier or the entire log
+	 * @param parameters The parameters
+	 * @param progress   The given progress, may be null
+	 */
+	public ActivityMatrixCollection(ActivityLog log, ActivityAlphabet alphabet, ActivitySets ignoreSets,
+			ActivityMatrix rootMatrix, DiscoverPetriNetParameters parameters, Progress progress) {
 		this.size = ignoreSets.size();
-		this.alphabet = new ActivityAlphabet(alphabet);
-		this.matrices = new ActivityMatrix[size];
-		for (int idx = 0; idx < size; idx++) {
-			this.matrices[idx] = new ActivityMatrix(log, alphabet, ignoreSets.get(idx), rootMatrix);
-		}
+		this.alphabet = alphabet;
+		this.matrices = ActivityMatrix.create(log, alphabet, ignoreSets, getNoisyTraces(log, rootMatrix));
 //		if (parameters.getNofSComponents() > 0) {
-		reduce(parameters);
+		reduce(parameters, progress);
 //		}
 	}
 
 	public ActivityMatrixCollection(ActivityMatrixCollection matrices) {
 		this.size = matrices.size;
-		this.alphabet = new ActivityAlphabet(matrices.alphabet);
+		this.alphabet = matrices.alphabet;
 		this.matrices = new ActivityMatrix[size];
 		for (int i = 0; i < size; i++) {
 			this.matrices[i] = new ActivityMatrix(matrices.get(i));
 		}
+		if (matrices.noisyTraces != null) {
+			this.noisyTraces = (BitSet) matrices.noisyTraces.clone();
+			this.noisyLog = matrices.noisyLog;
+			this.noisyLogChanges = matrices.noisyLogChanges;
+			this.noisyRootMatrix = matrices.noisyRootMatrix;
+			this.noisyRootMatrixChanges = matrices.noisyRootMatrixChanges;
+		}
+	}
+
+	/*
+	 * Returns the noisy traces for the given activity log and root matrix. These
+	 * are computed only if not known yet.
+	 */
+	private BitSet getNoisyTraces(ActivityLog log, ActivityMatrix rootMatrix) {
+		if (!isNoisyTracesKnown(log, rootMatrix)) {
+			noisyTraces = ActivityMatrix.getNoisyTraces(log, 1, rootMatrix);
+			noisyLog = log;
+			noisyRootMatrix = rootMatrix;
+			setNoisyTracesKnown();
+		}
+		return noisyTraces;
+	}
+
+	/*
+	 * Returns whether the noisy traces are known for the given activity log and
+	 * root matrix as they are now.
+	 */
+	private boolean isNoisyTracesKnown(ActivityLog log, ActivityMatrix rootMatrix) {
+		return noisyTraces != null && noisyLog == log && noisyLogChanges == log.getNofChanges()
+				&& noisyRootMatrix == rootMatrix
+				&& (rootMatrix == null || noisyRootMatrixChanges == rootMatrix.getNofChanges());
+	}
+
+	/*
+	 * Registers that the noisy traces are up to date with the changes made to
+	 * their activity log and root matrix so far.
+	 */
+	private void setNoisyTracesKnown() {
+		noisyLogChanges = noisyLog.getNofChanges();
+		noisyRootMatrixChanges = (noisyRootMatrix == null ? 0 : noisyRootMatrix.getNofChanges());
+	}
+
+	/**
+	 * Updates the matrices with the traces appended to the given activity log
+	 * (see ActivityLog.append), which start at the given index. The appended
+	 * traces are counted only once for all matrices, and every matrix filters
+	 * only its changed rows and columns again. Reductions done on the collection
+	 * (like the vetoed noise and the ILP reduction) are not done again.
+	 *
+	 * @param log        The activity log
+	 * @param fromIdx    The index where the first appended trace starts
+	 * @param ignoreSets The given activity sets to ignore
+	 * @param rootMatrix The matrix discovered earlier or the entire log (already
+	 *                   updated)
+	 * @param recount    Whether to discover all matrices anew, for example as
+	 *                   updating the root matrix has changed its filtering
+	 */
+	public void update(ActivityLog log, int fromIdx, ActivitySets ignoreSets, ActivityMatrix rootMatrix,
+			boolean recount) {
+		this.alphabet = log.getAlphabet();
+		if (recount) {
+			noisyTraces = null;
+			matrices = ActivityMatrix.create(log, log.getAlphabet(), ignoreSets, getNoisyTraces(log, rootMatrix));
+		} else {
+			BitSet appendedNoisyTraces = ActivityMatrix.getNoisyTraces(log, fromIdx, rootMatrix);
+			if (noisyTraces != null && noisyLog == log && noisyLogChanges == log.getNofChanges() - 1
+					&& noisyRootMatrix == rootMatrix) {
+				/*
+				 * The only change to the log since is the append. The root matrix has been
+				 * updated with it, without changing the filtering of the traces counted
+				 * before (otherwise, recount should be set).
+				 */
+				noisyTraces.or(appendedNoisyTraces);
+				setNoisyTracesKnown();
+			} else {
+				noisyTraces = null;
+			}
+			ActivityMatrix.update(matrices, log, fromIdx, ignoreSets, appendedNoisyTraces);
+		}
 	}
 
 	public boolean equals(Object o) {
@@ -180,117 +282,50 @@ public class ActivityMatrixCollection {
 		}
 	}
 
-	private void reduce(DiscoverPetriNetParameters parameters) {
+	private void reduce(DiscoverPetriNetParameters parameters, Progress progress) {
 		List<ActivityMatrix> selected = new ArrayList<ActivityMatrix>();
 		List<ActivitySet> activitySets = new ArrayList<ActivitySet>();
 
 		if (parameters.isUseILP2()) {
-			LPEngine engine = LPEngineFactory.createLPEngine(EngineType.LPSOLVE, 0, 0);
-			Map<Integer, Double> objective = new HashMap<Integer, Double>();
-			int variables[] = new int[matrices.length];
-			for (int i = 0; i < matrices.length; i++) {
-				variables[i] = engine.addVariable(new HashMap<Integer, Double>(), LPEngine.VariableType.INTEGER);
-				objective.put(variables[i], 1.0);
-			}
-			engine.setObjective(objective, ObjectiveTargetType.MIN);
-
-			for (int a = 0; a < parameters.getAlphabet().size(); a++) {
-				Map<Integer, Double> constraint = new HashMap<Integer, Double>();
-				for (int i = 0; i < matrices.length; i++) {
-					constraint.put(variables[i], matrices[i].get(a) > 0 ? 1.0 : 0.0);
-				}
-				engine.addConstraint(constraint, Operator.GREATER_EQUAL, 1.0);
-			}
-			Map<Integer, Double> solution = engine.solve();
-			for (int i = 0; i < matrices.length; i++) {
-				if (solution.containsKey(variables[i]) && solution.get(variables[i]) > 0.0) {
-					if (!selected.contains(matrices[i])) {
-						selected.add(matrices[i]);
-						activitySets.add(parameters.getActivitySets().get(i));
+			/*
+			 * Select a minimal set of matrices that cover all activities.
+			 */
+			int[] unique = getUniqueMatrices();
+			List<BitSet> covers = new ArrayList<BitSet>(unique.length);
+			for (int i : unique) {
+				BitSet cover = new BitSet();
+				for (int a = 0; a < parameters.getAlphabet().size(); a++) {
+					if (matrices[i].get(a) > 0) {
+						cover.set(a);
 					}
 				}
+				covers.add(cover);
 			}
-			if (!selected.isEmpty()) {
-				matrices = new ActivityMatrix[selected.size()];
-				int idx = 0;
-				for (ActivityMatrix matrix : selected) {
-					matrices[idx++] = matrix;
-				}
-				parameters.setActivitySets(activitySets);
-				System.out.println(
-						"[ActivityMatrixCollection] Reduced from " + size + " to " + selected.size() + " matrices.");
-				size = selected.size();
-			}
+			select(unique, covers, parameters, progress);
 		}
 
 		if (parameters.isUseILP()) {
-			Set<ActivitySet> nextActivities = new HashSet<ActivitySet>();
-			Set<ActivitySet> previousActivities = new HashSet<ActivitySet>();
-			for (ActivityMatrix matrix : matrices) {
-				nextActivities.addAll(matrix.getNextActivities().values());
-				previousActivities.addAll(matrix.getPreviousActivities().values());
-			}
-			// System.out.println("[ActivityMatrixCollection] Reduced from " + size + " to "
-			// + selected.size() + " matrices.");
-			// size = selected.size();
-			// matrices = new ActivityMatrix[size];
-			// int idx = 0;
-			// for (ActivityMatrix matrix : selected) {
-			// matrices[idx++] = matrix;
-			// }
-
 			/*
-			 * Create an ILP to get a minimal set of matrices that cover all next and
-			 * previous sets.
+			 * Select a minimal set of matrices that cover all next and previous
+			 * sets. Every distinct next set and every distinct previous set is an
+			 * element to cover.
 			 */
-			LPEngine engine = LPEngineFactory.createLPEngine(EngineType.LPSOLVE, 0, 0);
-			Map<Integer, Double> objective = new HashMap<Integer, Double>();
-			int variables[] = new int[matrices.length];
-			for (int i = 0; i < matrices.length; i++) {
-				variables[i] = engine.addVariable(new HashMap<Integer, Double>(), LPEngine.VariableType.INTEGER);
-				objective.put(variables[i], 1.0);
-			}
-			engine.setObjective(objective, ObjectiveTargetType.MIN);
-
-			for (ActivitySet set : nextActivities) {
-				Map<Integer, Double> constraint = new HashMap<Integer, Double>();
-				for (int i = 0; i < matrices.length; i++) {
-					constraint.put(variables[i], matrices[i].getNextActivities().containsValue(set) ? 1.0 : 0.0);
+			int[] unique = getUniqueMatrices();
+			Map<ActivitySet, Integer> nextActivities = new HashMap<ActivitySet, Integer>();
+			Map<ActivitySet, Integer> previousActivities = new HashMap<ActivitySet, Integer>();
+			List<BitSet> covers = new ArrayList<BitSet>(unique.length);
+			for (int i : unique) {
+				BitSet cover = new BitSet();
+				for (ActivitySet set : matrices[i].getNextActivities().values()) {
+					cover.set(getElement(set, nextActivities));
 				}
-				engine.addConstraint(constraint, Operator.GREATER_EQUAL, 1.0);
-			}
-
-			for (ActivitySet set : previousActivities) {
-				Map<Integer, Double> constraint = new HashMap<Integer, Double>();
-				for (int i = 0; i < matrices.length; i++) {
-					constraint.put(variables[i], matrices[i].getPreviousActivities().containsValue(set) ? 1.0 : 0.0);
+				for (ActivitySet set : matrices[i].getPreviousActivities().values()) {
+					// Odd elements for previous sets, even elements for next sets.
+					cover.set(getElement(set, previousActivities) + 1);
 				}
-				engine.addConstraint(constraint, Operator.GREATER_EQUAL, 1.0);
-			}
-			// Solve the ILP
-			Map<Integer, Double> solution = engine.solve();
-			// Select the matrices for the minimal set.
-			for (int i = 0; i < matrices.length; i++) {
-				if (solution.containsKey(variables[i]) && solution.get(variables[i]) > 0.0) {
-					if (!selected.contains(matrices[i])) {
-						selected.add(matrices[i]);
-						activitySets.add(parameters.getActivitySets().get(i));
-					}
-				}
-			}
-
-			if (!selected.isEmpty()) {
-				// Set the matrices.
-				matrices = new ActivityMatrix[selected.size()];
-				int idx = 0;
-				for (ActivityMatrix matrix : selected) {
-					matrices[idx++] = matrix;
-				}
-				parameters.setActivitySets(activitySets);
-				System.out.println(
-						"[ActivityMatrixCollection] Reduced from " + size + " to " + selected.size() + " matrices.");
-				size = selected.size();
+				covers.add(cover);
 			}
+			select(unique, covers, parameters, progress);
 		}
 
 		/*
@@ -300,9 +335,11 @@ public class ActivityMatrixCollection {
 		if (limit > 0) {
 			selected = new ArrayList<ActivityMatrix>();
 			activitySets = new ArrayList<ActivitySet>();
+			// Equal matrices are selected only once.
+			Set<ActivityMatrix> selectedSet = new HashSet<ActivityMatrix>();
 			if (limit > 0 && size > 0) {
 				for (int i = 0; i < limit; i++) {
-					if (!selected.contains(matrices[(i * size) / limit])) {
+					if (selectedSet.add(matrices[(i * size) / limit])) {
 						selected.add(matrices[(i * size) / limit]);
 						activitySets.add(parameters.getActivitySets().get((i * size) / limit));
 					}
@@ -320,6 +357,63 @@ public class ActivityMatrixCollection {
 		}
 	}
 
+	/*
+	 * Returns the index of the first matrix of every group of equal matrices, in
+	 * increasing order.
+	 */
+	private int[] getUniqueMatrices() {
+		Map<ActivityMatrix, Integer> firstIdx = new HashMap<ActivityMatrix, Integer>();
+		List<Integer> unique = new ArrayList<Integer>();
+		for (int i = 0; i < size; i++) {
+			if (!firstIdx.containsKey(matrices[i])) {
+				firstIdx.put(matrices[i], i);
+				unique.add(i);
+			}
+		}
+		int[] indices = new int[unique.size()];
+		for (int i = 0; i < indices.length; i++) {
+			indices[i] = unique.get(i);
+		}
+		return indices;
+	}
+
+	/*
+	 * Returns the (even) element for the given set, where every new set gets the
+	 * next element.
+	 */
+	private static int getElement(ActivitySet set, Map<ActivitySet, Integer> elements) {
+		Integer element = elements.get(set);
+		if (element == null) {
+			element = 2 * elements.size();
+			elements.put(set, element);
+		}
+		return element;
+	}
+
+	/*
+	 * Keeps only a minimal set of the given (unique) matrices that cover all
+	 * elements covered by these matrices, where the given covers are the elements
+	 * covered by these matrices. The search for a minimal set is bounded by its
+	 * own limit, not by the one for the activity sets.
+	 */
+	private void select(int[] unique, List<BitSet> covers, DiscoverPetriNetParameters parameters,
+			Progress progress) {
+		int[] cover = new SetCoverSolver(covers).solve(SetCoverSolver.MAXNODES, progress);
+		if (cover.length == 0) {
+			return;
+		}
+		ActivityMatrix[] selected = new ActivityMatrix[cover.length];
+		List<ActivitySet> activitySets = new ArrayList<ActivitySet>();
+		for (int i = 0; i < cover.length; i++) {
+			selected[i] = matrices[unique[cover[i]]];
+			activitySets.add(parameters.getActivitySets().get(unique[cover[i]]));
+		}
+		matrices = selected;
+		parameters.setActivitySets(activitySets);
+		System.out.println("[ActivityMatrixCollection] Reduced from " + size + " to " + selected.length + " matrices.");
+		size = selected.length;
+	}
+
 	/*
 	 * Filter the matrices on the given (absolute) threshold.
 	 */
@@ -424,25 +518,94 @@ public class ActivityMatrixCollection {
 
 	}
 
+	/**
+	 * Filters out every trace (not classified positive) that contains a
+	 * directly-follows pair that has been filtered out in some matrix, and
+	 * updates the matrices accordingly, until no trace can be filtered out
+	 * anymore. If some trace was filtered out, the matrices afterwards contain
+	 * the counts of the remaining traces, and are no longer filtered. The
+	 * matrices should have been discovered from the given activity log using the
+	 * given activity sets and root matrix, but may have been filtered since.
+	 * 
+	 * Only the first check walks the entire log. After that, the counts of the
+	 * traces filtered out are removed from the matrices. A trace that is still
+	 * counted has a positive count for all its pairs, so only the traces that
+	 * are not counted (as they contain noise according to the root matrix) need
+	 * to be checked again, and only if some count has dropped to 0. As these
+	 * traces are not counted, filtering them out does not change any count,
+	 * which completes the fixpoint.
+	 * 
+	 * @param log        The activity log
+	 * @param ignoreSets The given activity sets to ignore
+	 * @param rootMatrix The matrix discovered earlier or the entire log
+	 */
 	public void filter(ActivityLog log, ActivitySets ignoreSets, ActivityMatrix rootMatrix) {
-		boolean didFilter = true;
-		while (didFilter) {
-			didFilter = false;
-//			System.out.println("[ActivityMatrixCollection] Filtering log on matrices");
-			for (int m = 0; m < matrices.length; m++) {
-//				System.out.println("[ActivityMatrixCollection] Filtering log on matrix " + m);
-				if (log.filter(matrices[m], ignoreSets.get(m))) {
-					didFilter = true;
-				}
-//				System.out.println("[ActivityMatrixCollection] Filtered log on matrix " + didFilter);
+		BitSet noisyTraces = getNoisyTraces(log, rootMatrix);
+		boolean didFilter = false;
+		/*
+		 * The start-end indices of the traces filtered out that were counted, and
+		 * of the traces kept that are not counted.
+		 */
+		List<Integer> uncount = new ArrayList<Integer>();
+		List<Integer> recheck = new ArrayList<Integer>();
+		int startIdx = 0; // First start/end of trace
+		int endIdx = startIdx + 1; // Next activity
+		while (endIdx < log.size()) {
+			// Look for next start/end of trace.
+			while (log.get(endIdx) != 0) {
+				endIdx++;
 			}
-			if (didFilter) {
-//				System.out.println("[ActivityMatrixCollection] Creatign new matrices from log");
-				for (int m = 0; m < matrices.length; m++) {
-					matrices[m] = new ActivityMatrix(log, log.getAlphabet(), ignoreSets.get(m), rootMatrix);
+			// Do not touch positive traces, and skip traces filtered out already.
+			if (!log.isPos(endIdx) && log.get(startIdx + 1) >= 0) {
+				boolean isCounted = !noisyTraces.get(startIdx + 1);
+				boolean mayStay = true;
+				for (int m = 0; m < matrices.length && mayStay; m++) {
+					mayStay = log.mayStay(startIdx, endIdx, matrices[m], ignoreSets.get(m));
 				}
+				if (!mayStay) {
+					didFilter = log.drop(startIdx, endIdx) || didFilter;
+					// A trace filtered out counts as noisy.
+					noisyTraces.set(startIdx + 1);
+					if (isCounted) {
+						uncount.add(startIdx);
+						uncount.add(endIdx);
+					}
+				} else if (!isCounted) {
+					recheck.add(startIdx);
+					recheck.add(endIdx);
+				}
+			}
+			startIdx = endIdx;
+			endIdx = startIdx + 1;
+		}
+		// The noisy traces include the traces just filtered out.
+		setNoisyTracesKnown();
+		if (!didFilter) {
+			return;
+		}
+		// Remove the counts of the traces filtered out from the (restored) matrices.
+		boolean zeroed = false;
+		for (int m = 0; m < matrices.length; m++) {
+			matrices[m].restore();
+			for (int i = 0; i < uncount.size(); i += 2) {
+				zeroed = matrices[m].uncount(log, uncount.get(i), uncount.get(i + 1), ignoreSets.get(m)) || zeroed;
+			}
+		}
+		if (!zeroed) {
+			return;
+		}
+		// Check the traces that are not counted again.
+		for (int i = 0; i < recheck.size(); i += 2) {
+			boolean mayStay = true;
+			for (int m = 0; m < matrices.length && mayStay; m++) {
+				mayStay = log.mayStay(recheck.get(i), recheck.get(i + 1), matrices[m], ignoreSets.get(m));
+			}
+			if (!mayStay) {
+				log.drop(recheck.get(i), recheck.get(i + 1));
+				noisyTraces.set(recheck.get(i) + 1);
 			}
 		}
+		setNoisyTracesKnown();
 	}
 
 }
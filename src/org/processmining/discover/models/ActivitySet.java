@@ -1,6 +1,7 @@
 package org.processmining.discover.models;
 
 import java.util.BitSet;
+import java.util.Map;
 
 public class ActivitySet extends BitSet {
 
@@ -10,23 +11,58 @@ public class ActivitySet extends BitSet {
 	private static final long serialVersionUID = -3438285338528189401L;
 	
 	/*
-	 * The alphabet used for this activity log.
+	 * The alphabet used for this activity log. Alphabets are immutable, hence
+	 * shared.
 	 */
-	private ActivityAlphabet alphabet;
+	private final ActivityAlphabet alphabet;
 
 	private final String prefix;
+
+	/*
+	 * The hash code, cached as sets are used as keys in many maps while
+	 * creating the net. Like for String, 0 means not computed yet, and every
+	 * change resets it to 0. A single field, so another thread sees either 0 or
+	 * the hash code.
+	 */
+	private transient int hashCode;
 	
 	public ActivitySet(String prefix, ActivityAlphabet alphabet) {
 		super();
-		this.alphabet = new ActivityAlphabet(alphabet);
+		this.alphabet = alphabet;
 		this.prefix = prefix;
 	}
 
 	public ActivitySet(ActivitySet set) {
 		or(set);
-		this.alphabet = new ActivityAlphabet(set.alphabet);
+		this.alphabet = set.alphabet;
 		this.prefix = set.prefix;
 	}
+
+	/**
+	 * Returns the set equal to this set from the given pool, and adds this set
+	 * to the pool if there is none. Sets taken from a pool should not be
+	 * changed anymore.
+	 * 
+	 * @param pool The given pool
+	 * @return The set equal to this set from the given pool
+	 */
+	public ActivitySet intern(Map<ActivitySet, ActivitySet> pool) {
+		ActivitySet set = pool.get(this);
+		if (set == null) {
+			pool.put(this, this);
+			return this;
+		}
+		return set;
+	}
+
+	public int hashCode() {
+		int h = hashCode;
+		if (h == 0) {
+			h = super.hashCode();
+			hashCode = h;
+		}
+		return h;
+	}
 	
 	public void add(int i) {
 		set(i);
@@ -41,8 +77,11 @@ public class ActivitySet extends BitSet {
 	}
 	
 	public boolean containsAll(ActivitySet set) {
-		for (int i = 0; i < set.length(); i++) {
-			if (set.get(i) && !get(i)) {
+		if (set.length() > length()) {
+			return false;
+		}
+		for (int i = set.nextSetBit(0); i >= 0; i = set.nextSetBit(i + 1)) {
+			if (!get(i)) {
 				return false;
 			}
 		}
@@ -52,6 +91,75 @@ public class ActivitySet extends BitSet {
 	public void addAll(ActivitySet set) {
 		or(set);
 	}
+
+	/*
+	 * All changes go through these methods, which reset the cached hash code.
+	 */
+
+	public void set(int i) {
+		hashCode = 0;
+		super.set(i);
+	}
+
+	public void set(int i, boolean value) {
+		hashCode = 0;
+		super.set(i, value);
+	}
+
+	public void set(int fromIdx, int toIdx) {
+		hashCode = 0;
+		super.set(fromIdx, toIdx);
+	}
+
+	public void set(int fromIdx, int toIdx, boolean value) {
+		hashCode = 0;
+		super.set(fromIdx, toIdx, value);
+	}
+
+	public void clear(int i) {
+		hashCode = 0;
+		super.clear(i);
+	}
+
+	public void clear(int fromIdx, int toIdx) {
+		hashCode = 0;
+		super.clear(fromIdx, toIdx);
+	}
+
+	public void clear() {
+		hashCode = 0;
+		super.clear();
+	}
+
+	public void flip(int i) {
+		hashCode = 0;
+		super.flip(i);
+	}
+
+	public void flip(int fromIdx, int toIdx) {
+		hashCode = 0;
+		super.flip(fromIdx, toIdx);
+	}
+
+	public void and(BitSet set) {
+		hashCode = 0;
+		super.and(set);
+	}
+
+	public void or(BitSet set) {
+		hashCode = 0;
+		super.or(set);
+	}
+
+	public void xor(BitSet set) {
+		hashCode = 0;
+		super.xor(set);
+	}
+
+	public void andNot(BitSet set) {
+		hashCode = 0;
+		super.andNot(set);
+	}
 	
 	public String toString() {
 		StringBuffer s = new StringBuffer();
@@ -1,18 +1,20 @@
 package org.processmining.discover.models;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.processmining.discover.parameters.DiscoverPetriNetParameters;
-import org.processmining.lpengines.factories.LPEngineFactory;
-import org.processmining.lpengines.interfaces.LPEngine;
-import org.processmining.lpengines.interfaces.LPEngine.EngineType;
-import org.processmining.lpengines.interfaces.LPEngine.ObjectiveTargetType;
-import org.processmining.lpengines.interfaces.LPEngine.Operator;
+import org.processmining.framework.plugin.Progress;
 import org.processmining.processtree.Block;
 import org.processmining.processtree.Node;
 import org.processmining.processtree.ProcessTree;
@@ -37,6 +39,12 @@ public class ActivitySets extends ArrayList<ActivitySet> {
 	 */
 	public static final int MODE_ACT_FRST = 2;
 
+	/*
+	 * Number of concurrent pairs from which all activity sets are searched for
+	 * in parallel.
+	 */
+	static final int PARALLELTHRESHOLD = 32;
+
 	/**
 	 * Discovers the minimal ignore sets from a set of concurrent pairs. An ignore
 	 * set should contain at least one activity from every pair. An ignore set is
@@ -51,24 +59,91 @@ public class ActivitySets extends ArrayList<ActivitySet> {
 	}
 	
 	public ActivitySets(ConcurrentActivityPairs pairs, ActivityAlphabet alphabet, int mode) {
+		this(pairs, alphabet, mode, 0, 0, null);
+	}
+
+	/**
+	 * Discovers the minimal ignore sets from a set of concurrent pairs using the
+	 * given mode, within the given budget. If the budget runs out, the ignore
+	 * sets found so far are kept, and for every activity that is still in all
+	 * of these sets an ignore set is added like for MODE_ACT_FRST. As a result,
+	 * every activity is still covered by some component.
+	 * 
+	 * @param pairs    Set or concurrent pairs
+	 * @param alphabet The alphabet
+	 * @param mode     The mode
+	 * @param maxTime  The maximal search time in milliseconds, or 0 if no limit
+	 * @param maxNodes The maximal number of search nodes, or 0 if no limit
+	 * @param progress The progress to report the search nodes to, may be null
+	 */
+	public ActivitySets(ConcurrentActivityPairs pairs, ActivityAlphabet alphabet, int mode, long maxTime,
+			long maxNodes, Progress progress) {
+		this(pairs, alphabet, mode, maxTime, maxNodes, progress,
+				pairs.size() >= PARALLELTHRESHOLD && ForkJoinPool.getCommonPoolParallelism() > 1);
+	}
+
+	/*
+	 * Discovers the minimal ignore sets like the public constructor, where for
+	 * MODE_ALL the search is done in parallel if so indicated. For MODE_ALL, the
+	 * sets are sorted, so that the result does not depend on whether the search
+	 * was done in parallel.
+	 */
+	ActivitySets(ConcurrentActivityPairs pairs, ActivityAlphabet alphabet, int mode, long maxTime, long maxNodes,
+			Progress progress, boolean isParallel) {
 		Set<ActivitySet> sets = new HashSet<ActivitySet>();
+		Budget budget = new Budget(maxTime, maxNodes, progress);
 		switch (mode) {
 		case MODE_ACT_BST: {
-			applyILP(pairs, alphabet, sets);
+			applyMIS(pairs, alphabet, sets);
 			break;
 		}
 		case MODE_ACT_FRST: {
-			apply(pairs, alphabet, sets);
+			SubsumptionIndex<ActivitySet> ignoreSets = new SubsumptionIndex<ActivitySet>();
+			apply(pairs, alphabet, ignoreSets, budget);
+			if (budget.isExhausted()) {
+				cover(pairs, alphabet, ignoreSets);
+			}
+			sets = ignoreSets.getValues();
 			break;
 		}
 		default: {
-			List<Set<ActivitySet>> seen = new ArrayList<Set<ActivitySet>>(pairs.size());
+			List<SubsumptionIndex<ActivitySet>> seen = new ArrayList<SubsumptionIndex<ActivitySet>>(pairs.size());
 			for (int idx = 0; idx < pairs.size(); idx++) {
-				seen.add(idx, new HashSet<ActivitySet>());
+				seen.add(idx, new SubsumptionIndex<ActivitySet>());
 			}
-			apply(pairs, 0, new ActivitySet("All except", alphabet), sets, seen, false);
+			SubsumptionIndex<ActivitySet> ignoreSets = new SubsumptionIndex<ActivitySet>();
+			if (isParallel) {
+				ForkJoinPool.commonPool()
+						.invoke(new SearchTask(pairs, 0, new ActivitySet("All except", alphabet), ignoreSets, seen,
+								budget, 0));
+			} else {
+				apply(pairs, 0, new ActivitySet("All except", alphabet), ignoreSets, seen, false, budget);
+			}
+			if (budget.isExhausted()) {
+				cover(pairs, alphabet, ignoreSets);
+			}
+			/*
+			 * The order in which the sets are found varies with the search. Keep them in
+			 * a fixed order, so the matrices and the net discovered from them do not
+			 * vary either.
+			 */
+			List<ActivitySet> sortedSets = new ArrayList<ActivitySet>(ignoreSets.getValues());
+			Collections.sort(sortedSets, new Comparator<ActivitySet>() {
+
+				public int compare(ActivitySet set1, ActivitySet set2) {
+					int idx1 = set1.nextSetBit(0);
+					int idx2 = set2.nextSetBit(0);
+					while (idx1 == idx2 && idx1 >= 0) {
+						idx1 = set1.nextSetBit(idx1 + 1);
+						idx2 = set2.nextSetBit(idx2 + 1);
+					}
+					return idx1 == idx2 ? 0 : (idx1 < 0 ? -1 : (idx2 < 0 ? 1 : idx1 - idx2));
+				}
+			});
+			sets = new LinkedHashSet<ActivitySet>(sortedSets);
 		}
 		}
+		budget.done();
 		System.out.println("[ActivitySets] " + sets.size() + " solutions.");
 		for (ActivitySet set : sets) {
 			add(set);
@@ -155,191 +230,390 @@ public class ActivitySets extends ArrayList<ActivitySet> {
 		}
 	}
 
-	private void apply(ConcurrentActivityPairs pairs, ActivityAlphabet alphabet, Set<ActivitySet> ignoreSets) {
+	private void apply(ConcurrentActivityPairs pairs, ActivityAlphabet alphabet,
+			SubsumptionIndex<ActivitySet> ignoreSets, Budget budget) {
 		for (int a = 0; a < alphabet.size(); a++) {
 //			System.out.println("[ActivitySets] Adding an ignore set for " + alphabet.get(a));
-			ActivitySet candidateSet = new ActivitySet("All except", alphabet);
-			List<Set<ActivitySet>> seen = new ArrayList<Set<ActivitySet>>(pairs.size());
-			/* 
-			 * Add all activities that are concurrent with a.
-			 * This ensures that a will not be added to the ignore set.
-			 */
-			for (int p = 0; p < pairs.size(); p++) {
-				if (pairs.get(p).getFirst() == a) {
-					candidateSet.add(pairs.get(p).getSecond());
-				} else if (pairs.get(p).getSecond() == a) {
-					candidateSet.add(pairs.get(p).getFirst());
+			apply(pairs, alphabet, a, ignoreSets, budget);
+//			System.out.println("[ActivitySets] Ignore sets found " + ignoreSets);
+		}
+	}
+
+	/*
+	 * Searches for a first ignore set that does not contain the given activity.
+	 */
+	private void apply(ConcurrentActivityPairs pairs, ActivityAlphabet alphabet, int a,
+			SubsumptionIndex<ActivitySet> ignoreSets, Budget budget) {
+		ActivitySet candidateSet = new ActivitySet("All except", alphabet);
+		List<SubsumptionIndex<ActivitySet>> seen = new ArrayList<SubsumptionIndex<ActivitySet>>(pairs.size());
+		/* 
+		 * Add all activities that are concurrent with a.
+		 * This ensures that a will not be added to the ignore set.
+		 */
+		for (int p = 0; p < pairs.size(); p++) {
+			if (pairs.get(p).getFirst() == a) {
+				candidateSet.add(pairs.get(p).getSecond());
+			} else if (pairs.get(p).getSecond() == a) {
+				candidateSet.add(pairs.get(p).getFirst());
+			}
+			seen.add(p, new SubsumptionIndex<ActivitySet>());
+		}
+		apply(pairs, 0, candidateSet, ignoreSets, seen, true, budget);
+	}
+
+	/*
+	 * Adds an ignore set for every activity that is contained in all ignore
+	 * sets found so far, like for MODE_ACT_FRST. Used when the budget has run
+	 * out. As none of the ignore sets found so far is a subset of a set that
+	 * does not contain such an activity, the first set found for it is kept,
+	 * which takes no backtracking. Hence, no budget is needed.
+	 */
+	private void cover(ConcurrentActivityPairs pairs, ActivityAlphabet alphabet,
+			SubsumptionIndex<ActivitySet> ignoreSets) {
+		Budget budget = new Budget(0, 0, null);
+		for (int a = 0; a < alphabet.size(); a++) {
+			boolean isCovered = false;
+			for (ActivitySet set : ignoreSets.getValues()) {
+				if (!set.contains(a)) {
+					isCovered = true;
+					break;
 				}
-				seen.add(p, new HashSet<ActivitySet>());
 			}
-			apply(pairs, 0, candidateSet, ignoreSets, seen, true);
-//			System.out.println("[ActivitySets] Ignore sets found " + ignoreSets);
+			if (!isCovered) {
+				apply(pairs, alphabet, a, ignoreSets, budget);
+			}
 		}
+		System.out.println("[ActivitySets] Covered all activities, " + ignoreSets.size() + " solutions.");
 	}
 
 	/*
 	 * Recursive method, may take very long if there happen to be many pairs of
 	 * concurrent activities, May result in many subsets.
 	 */
-	private boolean apply(ConcurrentActivityPairs pairs, int idx, ActivitySet candidateSet, Set<ActivitySet> ignoreSets,
-			List<Set<ActivitySet>> seen, boolean stopAtFirst) {
+	private boolean apply(ConcurrentActivityPairs pairs, int idx, ActivitySet candidateSet,
+			SubsumptionIndex<ActivitySet> ignoreSets, List<SubsumptionIndex<ActivitySet>> seen, boolean stopAtFirst,
+			Budget budget) {
+		if (!budget.next()) {
+			// Budget has run out. Stop searching.
+			return false;
+		}
 		if (idx == pairs.size()) {
 			// All pairs are now covered.
-			for (ActivitySet set : ignoreSets) {
-				if (candidateSet.containsAll(set)) {
-					// A smaller set is already present. Skip this canddiate.
-					return false;
-				}
-			}
-			// Check whether there are any larger sets.
-			Set<ActivitySet> largerSets = new HashSet<ActivitySet>();
-			for (ActivitySet set : ignoreSets) {
-				if (set.containsAll(candidateSet)) {
-					largerSets.add(set);
-				}
-			}
-			// Remove all the larger sets.
-			ignoreSets.removeAll(largerSets);
-			// Now add the candidate as a new set.
-			ActivitySet set = new ActivitySet(candidateSet);
-			ignoreSets.add(set);
-//			System.out.println("[ActivitySets] " + ignoreSets.size() + " solutions found so far.");
-			return true;
+			return addIgnoreSet(ignoreSets, candidateSet);
 		}
 //		if (seen.get(idx).contains(candidateSet)) {
 //			System.out.println("[ActivitySets] Already seen set " + candidateSet + " at index " + idx);
 //			return;
 //		}
-		Set<ActivitySet> toBeRemoved = new HashSet<ActivitySet>();
-		for (ActivitySet seenSet : seen.get(idx)) {
-			if (candidateSet.containsAll(seenSet)) {
-				/*
-				 * The partial candidate set is a superset of some partial set seen before. As a
-				 * result, the partial candidate set cannot evolve into a better candidate set
-				 * than that seen set can.
-				 */
-				return false;
-			} else if (seenSet.containsAll(candidateSet)) {
-				/*
-				 * The candidate set is a proper subset of set seen earlier. Keeping this set
-				 * seen earlier makes no sense when adding this candidate set, so schedule it
-				 * for removal.
-				 */
-				toBeRemoved.add(seenSet);
-			}
+		if (!addSeen(seen.get(idx), candidateSet)) {
+			return false;
 		}
-		// Remove all the proper super sets of the candidate set.
-		seen.get(idx).removeAll(toBeRemoved);
-		// Add a copy of the candidate set.
-		ActivitySet candidateSetCopy = new ActivitySet(candidateSet);
-		seen.get(idx).add(candidateSetCopy);
 		// Cover the next pair.
 		ActivityPair pair = pairs.get(idx);
 		if (candidateSet.contains(pair.getFirst()) || candidateSet.contains(pair.getSecond())) {
 			// Pair is already covered. Continue.
-			return apply(pairs, idx + 1, candidateSet, ignoreSets, seen, stopAtFirst);
+			return apply(pairs, idx + 1, candidateSet, ignoreSets, seen, stopAtFirst, budget);
 		}
 		// First, try the first activity.
 		candidateSet.add(pair.getFirst());
-		boolean found = apply(pairs, idx + 1, candidateSet, ignoreSets, seen, stopAtFirst);
+		boolean found = apply(pairs, idx + 1, candidateSet, ignoreSets, seen, stopAtFirst, budget);
 		candidateSet.remove(pair.getFirst());
 		if (!stopAtFirst || !found) {
 			// Second try, the second activity.
 			candidateSet.add(pair.getSecond());
-			found = apply(pairs, idx + 1, candidateSet, ignoreSets, seen, stopAtFirst);
+			found = apply(pairs, idx + 1, candidateSet, ignoreSets, seen, stopAtFirst, budget);
 			candidateSet.remove(pair.getSecond());
 		}
 		return found;
 	}
 
 	/*
-	 * Non-recursive, ILP-based method. Solves for every activity an ILP finding a
-	 * maximal non-concurrent subset of activities. Results in at most as many
-	 * subsets as there are activities.
+	 * Adds the given candidate set, which covers all pairs, to the given ignore
+	 * sets, unless a smaller set is already present. Removes the larger sets.
+	 * Returns whether the candidate set was added. May be called concurrently.
 	 */
-	private void applyILP(ConcurrentActivityPairs pairs, ActivityAlphabet alphabet, Set<ActivitySet> ignoreSets) {
-		ActivitySet covered = new ActivitySet("Covered", alphabet);
-		for (int idx = 0; idx < alphabet.size(); idx++) {
-			if (covered.contains(idx)) {
+	private static boolean addIgnoreSet(SubsumptionIndex<ActivitySet> ignoreSets, ActivitySet candidateSet) {
+		synchronized (ignoreSets) {
+			if (ignoreSets.containsSubsetOf(candidateSet)) {
+				// A smaller set is already present. Skip this canddiate.
+				return false;
+			}
+			// Remove all the larger sets.
+			ignoreSets.removeSupersetsOf(candidateSet);
+			// Now add the candidate as a new set.
+			ActivitySet set = new ActivitySet(candidateSet);
+			ignoreSets.add(set, set);
+//			System.out.println("[ActivitySets] " + ignoreSets.size() + " solutions found so far.");
+			return true;
+		}
+	}
+
+	/*
+	 * Adds the given partial candidate set to the given partial sets seen
+	 * before at the same index, unless it is a superset of one of these. Returns
+	 * whether the candidate set was added, that is, whether it needs to be
+	 * searched further. May be called concurrently.
+	 */
+	private static boolean addSeen(SubsumptionIndex<ActivitySet> seenSets, ActivitySet candidateSet) {
+		synchronized (seenSets) {
+			if (seenSets.containsSubsetOf(candidateSet)) {
 				/*
-				 * This activity has already been covered.
+				 * The partial candidate set is a superset of some partial set seen before. As a
+				 * result, the partial candidate set cannot evolve into a better candidate set
+				 * than that seen set can.
 				 */
-				continue;
+				return false;
 			}
 			/*
-			 * Get a maximal non-concurrent activity set that includes alphabet.get(idx).
+			 * Keeping the sets seen earlier that are proper supersets of the candidate set
+			 * makes no sense when adding this candidate set, so remove them.
 			 */
+			seenSets.removeSupersetsOf(candidateSet);
+			// Add a copy of the candidate set.
+			ActivitySet candidateSetCopy = new ActivitySet(candidateSet);
+			seenSets.add(candidateSetCopy, candidateSetCopy);
+			return true;
+		}
+	}
 
-			/*
-			 * Create an ILP to solve this which maximizes the number of activities.
-			 */
-			LPEngine engine = LPEngineFactory.createLPEngine(EngineType.LPSOLVE, 0, 0);
-			Map<Integer, Double> objective = new HashMap<Integer, Double>();
-			int variables[] = new int[alphabet.size()];
-			for (int i = 0; i < alphabet.size(); i++) {
-				variables[i] = engine.addVariable(new HashMap<Integer, Double>(), LPEngine.VariableType.INTEGER);
-				objective.put(variables[i], 1.0);
-			}
-			engine.setObjective(objective, ObjectiveTargetType.MAX);
+	/*
+	 * Budget for a search, in time and in search nodes. May be shared by
+	 * parallel searches. Reports the number of search nodes to the progress
+	 * (if any), and runs out if the progress has been cancelled.
+	 */
+	private static class Budget {
 
-			/*
-			 * The current activity should have weight 1.0.
-			 */
-			Map<Integer, Double> constraint = new HashMap<Integer, Double>();
-			for (int i = 0; i < alphabet.size(); i++) {
-				constraint.put(variables[i], i == idx ? 1.0 : 0.0);
+		/*
+		 * Number of search nodes after which the time and the progress are
+		 * checked again.
+		 */
+		private static final long CHECKMASK = (1 << 10) - 1;
+
+		private long startTime;
+		private long maxTime;
+		private long maxNodes;
+		private Progress progress;
+		private AtomicLong nofNodes;
+		private volatile boolean isExhausted;
+
+		Budget(long maxTime, long maxNodes, Progress progress) {
+			startTime = System.currentTimeMillis();
+			this.maxTime = maxTime;
+			this.maxNodes = maxNodes;
+			this.progress = progress;
+			nofNodes = new AtomicLong();
+			isExhausted = false;
+			if (progress != null) {
+				progress.setMinimum(0);
+				progress.setMaximum(1000);
+				progress.setValue(0);
+				progress.setIndeterminate(maxTime <= 0 && maxNodes <= 0);
 			}
-			engine.addConstraint(constraint, Operator.GREATER_EQUAL, 1.0);
+		}
 
-			/*
-			 * Every activity should have weight at least 0.0 and at most 1.0.
-			 */
-			for (int p = 0; p < alphabet.size(); p++) {
-				constraint = new HashMap<Integer, Double>();
-				for (int i = 0; i < alphabet.size(); i++) {
-					constraint.put(variables[i], i == p ? 1.0 : 0.0);
+		/*
+		 * Spends a search node. Returns false if the budget has run out.
+		 */
+		boolean next() {
+			if (isExhausted) {
+				return false;
+			}
+			long nodes = nofNodes.incrementAndGet();
+			if (maxNodes > 0 && nodes > maxNodes) {
+				exhaust(nodes);
+				return false;
+			}
+			if ((nodes & CHECKMASK) == 0) {
+				long time = System.currentTimeMillis() - startTime;
+				if (maxTime > 0 && time > maxTime) {
+					exhaust(nodes);
+					return false;
 				}
-				engine.addConstraint(constraint, Operator.GREATER_EQUAL, 0.0);
-				engine.addConstraint(constraint, Operator.LESS_EQUAL, 1.0);
+				if (progress != null) {
+					if (progress.isCancelled()) {
+						exhaust(nodes);
+						return false;
+					}
+					progress.setCaption("Searching for activity sets, " + nodes + " nodes explored");
+					// Show the part of the budget that has been spent.
+					long spent = 0;
+					if (maxNodes > 0) {
+						spent = (1000 * nodes) / maxNodes;
+					}
+					if (maxTime > 0) {
+						spent = Math.max(spent, (1000 * time) / maxTime);
+					}
+					progress.setValue((int) Math.min(spent, 1000));
+				}
+			}
+			return true;
+		}
+
+		private synchronized void exhaust(long nodes) {
+			if (!isExhausted) {
+				isExhausted = true;
+				System.out.println("[ActivitySets] Search budget ran out after " + nodes + " nodes and "
+						+ (System.currentTimeMillis() - startTime) + " milliseconds.");
 			}
+		}
 
+		boolean isExhausted() {
+			return isExhausted;
+		}
+
+		void done() {
+			if (progress != null) {
+				progress.setCaption("Searched for activity sets, " + nofNodes.get() + " nodes explored");
+				progress.setIndeterminate(false);
+				progress.setValue(1000);
+			}
+		}
+	}
+
+	/*
+	 * Parallel version of the recursive method for all sets. The two ways to
+	 * cover a pair are searched in parallel for the first branching levels, and
+	 * sequentially after that. The sets found and the sets seen are shared by
+	 * all tasks. As a smaller set seen at some index will always be searched
+	 * further, the order in which the sets are searched does not matter for the
+	 * sets found.
+	 */
+	private static class SearchTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 4476204416417839329L;
+
+		/*
+		 * Number of branching levels at which the search forks.
+		 */
+		private static final int FORKDEPTH = 8;
+
+		private ConcurrentActivityPairs pairs;
+		private int idx;
+		private ActivitySet candidateSet;
+		private SubsumptionIndex<ActivitySet> ignoreSets;
+		private List<SubsumptionIndex<ActivitySet>> seen;
+		private Budget budget;
+		private int depth;
+
+		SearchTask(ConcurrentActivityPairs pairs, int idx, ActivitySet candidateSet,
+				SubsumptionIndex<ActivitySet> ignoreSets, List<SubsumptionIndex<ActivitySet>> seen, Budget budget,
+				int depth) {
+			this.pairs = pairs;
+			this.idx = idx;
+			this.candidateSet = candidateSet;
+			this.ignoreSets = ignoreSets;
+			this.seen = seen;
+			this.budget = budget;
+			this.depth = depth;
+		}
+
+		protected void compute() {
+			search(idx, candidateSet);
+		}
+
+		private void search(int idx, ActivitySet candidateSet) {
+			if (!budget.next()) {
+				// Budget has run out. Stop searching.
+				return;
+			}
+			if (idx == pairs.size()) {
+				// All pairs are now covered.
+				addIgnoreSet(ignoreSets, candidateSet);
+				return;
+			}
+			if (!addSeen(seen.get(idx), candidateSet)) {
+				return;
+			}
+			// Cover the next pair.
+			ActivityPair pair = pairs.get(idx);
+			if (candidateSet.contains(pair.getFirst()) || candidateSet.contains(pair.getSecond())) {
+				// Pair is already covered. Continue.
+				search(idx + 1, candidateSet);
+			} else if (depth < FORKDEPTH) {
+				// Try both activities in parallel.
+				ActivitySet firstSet = new ActivitySet(candidateSet);
+				firstSet.add(pair.getFirst());
+				ActivitySet secondSet = new ActivitySet(candidateSet);
+				secondSet.add(pair.getSecond());
+				invokeAll(new SearchTask(pairs, idx + 1, firstSet, ignoreSets, seen, budget, depth + 1),
+						new SearchTask(pairs, idx + 1, secondSet, ignoreSets, seen, budget, depth + 1));
+			} else {
+				// First, try the first activity.
+				candidateSet.add(pair.getFirst());
+				search(idx + 1, candidateSet);
+				candidateSet.remove(pair.getFirst());
+				// Second try, the second activity.
+				candidateSet.add(pair.getSecond());
+				search(idx + 1, candidateSet);
+				candidateSet.remove(pair.getSecond());
+			}
+		}
+	}
+
+	/*
+	 * Non-recursive method. Finds for every activity a largest non-concurrent
+	 * subset of activities that includes it, unless it is included in a subset
+	 * found before. Results in at most as many subsets as there are activities.
+	 * For larger alphabets, the next activities not yet included are solved in
+	 * parallel, and then handled in order. As a result, the subsets found do not
+	 * depend on the parallelism.
+	 */
+	private void applyMIS(ConcurrentActivityPairs pairs, ActivityAlphabet alphabet, Set<ActivitySet> ignoreSets) {
+		ActivitySet covered = new ActivitySet("Covered", alphabet);
+		IndependentSetSolver solver = new IndependentSetSolver(pairs, alphabet.size());
+		int batchSize = 1;
+		if (alphabet.size() >= IndependentSetSolver.PARALLELTHRESHOLD) {
+			batchSize = Math.max(1, ForkJoinPool.getCommonPoolParallelism());
+		}
+		int idx = 0;
+		while (idx < alphabet.size()) {
 			/*
-			 * The sum of concurrent pairs of activities should be at most 1.0.
+			 * Get the next activities that have not been covered yet.
 			 */
-			for (int p = 0; p < pairs.size(); p++) {
-				constraint = new HashMap<Integer, Double>();
-				for (int i = 0; i < alphabet.size(); i++) {
-					constraint.put(variables[i],
-							i == pairs.get(p).getFirst() || i == pairs.get(p).getSecond() ? 1.0 : 0.0);
+			int[] activities = new int[batchSize];
+			int nofActivities = 0;
+			for (; idx < alphabet.size() && nofActivities < batchSize; idx++) {
+				if (!covered.contains(idx)) {
+					activities[nofActivities++] = idx;
 				}
-				engine.addConstraint(constraint, Operator.LESS_EQUAL, 1.0);
+			}
+			if (nofActivities == 0) {
+				break;
 			}
 
 			/*
-			 * Solve it.
+			 * Get a maximal non-concurrent activity set for each of these activities.
 			 */
-			Map<Integer, Double> solution = engine.solve();
+			BitSet[] solutions = solver.solve(Arrays.copyOf(activities, nofActivities));
 
-			/*
-			 * Now get the set of activities *not included* in this maximal set (historic
-			 * reasons).
-			 */
-			ActivitySet selected = new ActivitySet("All except", alphabet);
-			for (int i = 0; i < alphabet.size(); i++) {
-				if (!solution.containsKey(variables[i]) || solution.get(variables[i]) == 0.0) {
-					selected.add(i);
-				} else {
-					covered.add(i);
+			for (int i = 0; i < nofActivities; i++) {
+				if (covered.contains(activities[i])) {
+					/*
+					 * This activity has been covered by a set found for an earlier activity.
+					 */
+					continue;
+				}
+				/*
+				 * Now get the set of activities *not included* in this maximal set (historic
+				 * reasons).
+				 */
+				ActivitySet selected = new ActivitySet("All except", alphabet);
+				for (int a = 0; a < alphabet.size(); a++) {
+					if (solutions[i].get(a)) {
+						covered.add(a);
+					} else {
+						selected.add(a);
+					}
 				}
-			}
 
-//			System.out.println("[ActivitySets] Solution for " + alphabet.get(idx) + " is " + selected);
+//				System.out.println("[ActivitySets] Solution for " + alphabet.get(activities[i]) + " is " + selected);
 
-			/*
-			 * If a new set, add it.
-			 */
-			if (!ignoreSets.contains(selected)) {
-				ignoreSets.add(selected);
+				/*
+				 * If a new set, add it.
+				 */
+				if (!ignoreSets.contains(selected)) {
+					ignoreSets.add(selected);
+				}
 			}
 		}
 	}
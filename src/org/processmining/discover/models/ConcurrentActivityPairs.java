@@ -1,16 +1,24 @@
 package org.processmining.discover.models;
 
-import java.util.HashMap;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import org.processmining.discover.parameters.DiscoverPetriNetParameters;
 
 public class ConcurrentActivityPairs {
 
+	/*
+	 * Alphabet size from which the rows are checked in parallel.
+	 */
+	static final int PARALLELTHRESHOLD = 256;
+
 	private ActivityPair pairs[];
 	private int size;
-	
+
 	public ConcurrentActivityPairs(ActivityMatrix matrix, ActivityAlphabet alphabet, DiscoverPetriNetParameters parameters) {
 		Set<ActivityPair> pairs = new HashSet<ActivityPair>();
 //		int maxFromScore[] = new int[alphabet.size()];
@@ -22,18 +30,36 @@ public class ConcurrentActivityPairs {
 //				maxToScore[toIdx] = Math.max(maxToScore[toIdx], score);
 //			}
 //		}
-		for (int fromIdx = 1; fromIdx < alphabet.size(); fromIdx++) {
-			for (int toIdx = 1; toIdx < fromIdx; toIdx++) {
-				int score = Math.min(matrix.get(fromIdx, toIdx), matrix.get(toIdx, fromIdx));
-//				if (100*score > parameters.getPercentage()*maxFromScore[fromIdx] 
-//						|| 100*score > parameters.getPercentage()*maxToScore[toIdx]) {
-				if (score > 0) {
-					if (haveSamePredecessor(matrix, alphabet, fromIdx, toIdx) && haveSameSuccessor(matrix, alphabet, fromIdx, toIdx)) {
-						pairs.add(new ActivityPair(fromIdx, toIdx));
-					}
+		/*
+		 * For every activity, the bitsets of its predecessors and of its
+		 * successors, that is, the activities with a positive count from resp. to
+		 * it.
+		 */
+		int nofWords = (alphabet.size() + 63) >>> 6;
+		long[][] predecessors = new long[alphabet.size()][nofWords];
+		long[][] successors = new long[alphabet.size()][nofWords];
+		for (int fromIdx = 0; fromIdx < alphabet.size(); fromIdx++) {
+			for (int toIdx : matrix.getColumns(fromIdx)) {
+				if (matrix.get(fromIdx, toIdx) > 0) {
+					successors[fromIdx][toIdx >>> 6] |= 1L << toIdx;
+					predecessors[toIdx][fromIdx >>> 6] |= 1L << fromIdx;
 				}
 			}
 		}
+		/*
+		 * The pairs found for every row. The rows are checked in parallel for
+		 * large alphabets, but the pairs are added in the order of the rows.
+		 */
+		List<ActivityPair>[] rowPairs = newRowPairs(alphabet.size());
+		RowTask task = new RowTask(predecessors, successors, 1, alphabet.size(), rowPairs);
+		if (alphabet.size() >= PARALLELTHRESHOLD && ForkJoinPool.getCommonPoolParallelism() > 1) {
+			ForkJoinPool.commonPool().invoke(task);
+		} else {
+			task.compute();
+		}
+		for (int fromIdx = 1; fromIdx < alphabet.size(); fromIdx++) {
+			pairs.addAll(rowPairs[fromIdx]);
+		}
 		size = pairs.size();
 		this.pairs = new ActivityPair[size];
 		size = 0;
@@ -41,36 +67,104 @@ public class ConcurrentActivityPairs {
 			this.pairs[size++] = pair;
 		}
 	}
-	
-	public ActivityPair get(int idx) {
-		return pairs[idx];
-	}
-	
-	public int size() {
-		return size;
+
+	@SuppressWarnings("unchecked")
+	private static List<ActivityPair>[] newRowPairs(int size) {
+		return new List[size];
 	}
-	
-	private boolean haveSamePredecessor(ActivityMatrix matrix, ActivityAlphabet alphabet, int fromIdx, int toIdx) {
-		for (int idx = 0; idx < alphabet.size(); idx++) {
-			if (idx == fromIdx || idx == toIdx) {
-				continue;
+
+	/*
+	 * Checks the rows in the given range, and stores the pairs found for every
+	 * row. Large ranges are split in two ranges of (roughly) the same number of
+	 * pairs to check.
+	 */
+	private static class RowTask extends RecursiveAction {
+
+		private static final long serialVersionUID = -1753140524916424466L;
+
+		/*
+		 * The number of pairs to check below which a range is not split.
+		 */
+		private static final int CHUNKSIZE = 1 << 14;
+
+		private long[][] predecessors;
+		private long[][] successors;
+		private int fromIdx;
+		private int toIdx;
+		private List<ActivityPair>[] rowPairs;
+
+		RowTask(long[][] predecessors, long[][] successors, int fromIdx, int toIdx, List<ActivityPair>[] rowPairs) {
+			this.predecessors = predecessors;
+			this.successors = successors;
+			this.fromIdx = fromIdx;
+			this.toIdx = toIdx;
+			this.rowPairs = rowPairs;
+		}
+
+		protected void compute() {
+			// Row i has i pairs to check.
+			long nofPairs = ((long) toIdx * (toIdx - 1) - (long) fromIdx * (fromIdx - 1)) / 2;
+			if (nofPairs > CHUNKSIZE && toIdx - fromIdx > 1) {
+				// Split where half of the pairs have been checked.
+				int midIdx = (int) Math.sqrt(((double) toIdx * toIdx + (double) fromIdx * fromIdx) / 2);
+				midIdx = Math.max(fromIdx + 1, Math.min(toIdx - 1, midIdx));
+				invokeAll(new RowTask(predecessors, successors, fromIdx, midIdx, rowPairs),
+						new RowTask(predecessors, successors, midIdx, toIdx, rowPairs));
+				return;
 			}
-			if (matrix.get(idx, fromIdx) > 0 && matrix.get(idx, toIdx) > 0) {
-				return true;
+			for (int row = fromIdx; row < toIdx; row++) {
+				rowPairs[row] = getPairs(predecessors, successors, row);
 			}
 		}
-		return false;
 	}
 
-	private boolean haveSameSuccessor(ActivityMatrix matrix, ActivityAlphabet alphabet, int fromIdx, int toIdx) {
-		for (int idx = 0; idx < alphabet.size(); idx++) {
-			if (idx == fromIdx || idx == toIdx) {
-				continue;
+	/*
+	 * Returns the concurrent pairs (row, toIdx) with 0 < toIdx < row.
+	 */
+	private static List<ActivityPair> getPairs(long[][] predecessors, long[][] successors, int fromIdx) {
+		List<ActivityPair> pairs = new ArrayList<ActivityPair>();
+		for (int toIdx = 1; toIdx < fromIdx; toIdx++) {
+			// Both directly follow each other.
+			if (isSet(successors[fromIdx], toIdx) && isSet(successors[toIdx], fromIdx)) {
+				if (intersect(predecessors[fromIdx], predecessors[toIdx], fromIdx, toIdx)
+						&& intersect(successors[fromIdx], successors[toIdx], fromIdx, toIdx)) {
+					pairs.add(new ActivityPair(fromIdx, toIdx));
+				}
+			}
+		}
+		return pairs;
+	}
+
+	private static boolean isSet(long[] bits, int idx) {
+		return (bits[idx >>> 6] & (1L << idx)) != 0;
+	}
+
+	/*
+	 * Returns whether both bitsets share an index other than the two given
+	 * indices. For predecessors, this means both activities have the same
+	 * predecessor, for successors that they have the same successor.
+	 */
+	private static boolean intersect(long[] bits1, long[] bits2, int idx1, int idx2) {
+		for (int word = 0; word < bits1.length; word++) {
+			long common = bits1[word] & bits2[word];
+			if (word == idx1 >>> 6) {
+				common &= ~(1L << idx1);
 			}
-			if (matrix.get(fromIdx, idx) > 0 && matrix.get(toIdx, idx) > 0) {
+			if (word == idx2 >>> 6) {
+				common &= ~(1L << idx2);
+			}
+			if (common != 0) {
 				return true;
 			}
 		}
 		return false;
 	}
+
+	public ActivityPair get(int idx) {
+		return pairs[idx];
+	}
+
+	public int size() {
+		return size;
+	}
 }
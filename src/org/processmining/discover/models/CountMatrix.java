@@ -1,7 +1,9 @@
 package org.processmining.discover.models;
 
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
@@ -195,14 +197,15 @@ public class CountMatrix {
 	}
 
 	private Set<Set<Integer>> getSolutions(DiscoverPetriNetFromCountMatrixParameters parameters) {
-		Set<Set<Integer>> solutions = new HashSet<Set<Integer>>();
+		SubsumptionIndex<Set<Integer>> solutions = new SubsumptionIndex<Set<Integer>>();
 		Set<Integer> candidateSolution = new HashSet<Integer>(indices.values());
 		searchSolutions(candidateSolution, new HashSet<Set<Integer>>(), solutions, parameters, "");
-		return solutions;
+		return solutions.getValues();
 	}
 
-	private void searchSolutions(Set<Integer> candidate, Set<Set<Integer>> candidatesDone, Set<Set<Integer>> solutions,
-			DiscoverPetriNetFromCountMatrixParameters parameters, String prefix) {
+	private void searchSolutions(Set<Integer> candidate, Set<Set<Integer>> candidatesDone,
+			SubsumptionIndex<Set<Integer>> solutions, DiscoverPetriNetFromCountMatrixParameters parameters,
+			String prefix) {
 		if (candidatesDone.contains(candidate)) {
 			//			System.out.println("[CountMatrix] " + prefix + "Skipping candidate " + candidate);
 			return;
@@ -231,23 +234,19 @@ public class CountMatrix {
 //		candidate = getCoveredIndices(candidate, classes.length, classes.length);
 
 		//		System.out.println("[CountMatrix] " + prefix + "Found candidate " + candidate);
-		for (Set<Integer> solution : solutions) {
-			if (solution.containsAll(candidate)) {
-				//				System.out.println("[CountMatrix] " + prefix + "Candidate is not maximal " + candidate);
-				return;
-			}
+		BitSet candidateBits = new BitSet(classes.length + 1);
+		for (int index : candidate) {
+			candidateBits.set(index);
 		}
-		Set<Set<Integer>> subSolutions = new HashSet<Set<Integer>>();
-		for (Set<Integer> solution : solutions) {
-			if (candidate.containsAll(solution)) {
-				subSolutions.add(solution);
-			}
+		if (solutions.containsSupersetOf(candidateBits)) {
+			//				System.out.println("[CountMatrix] " + prefix + "Candidate is not maximal " + candidate);
+			return;
 		}
+		List<Set<Integer>> subSolutions = solutions.removeSubsetsOf(candidateBits);
 		//		System.out.println("[CountMatrix] " + prefix + "Removing subsolutions " + subSolutions);
-		solutions.removeAll(subSolutions);
 
 		//		System.out.println("[CountMatrix] " + prefix + "Adding solution " + candidate);
-		solutions.add(candidate);
+		solutions.add(candidateBits, candidate);
 	}
 
 	public AcceptingPetriNet convert(DiscoverPetriNetFromCountMatrixParameters parameters) {
@@ -0,0 +1,327 @@
+package org.processmining.discover.models;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/*
+ * Finds largest sets of pairwise non-concurrent activities, that is, maximum
+ * independent sets in the graph of concurrent pairs, by branch-and-bound on
+ * bitsets. A lower bound is found greedily, an upper bound by covering the
+ * remaining activities with cliques of concurrent activities (no two
+ * activities of such a clique can be in the same set).
+ */
+class IndependentSetSolver {
+
+	/*
+	 * Alphabet size from which activities are solved in parallel.
+	 */
+	static final int PARALLELTHRESHOLD = 64;
+
+	/*
+	 * Number of activities.
+	 */
+	private int size;
+
+	/*
+	 * Number of longs in a bitset of activities.
+	 */
+	private int nofWords;
+
+	/*
+	 * The activities are renumbered in order of increasing number of concurrent
+	 * activities, so that the cliques are built from the activities with the
+	 * fewest concurrent activities first. Maps a number onto its activity, and
+	 * vice versa.
+	 */
+	private int[] number2Activity;
+	private int[] activity2Number;
+
+	/*
+	 * For every activity number, the bitset of numbers of activities concurrent
+	 * with it.
+	 */
+	private long[][] concurrent;
+
+	/*
+	 * The state of a single search.
+	 */
+	private static class Search {
+		long[] best;
+		int bestSize;
+	}
+
+	IndependentSetSolver(ConcurrentActivityPairs pairs, int size) {
+		this.size = size;
+		nofWords = (size + 63) >>> 6;
+		final int[] degrees = new int[size];
+		for (int p = 0; p < pairs.size(); p++) {
+			degrees[pairs.get(p).getFirst()]++;
+			degrees[pairs.get(p).getSecond()]++;
+		}
+		Integer[] activities = new Integer[size];
+		for (int a = 0; a < size; a++) {
+			activities[a] = a;
+		}
+		Arrays.sort(activities, new Comparator<Integer>() {
+
+			public int compare(Integer a1, Integer a2) {
+				return degrees[a1] != degrees[a2] ? degrees[a1] - degrees[a2] : a1 - a2;
+			}
+		});
+		number2Activity = new int[size];
+		activity2Number = new int[size];
+		for (int n = 0; n < size; n++) {
+			number2Activity[n] = activities[n];
+			activity2Number[activities[n]] = n;
+		}
+		concurrent = new long[size][nofWords];
+		for (int p = 0; p < pairs.size(); p++) {
+			int first = activity2Number[pairs.get(p).getFirst()];
+			int second = activity2Number[pairs.get(p).getSecond()];
+			concurrent[first][second >>> 6] |= 1L << second;
+			concurrent[second][first >>> 6] |= 1L << first;
+		}
+	}
+
+	/*
+	 * Returns a largest set of pairwise non-concurrent activities that contains
+	 * the given activity.
+	 */
+	BitSet solve(int activity) {
+		int idx = activity2Number[activity];
+		long[] chosen = new long[nofWords];
+		chosen[idx >>> 6] |= 1L << idx;
+		// All activities that can still be chosen.
+		long[] candidates = new long[nofWords];
+		for (int i = 0; i < size; i++) {
+			candidates[i >>> 6] |= 1L << i;
+		}
+		candidates[idx >>> 6] &= ~(1L << idx);
+		LongBitSets.andNot(candidates, concurrent[idx]);
+		Search search = new Search();
+		search.best = greedy(chosen, candidates);
+		search.bestSize = LongBitSets.cardinality(search.best);
+		search(chosen, 1, candidates, search);
+		BitSet solution = new BitSet(size);
+		for (int n = LongBitSets.nextSetBit(search.best, 0); n >= 0; n = LongBitSets.nextSetBit(search.best, n + 1)) {
+			solution.set(number2Activity[n]);
+		}
+		return solution;
+	}
+
+	/*
+	 * Returns a largest set of pairwise non-concurrent activities for every
+	 * given activity, where the activities are solved in parallel.
+	 */
+	BitSet[] solve(final int[] activities) {
+		final BitSet[] solutions = new BitSet[activities.length];
+		if (activities.length == 1) {
+			solutions[0] = solve(activities[0]);
+			return solutions;
+		}
+		final RecursiveAction[] tasks = new RecursiveAction[activities.length];
+		for (int i = 0; i < activities.length; i++) {
+			final int j = i;
+			tasks[i] = new RecursiveAction() {
+
+				private static final long serialVersionUID = 6374089562110582493L;
+
+				protected void compute() {
+					solutions[j] = solve(activities[j]);
+				}
+			};
+		}
+		ForkJoinPool.commonPool().invoke(new RecursiveAction() {
+
+			private static final long serialVersionUID = -2436412416329437021L;
+
+			protected void compute() {
+				invokeAll(tasks);
+			}
+		});
+		return solutions;
+	}
+
+	/*
+	 * Repeatedly chooses a candidate with the fewest concurrent candidates.
+	 */
+	private long[] greedy(long[] chosen, long[] candidates) {
+		long[] set = chosen.clone();
+		long[] left = candidates.clone();
+		while (!LongBitSets.isEmpty(left)) {
+			int bestV = -1;
+			int bestDegree = Integer.MAX_VALUE;
+			for (int v = LongBitSets.nextSetBit(left, 0); v >= 0; v = LongBitSets.nextSetBit(left, v + 1)) {
+				int degree = LongBitSets.intersectionCardinality(left, concurrent[v]);
+				if (degree < bestDegree) {
+					bestV = v;
+					bestDegree = degree;
+				}
+			}
+			set[bestV >>> 6] |= 1L << bestV;
+			left[bestV >>> 6] &= ~(1L << bestV);
+			LongBitSets.andNot(left, concurrent[bestV]);
+		}
+		return set;
+	}
+
+	private void search(long[] chosen, int chosenSize, long[] candidates, Search search) {
+		chosen = chosen.clone();
+		candidates = candidates.clone();
+		boolean reduced = true;
+		while (reduced) {
+			reduced = false;
+			for (int v = LongBitSets.nextSetBit(candidates, 0); v >= 0; v = LongBitSets.nextSetBit(candidates, v + 1)) {
+				if (LongBitSets.intersectionCardinality(candidates, concurrent[v]) <= 1) {
+					/*
+					 * A candidate that is concurrent with at most one other candidate can
+					 * always be chosen: A set that contains that other candidate instead is not
+					 * larger.
+					 */
+					chosen[v >>> 6] |= 1L << v;
+					chosenSize++;
+					candidates[v >>> 6] &= ~(1L << v);
+					LongBitSets.andNot(candidates, concurrent[v]);
+					reduced = true;
+				} else if (isDominated(v, candidates)) {
+					/*
+					 * A set that contains the candidate can contain the dominating candidate
+					 * instead. Hence, the candidate need not be chosen.
+					 */
+					candidates[v >>> 6] &= ~(1L << v);
+					reduced = true;
+				}
+			}
+		}
+		if (LongBitSets.isEmpty(candidates)) {
+			if (chosenSize > search.bestSize) {
+				search.best = chosen;
+				search.bestSize = chosenSize;
+			}
+			return;
+		}
+		int nofCandidates = LongBitSets.cardinality(candidates);
+		int[] order = new int[nofCandidates];
+		int[] bounds = new int[nofCandidates];
+		if (chosenSize + cliqueCover(candidates, order, bounds) <= search.bestSize) {
+			// Cannot do better than the best set found so far.
+			return;
+		}
+		long[] component = getComponent(candidates);
+		if (!Arrays.equals(component, candidates)) {
+			/*
+			 * No candidate in this component is concurrent with any other candidate.
+			 * Solve this component on its own, and then continue with the other
+			 * candidates.
+			 */
+			Search componentSearch = new Search();
+			componentSearch.best = greedy(new long[nofWords], component);
+			componentSearch.bestSize = LongBitSets.cardinality(componentSearch.best);
+			search(new long[nofWords], 0, component, componentSearch);
+			LongBitSets.or(chosen, componentSearch.best);
+			LongBitSets.andNot(candidates, component);
+			search(chosen, chosenSize + componentSearch.bestSize, candidates, search);
+			return;
+		}
+		/*
+		 * Branch on the candidates in reverse order of their clique. At most one
+		 * candidate of every clique can be chosen, so the candidates up to some
+		 * candidate allow for at most as many more chosen candidates as the number of
+		 * the clique of that candidate.
+		 */
+		for (int k = nofCandidates - 1; k >= 0; k--) {
+			if (chosenSize + bounds[k] <= search.bestSize) {
+				// Cannot do better than the best set found so far.
+				return;
+			}
+			int v = order[k];
+			// First, choose it.
+			candidates[v >>> 6] &= ~(1L << v);
+			long[] newCandidates = candidates.clone();
+			LongBitSets.andNot(newCandidates, concurrent[v]);
+			chosen[v >>> 6] |= 1L << v;
+			search(chosen, chosenSize + 1, newCandidates, search);
+			// Second, do not choose it.
+			chosen[v >>> 6] &= ~(1L << v);
+		}
+	}
+
+	/*
+	 * Returns whether the given candidate is dominated by a concurrent candidate,
+	 * that is, whether some concurrent candidate is concurrent with only
+	 * candidates that the given candidate is also concurrent with.
+	 */
+	private boolean isDominated(int v, long[] candidates) {
+		for (int word = 0; word < nofWords; word++) {
+			for (long bits = concurrent[v][word] & candidates[word]; bits != 0; bits &= bits - 1) {
+				int u = (word << 6) + Long.numberOfTrailingZeros(bits);
+				boolean dominates = true;
+				for (int i = 0; i < nofWords && dominates; i++) {
+					long uBits = concurrent[u][i] & candidates[i];
+					long vBits = concurrent[v][i] | (i == v >>> 6 ? 1L << v : 0);
+					dominates = (uBits & ~vBits) == 0;
+				}
+				if (dominates) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/*
+	 * Returns the candidates that are connected through concurrent candidates to
+	 * the first candidate.
+	 */
+	private long[] getComponent(long[] candidates) {
+		long[] component = new long[nofWords];
+		long[] frontier = new long[nofWords];
+		int first = LongBitSets.nextSetBit(candidates, 0);
+		component[first >>> 6] |= 1L << first;
+		frontier[first >>> 6] |= 1L << first;
+		while (!LongBitSets.isEmpty(frontier)) {
+			long[] next = new long[nofWords];
+			for (int v = LongBitSets.nextSetBit(frontier, 0); v >= 0; v = LongBitSets.nextSetBit(frontier, v + 1)) {
+				LongBitSets.or(next, concurrent[v]);
+			}
+			LongBitSets.and(next, candidates);
+			LongBitSets.andNot(next, component);
+			LongBitSets.or(component, next);
+			frontier = next;
+		}
+		return component;
+	}
+
+	/*
+	 * Covers the given candidates greedily with cliques of concurrent
+	 * activities, and returns the number of cliques. At most one activity of
+	 * every clique can be chosen. Fills the given order with the candidates in
+	 * order of their clique, and the given bounds with the (1-based) number of
+	 * the clique of every candidate in that order.
+	 */
+	private int cliqueCover(long[] candidates, int[] order, int[] bounds) {
+		long[] left = candidates.clone();
+		long[] clique = new long[nofWords];
+		int nofCliques = 0;
+		int k = 0;
+		for (int v = LongBitSets.nextSetBit(left, 0); v >= 0; v = LongBitSets.nextSetBit(left, v + 1)) {
+			nofCliques++;
+			left[v >>> 6] &= ~(1L << v);
+			order[k] = v;
+			bounds[k++] = nofCliques;
+			// The candidates left that are concurrent with all activities of the clique so far.
+			System.arraycopy(left, 0, clique, 0, nofWords);
+			LongBitSets.and(clique, concurrent[v]);
+			for (int u = LongBitSets.nextSetBit(clique, 0); u >= 0; u = LongBitSets.nextSetBit(clique, u + 1)) {
+				left[u >>> 6] &= ~(1L << u);
+				order[k] = u;
+				bounds[k++] = nofCliques;
+				LongBitSets.and(clique, concurrent[u]);
+			}
+		}
+		return nofCliques;
+	}
+}
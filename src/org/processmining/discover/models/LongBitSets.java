@@ -0,0 +1,76 @@
+package org.processmining.discover.models;
+
+/*
+ * Operations on bitsets stored as arrays of longs, as used by the solvers.
+ * Bit i is bit (i % 64) of word (i / 64). Binary operations expect arrays of
+ * the same length, and store their result in the first array.
+ */
+final class LongBitSets {
+
+	private LongBitSets() {
+	}
+
+	/*
+	 * Returns the first set bit at or after the given index, or -1 if none.
+	 */
+	static int nextSetBit(long[] bits, int from) {
+		int word = from >>> 6;
+		if (word >= bits.length) {
+			return -1;
+		}
+		long w = bits[word] & (-1L << from);
+		while (w == 0) {
+			if (++word == bits.length) {
+				return -1;
+			}
+			w = bits[word];
+		}
+		return (word << 6) + Long.numberOfTrailingZeros(w);
+	}
+
+	static int cardinality(long[] bits) {
+		int count = 0;
+		for (long w : bits) {
+			count += Long.bitCount(w);
+		}
+		return count;
+	}
+
+	/*
+	 * Returns the number of bits set in both given bitsets.
+	 */
+	static int intersectionCardinality(long[] bits1, long[] bits2) {
+		int count = 0;
+		for (int i = 0; i < bits1.length; i++) {
+			count += Long.bitCount(bits1[i] & bits2[i]);
+		}
+		return count;
+	}
+
+	static boolean isEmpty(long[] bits) {
+		for (long w : bits) {
+			if (w != 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	static void and(long[] bits1, long[] bits2) {
+		for (int i = 0; i < bits1.length; i++) {
+			bits1[i] &= bits2[i];
+		}
+	}
+
+	static void or(long[] bits1, long[] bits2) {
+		for (int i = 0; i < bits1.length; i++) {
+			bits1[i] |= bits2[i];
+		}
+	}
+
+	static void andNot(long[] bits1, long[] bits2) {
+		for (int i = 0; i < bits1.length; i++) {
+			bits1[i] &= ~bits2[i];
+		}
+	}
+}
@@ -0,0 +1,265 @@
+package org.processmining.discover.models;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Activity log backed by a memory-mapped activity log file (see
+ * ActivityLogFile). Opening the file takes constant time, and the pages of the
+ * file are shared through the page cache. The file is mapped read-only: any
+ * change to the activity log is kept in memory. Filtering the activity log
+ * only negates activity indices, which are kept in a bitset. Traces appended
+ * to the activity log are kept in an activity log of their own.
+ */
+public class MappedActivityLog extends ActivityLog {
+
+	/*
+	 * The file mapped.
+	 */
+	private File file;
+
+	/*
+	 * The mapped file contents.
+	 */
+	private MappedByteBuffer buffer;
+
+	/*
+	 * The width (in bytes) of an activity index.
+	 */
+	private int width;
+
+	/*
+	 * Offsets of the activity indices, of the positive bitmap, and of the
+	 * multiplicities in the buffer. The latter is -1 if there are none.
+	 */
+	private int indexOffset;
+	private int bitmapOffset;
+	private int multiplicityOffset;
+
+	/*
+	 * The number of indices in the mapped file.
+	 */
+	private int mappedSize;
+
+	/*
+	 * The indices of the activity log where the mapped activity index has been
+	 * negated, or null if none.
+	 */
+	private BitSet negated;
+
+	/*
+	 * The activity indices set at indices of the activity log, if not the
+	 * (negated) mapped activity index, or null if none.
+	 */
+	private Map<Integer, Integer> values;
+
+	/*
+	 * The traces appended, or null if none. Index 0 of this log is the last
+	 * index of the mapped file, which is a start-end activity.
+	 */
+	private ActivityLog appended;
+
+	/**
+	 * Maps the given activity log file.
+	 *
+	 * @param file The given activity log file
+	 * @throws IOException If the file could not be mapped or has the wrong format
+	 */
+	public MappedActivityLog(File file) throws IOException {
+		this(file, map(file));
+	}
+
+	private MappedActivityLog(File file, MappedByteBuffer buffer) throws IOException {
+		super(readAlphabet(buffer), null, null, buffer.getInt(16));
+		this.file = file;
+		this.buffer = buffer;
+		width = buffer.getInt(8);
+		mappedSize = buffer.getInt(16);
+		indexOffset = buffer.position();
+		bitmapOffset = indexOffset + width * mappedSize;
+		multiplicityOffset = -1;
+		if (buffer.getInt(4) == ActivityLogFile.VERSIONWITHMULTIPLICITIES) {
+			multiplicityOffset = bitmapOffset + 8 * ((mappedSize + 63) / 64);
+		}
+		negated = null;
+		values = null;
+		appended = null;
+	}
+
+	private static MappedByteBuffer map(File file) throws IOException {
+		RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = randomAccessFile.getChannel();
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new IOException("Activity log file too large to map: " + file);
+			}
+			/*
+			 * The mapping remains valid after the channel has been closed.
+			 */
+			return channel.map(MapMode.READ_ONLY, 0, channel.size());
+		} finally {
+			randomAccessFile.close();
+		}
+	}
+
+	/*
+	 * Reads the alphabet from the given buffer, and leaves the position of the
+	 * buffer at the first activity index.
+	 */
+	private static ActivityAlphabet readAlphabet(MappedByteBuffer buffer) throws IOException {
+		ActivityLogFile.checkHeader(buffer.getInt(0), buffer.getInt(4), buffer.getInt(8));
+		int alphabetSize = buffer.getInt(12);
+		buffer.position(ActivityLogFile.HEADERSIZE);
+		String[] activities = new String[alphabetSize];
+		activities[0] = ActivityAlphabet.STARTEND;
+		for (int i = 1; i < alphabetSize; i++) {
+			byte[] bytes = new byte[buffer.getInt()];
+			buffer.get(bytes);
+			activities[i] = new String(bytes, ActivityLogFile.UTF8);
+		}
+		return new ActivityAlphabet(activities);
+	}
+
+	/*
+	 * Creates a copy of the given mapped activity log, which shares the mapping.
+	 */
+	private MappedActivityLog(MappedActivityLog log) {
+		super(log.getAlphabet(), null, null, log.mappedSize);
+		file = log.file;
+		buffer = log.buffer;
+		width = log.width;
+		mappedSize = log.mappedSize;
+		indexOffset = log.indexOffset;
+		bitmapOffset = log.bitmapOffset;
+		multiplicityOffset = log.multiplicityOffset;
+		negated = (log.negated == null ? null : (BitSet) log.negated.clone());
+		values = (log.values == null ? null : new HashMap<Integer, Integer>(log.values));
+		appended = (log.appended == null ? null : log.appended.copy());
+	}
+
+	/**
+	 * Returns a copy of this activity log, which shares the mapped file.
+	 *
+	 * @return A copy of this activity log
+	 */
+	public ActivityLog copy() {
+		return new MappedActivityLog(this);
+	}
+
+	/**
+	 * Returns the activity log file mapped.
+	 *
+	 * @return The activity log file mapped
+	 */
+	public File getFile() {
+		return file;
+	}
+
+	public int get(int idx) {
+		if (idx >= mappedSize) {
+			return appended.get(idx - mappedSize + 1);
+		}
+		if (values != null) {
+			Integer value = values.get(idx);
+			if (value != null) {
+				return value;
+			}
+		}
+		int activity = getMapped(idx);
+		return negated != null && negated.get(idx) ? -activity : activity;
+	}
+
+	/*
+	 * Returns the activity index at the given index of the mapped file.
+	 */
+	private int getMapped(int idx) {
+		switch (width) {
+			case 1 :
+				return buffer.get(indexOffset + idx);
+			case 2 :
+				return buffer.getShort(indexOffset + 2 * idx);
+			default :
+				return buffer.getInt(indexOffset + 4 * idx);
+		}
+	}
+
+	public boolean isPos(int idx) {
+		if (idx >= mappedSize) {
+			return appended.isPos(idx - mappedSize + 1);
+		}
+		return ((buffer.getLong(bitmapOffset + 8 * (idx >>> 6)) >>> (idx & 63)) & 1L) != 0;
+	}
+
+	public int getMultiplicity(int idx) {
+		if (idx >= mappedSize) {
+			return appended.getMultiplicity(idx - mappedSize + 1);
+		}
+		return multiplicityOffset == -1 ? 1 : buffer.getInt(multiplicityOffset + 4 * idx);
+	}
+
+	/**
+	 * Appends the traces of the given activity log to this activity log. The
+	 * mapped file is not changed: the appended traces are kept in memory, with
+	 * their multiplicities.
+	 * 
+	 * @param log The given activity log
+	 * @return The index in this activity log where the first appended trace
+	 *         starts
+	 */
+	public int append(ActivityLog log) {
+		if (appended == null) {
+			appended = new VariantActivityLog(super.getAlphabet(), new int[] { 0 }, new boolean[] { false },
+					new int[] { 1 }, 1);
+		}
+		int startIdx = size();
+		appended.append(log);
+		changed();
+		return startIdx;
+	}
+
+	public int size() {
+		return appended == null ? mappedSize : mappedSize + appended.size() - 1;
+	}
+
+	public ActivityAlphabet getAlphabet() {
+		return appended == null ? super.getAlphabet() : appended.getAlphabet();
+	}
+
+	/*
+	 * Negating a mapped activity index (or undoing that) is kept in a bitset, any
+	 * other activity index in a map.
+	 */
+	void set(int idx, int activity) {
+		changed();
+		if (idx >= mappedSize) {
+			appended.set(idx - mappedSize + 1, activity);
+			return;
+		}
+		if (values != null) {
+			values.remove(idx);
+		}
+		int mappedActivity = getMapped(idx);
+		if (activity == mappedActivity) {
+			if (negated != null) {
+				negated.clear(idx);
+			}
+		} else if (activity == -mappedActivity) {
+			if (negated == null) {
+				negated = new BitSet(mappedSize);
+			}
+			negated.set(idx);
+		} else {
+			if (values == null) {
+				values = new HashMap<Integer, Integer>();
+			}
+			values.put(idx, activity);
+		}
+	}
+}
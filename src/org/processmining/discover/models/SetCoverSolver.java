@@ -0,0 +1,286 @@
+package org.processmining.discover.models;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import org.processmining.framework.plugin.Progress;
+
+/*
+ * Finds a smallest selection of sets that together cover all elements of
+ * these sets. A cover is first found greedily, after which branch-and-bound
+ * looks for smaller covers until the node limit (if any) is reached. The
+ * branch-and-bound branches on the uncovered element covered by the fewest
+ * sets, and is bounded by a set of uncovered elements no two of which are
+ * covered by the same set (every such element needs a set of its own), and
+ * by the number of uncovered elements divided by the most any set covers.
+ */
+class SetCoverSolver {
+
+	/*
+	 * Default maximal number of search nodes. The search is exponential in the
+	 * number of sets, so it is always bounded when selecting matrices. As the
+	 * bound is on nodes and not on time, the selection does not depend on the
+	 * speed of the machine.
+	 */
+	static final long MAXNODES = 100000;
+
+	/*
+	 * Number of search nodes after which the progress is checked again.
+	 */
+	private static final long CHECKMASK = (1 << 10) - 1;
+
+	private int nofSets;
+	private int nofElements;
+
+	/*
+	 * For every set, the bitset of elements it covers.
+	 */
+	private long[][] covers;
+
+	/*
+	 * For every element, the bitset of sets that cover it.
+	 */
+	private long[][] coveredBy;
+
+	private long maxNodes;
+	private Progress progress;
+	private long nofNodes;
+	private boolean isExhausted;
+
+	/*
+	 * The smallest cover found so far.
+	 */
+	private int[] best;
+	private int bestSize;
+
+	/*
+	 * Creates a solver for the given sets. The elements to cover are the
+	 * elements of these sets.
+	 */
+	SetCoverSolver(List<BitSet> sets) {
+		nofSets = sets.size();
+		nofElements = 0;
+		for (BitSet set : sets) {
+			nofElements = Math.max(nofElements, set.length());
+		}
+		covers = new long[nofSets][(nofElements + 63) >>> 6];
+		coveredBy = new long[nofElements][(nofSets + 63) >>> 6];
+		for (int s = 0; s < nofSets; s++) {
+			BitSet set = sets.get(s);
+			for (int e = set.nextSetBit(0); e >= 0; e = set.nextSetBit(e + 1)) {
+				covers[s][e >>> 6] |= 1L << e;
+				coveredBy[e][s >>> 6] |= 1L << s;
+			}
+		}
+	}
+
+	/*
+	 * Returns the indices (in increasing order) of a smallest selection of sets
+	 * that covers all elements. If the given number of search nodes (0 if not
+	 * limited) is exceeded, or the given progress (may be null) is cancelled,
+	 * returns the greedy cover instead, or a smaller cover if one was found
+	 * before.
+	 */
+	int[] solve(long maxNodes, Progress progress) {
+		this.maxNodes = maxNodes;
+		this.progress = progress;
+		nofNodes = 0;
+		isExhausted = false;
+		best = greedy();
+		bestSize = best.length;
+		long[] uncovered = new long[(nofElements + 63) >>> 6];
+		for (long[] cover : covers) {
+			LongBitSets.or(uncovered, cover);
+		}
+		long[] allowed = new long[(nofSets + 63) >>> 6];
+		for (int s = 0; s < nofSets; s++) {
+			allowed[s >>> 6] |= 1L << s;
+		}
+		search(uncovered, allowed, new int[nofSets], 0);
+		if (isExhausted) {
+			System.out.println("[SetCoverSolver] Search stopped after " + nofNodes
+					+ " search nodes, using the smallest cover found so far (" + bestSize + " sets).");
+		}
+		return best;
+	}
+
+	/*
+	 * Returns the indices (in increasing order) of a cover found by repeatedly
+	 * selecting the set that covers the most uncovered elements, after which
+	 * selected sets that have become redundant are removed again.
+	 */
+	int[] greedy() {
+		long[] uncovered = new long[(nofElements + 63) >>> 6];
+		for (long[] cover : covers) {
+			LongBitSets.or(uncovered, cover);
+		}
+		List<Integer> selected = new ArrayList<Integer>();
+		while (!LongBitSets.isEmpty(uncovered)) {
+			int bestSet = -1;
+			int bestCount = 0;
+			for (int s = 0; s < nofSets; s++) {
+				int count = LongBitSets.intersectionCardinality(covers[s], uncovered);
+				if (count > bestCount) {
+					bestSet = s;
+					bestCount = count;
+				}
+			}
+			selected.add(bestSet);
+			LongBitSets.andNot(uncovered, covers[bestSet]);
+		}
+		/*
+		 * Remove the sets that only cover elements also covered by other selected
+		 * sets, trying the sets selected last first.
+		 */
+		int[] counts = new int[nofElements];
+		for (int s : selected) {
+			for (int e = LongBitSets.nextSetBit(covers[s], 0); e >= 0; e = LongBitSets.nextSetBit(covers[s], e + 1)) {
+				counts[e]++;
+			}
+		}
+		for (int i = selected.size() - 1; i >= 0; i--) {
+			int s = selected.get(i);
+			boolean isRedundant = true;
+			for (int e = LongBitSets.nextSetBit(covers[s], 0); e >= 0
+					&& isRedundant; e = LongBitSets.nextSetBit(covers[s], e + 1)) {
+				isRedundant = counts[e] > 1;
+			}
+			if (isRedundant) {
+				for (int e = LongBitSets.nextSetBit(covers[s], 0); e >= 0; e = LongBitSets.nextSetBit(covers[s],
+						e + 1)) {
+					counts[e]--;
+				}
+				selected.remove(i);
+			}
+		}
+		return toSortedArray(selected);
+	}
+
+	/*
+	 * Searches for covers of the uncovered elements using only the allowed sets,
+	 * given the chosen sets so far.
+	 */
+	private void search(long[] uncovered, long[] allowed, int[] chosen, int nofChosen) {
+		if (isExhausted) {
+			return;
+		}
+		if (++nofNodes > maxNodes && maxNodes > 0) {
+			isExhausted = true;
+			return;
+		}
+		if ((nofNodes & CHECKMASK) == 0 && progress != null && progress.isCancelled()) {
+			isExhausted = true;
+			return;
+		}
+		if (LongBitSets.isEmpty(uncovered)) {
+			if (nofChosen < bestSize) {
+				List<Integer> selected = new ArrayList<Integer>(nofChosen);
+				for (int i = 0; i < nofChosen; i++) {
+					selected.add(chosen[i]);
+				}
+				best = toSortedArray(selected);
+				bestSize = nofChosen;
+			}
+			return;
+		}
+		if (nofChosen + 1 >= bestSize) {
+			// Needs at least one more set, which would not improve.
+			return;
+		}
+		/*
+		 * Find the uncovered element covered by the fewest allowed sets, and a
+		 * set of uncovered elements no two of which are covered by the same allowed
+		 * set. The latter are taken greedily in order of the elements.
+		 */
+		int element = -1;
+		int minCount = Integer.MAX_VALUE;
+		int lowerBound = 0;
+		long[] used = new long[allowed.length];
+		long[] options = new long[allowed.length];
+		for (int e = LongBitSets.nextSetBit(uncovered, 0); e >= 0; e = LongBitSets.nextSetBit(uncovered, e + 1)) {
+			int count = 0;
+			boolean isDisjoint = true;
+			for (int w = 0; w < allowed.length; w++) {
+				options[w] = coveredBy[e][w] & allowed[w];
+				count += Long.bitCount(options[w]);
+				isDisjoint &= (options[w] & used[w]) == 0;
+			}
+			if (count == 0) {
+				// Cannot be covered anymore.
+				return;
+			}
+			if (count < minCount) {
+				element = e;
+				minCount = count;
+			}
+			if (isDisjoint) {
+				lowerBound++;
+				LongBitSets.or(used, options);
+			}
+		}
+		if (nofChosen + lowerBound >= bestSize) {
+			return;
+		}
+		/*
+		 * Every set covers at most as many uncovered elements as the allowed set
+		 * covering the most.
+		 */
+		int maxCount = 0;
+		for (int s = LongBitSets.nextSetBit(allowed, 0); s >= 0; s = LongBitSets.nextSetBit(allowed, s + 1)) {
+			maxCount = Math.max(maxCount, LongBitSets.intersectionCardinality(covers[s], uncovered));
+		}
+		int nofUncovered = LongBitSets.cardinality(uncovered);
+		if (nofChosen + (nofUncovered + maxCount - 1) / maxCount >= bestSize) {
+			return;
+		}
+		/*
+		 * Branch on the sets that cover the element, where the sets covering the
+		 * most uncovered elements are tried first. Every next branch excludes the
+		 * sets tried before.
+		 */
+		int[] sets = new int[minCount];
+		int[] counts = new int[minCount];
+		int nofOptions = 0;
+		for (int s = LongBitSets.nextSetBit(coveredBy[element], 0); s >= 0; s = LongBitSets
+				.nextSetBit(coveredBy[element], s + 1)) {
+			if ((allowed[s >>> 6] & (1L << s)) == 0) {
+				continue;
+			}
+			int count = LongBitSets.intersectionCardinality(covers[s], uncovered);
+			int i = nofOptions++;
+			while (i > 0 && counts[i - 1] < count) {
+				sets[i] = sets[i - 1];
+				counts[i] = counts[i - 1];
+				i--;
+			}
+			sets[i] = s;
+			counts[i] = count;
+		}
+		long[] nextAllowed = allowed.clone();
+		for (int i = 0; i < nofOptions; i++) {
+			int s = sets[i];
+			nextAllowed[s >>> 6] &= ~(1L << s);
+			long[] nextUncovered = uncovered.clone();
+			LongBitSets.andNot(nextUncovered, covers[s]);
+			chosen[nofChosen] = s;
+			search(nextUncovered, nextAllowed, chosen, nofChosen + 1);
+			if (nofChosen + 1 >= bestSize) {
+				return;
+			}
+		}
+	}
+
+	private static int[] toSortedArray(List<Integer> list) {
+		BitSet bits = new BitSet();
+		for (int i : list) {
+			bits.set(i);
+		}
+		int[] array = new int[list.size()];
+		int idx = 0;
+		for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1)) {
+			array[idx++] = i;
+		}
+		return array;
+	}
+}
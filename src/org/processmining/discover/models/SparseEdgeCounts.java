@@ -0,0 +1,227 @@
+package org.processmining.discover.models;
+
+import java.util.Arrays;
+
+/**
+ * Edge counts (and positive flags) for a large alphabet, of which only the
+ * non-zero edges are stored. The edges are kept in an open-addressing hash
+ * table, which is used while counting, and can be turned into sorted rows or
+ * into a dense matrix afterwards. Counts may also be subtracted: an edge whose
+ * count drops to 0 is no longer stored.
+ */
+class SparseEdgeCounts {
+
+	/*
+	 * The size of the alphabet.
+	 */
+	private int size;
+
+	/*
+	 * The hash table. A key is the edge (fromIdx * size + toIdx) plus 1, as 0
+	 * marks an empty slot.
+	 */
+	private long[] keys;
+	private int[] counts;
+	private boolean[] positive;
+
+	/*
+	 * The number of edges stored.
+	 */
+	private int nofEdges;
+
+	SparseEdgeCounts(int size) {
+		this.size = size;
+		keys = new long[1024];
+		counts = new int[1024];
+		positive = new boolean[1024];
+		nofEdges = 0;
+	}
+
+	/*
+	 * Returns the number of edges stored.
+	 */
+	int getNofEdges() {
+		return nofEdges;
+	}
+
+	/*
+	 * Adds the given count to the given edge, and marks the edge positive if
+	 * needed.
+	 */
+	void add(int fromIdx, int toIdx, int count, boolean isPos) {
+		add((long) fromIdx * size + toIdx + 1, count, isPos);
+	}
+
+	/*
+	 * Returns the count of the given edge.
+	 */
+	int get(int fromIdx, int toIdx) {
+		int slot = find((long) fromIdx * size + toIdx + 1);
+		return counts[slot];
+	}
+
+	/*
+	 * Returns the first slot from the given slot onwards that holds an edge, or
+	 * -1 if none. Used to iterate over the edges.
+	 */
+	int nextEdge(int slot) {
+		while (slot < keys.length) {
+			if (keys[slot] != 0) {
+				return slot;
+			}
+			slot++;
+		}
+		return -1;
+	}
+
+	int getFromIdx(int slot) {
+		return (int) ((keys[slot] - 1) / size);
+	}
+
+	int getToIdx(int slot) {
+		return (int) ((keys[slot] - 1) % size);
+	}
+
+	int getCount(int slot) {
+		return counts[slot];
+	}
+
+	boolean isPositive(int slot) {
+		return positive[slot];
+	}
+
+	/*
+	 * Adds the given edge counts to these edge counts.
+	 */
+	void add(SparseEdgeCounts edgeCounts) {
+		for (int slot = 0; slot < edgeCounts.keys.length; slot++) {
+			if (edgeCounts.keys[slot] != 0) {
+				add(edgeCounts.keys[slot], edgeCounts.counts[slot], edgeCounts.positive[slot]);
+			}
+		}
+	}
+
+	private void add(long key, int count, boolean isPos) {
+		int slot = find(key);
+		if (keys[slot] == 0) {
+			if (2 * (nofEdges + 1) > keys.length) {
+				grow();
+				slot = find(key);
+			}
+			keys[slot] = key;
+			nofEdges++;
+		}
+		counts[slot] += count;
+		positive[slot] |= isPos;
+		if (counts[slot] == 0) {
+			remove(slot);
+		}
+	}
+
+	/*
+	 * Removes the edge in the given slot. Any later edge in the same run of
+	 * slots that can be found from the emptied slot is moved into it, so every
+	 * edge can still be found.
+	 */
+	private void remove(int slot) {
+		int mask = keys.length - 1;
+		int empty = slot;
+		for (int next = (slot + 1) & mask; keys[next] != 0; next = (next + 1) & mask) {
+			int home = getHome(keys[next], mask);
+			if (((next - home) & mask) >= ((next - empty) & mask)) {
+				keys[empty] = keys[next];
+				counts[empty] = counts[next];
+				positive[empty] = positive[next];
+				empty = next;
+			}
+		}
+		keys[empty] = 0;
+		counts[empty] = 0;
+		positive[empty] = false;
+		nofEdges--;
+	}
+
+	/*
+	 * Returns the slot for the given key: Either the slot containing it, or the
+	 * empty slot where it should go.
+	 */
+	private int find(long key) {
+		int mask = keys.length - 1;
+		int slot = getHome(key, mask);
+		while (keys[slot] != 0 && keys[slot] != key) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	/*
+	 * Returns the slot where the given key should go if no other key was there.
+	 */
+	private static int getHome(long key, int mask) {
+		return (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+	}
+
+	private void grow() {
+		long[] oldKeys = keys;
+		int[] oldCounts = counts;
+		boolean[] oldPositive = positive;
+		keys = new long[2 * oldKeys.length];
+		counts = new int[2 * oldKeys.length];
+		positive = new boolean[2 * oldKeys.length];
+		for (int oldSlot = 0; oldSlot < oldKeys.length; oldSlot++) {
+			if (oldKeys[oldSlot] != 0) {
+				int slot = find(oldKeys[oldSlot]);
+				keys[slot] = oldKeys[oldSlot];
+				counts[slot] = oldCounts[oldSlot];
+				positive[slot] = oldPositive[oldSlot];
+			}
+		}
+	}
+
+	/*
+	 * Fills the given dense edge counts and positive bitset (row by row).
+	 */
+	void toDense(int[] edgeCounts, long[] positiveBits) {
+		for (int slot = 0; slot < keys.length; slot++) {
+			if (keys[slot] != 0) {
+				int edge = (int) (keys[slot] - 1);
+				edgeCounts[edge] = counts[slot];
+				if (positive[slot]) {
+					positiveBits[edge >>> 6] |= 1L << edge;
+				}
+			}
+		}
+	}
+
+	/*
+	 * Fills the given rows: For every activity, the sorted activities that
+	 * directly-follow it, with their edge counts and positive flags.
+	 */
+	void toRows(int[][] successors, int[][] successorCounts, boolean[][] successorPositive) {
+		long[] sortedKeys = new long[nofEdges];
+		int[] rowSizes = new int[size];
+		int nofKeys = 0;
+		for (int slot = 0; slot < keys.length; slot++) {
+			if (keys[slot] != 0) {
+				sortedKeys[nofKeys++] = keys[slot];
+				rowSizes[(int) ((keys[slot] - 1) / size)]++;
+			}
+		}
+		// Row by row, and within a row by column.
+		Arrays.sort(sortedKeys);
+		for (int fromIdx = 0; fromIdx < size; fromIdx++) {
+			successors[fromIdx] = new int[rowSizes[fromIdx]];
+			successorCounts[fromIdx] = new int[rowSizes[fromIdx]];
+			successorPositive[fromIdx] = new boolean[rowSizes[fromIdx]];
+			rowSizes[fromIdx] = 0;
+		}
+		for (long key : sortedKeys) {
+			int slot = find(key);
+			int fromIdx = (int) ((key - 1) / size);
+			int i = rowSizes[fromIdx]++;
+			successors[fromIdx][i] = (int) ((key - 1) % size);
+			successorCounts[fromIdx][i] = counts[slot];
+			successorPositive[fromIdx][i] = positive[slot];
+		}
+	}
+}
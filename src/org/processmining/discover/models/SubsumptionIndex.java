@@ -0,0 +1,256 @@
+package org.processmining.discover.models;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Index of sets of activity indices (given as bitsets) that supports subset
+ * and superset queries, for keeping only the minimal or only the maximal sets
+ * found so far. Every set is associated with a value, like the activity set
+ * itself.
+ *
+ * The sets are kept in a set-trie: every set is a path of its indices in
+ * increasing order. As a result, a query only visits the paths that can lead
+ * to a subset or superset, instead of checking every set.
+ *
+ * The index is not thread-safe.
+ */
+public class SubsumptionIndex<T> {
+
+	private static final int[] NOKEYS = new int[0];
+
+	/*
+	 * A node of the set-trie. The children are sorted on their key. A node that
+	 * ends a set holds the value of that set. Every node other than the root is
+	 * on the path of some set.
+	 */
+	private static class Node<T> {
+		int[] keys = NOKEYS;
+		List<Node<T>> children = null;
+		boolean isSet = false;
+		T value = null;
+
+		Node<T> getChild(int key) {
+			int i = Arrays.binarySearch(keys, key);
+			return i < 0 ? null : children.get(i);
+		}
+
+		Node<T> addChild(int key) {
+			int i = Arrays.binarySearch(keys, key);
+			if (i >= 0) {
+				return children.get(i);
+			}
+			i = -i - 1;
+			int[] newKeys = new int[keys.length + 1];
+			System.arraycopy(keys, 0, newKeys, 0, i);
+			newKeys[i] = key;
+			System.arraycopy(keys, i, newKeys, i + 1, keys.length - i);
+			keys = newKeys;
+			if (children == null) {
+				children = new ArrayList<Node<T>>(2);
+			}
+			Node<T> child = new Node<T>();
+			children.add(i, child);
+			return child;
+		}
+
+		void removeChild(int i) {
+			int[] newKeys = new int[keys.length - 1];
+			System.arraycopy(keys, 0, newKeys, 0, i);
+			System.arraycopy(keys, i + 1, newKeys, i, keys.length - i - 1);
+			keys = newKeys;
+			children.remove(i);
+		}
+
+		boolean isEmpty() {
+			return !isSet && keys.length == 0;
+		}
+	}
+
+	private Node<T> root;
+
+	/*
+	 * The values of all sets in the index.
+	 */
+	private Set<T> values;
+
+	/**
+	 * Creates an empty index.
+	 */
+	public SubsumptionIndex() {
+		root = new Node<T>();
+		values = new HashSet<T>();
+	}
+
+	/**
+	 * Returns the number of sets in the index.
+	 *
+	 * @return The number of sets in the index
+	 */
+	public int size() {
+		return values.size();
+	}
+
+	/**
+	 * Returns the values of all sets in the index. This set should not be
+	 * changed.
+	 *
+	 * @return The values of all sets in the index
+	 */
+	public Set<T> getValues() {
+		return values;
+	}
+
+	/**
+	 * Adds the given set with the given value to the index, unless the index
+	 * already contains this set.
+	 *
+	 * @param set   The given set
+	 * @param value The given value
+	 * @return Whether the set was added
+	 */
+	public boolean add(BitSet set, T value) {
+		Node<T> node = root;
+		for (int key = set.nextSetBit(0); key >= 0; key = set.nextSetBit(key + 1)) {
+			node = node.addChild(key);
+		}
+		if (node.isSet) {
+			return false;
+		}
+		node.isSet = true;
+		node.value = value;
+		values.add(value);
+		return true;
+	}
+
+	/**
+	 * Returns whether the index contains some subset of the given set,
+	 * including the set itself.
+	 *
+	 * @param set The given set
+	 * @return Whether the index contains some subset of the given set
+	 */
+	public boolean containsSubsetOf(BitSet set) {
+		return containsSubsetOf(root, set);
+	}
+
+	private boolean containsSubsetOf(Node<T> node, BitSet set) {
+		if (node.isSet) {
+			return true;
+		}
+		for (int i = 0; i < node.keys.length; i++) {
+			if (set.get(node.keys[i]) && containsSubsetOf(node.children.get(i), set)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns whether the index contains some superset of the given set,
+	 * including the set itself.
+	 *
+	 * @param set The given set
+	 * @return Whether the index contains some superset of the given set
+	 */
+	public boolean containsSupersetOf(BitSet set) {
+		return containsSupersetOf(root, set, set.nextSetBit(0));
+	}
+
+	/*
+	 * The key is the smallest index of the given set not yet on the path, or -1
+	 * if all are.
+	 */
+	private boolean containsSupersetOf(Node<T> node, BitSet set, int key) {
+		if (key < 0) {
+			// Every set below this node is a superset.
+			return !node.isEmpty();
+		}
+		for (int i = 0; i < node.keys.length && node.keys[i] <= key; i++) {
+			if (containsSupersetOf(node.children.get(i), set,
+					node.keys[i] == key ? set.nextSetBit(key + 1) : key)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Removes all subsets of the given set, including the set itself, from the
+	 * index.
+	 *
+	 * @param set The given set
+	 * @return The values of the sets removed
+	 */
+	public List<T> removeSubsetsOf(BitSet set) {
+		List<T> removed = new ArrayList<T>();
+		removeSubsetsOf(root, set, removed);
+		/*
+		 * Remove them one by one, as removeAll on a list may check every value
+		 * against the entire list.
+		 */
+		for (T value : removed) {
+			values.remove(value);
+		}
+		return removed;
+	}
+
+	private void removeSubsetsOf(Node<T> node, BitSet set, List<T> removed) {
+		if (node.isSet) {
+			removed.add(node.value);
+			node.isSet = false;
+			node.value = null;
+		}
+		for (int i = node.keys.length - 1; i >= 0; i--) {
+			if (set.get(node.keys[i])) {
+				Node<T> child = node.children.get(i);
+				removeSubsetsOf(child, set, removed);
+				if (child.isEmpty()) {
+					node.removeChild(i);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Removes all supersets of the given set, including the set itself, from
+	 * the index.
+	 *
+	 * @param set The given set
+	 * @return The values of the sets removed
+	 */
+	public List<T> removeSupersetsOf(BitSet set) {
+		List<T> removed = new ArrayList<T>();
+		removeSupersetsOf(root, set, set.nextSetBit(0), removed);
+		/*
+		 * Remove them one by one, as removeAll on a list may check every value
+		 * against the entire list.
+		 */
+		for (T value : removed) {
+			values.remove(value);
+		}
+		return removed;
+	}
+
+	private void removeSupersetsOf(Node<T> node, BitSet set, int key, List<T> removed) {
+		if (key < 0 && node.isSet) {
+			removed.add(node.value);
+			node.isSet = false;
+			node.value = null;
+		}
+		for (int i = node.keys.length - 1; i >= 0; i--) {
+			if (key >= 0 && node.keys[i] > key) {
+				continue;
+			}
+			Node<T> child = node.children.get(i);
+			removeSupersetsOf(child, set, key >= 0 && node.keys[i] == key ? set.nextSetBit(key + 1) : key, removed);
+			if (child.isEmpty()) {
+				node.removeChild(i);
+			}
+		}
+	}
+}
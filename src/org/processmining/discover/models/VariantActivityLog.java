@@ -0,0 +1,174 @@
+package org.processmining.discover.models;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Activity log that contains every distinct trace (variant) only once, together
+ * with its multiplicity. Two traces are the same variant if they have the same
+ * sequence of activity indices and are both classified positive or not.
+ */
+public class VariantActivityLog extends ActivityLog {
+
+	/*
+	 * For every index of the activity log, the multiplicity of the variant
+	 * containing it.
+	 */
+	private int[] multiplicities;
+
+	/*
+	 * A variant: the activity indices of a trace, including its closing start-end
+	 * activity, and whether it is classified positive.
+	 */
+	private static class Variant {
+
+		private int[] activities;
+		private boolean isPos;
+		private int hashCode;
+
+		Variant(int[] activities, boolean isPos) {
+			this.activities = activities;
+			this.isPos = isPos;
+			hashCode = 31 * Arrays.hashCode(activities) + (isPos ? 1 : 0);
+		}
+
+		public int hashCode() {
+			return hashCode;
+		}
+
+		public boolean equals(Object o) {
+			if (o instanceof Variant) {
+				Variant variant = (Variant) o;
+				return isPos == variant.isPos && Arrays.equals(activities, variant.activities);
+			}
+			return false;
+		}
+	}
+
+	/*
+	 * The arrays of a variant activity log under construction.
+	 */
+	private static class Compression {
+
+		private int[] activities;
+		private boolean[] positive;
+		private int[] multiplicities;
+		private int size;
+	}
+
+	/**
+	 * Creates a variant activity log from the given activity log.
+	 * 
+	 * @param log The given activity log
+	 */
+	public VariantActivityLog(ActivityLog log) {
+		this(log.getAlphabet(), compress(log));
+	}
+
+	private VariantActivityLog(ActivityAlphabet alphabet, Compression compression) {
+		this(alphabet, compression.activities, compression.positive, compression.multiplicities, compression.size);
+	}
+
+	/*
+	 * Creates a variant activity log from the given arrays, which are not copied.
+	 */
+	VariantActivityLog(ActivityAlphabet alphabet, int[] activities, boolean[] positive, int[] multiplicities,
+			int size) {
+		super(alphabet, activities, positive, size);
+		this.multiplicities = multiplicities;
+	}
+
+	/*
+	 * Groups the traces of the given log by variant, in order of first
+	 * occurrence.
+	 */
+	private static Compression compress(ActivityLog log) {
+		Map<Variant, Integer> variant2Idx = new HashMap<Variant, Integer>();
+		int[] activities = new int[log.size()];
+		boolean[] positive = new boolean[log.size()];
+		int[] multiplicities = new int[log.size()];
+		int size = 0;
+		positive[size] = false;
+		multiplicities[size] = 1;
+		activities[size++] = log.get(0);
+		int startIdx = 0;
+		for (int endIdx = 1; endIdx < log.size(); endIdx++) {
+			if (log.get(endIdx) != 0) {
+				continue;
+			}
+			int[] trace = new int[endIdx - startIdx];
+			for (int i = 0; i < trace.length; i++) {
+				trace[i] = log.get(startIdx + 1 + i);
+			}
+			int multiplicity = log.getMultiplicity(endIdx);
+			Variant variant = new Variant(trace, log.isPos(endIdx));
+			Integer variantIdx = variant2Idx.get(variant);
+			if (variantIdx == null) {
+				// New variant, add it.
+				variant2Idx.put(variant, size);
+				for (int i = 0; i < trace.length; i++) {
+					positive[size] = variant.isPos;
+					multiplicities[size] = multiplicity;
+					activities[size++] = trace[i];
+				}
+			} else {
+				// Known variant, increase its multiplicity.
+				for (int i = variantIdx; i < variantIdx + trace.length; i++) {
+					multiplicities[i] += multiplicity;
+				}
+			}
+			startIdx = endIdx;
+		}
+		System.out.println("[VariantActivityLog] Compressed " + log.size() + " indices into " + size + " indices ("
+				+ variant2Idx.size() + " variants).");
+		Compression compression = new Compression();
+		compression.activities = Arrays.copyOf(activities, size);
+		compression.positive = Arrays.copyOf(positive, size);
+		compression.multiplicities = Arrays.copyOf(multiplicities, size);
+		compression.size = size;
+		return compression;
+	}
+
+	/**
+	 * Returns a copy of this variant activity log.
+	 * 
+	 * @return A copy of this variant activity log
+	 */
+	public ActivityLog copy() {
+		int[] activities = new int[size()];
+		boolean[] positive = new boolean[size()];
+		for (int i = 0; i < size(); i++) {
+			activities[i] = get(i);
+			positive[i] = isPos(i);
+		}
+		return new VariantActivityLog(getAlphabet(), activities, positive, Arrays.copyOf(multiplicities, size()),
+				size());
+	}
+
+	/**
+	 * Appends the traces of the given activity log to this variant activity log.
+	 * The traces are appended as they are, with their multiplicities, even if
+	 * they are variants already in this log. As a result, the existing part of
+	 * this log does not change.
+	 * 
+	 * @param log The given activity log
+	 * @return The index in this activity log where the first appended trace
+	 *         starts
+	 */
+	public int append(ActivityLog log) {
+		int startIdx = super.append(log);
+		if (size() > multiplicities.length) {
+			multiplicities = Arrays.copyOf(multiplicities,
+					Math.max(size(), multiplicities.length + (multiplicities.length >> 1)));
+		}
+		for (int i = 1; i < log.size(); i++) {
+			multiplicities[startIdx + i - 1] = log.getMultiplicity(i);
+		}
+		return startIdx;
+	}
+
+	public int getMultiplicity(int idx) {
+		return multiplicities[idx];
+	}
+}
@@ -0,0 +1,448 @@
+package org.processmining.discover.models;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.deckfour.xes.classification.XEventClassifier;
+import org.deckfour.xes.classification.XEventNameClassifier;
+import org.deckfour.xes.model.XEvent;
+import org.deckfour.xes.model.XTrace;
+import org.processmining.discover.parameters.DiscoverPetriNetParameters;
+
+/**
+ * Directly-follows counts over a sliding window of traces, for streaming event
+ * sources. The window holds the last N traces, the traces of the last T time
+ * units, or both. Adding a trace and expiring a trace take time linear in the
+ * length of that trace only. Only the activities in the window are counted: an
+ * activity that leaves the window frees its counts for the next new activity.
+ *
+ * A snapshot of the window (its alphabet, its activity log, and its matrix) can
+ * be discovered from like any other activity log:
+ *
+ * <pre>
+ * DiscoverPetriNetParameters parameters = new DiscoverPetriNetParameters();
+ * window.snapshot(parameters);
+ * AcceptingPetriNet net = algorithm.apply(context, null, null, parameters);
+ * </pre>
+ */
+public class WindowedActivityMatrix {
+
+	/*
+	 * Initial number of activities (including the start-end activity) the
+	 * counts have room for.
+	 */
+	private static final int INITIAL_CAPACITY = 16;
+
+	/*
+	 * A trace in the window.
+	 */
+	private static class Trace {
+		// The (window) indices of the activities of the trace.
+		int[] activities;
+		boolean isPos;
+		long time;
+
+		Trace(int[] activities, boolean isPos, long time) {
+			this.activities = activities;
+			this.isPos = isPos;
+			this.time = time;
+		}
+	}
+
+	/*
+	 * The maximal number of traces in the window, or 0 if not limited.
+	 */
+	private int maxNofTraces;
+
+	/*
+	 * The maximal age of a trace in the window, or 0 if not limited.
+	 */
+	private long maxAge;
+
+	/*
+	 * The traces in the window, from old to new.
+	 */
+	private ArrayDeque<Trace> traces;
+
+	/*
+	 * Maps every activity in the window onto its window index. Index 0 is the
+	 * start-end activity. An activity keeps its window index while it is in the
+	 * window. Once it has left the window, its window index is free, and is used
+	 * for the next new activity.
+	 */
+	private Map<String, Integer> activity2Idx;
+
+	/*
+	 * For every window index, its activity, or null if free.
+	 */
+	private String[] activities;
+
+	/*
+	 * The free window indices below the number of window indices used.
+	 */
+	private int[] freeIndices;
+	private int nofFreeIndices;
+	private int nofIndices;
+
+	/*
+	 * The counts for the traces in the window. The positive count of an edge is
+	 * the number of traces classified positive that contain it.
+	 */
+	private int capacity;
+	private int[] nodeCounts;
+
+	/*
+	 * The edge counts and positive counts as long as the counts have room for
+	 * fewer than ActivityMatrix.SPARSESIZE activities. The counts for edge
+	 * (fromIdx, toIdx) are at index fromIdx * capacity + toIdx. Null otherwise.
+	 */
+	private int[] edgeCounts;
+	private int[] positiveCounts;
+
+	/*
+	 * The edge counts and positive counts once the counts have room for
+	 * ActivityMatrix.SPARSESIZE activities or more. Only edges with a non-zero
+	 * count are stored. Null before.
+	 */
+	private SparseEdgeCounts sparseEdgeCounts;
+	private SparseEdgeCounts sparsePositiveCounts;
+
+	/**
+	 * Creates an empty window.
+	 *
+	 * @param maxNofTraces
+	 *            The maximal number of traces in the window, or 0 if not
+	 *            limited
+	 * @param maxAge
+	 *            The maximal age of a trace in the window, or 0 if not limited
+	 */
+	public WindowedActivityMatrix(int maxNofTraces, long maxAge) {
+		this.maxNofTraces = maxNofTraces;
+		this.maxAge = maxAge;
+		traces = new ArrayDeque<Trace>();
+		activity2Idx = new HashMap<String, Integer>();
+		capacity = INITIAL_CAPACITY;
+		activities = new String[capacity];
+		activities[0] = ActivityAlphabet.STARTEND;
+		freeIndices = new int[capacity];
+		nofFreeIndices = 0;
+		nofIndices = 1;
+		nodeCounts = new int[capacity];
+		edgeCounts = new int[capacity * capacity];
+		positiveCounts = new int[capacity * capacity];
+	}
+
+	/**
+	 * Adds the given trace using the given classifier, and expires the traces
+	 * that have left the window. Traces classified negative are skipped.
+	 *
+	 * @param trace
+	 *            The trace
+	 * @param classifier
+	 *            The given classifier
+	 * @param time
+	 *            The time of the trace, for example the time of its last event
+	 */
+	public void addTrace(XTrace trace, XEventClassifier classifier, long time) {
+		Boolean classification = ActivityLogBuilder.getClassification(trace);
+		if (classification != null && !classification) {
+			// Trace is classified as negative. As a result, we will just skip this trace.
+			expire(time);
+			return;
+		}
+		List<String> traceActivities = new ArrayList<String>(trace.size());
+		for (XEvent event : trace) {
+			traceActivities.add(classifier.getClassIdentity(event));
+		}
+		addTrace(traceActivities, classification != null, time);
+	}
+
+	/**
+	 * Adds a trace with the given activities, and expires the traces that have
+	 * left the window. Traces should be added in order of time.
+	 *
+	 * @param traceActivities
+	 *            The activities of the trace
+	 * @param isPos
+	 *            Whether the trace is classified positive
+	 * @param time
+	 *            The time of the trace, for example the time of its last event
+	 */
+	public void addTrace(List<String> traceActivities, boolean isPos, long time) {
+		int[] trace = new int[traceActivities.size()];
+		for (int i = 0; i < trace.length; i++) {
+			trace[i] = resolve(traceActivities.get(i));
+		}
+		traces.addLast(new Trace(trace, isPos, time));
+		count(trace, isPos, 1);
+		expire(time);
+	}
+
+	/**
+	 * Expires the traces that have left the window at the given time.
+	 *
+	 * @param time
+	 *            The given time
+	 */
+	public void expire(long time) {
+		while (!traces.isEmpty() && ((maxNofTraces > 0 && traces.size() > maxNofTraces)
+				|| (maxAge > 0 && traces.peekFirst().time < time - maxAge))) {
+			Trace trace = traces.removeFirst();
+			count(trace.activities, trace.isPos, -1);
+			for (int activity : trace.activities) {
+				if (nodeCounts[activity] == 0 && activities[activity] != null) {
+					/*
+					 * The activity has left the window. As it does not occur anymore, all
+					 * edges from and to it have count 0 as well.
+					 */
+					activity2Idx.remove(activities[activity]);
+					activities[activity] = null;
+					freeIndices[nofFreeIndices++] = activity;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of traces in the window.
+	 *
+	 * @return The number of traces in the window
+	 */
+	public int getNofTraces() {
+		return traces.size();
+	}
+
+	/*
+	 * Returns the window index of the given activity, resolving it if it is not
+	 * in the window.
+	 */
+	private int resolve(String activity) {
+		Integer idx = activity2Idx.get(activity);
+		if (idx == null) {
+			if (nofFreeIndices > 0) {
+				idx = freeIndices[--nofFreeIndices];
+			} else {
+				if (nofIndices == capacity) {
+					grow();
+				}
+				idx = nofIndices++;
+			}
+			activities[idx] = activity;
+			activity2Idx.put(activity, idx);
+		}
+		return idx;
+	}
+
+	/*
+	 * Doubles the number of activities the counts have room for. From
+	 * ActivityMatrix.SPARSESIZE activities on, the edges are counted sparsely.
+	 */
+	private void grow() {
+		int newCapacity = 2 * capacity;
+		if (edgeCounts != null && newCapacity < ActivityMatrix.SPARSESIZE) {
+			int[] newEdgeCounts = new int[newCapacity * newCapacity];
+			int[] newPositiveCounts = new int[newCapacity * newCapacity];
+			for (int fromIdx = 0; fromIdx < capacity; fromIdx++) {
+				System.arraycopy(edgeCounts, fromIdx * capacity, newEdgeCounts, fromIdx * newCapacity, capacity);
+				System.arraycopy(positiveCounts, fromIdx * capacity, newPositiveCounts, fromIdx * newCapacity,
+						capacity);
+			}
+			edgeCounts = newEdgeCounts;
+			positiveCounts = newPositiveCounts;
+		} else {
+			SparseEdgeCounts newEdgeCounts = new SparseEdgeCounts(newCapacity);
+			SparseEdgeCounts newPositiveCounts = new SparseEdgeCounts(newCapacity);
+			if (edgeCounts != null) {
+				for (int edge = 0; edge < edgeCounts.length; edge++) {
+					if (edgeCounts[edge] != 0) {
+						newEdgeCounts.add(edge / capacity, edge % capacity, edgeCounts[edge], false);
+					}
+					if (positiveCounts[edge] != 0) {
+						newPositiveCounts.add(edge / capacity, edge % capacity, positiveCounts[edge], false);
+					}
+				}
+			} else {
+				copy(sparseEdgeCounts, newEdgeCounts);
+				copy(sparsePositiveCounts, newPositiveCounts);
+			}
+			edgeCounts = null;
+			positiveCounts = null;
+			sparseEdgeCounts = newEdgeCounts;
+			sparsePositiveCounts = newPositiveCounts;
+		}
+		activities = Arrays.copyOf(activities, newCapacity);
+		freeIndices = Arrays.copyOf(freeIndices, newCapacity);
+		nodeCounts = Arrays.copyOf(nodeCounts, newCapacity);
+		capacity = newCapacity;
+	}
+
+	/*
+	 * Adds the edges of the given counts to the other given counts.
+	 */
+	private static void copy(SparseEdgeCounts fromCounts, SparseEdgeCounts toCounts) {
+		for (int slot = fromCounts.nextEdge(0); slot >= 0; slot = fromCounts.nextEdge(slot + 1)) {
+			toCounts.add(fromCounts.getFromIdx(slot), fromCounts.getToIdx(slot), fromCounts.getCount(slot), false);
+		}
+	}
+
+	/*
+	 * Adds the given delta (1 to add, -1 to expire) to the counts of the given
+	 * trace. Like in an activity log, the trace is started and ended by the
+	 * start-end activity, and the ending one is counted as a node.
+	 */
+	private void count(int[] trace, boolean isPos, int delta) {
+		int lastActivity = 0;
+		for (int i = 0; i <= trace.length; i++) {
+			int activity = (i < trace.length ? trace[i] : 0);
+			nodeCounts[activity] += delta;
+			if (edgeCounts != null) {
+				int edge = lastActivity * capacity + activity;
+				edgeCounts[edge] += delta;
+				if (isPos) {
+					positiveCounts[edge] += delta;
+				}
+			} else {
+				sparseEdgeCounts.add(lastActivity, activity, delta, false);
+				if (isPos) {
+					sparsePositiveCounts.add(lastActivity, activity, delta, false);
+				}
+			}
+			lastActivity = activity;
+		}
+	}
+
+	/**
+	 * Returns the alphabet of the window, which contains the activities in the
+	 * window.
+	 *
+	 * @return The alphabet of the window
+	 */
+	public ActivityAlphabet getAlphabet() {
+		return createAlphabet();
+	}
+
+	/**
+	 * Returns an activity log containing the traces in the window, which uses
+	 * the alphabet of the window.
+	 *
+	 * @return The activity log
+	 */
+	public ActivityLog getLog() {
+		ActivityAlphabet alphabet = createAlphabet();
+		return createLog(alphabet, getIdxMap(alphabet));
+	}
+
+	/**
+	 * Returns the activity matrix for the traces in the window, which uses the
+	 * alphabet of the window.
+	 *
+	 * @return The activity matrix
+	 */
+	public ActivityMatrix getMatrix() {
+		ActivityAlphabet alphabet = createAlphabet();
+		return createMatrix(alphabet, getIdxMap(alphabet));
+	}
+
+	/**
+	 * Sets the alphabet, the activity log, and the (filtered) activity matrix of
+	 * the window in the given parameters, so that a discovery using these
+	 * parameters will use the counts of this window. The filters are taken from
+	 * the given parameters.
+	 *
+	 * @param parameters
+	 *            The given parameters
+	 */
+	public void snapshot(DiscoverPetriNetParameters parameters) {
+		ActivityAlphabet alphabet = createAlphabet();
+		int[] idxMap = getIdxMap(alphabet);
+		ActivityMatrix matrix = createMatrix(alphabet, idxMap);
+		matrix.filterAbsolute(parameters.getAbsoluteThreshold());
+		matrix.filterRelative(parameters.getRelativeThreshold(), parameters.getSafetyThreshold());
+		/*
+		 * Setting the classifier would reset the activity log, and setting the
+		 * activity log would reset the matrix. Hence, the order.
+		 */
+		if (parameters.getClassifier() == null) {
+			parameters.setClassifier(new XEventNameClassifier());
+		}
+		parameters.setAlphabet(alphabet);
+		parameters.setLog(new VariantActivityLog(createLog(alphabet, idxMap)));
+		parameters.setMatrix(matrix);
+	}
+
+	/*
+	 * Creates the (sorted) alphabet for the activities in the window.
+	 */
+	private ActivityAlphabet createAlphabet() {
+		return new ActivityAlphabet(new ArrayList<String>(activity2Idx.keySet()));
+	}
+
+	/*
+	 * Maps every window index onto its index in the given alphabet, or onto -1
+	 * if the window index is free.
+	 */
+	private int[] getIdxMap(ActivityAlphabet alphabet) {
+		int[] idxMap = new int[nofIndices];
+		for (int idx = 1; idx < nofIndices; idx++) {
+			idxMap[idx] = (activities[idx] != null ? alphabet.get(activities[idx]) : -1);
+		}
+		return idxMap;
+	}
+
+	/*
+	 * Creates the matrix for the given alphabet. Only the edges with a non-zero
+	 * count are visited if the edges are counted sparsely.
+	 */
+	private ActivityMatrix createMatrix(ActivityAlphabet alphabet, int[] idxMap) {
+		int[] matrixNodeCounts = new int[alphabet.size()];
+		SparseEdgeCounts matrixEdgeCounts = new SparseEdgeCounts(alphabet.size());
+		for (int idx = 0; idx < nofIndices; idx++) {
+			if (idxMap[idx] >= 0) {
+				matrixNodeCounts[idxMap[idx]] = nodeCounts[idx];
+			}
+		}
+		if (edgeCounts != null) {
+			for (int fromIdx = 0; fromIdx < nofIndices; fromIdx++) {
+				for (int toIdx = 0; toIdx < nofIndices; toIdx++) {
+					int edge = fromIdx * capacity + toIdx;
+					if (edgeCounts[edge] != 0) {
+						matrixEdgeCounts.add(idxMap[fromIdx], idxMap[toIdx], edgeCounts[edge],
+								positiveCounts[edge] > 0);
+					}
+				}
+			}
+		} else {
+			for (int slot = sparseEdgeCounts.nextEdge(0); slot >= 0; slot = sparseEdgeCounts.nextEdge(slot + 1)) {
+				int fromIdx = sparseEdgeCounts.getFromIdx(slot);
+				int toIdx = sparseEdgeCounts.getToIdx(slot);
+				matrixEdgeCounts.add(idxMap[fromIdx], idxMap[toIdx], sparseEdgeCounts.getCount(slot),
+						sparsePositiveCounts.get(fromIdx, toIdx) > 0);
+			}
+		}
+		return new ActivityMatrix(alphabet, matrixNodeCounts, matrixEdgeCounts);
+	}
+
+	private ActivityLog createLog(ActivityAlphabet alphabet, int[] idxMap) {
+		int size = 1;
+		for (Trace trace : traces) {
+			size += trace.activities.length + 1;
+		}
+		int[] logActivities = new int[size];
+		boolean[] positive = new boolean[size];
+		// The start-end activity starting the first trace.
+		int idx = 1;
+		for (Trace trace : traces) {
+			for (int activity : trace.activities) {
+				positive[idx] = trace.isPos;
+				logActivities[idx++] = idxMap[activity];
+			}
+			positive[idx] = trace.isPos;
+			logActivities[idx++] = 0;
+		}
+		return new ActivityLog(alphabet, logActivities, positive, size);
+	}
+}
@@ -102,6 +102,17 @@ public class DiscoverPetriNetParameters implements ClassifierParameter {
 	private int safetyThreshold2;
 	
 	private int maxNofRoutingTransitions;
+
+	/**
+	 * The maximal time (in seconds) to search for activity sets, 0 if no limit.
+	 * Selecting the matrices afterwards has a limit of its own.
+	 */
+	private int maxSearchTime;
+
+	/**
+	 * The maximal number of nodes to search for activity sets, 0 if no limit.
+	 */
+	private int maxSearchNodes;
 	/**
 	 * The percentage threshold for concurrent pairs 
 	 * A concurrent pair is ignored it its score does not exceed this percentage of the maximal score.
@@ -154,6 +165,8 @@ public class DiscoverPetriNetParameters implements ClassifierParameter {
 	private static int lastMaxTraceLength = 100;
 	private static int lastNofThreads = 4;
 	private static int lastMaxNofRoutingTransitions = 50;
+	private static int lastMaxSearchTime = 60; // Keeps the wizard responsive.
+	private static int lastMaxSearchNodes = 10000000;
 
 	/**
 	 * Creates default parameter settings.
@@ -192,6 +205,8 @@ public class DiscoverPetriNetParameters implements ClassifierParameter {
 		setMaxTraceLength(lastMaxTraceLength);
 		setNofThreads(lastNofThreads);
 		setMaxNofRoutingTransitions(lastMaxNofRoutingTransitions);
+		setMaxSearchTime(lastMaxSearchTime);
+		setMaxSearchNodes(lastMaxSearchNodes);
 	}
 	
 	/*
@@ -309,7 +324,8 @@ public class DiscoverPetriNetParameters implements ClassifierParameter {
 
 	private void setAlphabet(ActivityAlphabet alphabet, boolean propagate) {
 		if (this.alphabet == null || !this.alphabet.equals(alphabet)) {
-			this.alphabet = (alphabet == null ? null : new ActivityAlphabet(alphabet));
+			// Alphabets are immutable, hence shared.
+			this.alphabet = alphabet;
 			//			setLog(null);
 		}
 	}
@@ -324,7 +340,7 @@ public class DiscoverPetriNetParameters implements ClassifierParameter {
 
 	private void setLog(ActivityLog log, boolean propagate) {
 		if (this.log == null || !this.log.equals(log)) {
-			this.log = (log == null ? null : new ActivityLog(log));
+			this.log = (log == null ? null : log.copy());
 			if (propagate) {
 				setMatrix(null);
 			}
@@ -538,6 +554,24 @@ public class DiscoverPetriNetParameters implements ClassifierParameter {
 		this.maxNofRoutingTransitions = maxNofRoutingTransitions;
 	}
 
+	public int getMaxSearchTime() {
+		return maxSearchTime;
+	}
+
+	public void setMaxSearchTime(int maxSearchTime) {
+		lastMaxSearchTime = maxSearchTime;
+		this.maxSearchTime = maxSearchTime;
+	}
+
+	public int getMaxSearchNodes() {
+		return maxSearchNodes;
+	}
+
+	public void setMaxSearchNodes(int maxSearchNodes) {
+		lastMaxSearchNodes = maxSearchNodes;
+		this.maxSearchNodes = maxSearchNodes;
+	}
+
 	public int getMaxEquivalenceTokens() {
 		return maxEquivalenceTokens;
 	}
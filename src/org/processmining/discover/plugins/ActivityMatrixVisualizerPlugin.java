@@ -10,6 +10,7 @@ import org.deckfour.xes.model.XLog;
 import org.processmining.contexts.uitopia.annotations.Visualizer;
 import org.processmining.discover.models.ActivityAlphabet;
 import org.processmining.discover.models.ActivityLog;
+import org.processmining.discover.models.ActivityLogBuilder;
 import org.processmining.discover.models.ActivityMatrix;
 import org.processmining.discover.models.ActivityMatrixCollection;
 import org.processmining.discover.models.ActivitySets;
@@ -41,8 +42,10 @@ public class ActivityMatrixVisualizerPlugin {
 		if (!eventLog.getClassifiers().isEmpty()) {
 			classifier = eventLog.getClassifiers().get(0);
 		}
-		ActivityAlphabet alphabet = new ActivityAlphabet(eventLog, classifier);
-		ActivityLog log = new ActivityLog(eventLog, classifier, alphabet);
+		ActivityLogBuilder builder = new ActivityLogBuilder();
+		builder.addLog(eventLog, classifier);
+		ActivityAlphabet alphabet = builder.getAlphabet();
+		ActivityLog log = builder.getLog();
 		ActivityMatrix matrix = new ActivityMatrix(log, alphabet);
 
 		return matrix.getComponent();
@@ -59,8 +62,10 @@ public class ActivityMatrixVisualizerPlugin {
 		if (!eventLog.getClassifiers().isEmpty()) {
 			classifier = eventLog.getClassifiers().get(0);
 		}
-		ActivityAlphabet alphabet = new ActivityAlphabet(eventLog, classifier);
-		ActivityLog log = new ActivityLog(eventLog, classifier, alphabet);
+		ActivityLogBuilder builder = new ActivityLogBuilder();
+		builder.addLog(eventLog, classifier);
+		ActivityAlphabet alphabet = builder.getAlphabet();
+		ActivityLog log = builder.getLog();
 		ActivityMatrix matrix = new ActivityMatrix(log, alphabet);
 
 		ConcurrentActivityPairs pairs = new ConcurrentActivityPairs(matrix, alphabet, new DiscoverPetriNetParameters());
@@ -0,0 +1,46 @@
+package org.processmining.discover.plugins;
+
+import org.deckfour.xes.classification.XEventClassifier;
+import org.deckfour.xes.classification.XEventNameClassifier;
+import org.deckfour.xes.model.XLog;
+import org.processmining.contexts.uitopia.annotations.UITopiaVariant;
+import org.processmining.discover.models.ActivityLog;
+import org.processmining.discover.models.ActivityLogBuilder;
+import org.processmining.framework.plugin.PluginContext;
+import org.processmining.framework.plugin.annotations.Plugin;
+import org.processmining.framework.plugin.annotations.PluginVariant;
+
+public class CreateActivityLogPlugin {
+
+	@Plugin( //
+			name = "Create activity log", //
+			parameterLabels = { "Event log" }, //
+			returnLabels = { "Activity log" }, //
+			returnTypes = { ActivityLog.class }, //
+			userAccessible = true, //
+			url = "http://www.win.tue.nl/~hverbeek/", //
+			help = "" //
+	) //
+	@UITopiaVariant( //
+			affiliation = UITopiaVariant.EHV, //
+			author = "H.M.W. Verbeek", //
+			email = "h.m.w.verbeek@tue.nl" //
+	) //
+	@PluginVariant( //
+			variantLabel = "Create activity log", //
+			requiredParameterLabels = { 0 } //
+	) //
+	public ActivityLog run(PluginContext context, XLog eventLog) {
+		/*
+		 * Get the first classifier. If the event log has no classifier, use the default
+		 * classifier.
+		 */
+		XEventClassifier classifier = new XEventNameClassifier();
+		if (!eventLog.getClassifiers().isEmpty()) {
+			classifier = eventLog.getClassifiers().get(0);
+		}
+		ActivityLogBuilder builder = new ActivityLogBuilder();
+		builder.addLog(eventLog, classifier);
+		return builder.getLog();
+	}
+}
@@ -1,6 +1,11 @@
 package org.processmining.discover.plugins;
 
+import java.io.File;
+import java.io.IOException;
+
+import javax.swing.JFileChooser;
 import javax.swing.JPanel;
+import javax.swing.filechooser.FileNameExtensionFilter;
 
 import org.deckfour.uitopia.api.event.TaskListener.InteractionResult;
 import org.deckfour.xes.model.XLog;
@@ -8,6 +13,7 @@ import org.processmining.acceptingpetrinet.models.AcceptingPetriNet;
 import org.processmining.contexts.uitopia.UIPluginContext;
 import org.processmining.contexts.uitopia.annotations.UITopiaVariant;
 import org.processmining.discover.algorithms.DiscoverPetriNetAlgorithm;
+import org.processmining.discover.models.ActivityLog;
 import org.processmining.discover.parameters.DiscoverPetriNetParameters;
 import org.processmining.discover.widgets.DiscoverPetriNetWidget;
 import org.processmining.discover.widgets.FilterMatrixCollectionWidget;
@@ -61,10 +67,10 @@ public class DiscoverPetriNetPlugin extends DiscoverPetriNetAlgorithm {
 					widget = parameters.getMatrix().getComponent();
 					break;
 				case 4 :
-					widget = new SelectActivitySetsWidget(parameters);
+					widget = new SelectActivitySetsWidget(parameters, context.getProgress());
 					break;
 				case 5 :
-					widget = new FilterMatrixCollectionWidget(parameters);
+					widget = new FilterMatrixCollectionWidget(parameters, context.getProgress());
 					break;
 				case 6 :
 					widget = parameters.getMatrixCollection().getComponent();
@@ -172,4 +178,76 @@ public class DiscoverPetriNetPlugin extends DiscoverPetriNetAlgorithm {
 		return runProcessTree(context, log, null);
 	}
 
+	@Plugin( //
+			name = "DiSCover Petri net (activity log)", //
+			parameterLabels = { "Activity log" }, //
+			returnLabels = { "DiSCovered Accepting Petri net" }, //
+			returnTypes = { AcceptingPetriNet.class }, //
+			userAccessible = true, //
+			url = "http://www.win.tue.nl/~hverbeek/", //
+			help = "" //
+	) //
+	@UITopiaVariant( //
+			affiliation = UITopiaVariant.EHV, //
+			author = "H.M.W. Verbeek", //
+			email = "h.m.w.verbeek@tue.nl" //
+	) //
+	@PluginVariant( //
+			variantLabel = "DiSCover Petri net (activity log)", //
+			requiredParameterLabels = { 0 } //
+	) //
+	public AcceptingPetriNet runActivityLog(PluginContext context, ActivityLog log) {
+		// Get last parameter settings.
+		DiscoverPetriNetParameters parameters = new DiscoverPetriNetParameters();
+		// Discover accepting Petri net.
+		return apply(context, log, parameters);
+	}
+
+	@Plugin( //
+			name = "DiSCover Petri net (XES file)", //
+			parameterLabels = { "XES file" }, //
+			returnLabels = { "DiSCovered Accepting Petri net" }, //
+			returnTypes = { AcceptingPetriNet.class }, //
+			userAccessible = false, //
+			url = "http://www.win.tue.nl/~hverbeek/", //
+			help = "Streams the XES file (plain or gzipped) into an activity log, and does not load the event log." //
+	) //
+	@PluginVariant( //
+			variantLabel = "DiSCover Petri net (XES file)", //
+			requiredParameterLabels = { 0 } //
+	) //
+	public AcceptingPetriNet runFile(PluginContext context, File file) throws IOException {
+		// Get last parameter settings.
+		DiscoverPetriNetParameters parameters = new DiscoverPetriNetParameters();
+		// Discover accepting Petri net.
+		return apply(context, file, parameters);
+	}
+
+	@Plugin( //
+			name = "DiSCover Petri net (XES file)", //
+			parameterLabels = {}, //
+			returnLabels = { "DiSCovered Accepting Petri net" }, //
+			returnTypes = { AcceptingPetriNet.class }, //
+			userAccessible = true, //
+			url = "http://www.win.tue.nl/~hverbeek/", //
+			help = "Streams the XES file (plain or gzipped) into an activity log, and does not load the event log." //
+	) //
+	@UITopiaVariant( //
+			affiliation = UITopiaVariant.EHV, //
+			author = "H.M.W. Verbeek", //
+			email = "h.m.w.verbeek@tue.nl" //
+	) //
+	@PluginVariant( //
+			variantLabel = "DiSCover Petri net (XES file)", //
+			requiredParameterLabels = {} //
+	) //
+	public AcceptingPetriNet runUserFile(UIPluginContext context) throws IOException {
+		JFileChooser chooser = new JFileChooser();
+		chooser.setFileFilter(new FileNameExtensionFilter("XES files", "xes", "gz"));
+		if (chooser.showOpenDialog(null) != JFileChooser.APPROVE_OPTION) {
+			context.getFutureResult(0).cancel(true);
+			return null;
+		}
+		return runFile(context, chooser.getSelectedFile());
+	}
 }
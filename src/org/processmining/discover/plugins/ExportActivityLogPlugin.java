@@ -0,0 +1,41 @@
+package org.processmining.discover.plugins;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.processmining.contexts.uitopia.UIPluginContext;
+import org.processmining.contexts.uitopia.annotations.UIExportPlugin;
+import org.processmining.contexts.uitopia.annotations.UITopiaVariant;
+import org.processmining.discover.models.ActivityLog;
+import org.processmining.discover.models.ActivityLogFile;
+import org.processmining.framework.plugin.annotations.Plugin;
+import org.processmining.framework.plugin.annotations.PluginVariant;
+
+@Plugin( //
+		name = "Export activity log to DAL file", //
+		parameterLabels = { "Activity log", "File" }, //
+		returnLabels = {}, //
+		returnTypes = {}, //
+		userAccessible = true, //
+		url = "http://www.win.tue.nl/~hverbeek/", //
+		help = "" //
+) //
+@UIExportPlugin( //
+		description = "DiSCover activity log", //
+		extension = "dal" //
+) //
+public class ExportActivityLogPlugin {
+
+	@UITopiaVariant( //
+			affiliation = UITopiaVariant.EHV, //
+			author = "H.M.W. Verbeek", //
+			email = "h.m.w.verbeek@tue.nl" //
+	) //
+	@PluginVariant( //
+			variantLabel = "Export activity log to DAL file", //
+			requiredParameterLabels = { 0, 1 } //
+	) //
+	public void export(UIPluginContext context, ActivityLog log, File file) throws IOException {
+		ActivityLogFile.write(log, file);
+	}
+}
@@ -0,0 +1,39 @@
+package org.processmining.discover.plugins;
+
+import java.io.InputStream;
+
+import org.processmining.contexts.uitopia.annotations.UIImportPlugin;
+import org.processmining.discover.models.ActivityLog;
+import org.processmining.discover.models.ActivityLogFile;
+import org.processmining.discover.models.MappedActivityLog;
+import org.processmining.framework.abstractplugins.AbstractImportPlugin;
+import org.processmining.framework.plugin.PluginContext;
+import org.processmining.framework.plugin.annotations.Plugin;
+
+@Plugin( //
+		name = "Import activity log from DAL file", //
+		parameterLabels = { "Filename" }, //
+		returnLabels = { "Activity log" }, //
+		returnTypes = { ActivityLog.class }, //
+		userAccessible = true, //
+		url = "http://www.win.tue.nl/~hverbeek/", //
+		help = "" //
+) //
+@UIImportPlugin( //
+		description = "DiSCover activity log", //
+		extensions = { "dal" } //
+) //
+public class ImportActivityLogPlugin extends AbstractImportPlugin {
+
+	protected Object importFromStream(PluginContext context, InputStream input, String filename,
+			long fileSizeInBytes) throws Exception {
+		context.getFutureResult(0).setLabel(filename);
+		if (getFile() != null) {
+			/*
+			 * Map the file instead of reading it.
+			 */
+			return new MappedActivityLog(getFile());
+		}
+		return ActivityLogFile.read(input);
+	}
+}
@@ -21,6 +21,7 @@ import org.processmining.discover.models.ActivityMatrix;
 import org.processmining.discover.models.ActivityMatrixCollection;
 import org.processmining.discover.models.ActivitySets;
 import org.processmining.discover.parameters.DiscoverPetriNetParameters;
+import org.processmining.framework.plugin.Progress;
 
 import com.fluxicon.slickerbox.components.NiceSlider;
 import com.fluxicon.slickerbox.components.NiceSlider.Orientation;
@@ -104,14 +105,25 @@ public class FilterMatrixCollectionWidget extends JPanel {
 	}
 
 	public FilterMatrixCollectionWidget(DiscoverPetriNetParameters parameters) {
+		this(parameters, null);
+	}
+
+	/**
+	 * Creates the widget. Selecting the matrices to keep can be cancelled through
+	 * the given progress.
+	 * 
+	 * @param parameters The parameters
+	 * @param progress   The given progress, may be null
+	 */
+	public FilterMatrixCollectionWidget(DiscoverPetriNetParameters parameters, Progress progress) {
 		double size[][] = { { TableLayoutConstants.FILL }, { TableLayoutConstants.FILL } };
 		setLayout(new TableLayout(size));
 
-		add(getMainComponent(parameters), "0, 0");
+		add(getMainComponent(parameters, progress), "0, 0");
 
 	}
 
-	private JPanel getMainComponent(DiscoverPetriNetParameters parameters) {
+	private JPanel getMainComponent(DiscoverPetriNetParameters parameters, Progress progress) {
 		JPanel panel = new JPanel();
 		panel.setOpaque(false);
 		double size[][] = { { TableLayoutConstants.FILL }, { 30, TableLayoutConstants.FILL, 30, 30, 30, 30 } };
@@ -127,7 +139,7 @@ public class FilterMatrixCollectionWidget extends JPanel {
 		panel.add(providersLabel, "0, 0");
 
 		parameters.setMatrixCollection(new ActivityMatrixCollection(parameters.getLog(), parameters.getAlphabet(),
-				new ActivitySets(parameters.getActivitySets()), parameters.getMatrix(), parameters));
+				new ActivitySets(parameters.getActivitySets()), parameters.getMatrix(), parameters, progress));
 		//		for (int i = 0; i < parameters.getMatrixCollection().size(); i++) {
 		//			parameters.getMatrixCollection().get(i).filterAbsolute(parameters.getAbsoluteThreshold());
 		//		}
@@ -23,6 +23,7 @@ import org.deckfour.xes.model.XLog;
 import org.processmining.discover.models.ActivityAlphabet;
 import org.processmining.discover.models.ActivityLog;
 import org.processmining.discover.models.ActivityMatrix;
+import org.processmining.discover.models.VariantActivityLog;
 import org.processmining.discover.parameters.DiscoverPetriNetParameters;
 
 import com.fluxicon.slickerbox.components.NiceSlider;
@@ -143,11 +144,12 @@ public class FilterMatrixWidget extends JPanel {
 		JPanel panel = new JPanel();
 		panel.setOpaque(false);
 //		double size[][] = { { TableLayoutConstants.FILL }, { 30, TableLayoutConstants.FILL, 30, 30, 30, 30, 30 } };
-		double size[][] = { { TableLayoutConstants.FILL }, { 30, TableLayoutConstants.FILL, 30, 30, 30, 30, 30 } };
+		double size[][] = { { TableLayoutConstants.FILL }, { 30, TableLayoutConstants.FILL, 30, 30, 30, 30, 30, 30, 30 } };
 		panel.setLayout(new TableLayout(size));
 		//		if (parameters.getMatrix() == null) {
 		parameters.setAlphabet(new ActivityAlphabet(parameters.getActivities()));
-		parameters.setLog(new ActivityLog(eventLog, parameters.getClassifier(), parameters.getAlphabet()));
+		parameters.setLog(
+				new VariantActivityLog(new ActivityLog(eventLog, parameters.getClassifier(), parameters.getAlphabet())));
 		parameters.setMatrix(new ActivityMatrix(parameters.getLog(), parameters.getAlphabet()));
 		//		}
 		
@@ -249,6 +251,35 @@ public class FilterMatrixWidget extends JPanel {
 //		panel.add(showGraphBox, "0, 6");
 		panel.add(doFilterLogBox, "0, 6");
 
+		/*
+		 * Sliders for the budget of the search for the components, which follows this
+		 * step. If the budget runs out, the components found so far are kept, and a
+		 * component is added for every activity not covered by these.
+		 */
+		final NiceSlider timeSlider = SlickerFactory.instance().createNiceIntegerSlider(
+				"Maximal time to search for components (seconds, 0 if no limit)", 0, 600,
+				parameters.getMaxSearchTime(), Orientation.HORIZONTAL);
+		timeSlider.addChangeListener(new ChangeListener() {
+
+			public void stateChanged(ChangeEvent e) {
+				parameters.setMaxSearchTime(timeSlider.getSlider().getValue());
+			}
+		});
+		timeSlider.setPreferredSize(new Dimension(100, 30));
+		panel.add(timeSlider, "0, 7");
+
+		final NiceSlider nodesSlider = SlickerFactory.instance().createNiceIntegerSlider(
+				"Maximal number of search nodes for components (millions, 0 if no limit)", 0, 1000,
+				parameters.getMaxSearchNodes() / 1000000, Orientation.HORIZONTAL);
+		nodesSlider.addChangeListener(new ChangeListener() {
+
+			public void stateChanged(ChangeEvent e) {
+				parameters.setMaxSearchNodes(1000000 * nodesSlider.getSlider().getValue());
+			}
+		});
+		nodesSlider.setPreferredSize(new Dimension(100, 30));
+		panel.add(nodesSlider, "0, 8");
+
 		return panel;
 	}
 
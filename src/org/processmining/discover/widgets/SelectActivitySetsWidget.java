@@ -17,6 +17,7 @@ import org.processmining.discover.models.ActivitySet;
 import org.processmining.discover.models.ActivitySets;
 import org.processmining.discover.models.ConcurrentActivityPairs;
 import org.processmining.discover.parameters.DiscoverPetriNetParameters;
+import org.processmining.framework.plugin.Progress;
 import org.processmining.framework.util.ui.widgets.ProMList;
 
 import com.fluxicon.slickerbox.components.NiceSlider;
@@ -37,13 +38,25 @@ public class SelectActivitySetsWidget extends JPanel implements ListSelectionLis
 	private ProMList<ActivitySet> listPanel = null;
 
 	public SelectActivitySetsWidget(DiscoverPetriNetParameters parameters) {
+		this(parameters, null);
+	}
+
+	/**
+	 * Creates the widget. If the activity sets still need to be searched for, the
+	 * search reports to the given progress, and can be cancelled through it.
+	 * 
+	 * @param parameters The parameters
+	 * @param progress   The given progress, may be null
+	 */
+	public SelectActivitySetsWidget(DiscoverPetriNetParameters parameters, Progress progress) {
 		this.parameters = parameters;
 		double size[][] = { { TableLayoutConstants.FILL }, { TableLayoutConstants.FILL, 30, 30, 30, 30, 30 } };
 		setLayout(new TableLayout(size));
 
 		if (parameters.getAllActivitySets() == null) {
 			ConcurrentActivityPairs pairs = new ConcurrentActivityPairs(parameters.getMatrix(), parameters.getAlphabet(), parameters);
-			ActivitySets activitySets = new ActivitySets(pairs, parameters.getAlphabet(), parameters.getMode());
+			ActivitySets activitySets = new ActivitySets(pairs, parameters.getAlphabet(), parameters.getMode(),
+					1000L * parameters.getMaxSearchTime(), parameters.getMaxSearchNodes(), progress);
 			parameters.setAllActivitySets(new ActivitySets(activitySets));
 			parameters.setActivitySets(new ActivitySets(activitySets));
 		}
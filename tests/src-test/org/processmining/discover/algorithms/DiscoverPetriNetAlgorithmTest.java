@@ -0,0 +1,202 @@
+package org.processmining.discover.algorithms;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+import org.processmining.discover.models.ActivityLog;
+import org.processmining.discover.parameters.DiscoverPetriNetParameters;
+
+import junit.framework.TestCase;
+
+/*
+ * Compares the nets created from fixed activity logs with the descriptions of
+ * the nets created by earlier versions, which built them differently.
+ */
+public class DiscoverPetriNetAlgorithmTest extends TestCase {
+
+	/*
+	 * The nets created before the tau-clusters were built with union-find: For
+	 * the noisy logs with seeds 1 to 3, with and without merging, and with and
+	 * without selecting the matrices that cover all activities. Then for the
+	 * structured logs with seeds 8 and 9, with and without merging.
+	 */
+	private static final String[] CREATED = { //
+			"T 76 P 12 A 158 #23bda9f9", //
+			"T 272 P 48 A 644 #17c34cc2", //
+			"T 77 P 12 A 158 #3b491c6a", //
+			"T 309 P 48 A 644 #e6aa4d4f", //
+			"T 109 P 37 A 234 #b3141505", //
+			"T 235 P 79 A 536 #b66553c7", //
+			"T 115 P 37 A 234 #436ccb75", //
+			"T 262 P 79 A 536 #d55b5552", //
+			"T 87 P 19 A 184 #8557521d", //
+			"T 361 P 77 A 842 #619faae", //
+			"T 90 P 19 A 184 #40eb09a2", //
+			"T 409 P 77 A 842 #3e78a745", //
+			"T 50 P 50 A 116 #a70b71af", //
+			"T 114 P 98 A 236 #8085deed", //
+			"T 44 P 44 A 98 #6ceb724f", //
+			"T 91 P 80 A 188 #3c68d213" //
+	};
+
+	/*
+	 * The nets after reducing duplicates on the ProM net, before the compact net
+	 * was used, for the same logs. All invisible transitions get the same label,
+	 * as it does not matter which of two duplicates is kept.
+	 */
+	private static final String[] REDUCED = { //
+			"T 19 P 12 A 44 #b1cfcdb2", //
+			"T 46 P 48 A 192 #d40491a5", //
+			"T 20 P 12 A 44 #ea256727", //
+			"T 83 P 48 A 192 #fc586e5c", //
+			"T 92 P 37 A 200 #49f98f04", //
+			"T 182 P 79 A 430 #e46ecf0c", //
+			"T 98 P 37 A 200 #73409334", //
+			"T 209 P 79 A 430 #2acbe585", //
+			"T 33 P 19 A 76 #cf01a45c", //
+			"T 100 P 77 A 320 #c5e6c98c", //
+			"T 36 P 19 A 76 #dc567037", //
+			"T 148 P 77 A 320 #243c1823", //
+			"T 48 P 50 A 112 #2ec6d215", //
+			"T 104 P 98 A 216 #67b3b753", //
+			"T 42 P 44 A 94 #8234f2e7", //
+			"T 83 P 80 A 172 #c043a2a3" //
+	};
+
+	/*
+	 * The places added by enhancing the nets for the long-distance logs, which
+	 * are the same for seeds 1 to 3, with and without merging, both before and
+	 * after the play-out kept only the distinct activity counts.
+	 */
+	private static final String ENHANCED = "[pi_k_2:2:0:0:1, px_e_n_1:1:1:1:1, px_m_n_0:0:0:1:1, px_n_e_0:0:0:1:1, "
+			+ "px_n_m_1:1:1:1:1, px_n_s_1:1:1:1:1, px_s_n_0:0:0:1:1, px_x2_x_1:1:1:1:1, px_x_x2_0:0:0:1:1, "
+			+ "px_y2_y_1:1:1:1:1, px_y_y2_0:0:0:1:1]";
+
+	private static CompactPetriNet createNet(ActivityLog log, boolean merge, boolean useILP2) {
+		DiscoverPetriNetParameters parameters = TestNets.createParameters(log, merge, useILP2);
+		return new DiscoverPetriNetAlgorithm().createNet(parameters);
+	}
+
+	@Test
+	public void testCreateNet() {
+		int i = 0;
+		for (long seed = 1; seed <= 3; seed++) {
+			for (boolean merge : new boolean[] { true, false }) {
+				for (boolean useILP2 : new boolean[] { true, false }) {
+					CompactPetriNet net = createNet(TestNets.createNoisyLog(seed, 300, 10), merge, useILP2);
+					assertEquals("noisy log " + seed + ", merge " + merge + ", ILP2 " + useILP2, CREATED[i++],
+							TestNets.describe(net.toAcceptingPetriNet("net")));
+				}
+			}
+		}
+		for (long seed = 8; seed <= 9; seed++) {
+			for (boolean merge : new boolean[] { true, false }) {
+				CompactPetriNet net = createNet(TestNets.createStructuredLog(seed, 200, 3), merge, false);
+				assertEquals("structured log " + seed + ", merge " + merge, CREATED[i++],
+						TestNets.describe(net.toAcceptingPetriNet("net")));
+			}
+		}
+	}
+
+	@Test
+	public void testReduceDuplicates() {
+		DiscoverPetriNetAlgorithm algorithm = new DiscoverPetriNetAlgorithm();
+		int i = 0;
+		for (long seed = 1; seed <= 3; seed++) {
+			for (boolean merge : new boolean[] { true, false }) {
+				for (boolean useILP2 : new boolean[] { true, false }) {
+					CompactPetriNet net = createNet(TestNets.createNoisyLog(seed, 300, 10), merge, useILP2);
+					algorithm.reduceDuplicates(net);
+					assertEquals("noisy log " + seed + ", merge " + merge + ", ILP2 " + useILP2, REDUCED[i++],
+							TestNets.describe(net.toAcceptingPetriNet("net"), false));
+				}
+			}
+		}
+		for (long seed = 8; seed <= 9; seed++) {
+			for (boolean merge : new boolean[] { true, false }) {
+				CompactPetriNet net = createNet(TestNets.createStructuredLog(seed, 200, 3), merge, false);
+				algorithm.reduceDuplicates(net);
+				assertEquals("structured log " + seed + ", merge " + merge, REDUCED[i++],
+						TestNets.describe(net.toAcceptingPetriNet("net"), false));
+			}
+		}
+	}
+
+	/*
+	 * Returns the number of arcs in the compiled postsets, or in the compiled
+	 * presets.
+	 */
+	private static int countArcs(CompactPetriNet net, boolean presets) {
+		int nofArcs = 0;
+		for (int node = 0; node < net.size(); node++) {
+			nofArcs += presets ? net.getPresetSize(node) : net.getPostsetSize(node);
+		}
+		return nofArcs;
+	}
+
+	@Test
+	public void testCompile() {
+		CompactPetriNet net = new CompactPetriNet();
+		int place1 = net.addPlace("p1");
+		int transition1 = net.addTransition("t1", false);
+		int place2 = net.addPlace("p2");
+		int transition2 = net.addTransition("t2", true);
+		net.addArc(place1, transition1);
+		net.addArc(place1, transition1);
+		net.addArc(transition1, place2);
+		net.addArc(place2, transition2);
+		net.addArc(transition2, place1);
+		net.remove(transition2);
+		net.compile();
+
+		// The duplicate arc is there once, the arcs of the removed node are not.
+		assertTrue(Arrays.equals(new int[] { transition1 }, net.getPostset(place1)));
+		assertEquals(transition1, net.getPostset(place1, 0));
+		assertTrue(Arrays.equals(new int[] { place1 }, net.getPreset(transition1)));
+		assertEquals(0, net.getPostsetSize(place2));
+		assertEquals(0, net.getPresetSize(place1));
+		assertEquals(2, countArcs(net, false));
+		assertEquals(2, countArcs(net, true));
+
+		// The converted net has the same arcs, and no removed node.
+		String arcs = Integer.toHexString(Arrays.asList("p1 -> t1", "p1 0 0", "p2 0 0", "t1", "t1 -> p2").hashCode());
+		assertEquals("T 1 P 2 A 2 #" + arcs,
+				TestNets.describe(net.toAcceptingPetriNet("net")));
+
+		// On created nets, the compiled rows hold every arc of the converted net once.
+		for (long seed = 1; seed <= 3; seed++) {
+			CompactPetriNet created = createNet(TestNets.createNoisyLog(seed, 300, 10), true, true);
+			created.compile();
+			int nofArcs = created.toAcceptingPetriNet("net").getNet().getEdges().size();
+			assertEquals(nofArcs, countArcs(created, false));
+			assertEquals(nofArcs, countArcs(created, true));
+			for (int node = 0; node < created.size(); node++) {
+				int[] postset = created.getPostset(node);
+				for (int i = 1; i < postset.length; i++) {
+					assertTrue(postset[i - 1] < postset[i]);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testEnhanceNet() {
+		DiscoverPetriNetAlgorithm algorithm = new DiscoverPetriNetAlgorithm();
+		for (long seed = 1; seed <= 3; seed++) {
+			for (boolean merge : new boolean[] { true, false }) {
+				DiscoverPetriNetParameters parameters = TestNets
+						.createParameters(TestNets.createLongDistanceLog(seed, 200), merge, false);
+				parameters.setAddEquivalencePlaces(true);
+				parameters.setAddOccurrencePlaces(true);
+				CompactPetriNet net = algorithm.createNet(parameters);
+				algorithm.enhanceNet(null, net, null, parameters);
+				assertEquals("long-distance log " + seed + ", merge " + merge, ENHANCED,
+						TestNets.describePlaces(net.toAcceptingPetriNet("net"), "p").toString());
+			}
+		}
+	}
+
+	public static void main(String[] args) {
+		junit.textui.TestRunner.run(DiscoverPetriNetAlgorithmTest.class);
+	}
+}
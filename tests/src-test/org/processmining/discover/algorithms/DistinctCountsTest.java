@@ -0,0 +1,60 @@
+package org.processmining.discover.algorithms;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import junit.framework.TestCase;
+
+/*
+ * Compares the distinct counts with a set of boxed lists of counts, as the
+ * play-out used to keep them.
+ */
+public class DistinctCountsTest extends TestCase {
+
+	private static List<Integer> toList(int[] counts) {
+		List<Integer> list = new ArrayList<Integer>();
+		for (int count : counts) {
+			list.add(count);
+		}
+		return list;
+	}
+
+	@Test
+	public void testDistinctCounts() {
+		Random random = new Random(1);
+		for (int round = 0; round < 50; round++) {
+			int length = 1 + random.nextInt(20);
+			int range = 1 + random.nextInt(4);
+			DistinctCounts[] parts = new DistinctCounts[] { new DistinctCounts(), new DistinctCounts() };
+			Set<List<Integer>> expected = new HashSet<List<Integer>>();
+			int[] counts = new int[length];
+			for (int i = 0; i < 3000; i++) {
+				for (int j = 0; j < length; j++) {
+					counts[j] = random.nextInt(range) == 0 ? random.nextInt(3) : 0;
+				}
+				expected.add(toList(counts));
+				// Changing the counts afterwards should not change what was added.
+				parts[i % 2].add(counts);
+			}
+
+			DistinctCounts all = new DistinctCounts();
+			all.addAll(parts[0]);
+			all.addAll(parts[1]);
+			assertEquals("round " + round, expected.size(), all.size());
+			Set<List<Integer>> found = new HashSet<List<Integer>>();
+			for (int i = 0; i < all.size(); i++) {
+				found.add(toList(all.get(i)));
+			}
+			assertEquals("round " + round, expected, found);
+		}
+	}
+
+	public static void main(String[] args) {
+		junit.textui.TestRunner.run(DistinctCountsTest.class);
+	}
+}
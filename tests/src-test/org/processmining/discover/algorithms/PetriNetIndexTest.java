@@ -0,0 +1,141 @@
+package org.processmining.discover.algorithms;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+import org.processmining.acceptingpetrinet.models.AcceptingPetriNet;
+import org.processmining.discover.models.ActivityLog;
+import org.processmining.discover.parameters.DiscoverPetriNetParameters;
+import org.processmining.models.graphbased.directed.petrinet.Petrinet;
+import org.processmining.models.graphbased.directed.petrinet.PetrinetEdge;
+import org.processmining.models.graphbased.directed.petrinet.PetrinetNode;
+
+import junit.framework.TestCase;
+
+/*
+ * Checks that the presets and postsets kept by the index are the presets and
+ * postsets of the net, after each of the reductions that use the index.
+ */
+public class PetriNetIndexTest extends TestCase {
+
+	private static AcceptingPetriNet createNet(DiscoverPetriNetParameters parameters) {
+		DiscoverPetriNetAlgorithm algorithm = new DiscoverPetriNetAlgorithm();
+		CompactPetriNet net = algorithm.createNet(parameters);
+		algorithm.reduceDuplicates(net);
+		return net.toAcceptingPetriNet("net");
+	}
+
+	/*
+	 * Asserts that the index has exactly the nodes of the net, with the presets
+	 * and postsets as recomputed from the arcs of the net.
+	 */
+	private static void assertIndex(PetriNetIndex index) {
+		Petrinet net = index.getAcceptingPetriNet().getNet();
+		Map<PetrinetNode, Set<PetrinetNode>> presets = new HashMap<PetrinetNode, Set<PetrinetNode>>();
+		Map<PetrinetNode, Set<PetrinetNode>> postsets = new HashMap<PetrinetNode, Set<PetrinetNode>>();
+		for (PetrinetNode node : net.getNodes()) {
+			presets.put(node, new HashSet<PetrinetNode>());
+			postsets.put(node, new HashSet<PetrinetNode>());
+		}
+		for (PetrinetEdge<? extends PetrinetNode, ? extends PetrinetNode> edge : net.getEdges()) {
+			postsets.get(edge.getSource()).add(edge.getTarget());
+			presets.get(edge.getTarget()).add(edge.getSource());
+		}
+		assertEquals(presets.keySet(), index.getPresets().keySet());
+		assertEquals(postsets.keySet(), index.getPostsets().keySet());
+		for (PetrinetNode node : net.getNodes()) {
+			assertEquals(node.getLabel(), presets.get(node), index.getPreset(node));
+			assertEquals(node.getLabel(), postsets.get(node), index.getPostset(node));
+		}
+	}
+
+	/*
+	 * Runs the reductions in the order the algorithm runs them, on a single
+	 * index, and checks the index after each. Returns the number of transitions
+	 * removed, to check that the reductions did something.
+	 */
+	private static int reduce(ActivityLog log, boolean merge, boolean all) {
+		DiscoverPetriNetParameters parameters = TestNets.createParameters(log, merge, false);
+		AcceptingPetriNet apn = createNet(parameters);
+		int nofTransitions = apn.getNet().getTransitions().size();
+		DiscoverPetriNetAlgorithm algorithm = new DiscoverPetriNetAlgorithm();
+		PetriNetIndex index = new PetriNetIndex(apn);
+		assertIndex(index);
+		algorithm.reduceNet(index);
+		assertIndex(index);
+		if (all) {
+			new ReduceAllSimpleSilentTransitionsAlgorithm().applyInPlace(null, index);
+		} else {
+			new ReduceClusteredSimpleSilentTransitionsAlgorithm().applyInPlace(null, index);
+		}
+		assertIndex(index);
+		parameters.setMaxNofRoutingTransitions(1);
+		algorithm.reduceSilentClusters(index, parameters);
+		assertIndex(index);
+		return nofTransitions - apn.getNet().getTransitions().size();
+	}
+
+	/*
+	 * Reduces the clusters of silent transitions first, as on the net as created
+	 * these are not yet reduced otherwise, and checks the index. Several
+	 * clusters may then share nodes.
+	 */
+	private static int reduceClusters(ActivityLog log, boolean merge) {
+		DiscoverPetriNetParameters parameters = TestNets.createParameters(log, merge, false);
+		AcceptingPetriNet apn = createNet(parameters);
+		int nofTransitions = apn.getNet().getTransitions().size();
+		DiscoverPetriNetAlgorithm algorithm = new DiscoverPetriNetAlgorithm();
+		PetriNetIndex index = new PetriNetIndex(apn);
+		parameters.setMaxNofRoutingTransitions(1);
+		algorithm.reduceSilentClusters(index, parameters);
+		assertIndex(index);
+		int nofRemoved = nofTransitions - apn.getNet().getTransitions().size();
+		algorithm.reduceNet(index);
+		assertIndex(index);
+		return nofRemoved;
+	}
+
+	@Test
+	public void testNoisy() {
+		int nofRemoved = 0;
+		for (long seed = 1; seed < 4; seed++) {
+			for (boolean merge : new boolean[] { false, true }) {
+				for (boolean all : new boolean[] { false, true }) {
+					nofRemoved += reduce(TestNets.createNoisyLog(seed, 300, 10), merge, all);
+				}
+			}
+		}
+		assertTrue(nofRemoved > 0);
+	}
+
+	@Test
+	public void testClusters() {
+		int nofRemoved = 0;
+		for (long seed = 1; seed < 4; seed++) {
+			for (boolean merge : new boolean[] { false, true }) {
+				nofRemoved += reduceClusters(TestNets.createNoisyLog(seed, 300, 10), merge);
+			}
+		}
+		assertTrue(nofRemoved > 0);
+	}
+
+	@Test
+	public void testStructured() {
+		int nofRemoved = 0;
+		for (long seed = 8; seed < 10; seed++) {
+			for (boolean merge : new boolean[] { false, true }) {
+				for (boolean all : new boolean[] { false, true }) {
+					nofRemoved += reduce(TestNets.createStructuredLog(seed, 200, 3), merge, all);
+				}
+			}
+		}
+		assertTrue(nofRemoved > 0);
+	}
+
+	public static void main(String[] args) {
+		junit.textui.TestRunner.run(PetriNetIndexTest.class);
+	}
+}
@@ -0,0 +1,240 @@
+package org.processmining.discover.algorithms;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.processmining.acceptingpetrinet.models.AcceptingPetriNet;
+import org.processmining.discover.models.ActivityAlphabet;
+import org.processmining.discover.models.ActivityLog;
+import org.processmining.discover.models.ActivityLogBuilder;
+import org.processmining.discover.models.ActivityMatrix;
+import org.processmining.discover.models.ActivityMatrixCollection;
+import org.processmining.discover.models.ActivitySet;
+import org.processmining.discover.models.ActivitySets;
+import org.processmining.discover.models.ConcurrentActivityPairs;
+import org.processmining.discover.parameters.DiscoverPetriNetParameters;
+import org.processmining.models.graphbased.directed.petrinet.Petrinet;
+import org.processmining.models.graphbased.directed.petrinet.PetrinetEdge;
+import org.processmining.models.graphbased.directed.petrinet.PetrinetNode;
+import org.processmining.models.graphbased.directed.petrinet.elements.Place;
+import org.processmining.models.graphbased.directed.petrinet.elements.Transition;
+import org.processmining.models.semantics.petrinet.Marking;
+
+/*
+ * Fixed activity logs, the parameters to discover a net from them, and a
+ * description of a net that does not depend on the order of its nodes and
+ * arcs. Only uses what existed before the net was built differently, so that
+ * the descriptions of the old and the new nets can be compared.
+ */
+class TestNets {
+
+	/*
+	 * Creates an activity log of the given number of traces over the given
+	 * number of activities. Traces mostly follow the activities in order, with
+	 * some jumps. A third of the traces is classified, mostly positive.
+	 */
+	static ActivityLog createNoisyLog(long seed, int nofTraces, int nofActivities) {
+		Random random = new Random(seed);
+		ActivityLogBuilder builder = new ActivityLogBuilder();
+		for (int trace = 0; trace < nofTraces; trace++) {
+			Boolean isPos = random.nextInt(3) == 0 ? random.nextInt(5) > 0 : null;
+			int length = 2 + random.nextInt(nofActivities);
+			List<String> activities = new ArrayList<String>();
+			int activity = 0;
+			for (int i = 0; i < length; i++) {
+				activity = random.nextInt(10) == 0 ? random.nextInt(nofActivities)
+						: (activity + 1 + (random.nextInt(4) == 0 ? 1 : 0)) % nofActivities;
+				activities.add("a" + activity);
+			}
+			addTrace(builder, activities, isPos);
+		}
+		return builder.getLog();
+	}
+
+	/*
+	 * Creates an activity log with a sequence s1 s2 s3, then the given number of
+	 * concurrent branches of three activities each, then e1, a choice between f
+	 * and g, and e2.
+	 */
+	static ActivityLog createStructuredLog(long seed, int nofTraces, int nofBranches) {
+		Random random = new Random(seed);
+		ActivityLogBuilder builder = new ActivityLogBuilder();
+		for (int trace = 0; trace < nofTraces; trace++) {
+			List<String> activities = new ArrayList<String>();
+			activities.add("s1");
+			activities.add("s2");
+			activities.add("s3");
+			int[] positions = new int[nofBranches];
+			for (int left = 3 * nofBranches; left > 0;) {
+				int branch = random.nextInt(nofBranches);
+				if (positions[branch] < 3) {
+					activities.add("b" + branch + "_" + positions[branch]++);
+					left--;
+				}
+			}
+			activities.add("e1");
+			activities.add(random.nextBoolean() ? "f" : "g");
+			activities.add("e2");
+			addTrace(builder, activities, null);
+		}
+		return builder.getLog();
+	}
+
+	/*
+	 * Creates an activity log with long-distance dependencies: x is followed by
+	 * x2, and y by y2, with k occurring twice in between.
+	 */
+	static ActivityLog createLongDistanceLog(long seed, int nofTraces) {
+		Random random = new Random(seed);
+		ActivityLogBuilder builder = new ActivityLogBuilder();
+		for (int trace = 0; trace < nofTraces; trace++) {
+			String[] activities = random.nextBoolean()
+					? new String[] { "s", "x", "m", "k", "k", "n", "x2", "e" }
+					: new String[] { "s", "y", "m", "k", "n", "k", "y2", "e" };
+			List<String> list = new ArrayList<String>();
+			Collections.addAll(list, activities);
+			addTrace(builder, list, null);
+		}
+		return builder.getLog();
+	}
+
+	private static void addTrace(ActivityLogBuilder builder, List<String> activities, Boolean isPos) {
+		if (isPos != null && !isPos) {
+			builder.skipTrace(activities);
+			return;
+		}
+		builder.startTrace(isPos != null);
+		for (String activity : activities) {
+			builder.addActivity(activity);
+		}
+		builder.endTrace();
+	}
+
+	/*
+	 * Returns the parameters to create a net from the given activity log, with
+	 * the matrices and the activity sets discovered and filtered.
+	 */
+	static DiscoverPetriNetParameters createParameters(ActivityLog log, boolean merge, boolean useILP2) {
+		DiscoverPetriNetParameters parameters = new DiscoverPetriNetParameters();
+		ActivityAlphabet alphabet = log.getAlphabet();
+		parameters.setAlphabet(alphabet);
+		parameters.setLog(log);
+		parameters.setAbsoluteThreshold(1);
+		parameters.setRelativeThreshold(5);
+		parameters.setSafetyThreshold(95);
+		parameters.setAbsoluteThreshold2(2);
+		parameters.setRelativeThreshold2(10);
+		parameters.setFilterLog(true);
+		parameters.setMode(ActivitySets.MODE_ALL);
+		parameters.setMerge(merge);
+		parameters.setUseILP2(useILP2);
+		parameters.setUseILP(false);
+		parameters.setNofSComponents(0);
+		parameters.setVetoNoise(false);
+		parameters.setAddEquivalencePlaces(false);
+		parameters.setAddOccurrencePlaces(false);
+		alphabet = parameters.getAlphabet();
+		log = parameters.getLog();
+
+		ActivityMatrix matrix = new ActivityMatrix(log, alphabet);
+		matrix.filterAbsolute(parameters.getAbsoluteThreshold());
+		matrix.filterRelative(parameters.getRelativeThreshold(), parameters.getSafetyThreshold());
+		if (log.filter(matrix, new ActivitySet("All except ", alphabet))) {
+			matrix = new ActivityMatrix(log, alphabet);
+		}
+		parameters.setMatrix(matrix);
+		matrix = parameters.getMatrix();
+
+		ConcurrentActivityPairs pairs = new ConcurrentActivityPairs(matrix, alphabet, parameters);
+		/*
+		 * Sort the activity sets like the search does now, so that earlier versions
+		 * get them in the same order.
+		 */
+		List<ActivitySet> sets = new ArrayList<ActivitySet>(new ActivitySets(pairs, alphabet, ActivitySets.MODE_ALL));
+		Collections.sort(sets, new Comparator<ActivitySet>() {
+
+			public int compare(ActivitySet set1, ActivitySet set2) {
+				int idx1 = set1.nextSetBit(0);
+				int idx2 = set2.nextSetBit(0);
+				while (idx1 == idx2 && idx1 >= 0) {
+					idx1 = set1.nextSetBit(idx1 + 1);
+					idx2 = set2.nextSetBit(idx2 + 1);
+				}
+				return idx1 == idx2 ? 0 : (idx1 < 0 ? -1 : (idx2 < 0 ? 1 : idx1 - idx2));
+			}
+		});
+		parameters.setActivitySets(sets);
+		ActivityMatrixCollection matrices = new ActivityMatrixCollection(log, alphabet,
+				parameters.getActivitySets(), matrix, parameters);
+		matrices.filterAbsolute(parameters.getAbsoluteThreshold2());
+		matrices.filterRelative(parameters.getRelativeThreshold2(), parameters.getSafetyThreshold2());
+		matrices.filter(log, parameters.getActivitySets(), matrix);
+		parameters.setMatrixCollection(matrices);
+		return parameters;
+	}
+
+	/*
+	 * Describes the given net by its numbers of transitions, places and arcs,
+	 * and by a hash code of its arcs and its markings, as given by the labels of
+	 * their nodes. The description does not depend on the order of the nodes or
+	 * arcs.
+	 */
+	static String describe(AcceptingPetriNet apn) {
+		return describe(apn, true);
+	}
+
+	/*
+	 * Describes the given net like describe, but if told so, all invisible
+	 * transitions get the same label. Which of two duplicate invisible
+	 * transitions is kept then does not matter.
+	 */
+	static String describe(AcceptingPetriNet apn, boolean withInvisibleLabels) {
+		Petrinet net = apn.getNet();
+		List<String> lines = new ArrayList<String>();
+		for (PetrinetEdge<?, ?> edge : net.getEdges()) {
+			lines.add(getLabel(edge.getSource(), withInvisibleLabels) + " -> "
+					+ getLabel(edge.getTarget(), withInvisibleLabels));
+		}
+		for (Transition transition : net.getTransitions()) {
+			lines.add(getLabel(transition, withInvisibleLabels) + (transition.isInvisible() ? " (invisible)" : ""));
+		}
+		Marking finalMarking = apn.getFinalMarkings().iterator().next();
+		for (Place place : net.getPlaces()) {
+			lines.add(place.getLabel() + " " + apn.getInitialMarking().occurrences(place) + " "
+					+ finalMarking.occurrences(place));
+		}
+		Collections.sort(lines);
+		return "T " + net.getTransitions().size() + " P " + net.getPlaces().size() + " A " + net.getEdges().size()
+				+ " #" + Integer.toHexString(lines.hashCode());
+	}
+
+	/*
+	 * Describes the places of the given net whose labels start with the given
+	 * prefix by their labels, their tokens in the initial and final markings,
+	 * and their numbers of incoming and outgoing arcs, sorted by label.
+	 */
+	static List<String> describePlaces(AcceptingPetriNet apn, String prefix) {
+		Petrinet net = apn.getNet();
+		Marking finalMarking = apn.getFinalMarkings().iterator().next();
+		List<String> places = new ArrayList<String>();
+		for (Place place : net.getPlaces()) {
+			if (place.getLabel().startsWith(prefix)) {
+				places.add(place.getLabel() + ":" + apn.getInitialMarking().occurrences(place) + ":"
+						+ finalMarking.occurrences(place) + ":" + net.getInEdges(place).size() + ":"
+						+ net.getOutEdges(place).size());
+			}
+		}
+		Collections.sort(places);
+		return places;
+	}
+
+	private static String getLabel(PetrinetNode node, boolean withInvisibleLabels) {
+		if (!withInvisibleLabels && node instanceof Transition && ((Transition) node).isInvisible()) {
+			return "tau";
+		}
+		return node.getLabel();
+	}
+}
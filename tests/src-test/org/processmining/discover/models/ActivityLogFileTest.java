@@ -0,0 +1,186 @@
+package org.processmining.discover.models;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+
+import org.junit.Test;
+
+import junit.framework.TestCase;
+
+/*
+ * Writes activity logs to activity log files, and compares the activity logs
+ * read and mapped from these files with the activity logs written.
+ */
+public class ActivityLogFileTest extends TestCase {
+
+	/*
+	 * Creates an activity log over the given number of activities, all of which
+	 * occur. Some traces are classified positive, and some traces are filtered
+	 * out (negated).
+	 */
+	private static ActivityLog createLog(long seed, int nofActivities) {
+		Random random = new Random(seed);
+		ActivityLogBuilder builder = new ActivityLogBuilder();
+		for (int activity = 0; activity < nofActivities; activity += 3) {
+			builder.startTrace(random.nextInt(4) == 0);
+			for (int i = 0; i < 3 + random.nextInt(3); i++) {
+				builder.addActivity("a" + (activity + i) % nofActivities);
+			}
+			builder.endTrace();
+		}
+		ActivityLog log = builder.getLog();
+		dropTraces(log, random);
+		return log;
+	}
+
+	/*
+	 * Filters out about a fifth of the traces of the given activity log.
+	 */
+	private static void dropTraces(ActivityLog log, Random random) {
+		int startIdx = 0;
+		for (int endIdx = 1; endIdx < log.size(); endIdx++) {
+			if (log.get(endIdx) == 0) {
+				if (random.nextInt(5) == 0) {
+					log.drop(startIdx, endIdx);
+				}
+				startIdx = endIdx;
+			}
+		}
+	}
+
+	private static File write(ActivityLog log) throws IOException {
+		File file = File.createTempFile("activitylog", ".dscl");
+		file.deleteOnExit();
+		ActivityLogFile.write(log, file);
+		return file;
+	}
+
+	private static int[] readHeader(File file) throws IOException {
+		DataInputStream input = new DataInputStream(new FileInputStream(file));
+		try {
+			int[] header = new int[5];
+			for (int i = 0; i < header.length; i++) {
+				header[i] = input.readInt();
+			}
+			return header;
+		} finally {
+			input.close();
+		}
+	}
+
+	private static ActivityLog read(File file) throws IOException {
+		InputStream input = new FileInputStream(file);
+		try {
+			return ActivityLogFile.read(input);
+		} finally {
+			input.close();
+		}
+	}
+
+	private static boolean hasNegatedIndex(ActivityLog log) {
+		for (int i = 0; i < log.size(); i++) {
+			if (log.get(i) < 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Test
+	public void testWidths() throws IOException {
+		int[] nofActivities = { 10, Byte.MAX_VALUE - 1, Byte.MAX_VALUE, 1000, Short.MAX_VALUE - 1,
+				Short.MAX_VALUE + 10 };
+		int[] widths = { 1, 1, 2, 2, 2, 4 };
+		for (int i = 0; i < widths.length; i++) {
+			ActivityLog log = createLog(i, nofActivities[i]);
+			assertEquals(nofActivities[i] + 1, log.getAlphabet().size());
+			assertTrue(hasNegatedIndex(log));
+			File file = write(log);
+
+			int[] header = readHeader(file);
+			assertEquals(ActivityLogFile.MAGIC, header[0]);
+			assertEquals(ActivityLogFile.VERSION, header[1]);
+			assertEquals("activities " + nofActivities[i], widths[i], header[2]);
+			assertEquals(log.getAlphabet().size(), header[3]);
+			assertEquals(log.size(), header[4]);
+
+			assertEquals("activities " + nofActivities[i], log, read(file));
+			assertEquals("activities " + nofActivities[i], log, new MappedActivityLog(file));
+		}
+	}
+
+	@Test
+	public void testMultiplicities() throws IOException {
+		Random random = new Random(1);
+		ActivityLogBuilder builder = new ActivityLogBuilder();
+		for (int trace = 0; trace < 500; trace++) {
+			builder.startTrace(random.nextInt(3) == 0);
+			for (int i = 0; i < 2 + random.nextInt(3); i++) {
+				builder.addActivity("a" + random.nextInt(4));
+			}
+			builder.endTrace();
+		}
+		ActivityLog log = new VariantActivityLog(builder.getLog());
+		dropTraces(log, random);
+		File file = write(log);
+
+		assertEquals(ActivityLogFile.VERSIONWITHMULTIPLICITIES, readHeader(file)[1]);
+		ActivityLog readLog = read(file);
+		assertTrue(readLog instanceof VariantActivityLog);
+		assertEquals(log, readLog);
+		assertEquals(log, new MappedActivityLog(file));
+	}
+
+	@Test
+	public void testChangeMapped() throws IOException {
+		ActivityLog log = createLog(1, 50);
+		MappedActivityLog mappedLog = new MappedActivityLog(write(log));
+
+		// Filtering the mapped log does not change the file.
+		Random random = new Random(2);
+		ActivityLog expected = log.copy();
+		dropTraces(expected, random);
+		random = new Random(2);
+		ActivityLog copy = mappedLog.copy();
+		dropTraces(copy, random);
+		assertEquals(expected, copy);
+		assertEquals(log, mappedLog);
+		assertEquals(log, new MappedActivityLog(mappedLog.getFile()));
+
+		// Appended traces are kept in memory, with any new activities.
+		ActivityLog appendLog = createLog(3, 60);
+		expected.append(appendLog);
+		copy.append(appendLog);
+		assertEquals(expected, copy);
+		assertEquals(expected, new MappedActivityLog(write(copy)));
+	}
+
+	@Test
+	public void testWrongFormat() throws IOException {
+		File file = File.createTempFile("activitylog", ".dscl");
+		file.deleteOnExit();
+		FileOutputStream output = new FileOutputStream(file);
+		try {
+			for (int i = 0; i < 5; i++) {
+				output.write(new byte[] { 0, 0, 0, 1 });
+			}
+		} finally {
+			output.close();
+		}
+		try {
+			new MappedActivityLog(file);
+			fail("Mapped a file that is not an activity log file");
+		} catch (IOException e) {
+			// Expected.
+		}
+	}
+
+	public static void main(String[] args) {
+		junit.textui.TestRunner.run(ActivityLogFileTest.class);
+	}
+}
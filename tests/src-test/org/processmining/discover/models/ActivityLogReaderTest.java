@@ -0,0 +1,261 @@
+package org.processmining.discover.models;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+import org.deckfour.xes.classification.XEventClassifier;
+import org.deckfour.xes.classification.XEventNameClassifier;
+import org.deckfour.xes.factory.XFactory;
+import org.deckfour.xes.factory.XFactoryRegistry;
+import org.deckfour.xes.model.XEvent;
+import org.deckfour.xes.model.XLog;
+import org.deckfour.xes.model.XTrace;
+import org.junit.Test;
+
+import junit.framework.TestCase;
+
+/*
+ * Compares the activity logs read from XES text by the streaming reader with
+ * the activity logs created from the same log in memory.
+ */
+public class ActivityLogReaderTest extends TestCase {
+
+	/*
+	 * Activity names, some of which need escaping in XML.
+	 */
+	private static final String[] NAMES = { "a", "b", "c & d", "<e>", "f \"g\"", "h" };
+
+	private static final String[] TRANSITIONS = { "start", "complete" };
+
+	/*
+	 * A trace of the log: its classification (null if not classified), and the
+	 * names and transitions of its events.
+	 */
+	private static class Trace {
+		Boolean isPos;
+		List<String> names = new ArrayList<String>();
+		List<String> transitions = new ArrayList<String>();
+	}
+
+	private static List<Trace> createTraces(long seed, int nofTraces) {
+		Random random = new Random(seed);
+		List<Trace> traces = new ArrayList<Trace>();
+		for (int i = 0; i < nofTraces; i++) {
+			Trace trace = new Trace();
+			int classification = random.nextInt(4);
+			trace.isPos = classification == 0 ? Boolean.TRUE : (classification == 1 ? Boolean.FALSE : null);
+			int length = random.nextInt(8);
+			for (int j = 0; j < length; j++) {
+				trace.names.add(NAMES[random.nextInt(NAMES.length)]);
+				trace.transitions.add(TRANSITIONS[random.nextInt(TRANSITIONS.length)]);
+			}
+			traces.add(trace);
+		}
+		return traces;
+	}
+
+	private static String escape(String value) {
+		return value.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+	}
+
+	/*
+	 * Writes the given traces as XES text. The log declares a classifier on the
+	 * name and the transition, and has global, log, trace, and nested event
+	 * attributes using the same keys, which should all be ignored.
+	 */
+	private static String createXES(List<Trace> traces) {
+		StringBuilder xes = new StringBuilder();
+		xes.append("<?xml version=\"1.0\" encoding=\"UTF-8\" ?>\n");
+		xes.append("<log xes.version=\"1.0\" xes.features=\"nested-attributes\">\n");
+		xes.append("\t<extension name=\"Concept\" prefix=\"concept\" uri=\"http://www.xes-standard.org/concept.xesext\"/>\n");
+		xes.append("\t<global scope=\"event\">\n");
+		xes.append("\t\t<string key=\"concept:name\" value=\"__INVALID__\"/>\n");
+		xes.append("\t</global>\n");
+		xes.append("\t<classifier name=\"Activity\" keys=\"concept:name lifecycle:transition\"/>\n");
+		xes.append("\t<string key=\"concept:name\" value=\"log\"/>\n");
+		int i = 0;
+		for (Trace trace : traces) {
+			xes.append("\t<trace>\n");
+			xes.append("\t\t<string key=\"concept:name\" value=\"case " + i++ + "\"/>\n");
+			if (trace.isPos != null) {
+				xes.append("\t\t<boolean key=\"" + ActivityLogBuilder.ISPOSKEY + "\" value=\"" + trace.isPos + "\"/>\n");
+			}
+			for (int j = 0; j < trace.names.size(); j++) {
+				xes.append("\t\t<event>\n");
+				xes.append("\t\t\t<string key=\"concept:name\" value=\"" + escape(trace.names.get(j)) + "\"/>\n");
+				xes.append("\t\t\t<string key=\"lifecycle:transition\" value=\"" + trace.transitions.get(j) + "\"/>\n");
+				xes.append("\t\t\t<date key=\"time:timestamp\" value=\"2020-01-01T10:00:00.000+01:00\"/>\n");
+				xes.append("\t\t\t<int key=\"cost\" value=\"" + j + "\"/>\n");
+				xes.append("\t\t\t<list key=\"resources\">\n");
+				xes.append("\t\t\t\t<values>\n");
+				xes.append("\t\t\t\t\t<string key=\"concept:name\" value=\"nested\"/>\n");
+				xes.append("\t\t\t\t</values>\n");
+				xes.append("\t\t\t</list>\n");
+				xes.append("\t\t</event>\n");
+			}
+			xes.append("\t</trace>\n");
+		}
+		xes.append("</log>\n");
+		return xes.toString();
+	}
+
+	/*
+	 * Creates the given traces as an event log in memory.
+	 */
+	private static XLog createXLog(List<Trace> traces) {
+		XFactory factory = XFactoryRegistry.instance().currentDefault();
+		XLog log = factory.createLog();
+		for (Trace trace : traces) {
+			XTrace xTrace = factory.createTrace();
+			if (trace.isPos != null) {
+				xTrace.getAttributes().put(ActivityLogBuilder.ISPOSKEY,
+						factory.createAttributeBoolean(ActivityLogBuilder.ISPOSKEY, trace.isPos, null));
+			}
+			for (int j = 0; j < trace.names.size(); j++) {
+				XEvent event = factory.createEvent();
+				event.getAttributes().put("concept:name",
+						factory.createAttributeLiteral("concept:name", trace.names.get(j), null));
+				event.getAttributes().put("lifecycle:transition",
+						factory.createAttributeLiteral("lifecycle:transition", trace.transitions.get(j), null));
+				xTrace.add(event);
+			}
+			log.add(xTrace);
+		}
+		return log;
+	}
+
+	private static ActivityLog createLog(XLog log, XEventClassifier classifier) {
+		ActivityLogBuilder builder = new ActivityLogBuilder();
+		builder.addLog(log, classifier);
+		return builder.getLog();
+	}
+
+	private static byte[] gzip(byte[] bytes) throws IOException {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		OutputStream gzipOutput = new GZIPOutputStream(output);
+		gzipOutput.write(bytes);
+		gzipOutput.close();
+		return output.toByteArray();
+	}
+
+	@Test
+	public void testClassifier() throws IOException {
+		for (long seed = 1; seed <= 5; seed++) {
+			List<Trace> traces = createTraces(seed, 200);
+			byte[] xes = createXES(traces).getBytes("UTF-8");
+			XEventClassifier classifier = new XEventNameClassifier();
+			ActivityLogReader reader = new ActivityLogReader(classifier);
+			reader.read(new ByteArrayInputStream(xes));
+			assertTrue(classifier == reader.getClassifier());
+			ActivityLog expected = createLog(createXLog(traces), classifier);
+			assertEquals(expected.getAlphabet(), reader.getAlphabet());
+			assertEquals(expected, reader.getLog());
+		}
+	}
+
+	/*
+	 * Without a classifier, the reader uses the classifier declared by the log.
+	 */
+	@Test
+	public void testDeclaredClassifier() throws IOException {
+		for (long seed = 1; seed <= 5; seed++) {
+			List<Trace> traces = createTraces(seed, 200);
+			ActivityLogReader reader = new ActivityLogReader(null);
+			reader.read(new ByteArrayInputStream(createXES(traces).getBytes("UTF-8")));
+			assertEquals(Arrays.asList("concept:name", "lifecycle:transition"),
+					Arrays.asList(reader.getClassifier().getDefiningAttributeKeys()));
+			assertEquals(createLog(createXLog(traces), reader.getClassifier()), reader.getLog());
+		}
+	}
+
+	/*
+	 * With an alphabet, activities outside it are left out, as they are when
+	 * creating the activity log from the log in memory.
+	 */
+	@Test
+	public void testAlphabet() throws IOException {
+		ActivityAlphabet alphabet = new ActivityAlphabet(Arrays.asList("a", "c & d", "h"));
+		XEventClassifier classifier = new XEventNameClassifier();
+		for (long seed = 1; seed <= 5; seed++) {
+			List<Trace> traces = createTraces(seed, 200);
+			ActivityLogReader reader = new ActivityLogReader(classifier, alphabet);
+			reader.read(new ByteArrayInputStream(createXES(traces).getBytes("UTF-8")));
+			assertEquals(alphabet, reader.getAlphabet());
+			assertEquals(new ActivityLog(createXLog(traces), classifier, alphabet), reader.getLog());
+		}
+	}
+
+	/*
+	 * With an alphabet, an event labelled as the start-end activity ends the
+	 * trace, as it did before there was a reader or a builder.
+	 */
+	@Test
+	public void testStartEnd() throws IOException {
+		ActivityAlphabet alphabet = new ActivityAlphabet(Arrays.asList("a", "h"));
+		XEventClassifier classifier = new XEventNameClassifier();
+		Trace trace = new Trace();
+		trace.isPos = Boolean.TRUE;
+		trace.names.addAll(Arrays.asList("a", ActivityAlphabet.STARTEND, "b", "h"));
+		trace.transitions.addAll(Arrays.asList("complete", "complete", "complete", "complete"));
+		List<Trace> traces = Arrays.asList(new Trace(), trace);
+		int[] activities = { 0, 0, alphabet.get("a"), 0, alphabet.get("h"), 0 };
+		boolean[] positive = { false, false, true, true, true, true };
+		ActivityLog expected = new ActivityLog(alphabet, activities, positive, activities.length);
+
+		assertEquals(expected, new ActivityLog(createXLog(traces), classifier, alphabet));
+		ActivityLogReader reader = new ActivityLogReader(classifier, alphabet);
+		reader.read(new ByteArrayInputStream(createXES(traces).getBytes("UTF-8")));
+		assertEquals(expected, reader.getLog());
+	}
+
+	@Test
+	public void testGzipped() throws IOException {
+		List<Trace> traces = createTraces(1, 500);
+		byte[] xes = gzip(createXES(traces).getBytes("UTF-8"));
+		XEventClassifier classifier = new XEventNameClassifier();
+		ActivityLog expected = createLog(createXLog(traces), classifier);
+
+		ActivityLogReader reader = new ActivityLogReader(classifier);
+		reader.read(new ByteArrayInputStream(xes));
+		assertEquals(expected, reader.getLog());
+
+		File file = File.createTempFile("ActivityLogReaderTest", ".xes.gz");
+		try {
+			OutputStream output = new FileOutputStream(file);
+			try {
+				output.write(xes);
+			} finally {
+				output.close();
+			}
+			reader = new ActivityLogReader(classifier);
+			reader.read(file);
+			assertEquals(expected, reader.getLog());
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test
+	public void testMalformed() {
+		ActivityLogReader reader = new ActivityLogReader(new XEventNameClassifier());
+		try {
+			reader.read(new ByteArrayInputStream("<log><trace><event></trace></log>".getBytes()));
+			fail("Malformed XES was read");
+		} catch (IOException e) {
+			// Expected.
+		}
+	}
+
+	public static void main(String[] args) {
+		junit.textui.TestRunner.run(ActivityLogReaderTest.class);
+	}
+}
@@ -0,0 +1,52 @@
+package org.processmining.discover.models;
+
+/*
+ * Times creating, copying, comparing, filtering and restoring activity
+ * matrices on generated activity logs with large alphabets.
+ *
+ * Usage: ActivityMatrixBenchmark [nofActivities [nofTraces [nofRuns]]]
+ */
+public class ActivityMatrixBenchmark {
+
+	public static void main(String[] args) {
+		int nofActivities = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+		int nofTraces = args.length > 1 ? Integer.parseInt(args[1]) : 20000;
+		int nofRuns = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+
+		ActivityLog log = TestLogs.createLog(1, nofTraces, nofActivities);
+		ActivityAlphabet alphabet = log.getAlphabet();
+		ActivityMatrix matrix = new ActivityMatrix(log, alphabet);
+		System.out.println("[ActivityMatrixBenchmark] " + alphabet.size() + " activities, " + log.size()
+				+ " log entries, " + (matrix.isSparse() ? "sparse" : "dense") + " storage.");
+
+		for (int run = 0; run < nofRuns; run++) {
+			long time = System.nanoTime();
+			matrix = new ActivityMatrix(log, alphabet);
+			long createTime = System.nanoTime() - time;
+
+			time = System.nanoTime();
+			ActivityMatrix copy = new ActivityMatrix(matrix);
+			long copyTime = System.nanoTime() - time;
+
+			time = System.nanoTime();
+			boolean isEqual = matrix.equals(copy);
+			long equalsTime = System.nanoTime() - time;
+
+			time = System.nanoTime();
+			copy.filterAbsolute(1);
+			copy.filterRelative(20, 50);
+			long filterTime = System.nanoTime() - time;
+
+			time = System.nanoTime();
+			copy.restore();
+			long restoreTime = System.nanoTime() - time;
+
+			if (!isEqual || !matrix.equals(copy)) {
+				throw new IllegalStateException("Copied or restored matrix differs from original");
+			}
+			System.out.println("[ActivityMatrixBenchmark] Run " + run + ": create " + createTime / 1000 + " us, copy "
+					+ copyTime / 1000 + " us, equals " + equalsTime / 1000 + " us, filter " + filterTime / 1000
+					+ " us, restore " + restoreTime / 1000 + " us.");
+		}
+	}
+}
@@ -0,0 +1,202 @@
+package org.processmining.discover.models;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.processmining.discover.parameters.DiscoverPetriNetParameters;
+
+import junit.framework.TestCase;
+
+/*
+ * Compares filtering the log on the matrices of a collection with filtering
+ * it the way it was done before, in rounds until nothing changes.
+ */
+public class ActivityMatrixCollectionTest extends TestCase {
+
+	/*
+	 * Filters the given activity log on the given matrices in rounds. Every
+	 * round, the log is filtered on every matrix, and if some trace was filtered
+	 * out, all matrices are discovered anew from the filtered log.
+	 */
+	private static void filter(ActivityMatrix[] matrices, ActivityLog log, ActivitySets ignoreSets,
+			ActivityMatrix rootMatrix) {
+		boolean didFilter = true;
+		while (didFilter) {
+			didFilter = false;
+			for (int m = 0; m < matrices.length; m++) {
+				if (log.filter(matrices[m], ignoreSets.get(m))) {
+					didFilter = true;
+				}
+			}
+			if (didFilter) {
+				for (int m = 0; m < matrices.length; m++) {
+					matrices[m] = new ActivityMatrix(log, log.getAlphabet(), ignoreSets.get(m), rootMatrix);
+				}
+			}
+		}
+	}
+
+	/*
+	 * Returns the root matrix for the given activity log, filtered but without
+	 * filtering the log on it, so some traces are not counted.
+	 */
+	private static ActivityMatrix createRootMatrix(ActivityLog log) {
+		ActivityMatrix rootMatrix = new ActivityMatrix(log, log.getAlphabet());
+		rootMatrix.filterAbsolute(1);
+		rootMatrix.filterRelative(5, 95);
+		return rootMatrix;
+	}
+
+	/*
+	 * Returns parameters that keep all matrices.
+	 */
+	private static DiscoverPetriNetParameters createParameters() {
+		DiscoverPetriNetParameters parameters = new DiscoverPetriNetParameters();
+		parameters.setUseILP(false);
+		parameters.setUseILP2(false);
+		parameters.setNofSComponents(0);
+		return parameters;
+	}
+
+	private static ActivitySets createIgnoreSets(ActivityMatrix rootMatrix, ActivityAlphabet alphabet,
+			DiscoverPetriNetParameters parameters) {
+		return new ActivitySets(new ConcurrentActivityPairs(rootMatrix, alphabet, parameters), alphabet,
+				ActivitySets.MODE_ALL);
+	}
+
+	/*
+	 * Discovers the matrices for the given activity log, filters them on the
+	 * given thresholds, and checks that filtering the log on them gives the same
+	 * log and matrices as filtering in rounds. Returns whether some trace was
+	 * filtered out.
+	 */
+	private static boolean assertFilter(ActivityLog log, int absoluteThreshold, int relativeThreshold) {
+		ActivityAlphabet alphabet = log.getAlphabet();
+		ActivityMatrix rootMatrix = createRootMatrix(log);
+		DiscoverPetriNetParameters parameters = createParameters();
+		ActivitySets ignoreSets = createIgnoreSets(rootMatrix, alphabet, parameters);
+		ActivityMatrixCollection matrices = new ActivityMatrixCollection(log, alphabet, ignoreSets, rootMatrix,
+				parameters);
+		matrices.filterAbsolute(absoluteThreshold);
+		matrices.filterRelative(relativeThreshold, 95);
+
+		ActivityLog unfilteredLog = log.copy();
+		ActivityLog expectedLog = log.copy();
+		ActivityMatrix[] expected = new ActivityMatrix[matrices.size()];
+		for (int m = 0; m < expected.length; m++) {
+			expected[m] = new ActivityMatrix(matrices.get(m));
+		}
+		filter(expected, expectedLog, ignoreSets, rootMatrix);
+
+		matrices.filter(log, ignoreSets, rootMatrix);
+		assertEquals(expectedLog, log);
+		for (int m = 0; m < expected.length; m++) {
+			assertEquals("matrix " + m, expected[m], matrices.get(m));
+		}
+		return !unfilteredLog.equals(log);
+	}
+
+	@Test
+	public void testFilter() {
+		int nofFiltered = 0;
+		for (long seed = 1; seed <= 10; seed++) {
+			for (int threshold = 1; threshold <= 5; threshold += 2) {
+				if (assertFilter(TestLogs.createLog(seed, 500, 8 + (int) seed, 10), threshold, 10 * threshold)) {
+					nofFiltered++;
+				}
+			}
+		}
+		assertTrue(nofFiltered > 0);
+	}
+
+	/*
+	 * Filtering the log on unfiltered matrices only filters out traces that are
+	 * not counted. The collection keeps its noisy traces up to date while
+	 * filtering, and uses them when it is updated with appended traces. The
+	 * updated matrices should equal the matrices discovered from the entire log,
+	 * which check every trace for noise again, and filtering the log on them
+	 * again should equal filtering it in rounds.
+	 */
+	@Test
+	public void testNoisyTracesKept() {
+		int nofFiltered = 0;
+		for (long seed = 1; seed <= 5; seed++) {
+			ActivityLog log = TestLogs.createLog(seed, 500, 10, 10);
+			ActivityAlphabet alphabet = log.getAlphabet();
+			ActivityMatrix rootMatrix = createRootMatrix(log);
+			DiscoverPetriNetParameters parameters = createParameters();
+			ActivitySets ignoreSets = createIgnoreSets(rootMatrix, alphabet, parameters);
+			ActivityMatrixCollection matrices = new ActivityMatrixCollection(log, alphabet, ignoreSets, rootMatrix,
+					parameters);
+			ActivityLog unfilteredLog = log.copy();
+			matrices.filter(log, ignoreSets, rootMatrix);
+			if (!unfilteredLog.equals(log)) {
+				nofFiltered++;
+			}
+			int fromIdx = log.append(TestLogs.createLog(seed + 100, 200, 10, 10));
+			matrices.update(log, fromIdx, ignoreSets, rootMatrix, false);
+			ActivityMatrix[] expected = ActivityMatrix.create(log, log.getAlphabet(), ignoreSets, rootMatrix);
+			assertEquals(expected.length, matrices.size());
+			for (int m = 0; m < expected.length; m++) {
+				assertEquals("matrix " + m, expected[m], matrices.get(m));
+			}
+			// Filtering again uses the noisy traces kept, including the appended ones.
+			matrices.filterAbsolute(2);
+			matrices.filterRelative(10, 95);
+			ActivityLog expectedLog = log.copy();
+			for (int m = 0; m < expected.length; m++) {
+				expected[m] = new ActivityMatrix(matrices.get(m));
+			}
+			filter(expected, expectedLog, ignoreSets, rootMatrix);
+			matrices.filter(log, ignoreSets, rootMatrix);
+			assertEquals(expectedLog, log);
+			for (int m = 0; m < expected.length; m++) {
+				assertEquals("matrix " + m, expected[m], matrices.get(m));
+			}
+		}
+		assertTrue(nofFiltered > 0);
+	}
+
+	/*
+	 * Limiting the number of matrices keeps the matrices spread evenly over the
+	 * collection, in order, where equal matrices are kept only once, together
+	 * with their activity sets.
+	 */
+	@Test
+	public void testLimit() {
+		for (long seed = 1; seed <= 5; seed++) {
+			ActivityLog log = TestLogs.createLog(seed, 300, 8 + (int) seed, 10);
+			ActivityAlphabet alphabet = log.getAlphabet();
+			ActivityMatrix rootMatrix = createRootMatrix(log);
+			DiscoverPetriNetParameters parameters = createParameters();
+			ActivitySets ignoreSets = createIgnoreSets(rootMatrix, alphabet, parameters);
+			ActivityMatrixCollection allMatrices = new ActivityMatrixCollection(log, alphabet, ignoreSets, rootMatrix,
+					parameters);
+			int size = allMatrices.size();
+			for (int limit = 1; limit <= size + 5; limit += 3) {
+				List<ActivityMatrix> expected = new ArrayList<ActivityMatrix>();
+				List<ActivitySet> expectedSets = new ArrayList<ActivitySet>();
+				for (int i = 0; i < limit; i++) {
+					if (!expected.contains(allMatrices.get((i * size) / limit))) {
+						expected.add(allMatrices.get((i * size) / limit));
+						expectedSets.add(ignoreSets.get((i * size) / limit));
+					}
+				}
+				parameters.setActivitySets(ignoreSets);
+				parameters.setNofSComponents(limit);
+				ActivityMatrixCollection matrices = new ActivityMatrixCollection(log, alphabet, ignoreSets,
+						rootMatrix, parameters);
+				assertEquals(expected.size(), matrices.size());
+				for (int m = 0; m < expected.size(); m++) {
+					assertEquals("matrix " + m, expected.get(m), matrices.get(m));
+				}
+				assertEquals(expectedSets, parameters.getActivitySets());
+			}
+		}
+	}
+
+	public static void main(String[] args) {
+		junit.textui.TestRunner.run(ActivityMatrixCollectionTest.class);
+	}
+}
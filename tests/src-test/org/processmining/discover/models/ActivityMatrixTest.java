@@ -0,0 +1,259 @@
+package org.processmining.discover.models;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import org.junit.Test;
+
+import junit.framework.TestCase;
+
+/*
+ * Compares the counts of activity matrices, dense and sparse, with the counts
+ * of a plain nested-array matrix counted directly from the activity log.
+ */
+public class ActivityMatrixTest extends TestCase {
+
+	/*
+	 * Counts the edges of the given activity log into a nested array.
+	 */
+	static int[][] countEdges(ActivityLog log) {
+		int size = log.getAlphabet().size();
+		int[][] counts = new int[size][size];
+		for (int idx = 0; idx + 1 < log.size(); idx++) {
+			counts[log.get(idx)][log.get(idx + 1)]++;
+		}
+		return counts;
+	}
+
+	private static void assertCounts(int[][] counts, ActivityMatrix matrix) {
+		for (int fromIdx = 0; fromIdx < counts.length; fromIdx++) {
+			for (int toIdx = 0; toIdx < counts.length; toIdx++) {
+				assertEquals("edge " + fromIdx + "," + toIdx, counts[fromIdx][toIdx], matrix.get(fromIdx, toIdx));
+			}
+		}
+	}
+
+	@Test
+	public void testDenseCounts() {
+		for (long seed = 1; seed <= 10; seed++) {
+			ActivityLog log = TestLogs.createLog(seed, 500, 5 + (int) seed * 3);
+			ActivityMatrix matrix = new ActivityMatrix(log, log.getAlphabet());
+			assertFalse(matrix.isSparse());
+			assertCounts(countEdges(log), matrix);
+		}
+	}
+
+	@Test
+	public void testSparseCounts() {
+		ActivityLog log = TestLogs.createLog(11, 2000, 2 * ActivityMatrix.SPARSESIZE);
+		ActivityMatrix matrix = new ActivityMatrix(log, log.getAlphabet());
+		assertTrue(matrix.isSparse());
+		assertCounts(countEdges(log), matrix);
+	}
+
+	@Test
+	public void testParallelCounts() {
+		for (long seed = 1; seed <= 3; seed++) {
+			ActivityLog log = TestLogs.createLog(seed, 3000, 20);
+			ActivitySet ignoreSet = new ActivitySet("Not", log.getAlphabet());
+			ActivityMatrix sequential = new ActivityMatrix(log, log.getAlphabet(), ignoreSet, null, false);
+			ActivityMatrix parallel = new ActivityMatrix(log, log.getAlphabet(), ignoreSet, null, true);
+			assertEquals(sequential, parallel);
+		}
+	}
+
+	@Test
+	public void testFilterAndRestore() {
+		for (long seed = 1; seed <= 10; seed++) {
+			ActivityLog log = TestLogs.createLog(seed, 500, 5 + (int) seed * 3);
+			int[][] counts = countEdges(log);
+			ActivityMatrix matrix = new ActivityMatrix(log, log.getAlphabet());
+			ActivityMatrix copy = new ActivityMatrix(matrix);
+			assertEquals(matrix, copy);
+			assertEquals(matrix.hashCode(), copy.hashCode());
+
+			copy.filterAbsolute(2);
+			for (int fromIdx = 0; fromIdx < counts.length; fromIdx++) {
+				for (int toIdx = 0; toIdx < counts.length; toIdx++) {
+					int count = counts[fromIdx][toIdx];
+					assertEquals(count <= 2 ? -count : count, copy.get(fromIdx, toIdx));
+				}
+			}
+			copy.filterRelative(20, 50);
+			for (int fromIdx = 0; fromIdx < counts.length; fromIdx++) {
+				for (int toIdx = 0; toIdx < counts.length; toIdx++) {
+					assertEquals(counts[fromIdx][toIdx], Math.abs(copy.get(fromIdx, toIdx)));
+				}
+			}
+			copy.restore();
+			assertEquals(matrix, copy);
+		}
+	}
+
+	/*
+	 * Checks that updating a matrix of the given activity log with the traces of
+	 * the other given activity log gives the matrix of both logs, with and
+	 * without filtering.
+	 */
+	private static void assertUpdate(ActivityLog log, ActivityLog appendLog) {
+		ActivityLog fullLog = log.copy();
+		int fromIdx = fullLog.append(appendLog);
+		ActivitySet ignoreSet = new ActivitySet("Not", fullLog.getAlphabet());
+
+		ActivityMatrix rebuilt = new ActivityMatrix(fullLog, fullLog.getAlphabet());
+		ActivityMatrix updated = new ActivityMatrix(log, log.getAlphabet());
+		updated.update(fullLog, fromIdx, ignoreSet, null);
+		assertEquals(rebuilt, updated);
+
+		rebuilt.filterAbsolute(2);
+		rebuilt.filterRelative(20, 50);
+		updated = new ActivityMatrix(log, log.getAlphabet());
+		updated.filterAbsolute(2);
+		updated.filterRelative(20, 50);
+		updated.update(fullLog, fromIdx, ignoreSet, null);
+		assertEquals(rebuilt, updated);
+
+		rebuilt.restore();
+		updated.restore();
+		assertEquals(new ActivityMatrix(fullLog, fullLog.getAlphabet()), updated);
+		assertEquals(rebuilt, updated);
+	}
+
+	@Test
+	public void testUpdate() {
+		for (long seed = 1; seed <= 5; seed++) {
+			// The appended traces also have new activities.
+			assertUpdate(TestLogs.createLog(seed, 300, 10), TestLogs.createLog(seed + 100, 200, 15));
+		}
+		assertUpdate(TestLogs.createLog(11, 1000, 2 * ActivityMatrix.SPARSESIZE),
+				TestLogs.createLog(12, 1000, 2 * ActivityMatrix.SPARSESIZE + 10));
+	}
+
+	@Test
+	public void testUpdateAll() {
+		ActivityLog log = TestLogs.createLog(1, 300, 10);
+		ActivityLog fullLog = log.copy();
+		int fromIdx = fullLog.append(TestLogs.createLog(2, 200, 12));
+		List<ActivitySet> ignoreSets = new ArrayList<ActivitySet>();
+		for (int activity = 0; activity < 3; activity++) {
+			ActivitySet ignoreSet = new ActivitySet("All except", fullLog.getAlphabet());
+			ignoreSet.add(1 + activity);
+			ignoreSets.add(ignoreSet);
+		}
+		ActivityMatrix[] updated = ActivityMatrix.create(log, log.getAlphabet(), ignoreSets, (ActivityMatrix) null);
+		ActivityMatrix.update(updated, fullLog, fromIdx, ignoreSets, (ActivityMatrix) null);
+		ActivityMatrix[] rebuilt = ActivityMatrix.create(fullLog, fullLog.getAlphabet(), ignoreSets,
+				(ActivityMatrix) null);
+		for (int m = 0; m < ignoreSets.size(); m++) {
+			assertEquals("matrix " + m, rebuilt[m], updated[m]);
+		}
+	}
+
+	/*
+	 * Returns whether the trace starting at the given index contains a DF pair
+	 * that is filtered out in the given root matrix, or was filtered out. Checks
+	 * the same indices in the same order as the recursive check did.
+	 */
+	static boolean containsNoise(ActivityLog log, int idx, ActivityMatrix rootMatrix) {
+		for (;; idx++) {
+			if (log.get(idx) < 0) {
+				return true;
+			}
+			if (rootMatrix == null) {
+				return false;
+			}
+			if (rootMatrix.get(log.get(idx - 1), log.get(idx)) < 0) {
+				return true;
+			}
+			if (log.get(idx) == 0) {
+				return false;
+			}
+		}
+	}
+
+	/*
+	 * Checks the noisy traces of the given activity log for the given root
+	 * matrix against checking every trace on its own, and checks that a matrix
+	 * counts exactly the traces that are not noisy. Returns the number of noisy
+	 * traces.
+	 */
+	private static int assertNoisyTraces(ActivityLog log, ActivityMatrix rootMatrix) {
+		BitSet noisyTraces = ActivityMatrix.getNoisyTraces(log, 1, rootMatrix);
+		int size = log.getAlphabet().size();
+		int[][] counts = new int[size][size];
+		int nofNoisyTraces = 0;
+		for (int startIdx = 1; startIdx < log.size(); startIdx++) {
+			if (log.get(startIdx - 1) != 0) {
+				continue;
+			}
+			boolean isNoisy = containsNoise(log, startIdx, rootMatrix);
+			assertEquals("trace " + startIdx, isNoisy, noisyTraces.get(startIdx));
+			if (isNoisy) {
+				nofNoisyTraces++;
+				continue;
+			}
+			for (int idx = startIdx;; idx++) {
+				counts[log.get(idx - 1)][log.get(idx)]++;
+				if (log.get(idx) == 0) {
+					break;
+				}
+			}
+		}
+		assertEquals(nofNoisyTraces, noisyTraces.cardinality());
+		assertCounts(counts,
+				new ActivityMatrix(log, log.getAlphabet(), new ActivitySet("Not", log.getAlphabet()), rootMatrix));
+		return nofNoisyTraces;
+	}
+
+	@Test
+	public void testNoisyTraces() {
+		for (long seed = 1; seed <= 10; seed++) {
+			ActivityLog log = TestLogs.createLog(seed, 500, 5 + (int) seed * 3);
+			// Filter out every seventh trace.
+			int nofTraces = 0;
+			for (int startIdx = 0, endIdx = 1; endIdx < log.size(); endIdx++) {
+				if (log.get(endIdx) == 0) {
+					if (++nofTraces % 7 == 0) {
+						log.drop(startIdx, endIdx);
+					}
+					startIdx = endIdx;
+				}
+			}
+			ActivityMatrix rootMatrix = new ActivityMatrix(log, log.getAlphabet());
+			assertEquals(nofTraces / 7, assertNoisyTraces(log, null));
+			assertEquals(nofTraces / 7, assertNoisyTraces(log, rootMatrix));
+			rootMatrix.filterAbsolute(2);
+			rootMatrix.filterRelative(20, 50);
+			assertTrue(assertNoisyTraces(log, rootMatrix) > nofTraces / 7);
+		}
+	}
+
+	/*
+	 * A single trace long enough to have overflowed the stack of the recursive
+	 * check, with one DF pair that is filtered out near its end.
+	 */
+	@Test
+	public void testLongTrace() {
+		ActivityLogBuilder builder = new ActivityLogBuilder();
+		for (int i = 0; i < 3; i++) {
+			builder.startTrace(false);
+			for (int j = 0; j < 100000; j++) {
+				builder.addActivity(j % 2 == 0 ? "a" : "b");
+			}
+			if (i == 1) {
+				builder.addActivity("c");
+			}
+			builder.addActivity("a");
+			builder.endTrace();
+		}
+		ActivityLog log = builder.getLog();
+		ActivityMatrix rootMatrix = new ActivityMatrix(log, log.getAlphabet());
+		rootMatrix.filterAbsolute(1);
+		assertEquals(1, assertNoisyTraces(log, rootMatrix));
+	}
+
+	public static void main(String[] args) {
+		junit.textui.TestRunner.run(ActivityMatrixTest.class);
+	}
+}
@@ -0,0 +1,30 @@
+package org.processmining.discover.models;
+
+import org.junit.Test;
+
+import junit.framework.TestCase;
+
+/*
+ * Compares the activity sets found by the parallel search with those found by
+ * the sequential search, including their order.
+ */
+public class ActivitySetsTest extends TestCase {
+
+	@Test
+	public void testParallelOrder() {
+		for (long seed = 1; seed <= 10; seed++) {
+			ActivityLog log = TestLogs.createConcurrentLog(seed, 8 + (int) seed, 0.3);
+			ActivityAlphabet alphabet = log.getAlphabet();
+			ConcurrentActivityPairs pairs = new ConcurrentActivityPairs(new ActivityMatrix(log, alphabet), alphabet,
+					null);
+			ActivitySets sequential = new ActivitySets(pairs, alphabet, ActivitySets.MODE_ALL, 0, 0, null, false);
+			ActivitySets parallel = new ActivitySets(pairs, alphabet, ActivitySets.MODE_ALL, 0, 0, null, true);
+			assertTrue(sequential.size() > 1);
+			assertEquals("seed " + seed, sequential, parallel);
+		}
+	}
+
+	public static void main(String[] args) {
+		junit.textui.TestRunner.run(ActivitySetsTest.class);
+	}
+}
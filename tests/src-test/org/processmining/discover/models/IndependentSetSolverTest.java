@@ -0,0 +1,69 @@
+package org.processmining.discover.models;
+
+import java.util.BitSet;
+
+import org.junit.Test;
+
+import junit.framework.TestCase;
+
+/*
+ * Compares the largest sets of non-concurrent activities found by the solver
+ * with the largest sets found by trying all sets of activities.
+ */
+public class IndependentSetSolverTest extends TestCase {
+
+	@Test
+	public void testLargestSets() {
+		for (long seed = 1; seed <= 20; seed++) {
+			ActivityLog log = TestLogs.createConcurrentLog(seed, 3 + (int) seed % 11, 0.05 * (seed % 10));
+			ActivityAlphabet alphabet = log.getAlphabet();
+			ConcurrentActivityPairs pairs = new ConcurrentActivityPairs(new ActivityMatrix(log, alphabet), alphabet,
+					null);
+			int size = alphabet.size();
+
+			// For every activity, the activities it is concurrent with.
+			int[] concurrent = new int[size];
+			for (int i = 0; i < pairs.size(); i++) {
+				int first = pairs.get(i).getFirst();
+				int second = pairs.get(i).getSecond();
+				concurrent[first] |= 1 << second;
+				concurrent[second] |= 1 << first;
+			}
+			// For every activity, the size of a largest non-concurrent set containing it.
+			int[] largest = new int[size];
+			for (int set = 1; set < 1 << size; set++) {
+				boolean isNonConcurrent = true;
+				for (int i = 0; i < size && isNonConcurrent; i++) {
+					isNonConcurrent = (set & 1 << i) == 0 || (set & concurrent[i]) == 0;
+				}
+				if (isNonConcurrent) {
+					for (int i = 0; i < size; i++) {
+						if ((set & 1 << i) != 0) {
+							largest[i] = Math.max(largest[i], Integer.bitCount(set));
+						}
+					}
+				}
+			}
+
+			IndependentSetSolver solver = new IndependentSetSolver(pairs, size);
+			int[] activities = new int[size - 1];
+			for (int activity = 1; activity < size; activity++) {
+				activities[activity - 1] = activity;
+			}
+			BitSet[] solutions = solver.solve(activities);
+			for (int activity = 1; activity < size; activity++) {
+				BitSet solution = solver.solve(activity);
+				assertEquals(solution, solutions[activity - 1]);
+				assertTrue(solution.get(activity));
+				for (int i = solution.nextSetBit(0); i >= 0; i = solution.nextSetBit(i + 1)) {
+					assertEquals("activity " + i + " concurrent", 0, concurrent[i] & (int) solution.toLongArray()[0]);
+				}
+				assertEquals("seed " + seed + ", activity " + activity, largest[activity], solution.cardinality());
+			}
+		}
+	}
+
+	public static void main(String[] args) {
+		junit.textui.TestRunner.run(IndependentSetSolverTest.class);
+	}
+}
@@ -0,0 +1,100 @@
+package org.processmining.discover.models;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import junit.framework.TestCase;
+
+/*
+ * Compares the covers found by the solver with the smallest covers found by
+ * trying all selections of sets, like the ILP it replaced did.
+ */
+public class SetCoverSolverTest extends TestCase {
+
+	private static List<BitSet> createSets(Random random, int nofSets, int nofElements, int density) {
+		List<BitSet> sets = new ArrayList<BitSet>();
+		for (int s = 0; s < nofSets; s++) {
+			BitSet set = new BitSet();
+			for (int e = 0; e < nofElements; e++) {
+				if (random.nextInt(density) == 0) {
+					set.set(e);
+				}
+			}
+			sets.add(set);
+		}
+		return sets;
+	}
+
+	/*
+	 * Checks that the given selection is sorted and covers all elements.
+	 */
+	private static void assertCover(List<BitSet> sets, int[] selection) {
+		BitSet all = new BitSet();
+		for (BitSet set : sets) {
+			all.or(set);
+		}
+		BitSet covered = new BitSet();
+		for (int i = 0; i < selection.length; i++) {
+			assertTrue(i == 0 || selection[i - 1] < selection[i]);
+			covered.or(sets.get(selection[i]));
+		}
+		assertEquals(all, covered);
+	}
+
+	@Test
+	public void testSmallestCovers() {
+		Random random = new Random(1);
+		for (int round = 0; round < 300; round++) {
+			List<BitSet> sets = createSets(random, 1 + random.nextInt(14), 1 + random.nextInt(30), 4);
+			BitSet all = new BitSet();
+			for (BitSet set : sets) {
+				all.or(set);
+			}
+			int smallest = Integer.MAX_VALUE;
+			for (int selection = 0; selection < 1 << sets.size(); selection++) {
+				BitSet covered = new BitSet();
+				for (int s = 0; s < sets.size(); s++) {
+					if ((selection & 1 << s) != 0) {
+						covered.or(sets.get(s));
+					}
+				}
+				if (covered.equals(all)) {
+					smallest = Math.min(smallest, Integer.bitCount(selection));
+				}
+			}
+			SetCoverSolver solver = new SetCoverSolver(sets);
+			int[] greedy = solver.greedy();
+			assertCover(sets, greedy);
+			int[] cover = solver.solve(0, null);
+			assertCover(sets, cover);
+			assertEquals("round " + round, smallest, cover.length);
+		}
+	}
+
+	@Test
+	public void testNodeLimit() {
+		/*
+		 * Too large to search exhaustively within the limit, but the cover found
+		 * should still be a cover, not larger than the greedy one, and the same
+		 * every time.
+		 */
+		List<BitSet> sets = createSets(new Random(2), 400, 300, 10);
+		SetCoverSolver solver = new SetCoverSolver(sets);
+		int[] greedy = solver.greedy();
+		long time = System.currentTimeMillis();
+		int[] cover = solver.solve(SetCoverSolver.MAXNODES, null);
+		assertTrue(System.currentTimeMillis() - time < 10000);
+		assertCover(sets, cover);
+		assertTrue(cover.length <= greedy.length);
+		assertTrue(Arrays.equals(cover, solver.solve(SetCoverSolver.MAXNODES, null)));
+	}
+
+	public static void main(String[] args) {
+		junit.textui.TestRunner.run(SetCoverSolverTest.class);
+	}
+}
@@ -0,0 +1,81 @@
+package org.processmining.discover.models;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+
+/*
+ * Times keeping only the minimal sets of many generated sets, with the
+ * subsumption index and with a linear scan over the sets found so far. Then
+ * times searching all activity sets for generated concurrent pairs, which
+ * keeps its minimal sets in subsumption indices.
+ *
+ * Usage: SubsumptionIndexBenchmark [nofActivities [density]]
+ */
+public class SubsumptionIndexBenchmark {
+
+	public static void main(String[] args) {
+		int nofActivities = args.length > 0 ? Integer.parseInt(args[0]) : 30;
+		double density = args.length > 1 ? Double.parseDouble(args[1]) : 0.2;
+
+		for (int size : new int[] { 32, 64, 128 }) {
+			Random random = new Random(size);
+			List<BitSet> sets = new ArrayList<BitSet>();
+			while (sets.size() < 20000) {
+				BitSet set = SubsumptionIndexTest.createSet(random, size, size / 4);
+				if (set.cardinality() >= size / 8) {
+					sets.add(set);
+				}
+			}
+
+			long time = System.nanoTime();
+			SubsumptionIndex<BitSet> index = new SubsumptionIndex<BitSet>();
+			for (BitSet set : sets) {
+				if (!index.containsSubsetOf(set)) {
+					index.removeSupersetsOf(set);
+					index.add(set, set);
+				}
+			}
+			long indexTime = System.nanoTime() - time;
+
+			time = System.nanoTime();
+			List<BitSet> minimalSets = new ArrayList<BitSet>();
+			for (BitSet set : sets) {
+				boolean isMinimal = true;
+				for (BitSet other : minimalSets) {
+					if (SubsumptionIndexTest.isSubset(other, set)) {
+						isMinimal = false;
+						break;
+					}
+				}
+				if (isMinimal) {
+					for (int i = minimalSets.size() - 1; i >= 0; i--) {
+						if (SubsumptionIndexTest.isSubset(set, minimalSets.get(i))) {
+							minimalSets.remove(i);
+						}
+					}
+					minimalSets.add(set);
+				}
+			}
+			long scanTime = System.nanoTime() - time;
+
+			if (index.size() != minimalSets.size()) {
+				throw new IllegalStateException("Index and scan keep different sets");
+			}
+			System.out.println("[SubsumptionIndexBenchmark] " + sets.size() + " sets over " + size + " indices, "
+					+ index.size() + " minimal: index " + indexTime / 1000000 + " ms, scan " + scanTime / 1000000
+					+ " ms.");
+		}
+
+		ActivityLog log = TestLogs.createConcurrentLog(1, nofActivities, density);
+		ActivityAlphabet alphabet = log.getAlphabet();
+		ConcurrentActivityPairs pairs = new ConcurrentActivityPairs(new ActivityMatrix(log, alphabet), alphabet,
+				null);
+		long time = System.nanoTime();
+		ActivitySets activitySets = new ActivitySets(pairs, alphabet, ActivitySets.MODE_ALL);
+		System.out.println("[SubsumptionIndexBenchmark] " + pairs.size() + " concurrent pairs over "
+				+ nofActivities + " activities, " + activitySets.size() + " activity sets: "
+				+ (System.nanoTime() - time) / 1000000 + " ms.");
+	}
+}
@@ -0,0 +1,134 @@
+package org.processmining.discover.models;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import junit.framework.TestCase;
+
+/*
+ * Compares the subsumption index with a linear scan over all sets, like the
+ * activity set search did before it used the index.
+ */
+public class SubsumptionIndexTest extends TestCase {
+
+	/*
+	 * Creates a set of indices below the given size, with at most the given
+	 * number of indices.
+	 */
+	static BitSet createSet(Random random, int size, int maxCardinality) {
+		BitSet set = new BitSet();
+		int cardinality = random.nextInt(maxCardinality + 1);
+		for (int i = 0; i < cardinality; i++) {
+			set.set(random.nextInt(size));
+		}
+		return set;
+	}
+
+	static boolean isSubset(BitSet set1, BitSet set2) {
+		BitSet difference = (BitSet) set1.clone();
+		difference.andNot(set2);
+		return difference.isEmpty();
+	}
+
+	/*
+	 * Removes all subsets (or supersets) of the given set from the given sets,
+	 * and returns their values.
+	 */
+	private static Set<Integer> remove(Map<BitSet, Integer> sets, BitSet set, boolean subsets) {
+		Set<Integer> removed = new HashSet<Integer>();
+		for (Iterator<Map.Entry<BitSet, Integer>> it = sets.entrySet().iterator(); it.hasNext();) {
+			Map.Entry<BitSet, Integer> entry = it.next();
+			if (subsets ? isSubset(entry.getKey(), set) : isSubset(set, entry.getKey())) {
+				removed.add(entry.getValue());
+				it.remove();
+			}
+		}
+		return removed;
+	}
+
+	@Test
+	public void testQueries() {
+		for (long seed = 1; seed <= 20; seed++) {
+			Random random = new Random(seed);
+			int size = 4 + random.nextInt(12);
+			SubsumptionIndex<Integer> index = new SubsumptionIndex<Integer>();
+			Map<BitSet, Integer> sets = new LinkedHashMap<BitSet, Integer>();
+			for (int step = 0; step < 2000; step++) {
+				BitSet set = createSet(random, size, size / 2);
+				boolean hasSubset = false;
+				boolean hasSuperset = false;
+				for (BitSet other : sets.keySet()) {
+					hasSubset |= isSubset(other, set);
+					hasSuperset |= isSubset(set, other);
+				}
+				assertEquals(hasSubset, index.containsSubsetOf(set));
+				assertEquals(hasSuperset, index.containsSupersetOf(set));
+				switch (random.nextInt(4)) {
+					case 0 :
+						assertEquals(remove(sets, set, true), new HashSet<Integer>(index.removeSubsetsOf(set)));
+						break;
+					case 1 :
+						assertEquals(remove(sets, set, false), new HashSet<Integer>(index.removeSupersetsOf(set)));
+						break;
+					default :
+						boolean isNew = !sets.containsKey(set);
+						if (isNew) {
+							sets.put(set, step);
+						}
+						assertEquals(isNew, index.add(set, step));
+				}
+				assertEquals(sets.size(), index.size());
+				assertEquals(new HashSet<Integer>(sets.values()), index.getValues());
+			}
+		}
+	}
+
+	@Test
+	public void testMinimalSets() {
+		/*
+		 * Keep only the minimal sets, both with the index and with a linear scan.
+		 */
+		Random random = new Random(0);
+		SubsumptionIndex<BitSet> index = new SubsumptionIndex<BitSet>();
+		List<BitSet> minimalSets = new ArrayList<BitSet>();
+		for (int step = 0; step < 5000; step++) {
+			BitSet set = createSet(random, 24, 8);
+			if (set.cardinality() < 4) {
+				continue;
+			}
+			if (!index.containsSubsetOf(set)) {
+				index.removeSupersetsOf(set);
+				index.add(set, set);
+			}
+			boolean isMinimal = true;
+			for (BitSet other : minimalSets) {
+				if (isSubset(other, set)) {
+					isMinimal = false;
+					break;
+				}
+			}
+			if (isMinimal) {
+				for (Iterator<BitSet> it = minimalSets.iterator(); it.hasNext();) {
+					if (isSubset(set, it.next())) {
+						it.remove();
+					}
+				}
+				minimalSets.add(set);
+			}
+		}
+		assertEquals(new HashSet<BitSet>(minimalSets), index.getValues());
+	}
+
+	public static void main(String[] args) {
+		junit.textui.TestRunner.run(SubsumptionIndexTest.class);
+	}
+}
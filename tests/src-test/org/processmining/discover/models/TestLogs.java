@@ -0,0 +1,71 @@
+package org.processmining.discover.models;
+
+import java.util.Random;
+
+/*
+ * Generated activity logs for the tests and benchmarks.
+ */
+class TestLogs {
+
+	/*
+	 * Creates an activity log of the given number of traces over the given
+	 * number of activities. Traces mostly follow the activities in order, with
+	 * some jumps. No trace is classified.
+	 */
+	static ActivityLog createLog(long seed, int nofTraces, int nofActivities) {
+		return createLog(seed, nofTraces, nofActivities, 0);
+	}
+
+	/*
+	 * Creates an activity log like the other createLog, where one in the given
+	 * number of traces is classified positive, if this number is positive.
+	 */
+	static ActivityLog createLog(long seed, int nofTraces, int nofActivities, int posEvery) {
+		Random random = new Random(seed);
+		ActivityLogBuilder builder = new ActivityLogBuilder();
+		for (int trace = 0; trace < nofTraces; trace++) {
+			builder.startTrace(posEvery > 0 && random.nextInt(posEvery) == 0);
+			int length = 2 + random.nextInt(12);
+			int activity = random.nextInt(nofActivities);
+			for (int i = 0; i < length; i++) {
+				builder.addActivity("a" + activity);
+				activity = random.nextInt(10) == 0 ? random.nextInt(nofActivities)
+						: (activity + 1 + random.nextInt(2)) % nofActivities;
+			}
+			builder.endTrace();
+		}
+		return builder.getLog();
+	}
+
+	/*
+	 * Creates an activity log over the given number of activities in which every
+	 * pair of activities is concurrent with the given probability. Every activity
+	 * also occurs on its own.
+	 */
+	static ActivityLog createConcurrentLog(long seed, int nofActivities, double density) {
+		Random random = new Random(seed);
+		ActivityLogBuilder builder = new ActivityLogBuilder();
+		for (int activity = 0; activity < nofActivities; activity++) {
+			addTrace(builder, "a" + activity);
+		}
+		for (int activity1 = 0; activity1 < nofActivities; activity1++) {
+			for (int activity2 = 0; activity2 < activity1; activity2++) {
+				if (random.nextDouble() < density) {
+					addTrace(builder, "a" + activity1, "a" + activity2);
+					addTrace(builder, "a" + activity2, "a" + activity1);
+				}
+			}
+		}
+		return builder.getLog();
+	}
+
+	private static void addTrace(ActivityLogBuilder builder, String... activities) {
+		builder.startTrace(false);
+		builder.addActivity("start");
+		for (String activity : activities) {
+			builder.addActivity(activity);
+		}
+		builder.addActivity("end");
+		builder.endTrace();
+	}
+}
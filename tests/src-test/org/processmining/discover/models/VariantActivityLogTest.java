@@ -0,0 +1,157 @@
+package org.processmining.discover.models;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import org.processmining.discover.parameters.DiscoverPetriNetParameters;
+
+import junit.framework.TestCase;
+
+/*
+ * Compares a variant activity log with the activity log it was compressed
+ * from: both should contain the same traces, and the matrices counted and the
+ * traces filtered out should be the same.
+ */
+public class VariantActivityLogTest extends TestCase {
+
+	/*
+	 * Returns how often every trace occurs in the given activity log. A trace is
+	 * given by its activities and whether it is classified positive.
+	 */
+	private static Map<List<Integer>, Integer> countTraces(ActivityLog log) {
+		Map<List<Integer>, Integer> counts = new HashMap<List<Integer>, Integer>();
+		List<Integer> trace = new ArrayList<Integer>();
+		for (int idx = 1; idx < log.size(); idx++) {
+			trace.add(log.get(idx));
+			if (log.get(idx) == 0) {
+				trace.add(log.isPos(idx) ? 1 : 0);
+				Integer count = counts.get(trace);
+				counts.put(trace, (count == null ? 0 : count) + log.getMultiplicity(idx));
+				trace = new ArrayList<Integer>();
+			}
+		}
+		return counts;
+	}
+
+	/*
+	 * Creates an activity log in which every trace occurs five times, though not
+	 * in a row.
+	 */
+	private static ActivityLog createLog(long seed) {
+		ActivityLog traces = TestLogs.createLog(seed, 400, 4 + (int) seed, 10);
+		ActivityLog log = traces.copy();
+		for (int i = 1; i < 5; i++) {
+			log.append(traces);
+		}
+		return log;
+	}
+
+	@Test
+	public void testCompress() {
+		for (long seed = 1; seed <= 5; seed++) {
+			ActivityLog log = createLog(seed);
+			VariantActivityLog variantLog = new VariantActivityLog(log);
+			assertTrue(variantLog.size() <= log.size() / 4);
+			assertEquals(log.getAlphabet(), variantLog.getAlphabet());
+			assertEquals(countTraces(log), countTraces(variantLog));
+			// Compressing again changes nothing.
+			assertEquals(variantLog, new VariantActivityLog(variantLog));
+		}
+	}
+
+	@Test
+	public void testMatrix() {
+		for (long seed = 1; seed <= 5; seed++) {
+			ActivityLog log = createLog(seed);
+			ActivityAlphabet alphabet = log.getAlphabet();
+			VariantActivityLog variantLog = new VariantActivityLog(log);
+			ActivityMatrix rootMatrix = new ActivityMatrix(log, alphabet);
+			assertEquals(rootMatrix, new ActivityMatrix(variantLog, alphabet));
+
+			rootMatrix.filterAbsolute(2);
+			rootMatrix.filterRelative(20, 50);
+			List<ActivitySet> ignoreSets = new ArrayList<ActivitySet>();
+			for (int activity = 1; activity < alphabet.size(); activity++) {
+				ActivitySet ignoreSet = new ActivitySet("Not", alphabet);
+				ignoreSet.add(activity);
+				ignoreSets.add(ignoreSet);
+			}
+			ActivityMatrix[] matrices = ActivityMatrix.create(log, alphabet, ignoreSets, rootMatrix);
+			ActivityMatrix[] variantMatrices = ActivityMatrix.create(variantLog, alphabet, ignoreSets, rootMatrix);
+			for (int m = 0; m < matrices.length; m++) {
+				assertEquals("matrix " + m, matrices[m], variantMatrices[m]);
+			}
+		}
+	}
+
+	/*
+	 * Filtering drops a variant exactly when it drops the traces of that
+	 * variant, both on a single matrix and on a collection of matrices.
+	 */
+	@Test
+	public void testFilter() {
+		int nofFiltered = 0;
+		for (long seed = 1; seed <= 5; seed++) {
+			ActivityLog log = createLog(seed);
+			ActivityAlphabet alphabet = log.getAlphabet();
+			VariantActivityLog variantLog = new VariantActivityLog(log);
+			ActivityMatrix rootMatrix = new ActivityMatrix(log, alphabet);
+			rootMatrix.filterAbsolute(10);
+			rootMatrix.filterRelative(20, 50);
+
+			ActivitySet ignoreSet = new ActivitySet("Not", alphabet);
+			ActivityLog filteredLog = log.copy();
+			ActivityLog filteredVariantLog = variantLog.copy();
+			boolean didFilter = filteredLog.filter(rootMatrix, ignoreSet);
+			assertEquals(didFilter, filteredVariantLog.filter(rootMatrix, ignoreSet));
+			if (didFilter) {
+				nofFiltered++;
+			}
+			assertEquals(countTraces(filteredLog), countTraces(filteredVariantLog));
+			assertEquals(new ActivityMatrix(filteredLog, alphabet), new ActivityMatrix(filteredVariantLog, alphabet));
+
+			DiscoverPetriNetParameters parameters = new DiscoverPetriNetParameters();
+			parameters.setUseILP(false);
+			parameters.setUseILP2(false);
+			parameters.setNofSComponents(0);
+			ActivitySets ignoreSets = new ActivitySets(new ConcurrentActivityPairs(rootMatrix, alphabet, parameters),
+					alphabet, ActivitySets.MODE_ALL);
+			ActivityMatrixCollection matrices = new ActivityMatrixCollection(log, alphabet, ignoreSets, rootMatrix,
+					parameters);
+			ActivityMatrixCollection variantMatrices = new ActivityMatrixCollection(variantLog, alphabet, ignoreSets,
+					rootMatrix, parameters);
+			assertEquals(matrices, variantMatrices);
+			matrices.filterAbsolute(15);
+			variantMatrices.filterAbsolute(15);
+			matrices.filter(log, ignoreSets, rootMatrix);
+			variantMatrices.filter(variantLog, ignoreSets, rootMatrix);
+			assertEquals(countTraces(log), countTraces(variantLog));
+			assertEquals(matrices, variantMatrices);
+		}
+		assertTrue(nofFiltered > 0);
+	}
+
+	/*
+	 * Appended traces are kept as they are, but count the same.
+	 */
+	@Test
+	public void testAppend() {
+		for (long seed = 1; seed <= 5; seed++) {
+			ActivityLog log = createLog(seed);
+			VariantActivityLog variantLog = new VariantActivityLog(log);
+			ActivityLog appendLog = TestLogs.createLog(seed + 100, 500, 6 + (int) seed, 10);
+			log.append(appendLog);
+			variantLog.append(new VariantActivityLog(appendLog));
+			assertEquals(countTraces(log), countTraces(variantLog));
+			assertEquals(new ActivityMatrix(log, log.getAlphabet()),
+					new ActivityMatrix(variantLog, variantLog.getAlphabet()));
+		}
+	}
+
+	public static void main(String[] args) {
+		junit.textui.TestRunner.run(VariantActivityLogTest.class);
+	}
+}
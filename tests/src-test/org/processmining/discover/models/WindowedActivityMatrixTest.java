@@ -0,0 +1,155 @@
+package org.processmining.discover.models;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import junit.framework.TestCase;
+
+/*
+ * Compares the matrix of a sliding window with the matrix counted from an
+ * activity log that contains exactly the traces in the window.
+ */
+public class WindowedActivityMatrixTest extends TestCase {
+
+	/*
+	 * A trace added to the window.
+	 */
+	private static class Trace {
+		List<String> activities;
+		boolean isPos;
+		long time;
+
+		Trace(List<String> activities, boolean isPos, long time) {
+			this.activities = activities;
+			this.isPos = isPos;
+			this.time = time;
+		}
+	}
+
+	/*
+	 * Creates a trace over the given number of activities. Traces mostly follow
+	 * the activities in order, with some jumps, and a fifth is classified
+	 * positive.
+	 */
+	private static Trace createTrace(Random random, int nofActivities, long time) {
+		List<String> activities = new ArrayList<String>();
+		int length = 1 + random.nextInt(8);
+		int activity = random.nextInt(nofActivities);
+		for (int i = 0; i < length; i++) {
+			activities.add("a" + activity);
+			activity = random.nextInt(10) == 0 ? random.nextInt(nofActivities)
+					: (activity + 1 + random.nextInt(2)) % nofActivities;
+		}
+		return new Trace(activities, random.nextInt(5) == 0, time);
+	}
+
+	/*
+	 * Creates an activity log containing the given traces.
+	 */
+	private static ActivityLog createLog(List<Trace> traces) {
+		ActivityLogBuilder builder = new ActivityLogBuilder();
+		for (Trace trace : traces) {
+			builder.startTrace(trace.isPos);
+			for (String activity : trace.activities) {
+				builder.addActivity(activity);
+			}
+			builder.endTrace();
+		}
+		return builder.getLog();
+	}
+
+	/*
+	 * Asserts that the given matrices have the same activities, and the same
+	 * counts for these activities. The alphabets may order them differently.
+	 */
+	private static void assertMatrix(ActivityAlphabet expectedAlphabet, ActivityMatrix expected,
+			ActivityAlphabet alphabet, ActivityMatrix matrix) {
+		assertEquals(expectedAlphabet.size(), alphabet.size());
+		int[] idxMap = new int[expectedAlphabet.size()];
+		for (int idx = 0; idx < expectedAlphabet.size(); idx++) {
+			assertTrue(expectedAlphabet.get(idx), alphabet.contains(expectedAlphabet.get(idx)));
+			idxMap[idx] = alphabet.get(expectedAlphabet.get(idx));
+			assertEquals(expectedAlphabet.get(idx), expected.get(idx), matrix.get(idxMap[idx]));
+		}
+		for (int fromIdx = 0; fromIdx < idxMap.length; fromIdx++) {
+			for (int toIdx = 0; toIdx < idxMap.length; toIdx++) {
+				assertEquals(expectedAlphabet.get(fromIdx) + "," + expectedAlphabet.get(toIdx),
+						expected.get(fromIdx, toIdx), matrix.get(idxMap[fromIdx], idxMap[toIdx]));
+			}
+		}
+	}
+
+	/*
+	 * Adds the given number of traces to a window of the given size and age,
+	 * and every given number of traces compares the window with the traces
+	 * that should be in it. The matrices are also compared after filtering
+	 * everything but the edges of positive traces.
+	 */
+	private static void assertWindow(long seed, int nofTraces, int nofActivities, int maxNofTraces, long maxAge,
+			int checkEvery) {
+		Random random = new Random(seed);
+		WindowedActivityMatrix window = new WindowedActivityMatrix(maxNofTraces, maxAge);
+		List<Trace> traces = new ArrayList<Trace>();
+		long time = 0;
+		for (int i = 1; i <= nofTraces; i++) {
+			time += random.nextInt(3);
+			Trace trace = createTrace(random, nofActivities, time);
+			traces.add(trace);
+			window.addTrace(trace.activities, trace.isPos, trace.time);
+			if (i % checkEvery != 0) {
+				continue;
+			}
+			List<Trace> windowTraces = new ArrayList<Trace>();
+			for (Trace windowTrace : traces) {
+				if (maxAge > 0 && windowTrace.time < time - maxAge) {
+					continue;
+				}
+				windowTraces.add(windowTrace);
+			}
+			if (maxNofTraces > 0 && windowTraces.size() > maxNofTraces) {
+				windowTraces = windowTraces.subList(windowTraces.size() - maxNofTraces, windowTraces.size());
+			}
+			assertEquals(windowTraces.size(), window.getNofTraces());
+			ActivityLog log = createLog(windowTraces);
+			ActivityMatrix expected = new ActivityMatrix(log, log.getAlphabet());
+			ActivityAlphabet alphabet = window.getAlphabet();
+			ActivityMatrix matrix = window.getMatrix();
+			assertMatrix(log.getAlphabet(), expected, alphabet, matrix);
+			assertMatrix(log.getAlphabet(), expected, alphabet, new ActivityMatrix(window.getLog(), alphabet));
+			expected.filterAbsolute(Integer.MAX_VALUE);
+			matrix.filterAbsolute(Integer.MAX_VALUE);
+			assertMatrix(log.getAlphabet(), expected, alphabet, matrix);
+		}
+	}
+
+	@Test
+	public void testNofTraces() {
+		for (long seed = 1; seed <= 5; seed++) {
+			assertWindow(seed, 500, 10 + (int) seed * 5, 50, 0, 7);
+		}
+	}
+
+	@Test
+	public void testAge() {
+		for (long seed = 1; seed <= 5; seed++) {
+			assertWindow(seed, 500, 10 + (int) seed * 5, 0, 40, 7);
+			assertWindow(seed, 500, 10 + (int) seed * 5, 30, 40, 7);
+		}
+	}
+
+	/*
+	 * Activities keep entering and leaving the window, which grows beyond the
+	 * size from which the edges are counted sparsely.
+	 */
+	@Test
+	public void testSparse() {
+		assertWindow(1, 3000, 2 * ActivityMatrix.SPARSESIZE, 1000, 0, 500);
+	}
+
+	public static void main(String[] args) {
+		junit.textui.TestRunner.run(WindowedActivityMatrixTest.class);
+	}
+}